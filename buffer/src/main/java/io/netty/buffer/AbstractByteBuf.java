@@ -1294,6 +1294,13 @@ public abstract class AbstractByteBuf extends ByteBuf {
     }
 
     int forEachByteAsc0(int start, int end, ByteProcessor processor) throws Exception {
+        if (ByteBufUtil.SWAR_ENABLED) {
+            // Well known processors that stop at one or two byte values can be served 8 bytes at a time.
+            int bytes = ByteBufUtil.searchedBytes(processor);
+            if (bytes >= 0) {
+                return ByteBufUtil.firstIndexOf(this, start, end, (byte) (bytes >>> 8), (byte) bytes);
+            }
+        }
         for (; start < end; ++start) {
             if (!processor.process(_getByte(start))) {
                 return start;
@@ -1326,6 +1333,12 @@ public abstract class AbstractByteBuf extends ByteBuf {
     }
 
     int forEachByteDesc0(int rStart, final int rEnd, ByteProcessor processor) throws Exception {
+        if (ByteBufUtil.SWAR_ENABLED) {
+            int bytes = ByteBufUtil.searchedBytes(processor);
+            if (bytes >= 0) {
+                return ByteBufUtil.lastIndexOf(this, rEnd, rStart + 1, (byte) (bytes >>> 8), (byte) bytes);
+            }
+        }
         for (; rStart >= rEnd; --rStart) {
             if (!processor.process(_getByte(rStart))) {
                 return rStart;
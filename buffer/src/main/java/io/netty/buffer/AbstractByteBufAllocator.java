@@ -56,6 +56,36 @@ public abstract class AbstractByteBufAllocator implements ByteBufAllocator {
         return buf;
     }
 
+    /**
+     * Like {@link #toLeakAwareBuffer(ByteBuf)}, but also tracks {@code buf} until it is released if its allocation is
+     * sampled by the given {@link AllocationProfiler}.
+     */
+    static ByteBuf toLeakAwareBuffer(ByteBuf buf, AllocationProfiler profiler) {
+        ResourceLeakTracker<ByteBuf> sample = profiler.sample(buf);
+        if (sample == null) {
+            return toLeakAwareBuffer(buf);
+        }
+        ResourceLeakTracker<ByteBuf> leak;
+        switch (ResourceLeakDetector.getLevel()) {
+            case SIMPLE:
+                leak = AbstractByteBuf.leakDetector.track(buf);
+                if (leak != null) {
+                    return new SimpleLeakAwareByteBuf(buf, new AllocationProfiler.CombinedTracker(leak, sample));
+                }
+                break;
+            case ADVANCED:
+            case PARANOID:
+                leak = AbstractByteBuf.leakDetector.track(buf);
+                if (leak != null) {
+                    return new AdvancedLeakAwareByteBuf(buf, new AllocationProfiler.CombinedTracker(leak, sample));
+                }
+                break;
+            default:
+                break;
+        }
+        return new SimpleLeakAwareByteBuf(buf, sample);
+    }
+
     protected static CompositeByteBuf toLeakAwareBuffer(CompositeByteBuf buf) {
         ResourceLeakTracker<ByteBuf> leak;
         switch (ResourceLeakDetector.getLevel()) {
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.ResourceLeakTracker;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Samples one out of {@link #samplingInterval()} allocations and tracks the capacity of the sampled buffers per
+ * call-site until they are released.
+ *
+ * Sampled buffers are wrapped in the same way as buffers tracked by the {@link io.netty.util.ResourceLeakDetector},
+ * with a {@link ResourceLeakTracker} that is closed once the buffer is released.
+ *
+ * At most {@code maxSites} call-sites are tracked. Once the limit is reached the call-sites without any live sample
+ * are evicted to make room for new ones.
+ */
+final class AllocationProfiler {
+
+    private static final Comparator<AllocationSiteMetric> ACTIVE_BYTES_COMPARATOR =
+            new Comparator<AllocationSiteMetric>() {
+        @Override
+        public int compare(AllocationSiteMetric o1, AllocationSiteMetric o2) {
+            long b1 = o1.estimatedActiveBytes();
+            long b2 = o2.estimatedActiveBytes();
+            return b1 > b2 ? -1 : b1 == b2 ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentMap<CallSite, Site> sites = PlatformDependent.newConcurrentHashMap();
+    private final AtomicBoolean pruning = new AtomicBoolean();
+    private final int stackDepth;
+    private final int maxSites;
+    private volatile int samplingInterval;
+
+    AllocationProfiler(int samplingInterval, int stackDepth, int maxSites) {
+        samplingInterval(samplingInterval);
+        if (stackDepth <= 0) {
+            throw new IllegalArgumentException("stackDepth: " + stackDepth + " (expected: > 0)");
+        }
+        if (maxSites <= 0) {
+            throw new IllegalArgumentException("maxSites: " + maxSites + " (expected: > 0)");
+        }
+        this.stackDepth = stackDepth;
+        this.maxSites = maxSites;
+    }
+
+    int samplingInterval() {
+        return samplingInterval;
+    }
+
+    void samplingInterval(int samplingInterval) {
+        if (samplingInterval < 0) {
+            throw new IllegalArgumentException("samplingInterval: " + samplingInterval + " (expected: >= 0)");
+        }
+        this.samplingInterval = samplingInterval;
+    }
+
+    /**
+     * Returns a {@link ResourceLeakTracker} which must be closed once {@code buf} is released if the allocation of
+     * {@code buf} was sampled, {@code null} otherwise.
+     */
+    ResourceLeakTracker<ByteBuf> sample(ByteBuf buf) {
+        final int interval = samplingInterval;
+        if (interval == 0 || interval > 1 && PlatformDependent.threadLocalRandom().nextInt(interval) != 0) {
+            return null;
+        }
+
+        CallSite callSite = new CallSite(callSiteStack(new Throwable().getStackTrace(), stackDepth));
+        for (;;) {
+            Site site = sites.get(callSite);
+            if (site == null) {
+                if (sites.size() >= maxSites && !pruneIdleSites()) {
+                    // Too many call-sites hold live samples, do not track any new one.
+                    return null;
+                }
+                Site newSite = new Site(callSite);
+                site = sites.putIfAbsent(callSite, newSite);
+                if (site == null) {
+                    site = newSite;
+                }
+            }
+            Sample sample = new Sample(site, buf.capacity(), interval);
+            if (sites.get(callSite) == site) {
+                return sample;
+            }
+            // The site was pruned concurrently, so account the sample to the site that replaces it.
+            sample.close(buf);
+        }
+    }
+
+    /**
+     * Removes the call-sites which do not hold any live sample anymore.
+     *
+     * @return {@code true} if there is room for a new call-site afterwards.
+     */
+    private boolean pruneIdleSites() {
+        if (!pruning.compareAndSet(false, true)) {
+            return sites.size() < maxSites;
+        }
+        try {
+            for (Map.Entry<CallSite, Site> entry: sites.entrySet()) {
+                Site site = entry.getValue();
+                if (site.activeAllocations.value() == 0 && sites.remove(entry.getKey(), site) &&
+                        site.activeAllocations.value() != 0) {
+                    // Raced with a new sample of this site, put it back.
+                    sites.putIfAbsent(entry.getKey(), site);
+                }
+            }
+            return sites.size() < maxSites;
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    private static StackTraceElement[] callSiteStack(StackTraceElement[] stack, int depth) {
+        // Skip the frames of the allocators themselves.
+        int start = 0;
+        while (start < stack.length && isAllocatorFrame(stack[start])) {
+            start++;
+        }
+        return Arrays.copyOfRange(stack, start, Math.min(stack.length, start + depth));
+    }
+
+    private static boolean isAllocatorFrame(StackTraceElement element) {
+        String className = element.getClassName();
+        return className.equals(AllocationProfiler.class.getName()) ||
+                className.equals(AbstractByteBufAllocator.class.getName()) ||
+                className.equals(PooledByteBufAllocator.class.getName());
+    }
+
+    /**
+     * Returns the {@code n} call-sites which hold the most bytes in buffers which were not released yet.
+     */
+    List<AllocationSiteMetric> topSites(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("n: " + n + " (expected: >= 0)");
+        }
+        List<AllocationSiteMetric> snapshots = new ArrayList<AllocationSiteMetric>(sites.size());
+        for (Site site: sites.values()) {
+            snapshots.add(site.snapshot());
+        }
+        Collections.sort(snapshots, ACTIVE_BYTES_COMPARATOR);
+        return snapshots.size() > n ? new ArrayList<AllocationSiteMetric>(snapshots.subList(0, n)) : snapshots;
+    }
+
+    private static final class CallSite {
+        private final StackTraceElement[] stack;
+        private final int hashCode;
+
+        CallSite(StackTraceElement[] stack) {
+            this.stack = stack;
+            hashCode = Arrays.hashCode(stack);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof CallSite && Arrays.equals(stack, ((CallSite) obj).stack);
+        }
+    }
+
+    private static final class Site {
+        final CallSite callSite;
+        final LongCounter allocations = PlatformDependent.newLongCounter();
+        final LongCounter activeAllocations = PlatformDependent.newLongCounter();
+        final LongCounter activeBytes = PlatformDependent.newLongCounter();
+        final LongCounter estimatedActiveBytes = PlatformDependent.newLongCounter();
+
+        Site(CallSite callSite) {
+            this.callSite = callSite;
+        }
+
+        AllocationSiteMetric snapshot() {
+            return new SiteSnapshot(Collections.unmodifiableList(Arrays.asList(callSite.stack)),
+                    allocations.value(), activeAllocations.value(), activeBytes.value(), estimatedActiveBytes.value());
+        }
+    }
+
+    private static final class SiteSnapshot implements AllocationSiteMetric {
+        private final List<StackTraceElement> stackTrace;
+        private final long allocations;
+        private final long activeAllocations;
+        private final long activeBytes;
+        private final long estimatedActiveBytes;
+
+        SiteSnapshot(List<StackTraceElement> stackTrace, long allocations, long activeAllocations,
+                     long activeBytes, long estimatedActiveBytes) {
+            this.stackTrace = stackTrace;
+            this.allocations = allocations;
+            this.activeAllocations = activeAllocations;
+            this.activeBytes = activeBytes;
+            this.estimatedActiveBytes = estimatedActiveBytes;
+        }
+
+        @Override
+        public List<StackTraceElement> stackTrace() {
+            return stackTrace;
+        }
+
+        @Override
+        public long numSampledAllocations() {
+            return allocations;
+        }
+
+        @Override
+        public long numSampledActiveAllocations() {
+            return activeAllocations;
+        }
+
+        @Override
+        public long sampledActiveBytes() {
+            return activeBytes;
+        }
+
+        @Override
+        public long estimatedActiveBytes() {
+            return estimatedActiveBytes;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder buf = new StringBuilder(256)
+                    .append(StringUtil.simpleClassName(this))
+                    .append("(estimatedActiveBytes: ").append(estimatedActiveBytes)
+                    .append(", sampledActiveBytes: ").append(activeBytes)
+                    .append(", numSampledActiveAllocations: ").append(activeAllocations)
+                    .append(", numSampledAllocations: ").append(allocations)
+                    .append(')');
+            for (StackTraceElement element: stackTrace) {
+                buf.append(StringUtil.NEWLINE).append("\tat ").append(element);
+            }
+            return buf.toString();
+        }
+    }
+
+    /**
+     * The {@link ResourceLeakTracker} of a sampled buffer, which gives back the capacity the buffer had when it was
+     * allocated to its {@link Site} once it is closed.
+     */
+    private static final class Sample implements ResourceLeakTracker<ByteBuf> {
+        private final Site site;
+        private final int capacity;
+        private final int interval;
+        private boolean closed;
+
+        Sample(Site site, int capacity, int interval) {
+            this.site = site;
+            this.capacity = capacity;
+            this.interval = interval;
+            site.allocations.increment();
+            site.activeAllocations.increment();
+            site.activeBytes.add(capacity);
+            site.estimatedActiveBytes.add((long) capacity * interval);
+        }
+
+        @Override
+        public void record() {
+            // NOOP
+        }
+
+        @Override
+        public void record(Object hint) {
+            // NOOP
+        }
+
+        @Override
+        public boolean close(ByteBuf trackedObject) {
+            // Only called once the reference count of the buffer dropped to 0, so there is no need to synchronize.
+            if (closed) {
+                return false;
+            }
+            closed = true;
+            site.activeAllocations.decrement();
+            site.activeBytes.add(-capacity);
+            site.estimatedActiveBytes.add(-(long) capacity * interval);
+            return true;
+        }
+    }
+
+    /**
+     * A {@link ResourceLeakTracker} which forwards to the {@link ResourceLeakTracker} of the
+     * {@link io.netty.util.ResourceLeakDetector} and of the {@link AllocationProfiler} of a buffer.
+     */
+    static final class CombinedTracker implements ResourceLeakTracker<ByteBuf> {
+        private final ResourceLeakTracker<ByteBuf> leak;
+        private final ResourceLeakTracker<ByteBuf> sample;
+
+        CombinedTracker(ResourceLeakTracker<ByteBuf> leak, ResourceLeakTracker<ByteBuf> sample) {
+            this.leak = leak;
+            this.sample = sample;
+        }
+
+        @Override
+        public void record() {
+            leak.record();
+        }
+
+        @Override
+        public void record(Object hint) {
+            leak.record(hint);
+        }
+
+        @Override
+        public boolean close(ByteBuf trackedObject) {
+            // Always close both.
+            boolean closed = sample.close(trackedObject);
+            return leak.close(trackedObject) && closed;
+        }
+    }
+}
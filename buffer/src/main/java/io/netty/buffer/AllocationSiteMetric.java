@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.util.List;
+
+/**
+ * Metric of the buffers that were allocated by a call-site and sampled by the allocation profiler of a
+ * {@link PooledByteBufAllocator}.
+ *
+ * @see PooledByteBufAllocator#setAllocationSamplingInterval(int)
+ * @see PooledByteBufAllocatorMetric#topAllocationSites(int)
+ */
+public interface AllocationSiteMetric {
+
+    /**
+     * Return the stack of the call-site, starting with the method that called the {@link ByteBufAllocator}.
+     */
+    List<StackTraceElement> stackTrace();
+
+    /**
+     * Return the number of sampled buffers allocated by this call-site.
+     */
+    long numSampledAllocations();
+
+    /**
+     * Return the number of sampled buffers allocated by this call-site which were not released yet.
+     */
+    long numSampledActiveAllocations();
+
+    /**
+     * Return the capacity in bytes of the sampled buffers allocated by this call-site which were not released yet.
+     */
+    long sampledActiveBytes();
+
+    /**
+     * Return the estimated number of bytes held by all the buffers allocated by this call-site which were not
+     * released yet, which is the active bytes of the sampled buffers multiplied with the sampling interval that
+     * was used when they were allocated.
+     */
+    long estimatedActiveBytes();
+}
@@ -69,6 +69,15 @@ public final class ByteBufUtil {
     static final int WRITE_CHUNK_SIZE = 8192;
     static final ByteBufAllocator DEFAULT_ALLOCATOR;
 
+    /**
+     * {@code true} if byte searches should read 8 bytes at a time (SWAR) which is only faster then reading byte by
+     * byte if {@code long}s can be read via unaligned {@code Unsafe} accesses.
+     */
+    static final boolean SWAR_ENABLED = PlatformDependent.isUnaligned();
+    private static final boolean SWAR_LITTLE_ENDIAN = !PlatformDependent.BIG_ENDIAN_NATIVE_ORDER;
+    private static final long SWAR_LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long SWAR_ONES = 0x0101010101010101L;
+
     static {
         String allocType = SystemPropertyUtil.get(
                 "io.netty.allocator.type", PlatformDependent.isAndroid() ? "unpooled" : "pooled");
@@ -175,18 +184,30 @@ public final class ByteBufUtil {
      */
     public static int hashCode(ByteBuf buffer) {
         final int aLen = buffer.readableBytes();
-        final int intCount = aLen >>> 2;
+        final int longCount = aLen >>> 3;
+        final int intCount = (aLen >>> 2) & 1;
         final int byteCount = aLen & 3;
 
+        // Hashes one big-endian int after the other, but reads two of them at once.
         int hashCode = EmptyByteBuf.EMPTY_BYTE_BUF_HASH_CODE;
         int arrayIndex = buffer.readerIndex();
         if (buffer.order() == ByteOrder.BIG_ENDIAN) {
-            for (int i = intCount; i > 0; i --) {
+            for (int i = longCount; i > 0; i --) {
+                long value = buffer.getLong(arrayIndex);
+                hashCode = 31 * 31 * hashCode + 31 * (int) (value >>> 32) + (int) value;
+                arrayIndex += 8;
+            }
+            if (intCount != 0) {
                 hashCode = 31 * hashCode + buffer.getInt(arrayIndex);
                 arrayIndex += 4;
             }
         } else {
-            for (int i = intCount; i > 0; i --) {
+            for (int i = longCount; i > 0; i --) {
+                long value = swapLong(buffer.getLong(arrayIndex));
+                hashCode = 31 * 31 * hashCode + 31 * (int) (value >>> 32) + (int) value;
+                arrayIndex += 8;
+            }
+            if (intCount != 0) {
                 hashCode = 31 * hashCode + swapInt(buffer.getInt(arrayIndex));
                 arrayIndex += 4;
             }
@@ -205,20 +226,141 @@ public final class ByteBufUtil {
 
     /**
      * Returns the reader index of needle in haystack, or -1 if needle is not in haystack.
+     * <p>
+     * Uses the <a href="https://en.wikipedia.org/wiki/Two-way_string-matching_algorithm">Two-Way</a> algorithm which
+     * runs in linear time and constant space, so no skip table needs to be built for each search.
      */
     public static int indexOf(ByteBuf needle, ByteBuf haystack) {
-        // TODO: maybe use Boyer Moore for efficiency.
-        int attempts = haystack.readableBytes() - needle.readableBytes() + 1;
-        for (int i = 0; i < attempts; i++) {
-            if (equals(needle, needle.readerIndex(),
-                       haystack, haystack.readerIndex() + i,
-                       needle.readableBytes())) {
-                return haystack.readerIndex() + i;
+        final int m = needle.readableBytes();
+        final int n = haystack.readableBytes();
+        final int hStart = haystack.readerIndex();
+        if (m > n) {
+            return -1;
+        }
+        if (m == 0) {
+            return hStart;
+        }
+        final int nStart = needle.readerIndex();
+        if (m == 1) {
+            return haystack.indexOf(hStart, hStart + n, needle.getByte(nStart));
+        }
+
+        // Critical factorization of the needle.
+        long suffix = maxSuffix(needle, nStart, m, false);
+        long suffixTilde = maxSuffix(needle, nStart, m, true);
+        final int ell;
+        int per;
+        if ((int) (suffix >> 32) > (int) (suffixTilde >> 32)) {
+            ell = (int) (suffix >> 32);
+            per = (int) suffix;
+        } else {
+            ell = (int) (suffixTilde >> 32);
+            per = (int) suffixTilde;
+        }
+
+        int j = 0;
+        if (per + ell + 1 <= m && equals(needle, nStart, needle, nStart + per, ell + 1)) {
+            // The needle is periodic, remember how much of the prefix is known to match after a shift.
+            int memory = -1;
+            while (j <= n - m) {
+                if (memory < 0) {
+                    j = nextCandidate(needle, nStart, haystack, hStart, j, n - m, ell);
+                    if (j < 0) {
+                        return -1;
+                    }
+                }
+                int i = Math.max(ell, memory) + 1;
+                while (i < m && needle.getByte(nStart + i) == haystack.getByte(hStart + j + i)) {
+                    ++i;
+                }
+                if (i >= m) {
+                    i = ell;
+                    while (i > memory && needle.getByte(nStart + i) == haystack.getByte(hStart + j + i)) {
+                        --i;
+                    }
+                    if (i <= memory) {
+                        return hStart + j;
+                    }
+                    j += per;
+                    memory = m - per - 1;
+                } else {
+                    j += i - ell;
+                    memory = -1;
+                }
+            }
+        } else {
+            per = Math.max(ell + 1, m - ell - 1) + 1;
+            while (j <= n - m) {
+                j = nextCandidate(needle, nStart, haystack, hStart, j, n - m, ell);
+                if (j < 0) {
+                    return -1;
+                }
+                int i = ell + 1;
+                while (i < m && needle.getByte(nStart + i) == haystack.getByte(hStart + j + i)) {
+                    ++i;
+                }
+                if (i >= m) {
+                    i = ell;
+                    while (i >= 0 && needle.getByte(nStart + i) == haystack.getByte(hStart + j + i)) {
+                        --i;
+                    }
+                    if (i < 0) {
+                        return hStart + j;
+                    }
+                    j += per;
+                } else {
+                    j += i - ell;
+                }
             }
         }
         return -1;
     }
 
+    /**
+     * Returns the first shift {@code >= j} and {@code <= maxShift} at which the first byte of the right half of the
+     * critical factorization ({@code ell + 1}) matches, or {@code -1}. All the shifts in between would be rejected
+     * by the first comparison anyway, and this way they are skipped 8 bytes at a time.
+     */
+    private static int nextCandidate(ByteBuf needle, int nStart, ByteBuf haystack, int hStart,
+                                     int j, int maxShift, int ell) {
+        int index = haystack.indexOf(hStart + j + ell + 1, hStart + maxShift + ell + 2,
+                                     needle.getByte(nStart + ell + 1));
+        return index < 0 ? -1 : index - hStart - ell - 1;
+    }
+
+    /**
+     * Computes the maximal suffix of the {@code length} bytes of {@code x} starting at {@code start}, either
+     * according to the natural or the reversed ({@code tilde}) order of unsigned bytes. Returns the start of the
+     * suffix minus one in the upper and its period in the lower 32 bits.
+     */
+    private static long maxSuffix(ByteBuf x, int start, int length, boolean tilde) {
+        int ms = -1;
+        int j = 0;
+        int k = 1;
+        int p = 1;
+        while (j + k < length) {
+            int a = x.getUnsignedByte(start + j + k);
+            int b = x.getUnsignedByte(start + ms + k);
+            if (tilde ? a > b : a < b) {
+                j += k;
+                k = 1;
+                p = j - ms;
+            } else if (a == b) {
+                if (k != p) {
+                    ++k;
+                } else {
+                    j += p;
+                    k = 1;
+                }
+            } else {
+                ms = j;
+                j = ms + 1;
+                k = p = 1;
+            }
+        }
+        return ((long) ms << 32) | p;
+    }
+
     /**
      * Returns {@code true} if and only if the two specified buffers are
      * identical to each other for {@code length} bytes starting at {@code aStartIndex}
@@ -234,6 +376,14 @@ public final class ByteBufUtil {
         if (a.writerIndex() - length < aStartIndex || b.writerIndex() - length < bStartIndex) {
             return false;
         }
+        if (a.hasArray() && b.hasArray()) {
+            // Compared 8 bytes at a time via Unsafe if possible.
+            return PlatformDependent.equals(a.array(), a.arrayOffset() + aStartIndex,
+                                            b.array(), b.arrayOffset() + bStartIndex, length);
+        }
+        if (SWAR_ENABLED && a.hasMemoryAddress() && b.hasMemoryAddress()) {
+            return equals(a.memoryAddress() + aStartIndex, b.memoryAddress() + bStartIndex, length);
+        }
 
         final int longCount = length >>> 3;
         final int byteCount = length & 7;
@@ -267,6 +417,21 @@ public final class ByteBufUtil {
         return true;
     }
 
+    private static boolean equals(long addressA, long addressB, int length) {
+        final long longEnd = addressA + (length & ~7);
+        for (; addressA < longEnd; addressA += 8, addressB += 8) {
+            if (PlatformDependent.getLong(addressA) != PlatformDependent.getLong(addressB)) {
+                return false;
+            }
+        }
+        for (final long end = longEnd + (length & 7); addressA < end; ++addressA, ++addressB) {
+            if (PlatformDependent.getByte(addressA) != PlatformDependent.getByte(addressB)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Returns {@code true} if and only if the two specified buffers are
      * identical to each other as described in {@link ByteBuf#equals(Object)}.
@@ -458,7 +623,7 @@ public final class ByteBufUtil {
             return -1;
         }
 
-        return buffer.forEachByte(fromIndex, toIndex - fromIndex, new ByteProcessor.IndexOfProcessor(value));
+        return buffer.forEachByte(fromIndex, toIndex - fromIndex, new IndexOfProcessor(value));
     }
 
     private static int lastIndexOf(ByteBuf buffer, int fromIndex, int toIndex, byte value) {
@@ -468,7 +633,171 @@ public final class ByteBufUtil {
             return -1;
         }
 
-        return buffer.forEachByteDesc(toIndex, fromIndex - toIndex, new ByteProcessor.IndexOfProcessor(value));
+        return buffer.forEachByteDesc(toIndex, fromIndex - toIndex, new IndexOfProcessor(value));
+    }
+
+    /**
+     * Returns the byte values {@code processor} stops at packed as {@code (first << 8) | second} if it is one of the
+     * well known {@link ByteProcessor}s which stop at one or two byte values, or {@code -1} otherwise. Processors
+     * that stop at a single byte value return it twice.
+     */
+    static int searchedBytes(ByteProcessor processor) {
+        final int value;
+        if (processor instanceof IndexOfProcessor) {
+            value = ((IndexOfProcessor) processor).value;
+        } else if (processor == ByteProcessor.FIND_LF) {
+            value = '\n';
+        } else if (processor == ByteProcessor.FIND_CRLF) {
+            return '\r' << 8 | '\n';
+        } else if (processor == ByteProcessor.FIND_NUL) {
+            value = 0;
+        } else if (processor == ByteProcessor.FIND_CR) {
+            value = '\r';
+        } else if (processor == ByteProcessor.FIND_LINEAR_WHITESPACE) {
+            return ' ' << 8 | '\t';
+        } else if (processor == ByteProcessor.FIND_ASCII_SPACE) {
+            value = ' ';
+        } else if (processor == ByteProcessor.FIND_SEMI_COLON) {
+            value = ';';
+        } else if (processor == ByteProcessor.FIND_COMMA) {
+            value = ',';
+        } else {
+            return -1;
+        }
+        return (value & 0xFF) << 8 | value & 0xFF;
+    }
+
+    /**
+     * Returns the index of the first byte in {@code [start, end)} that is equal to {@code a} or {@code b}, or
+     * {@code -1} if there is none. The bounds are not checked.
+     */
+    static int firstIndexOf(AbstractByteBuf buffer, int start, int end, byte a, byte b) {
+        final long patternA = swarPattern(a);
+        final long patternB = swarPattern(b);
+        final int longEnd = end - 7;
+        if (buffer.hasMemoryAddress()) {
+            final long address = buffer.memoryAddress();
+            for (; start < longEnd; start += 8) {
+                long matches = swarMatches(PlatformDependent.getLong(address + start), patternA, patternB);
+                if (matches != 0) {
+                    return start + swarFirstIndex(matches);
+                }
+            }
+        } else if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int offset = buffer.arrayOffset();
+            for (; start < longEnd; start += 8) {
+                long matches = swarMatches(PlatformDependent.getLong(array, offset + start), patternA, patternB);
+                if (matches != 0) {
+                    return start + swarFirstIndex(matches);
+                }
+            }
+        } else {
+            for (; start < longEnd; start += 8) {
+                long matches = swarMatches(nativeLong(buffer, start), patternA, patternB);
+                if (matches != 0) {
+                    return start + swarFirstIndex(matches);
+                }
+            }
+        }
+        for (; start < end; ++start) {
+            byte value = buffer._getByte(start);
+            if (value == a || value == b) {
+                return start;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last byte in {@code [start, end)} that is equal to {@code a} or {@code b}, or
+     * {@code -1} if there is none. The bounds are not checked.
+     */
+    static int lastIndexOf(AbstractByteBuf buffer, int start, int end, byte a, byte b) {
+        final long patternA = swarPattern(a);
+        final long patternB = swarPattern(b);
+        final int longStart = start + 8;
+        if (buffer.hasMemoryAddress()) {
+            final long address = buffer.memoryAddress();
+            for (; end >= longStart; end -= 8) {
+                long matches = swarMatches(PlatformDependent.getLong(address + end - 8), patternA, patternB);
+                if (matches != 0) {
+                    return end - 1 - swarLastIndex(matches);
+                }
+            }
+        } else if (buffer.hasArray()) {
+            final byte[] array = buffer.array();
+            final int offset = buffer.arrayOffset();
+            for (; end >= longStart; end -= 8) {
+                long matches = swarMatches(PlatformDependent.getLong(array, offset + end - 8), patternA, patternB);
+                if (matches != 0) {
+                    return end - 1 - swarLastIndex(matches);
+                }
+            }
+        } else {
+            for (; end >= longStart; end -= 8) {
+                long matches = swarMatches(nativeLong(buffer, end - 8), patternA, patternB);
+                if (matches != 0) {
+                    return end - 1 - swarLastIndex(matches);
+                }
+            }
+        }
+        while (end > start) {
+            byte value = buffer._getByte(--end);
+            if (value == a || value == b) {
+                return end;
+            }
+        }
+        return -1;
+    }
+
+    private static long nativeLong(AbstractByteBuf buffer, int index) {
+        return SWAR_LITTLE_ENDIAN ? buffer._getLongLE(index) : buffer._getLong(index);
+    }
+
+    private static long swarPattern(byte value) {
+        return (value & 0xFFL) * SWAR_ONES;
+    }
+
+    /**
+     * Returns a {@code long} which has the highest bit of each byte set for which {@code word} is equal to the
+     * corresponding byte of {@code patternA} or {@code patternB}, and all other bits cleared. Unlike the well known
+     * {@code (x - 0x01..) & ~x & 0x80..} trick no borrows are propagated between the bytes, so there are no false
+     * positives and the highest as well as the lowest match can be located.
+     */
+    private static long swarMatches(long word, long patternA, long patternB) {
+        long inputA = word ^ patternA;
+        long inputB = word ^ patternB;
+        long tmpA = (inputA & SWAR_LOW_BITS) + SWAR_LOW_BITS;
+        long tmpB = (inputB & SWAR_LOW_BITS) + SWAR_LOW_BITS;
+        return ~(tmpA | inputA | SWAR_LOW_BITS) | ~(tmpB | inputB | SWAR_LOW_BITS);
+    }
+
+    /**
+     * Returns the offset of the first match in a word that was read in native byte order.
+     */
+    private static int swarFirstIndex(long matches) {
+        return (SWAR_LITTLE_ENDIAN ? Long.numberOfTrailingZeros(matches) : Long.numberOfLeadingZeros(matches)) >>> 3;
+    }
+
+    /**
+     * Returns the offset of the last match, counted from the end of a word that was read in native byte order.
+     */
+    private static int swarLastIndex(long matches) {
+        return (SWAR_LITTLE_ENDIAN ? Long.numberOfLeadingZeros(matches) : Long.numberOfTrailingZeros(matches)) >>> 3;
+    }
+
+    /**
+     * A {@link ByteProcessor.IndexOfProcessor} that exposes the searched value, so that buffers can search for it
+     * 8 bytes at a time.
+     */
+    static final class IndexOfProcessor extends ByteProcessor.IndexOfProcessor {
+        final byte value;
+
+        IndexOfProcessor(byte value) {
+            super(value);
+            this.value = value;
+        }
     }
 
     /**
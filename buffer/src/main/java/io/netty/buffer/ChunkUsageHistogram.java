@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the {@link PoolChunk}s of a {@link PoolArenaShard} by their usage.
+ *
+ * The histogram is only modified while holding the lock of the shard, but can be read by any thread without taking
+ * the lock. Every modification is surrounded by two increments of an epoch, so readers can detect that they raced
+ * with a modification and retry, which means a reader always sees the histogram as it was between two modifications.
+ */
+final class ChunkUsageHistogram {
+
+    static final int NUM_BUCKETS = 10;
+
+    // Odd while a modification is in progress.
+    private final AtomicLong epoch = new AtomicLong();
+    private final AtomicLongArray counts = new AtomicLongArray(NUM_BUCKETS);
+
+    /**
+     * Returns the bucket for the given usage in percent, see {@link PoolChunk#usage()}.
+     */
+    static int bucket(int usage) {
+        return usage >= 100 ? NUM_BUCKETS - 1 : usage * NUM_BUCKETS / 100;
+    }
+
+    // Method must be called inside synchronized(shard) { ... } block
+    void add(int bucket) {
+        beginUpdate();
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+        endUpdate();
+    }
+
+    // Method must be called inside synchronized(shard) { ... } block
+    void remove(int bucket) {
+        beginUpdate();
+        counts.lazySet(bucket, counts.get(bucket) - 1);
+        endUpdate();
+    }
+
+    // Method must be called inside synchronized(shard) { ... } block
+    void move(int oldBucket, int newBucket) {
+        beginUpdate();
+        counts.lazySet(oldBucket, counts.get(oldBucket) - 1);
+        counts.lazySet(newBucket, counts.get(newBucket) + 1);
+        endUpdate();
+    }
+
+    private void beginUpdate() {
+        // lazySet is enough as each lazySet is ordered after all previous writes.
+        epoch.lazySet(epoch.get() + 1);
+    }
+
+    private void endUpdate() {
+        epoch.lazySet(epoch.get() + 1);
+    }
+
+    /**
+     * Adds the number of chunks in each bucket to {@code histogram}.
+     */
+    void addTo(long[] histogram) {
+        assert histogram.length == NUM_BUCKETS;
+        long[] snapshot = new long[NUM_BUCKETS];
+        for (;;) {
+            long start = epoch.get();
+            if ((start & 1) == 0) {
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    snapshot[i] = counts.get(i);
+                }
+                if (epoch.get() == start) {
+                    break;
+                }
+            }
+            Thread.yield();
+        }
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            histogram[i] += snapshot[i];
+        }
+    }
+}
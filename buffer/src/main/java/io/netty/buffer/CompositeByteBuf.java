@@ -19,7 +19,7 @@ import io.netty.util.ByteProcessor;
 import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.internal.EmptyArrays;
-import io.netty.util.internal.RecyclableArrayList;
+import io.netty.util.internal.PlatformDependent;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -418,15 +418,26 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
         return this;
     }
 
-    // TODO optimize further, similar to ByteBuf[] version
-    // (difference here is that we don't know *always* know precise size increase in advance,
-    // but we do in the most common case that the Iterable is a Collection)
     private int addComponents0(boolean increaseIndex, int cIndex, Iterable<ByteBuf> buffers) {
         if (buffers instanceof ByteBuf) {
             // If buffers also implements ByteBuf (e.g. CompositeByteBuf), it has to go to addComponent(ByteBuf).
             return addComponent0(increaseIndex, cIndex, (ByteBuf) buffers);
         }
         checkNotNull(buffers, "buffers");
+        if (buffers instanceof Collection) {
+            // We know the number of buffers in advance, so add them all at once. This way the components that follow
+            // cIndex only need to be shifted and repositioned one time.
+            ByteBuf[] array = ((Collection<ByteBuf>) buffers).toArray(new ByteBuf[0]);
+            try {
+                checkComponentIndex(cIndex);
+            } catch (RuntimeException e) {
+                for (ByteBuf b: array) {
+                    ReferenceCountUtil.safeRelease(b);
+                }
+                throw e;
+            }
+            return array.length == 0 ? cIndex : addComponents0(increaseIndex, cIndex, array, 0);
+        }
         Iterator<ByteBuf> it = buffers.iterator();
         try {
             checkComponentIndex(cIndex);
@@ -497,7 +508,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
             return;
         }
 
-        int nextIndex = cIndex > 0 ? components[cIndex].endOffset : 0;
+        int nextIndex = cIndex > 0 ? components[cIndex - 1].endOffset : 0;
         for (; cIndex < size; cIndex++) {
             Component c = components[cIndex];
             c.reposition(nextIndex);
@@ -801,7 +812,7 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
      */
     public int toComponentIndex(int offset) {
         checkIndex(offset);
-        return toComponentIndex(offset);
+        return toComponentIndex0(offset);
     }
 
     private int toComponentIndex0(int offset) {
@@ -1585,32 +1596,91 @@ public class CompositeByteBuf extends AbstractReferenceCountedByteBuf implements
             return new ByteBuffer[] { EMPTY_NIO_BUFFER };
         }
 
-        RecyclableArrayList buffers = RecyclableArrayList.newInstance(componentCount);
+        int i = toComponentIndex0(index);
+        // Most components are backed by exactly one ByteBuffer, so start with one slot per component which will
+        // be the exact size in this case.
+        ByteBuffer[] buffers = new ByteBuffer[toComponentIndex0(index + length - 1) - i + 1];
+        int count = 0;
+        while (length > 0) {
+            Component c = components[i];
+            ByteBuf s = c.buf;
+            int localLength = Math.min(length, c.endOffset - index);
+            switch (s.nioBufferCount()) {
+            case 0:
+                throw new UnsupportedOperationException();
+            case 1:
+                if (count == buffers.length) {
+                    buffers = Arrays.copyOf(buffers, count + 1);
+                }
+                buffers[count++] = s.nioBuffer(c.idx(index), localLength);
+                break;
+            default:
+                ByteBuffer[] nioBuffers = s.nioBuffers(c.idx(index), localLength);
+                if (count + nioBuffers.length > buffers.length) {
+                    buffers = Arrays.copyOf(buffers, Math.max(buffers.length + (buffers.length >>> 1),
+                            count + nioBuffers.length));
+                }
+                System.arraycopy(nioBuffers, 0, buffers, count, nioBuffers.length);
+                count += nioBuffers.length;
+            }
+
+            index += localLength;
+            length -= localLength;
+            i ++;
+        }
+
+        return count == buffers.length ? buffers : Arrays.copyOf(buffers, count);
+    }
+
+    /**
+     * Iterates over the components which contain the bytes of the specified area of this buffer, without creating
+     * any slices or {@link ByteBuffer}s for them. The {@link ComponentProcessor} is called with the underlying
+     * {@link ByteBuf} of each component, and the index and length of the part of it that belongs to the area, in
+     * ascending order. The underlying {@link ByteBuf} may contain more bytes than the component itself, so only the
+     * given index and length must be accessed. The underlying {@link ByteBuf} must not be retained or released
+     * by the {@link ComponentProcessor}. Empty components are skipped.
+     *
+     * @return {@code -1} if the processor iterated to the end of the specified area.
+     *         The index of the first byte of the component where the processor returned {@code false} otherwise.
+     */
+    public int forEachComponent(int index, int length, ComponentProcessor processor) {
+        checkIndex(index, length);
+        if (length == 0) {
+            return -1;
+        }
+
+        int i = toComponentIndex0(index);
         try {
-            int i = toComponentIndex0(index);
             while (length > 0) {
                 Component c = components[i];
-                ByteBuf s = c.buf;
                 int localLength = Math.min(length, c.endOffset - index);
-                switch (s.nioBufferCount()) {
-                case 0:
-                    throw new UnsupportedOperationException();
-                case 1:
-                    buffers.add(s.nioBuffer(c.idx(index), localLength));
-                    break;
-                default:
-                    Collections.addAll(buffers, s.nioBuffers(c.idx(index), localLength));
+                // Skip empty components.
+                if (localLength > 0 && !processor.process(c.buf, c.idx(index), localLength)) {
+                    return index;
                 }
-
                 index += localLength;
                 length -= localLength;
                 i ++;
             }
-
-            return buffers.toArray(new ByteBuffer[0]);
-        } finally {
-            buffers.recycle();
+        } catch (Exception e) {
+            PlatformDependent.throwException(e);
         }
+        return -1;
+    }
+
+    /**
+     * Processes the components of a {@link CompositeByteBuf}, see
+     * {@link CompositeByteBuf#forEachComponent(int, int, ComponentProcessor)}.
+     */
+    public interface ComponentProcessor {
+        /**
+         * @param buf    the underlying {@link ByteBuf} of the component
+         * @param index  the index of the first byte in {@code buf} that belongs to the component
+         * @param length the number of bytes in {@code buf} that belong to the component
+         * @return {@code true} if the processor wants to continue the loop and handle the next component.
+         *         {@code false} if the processor wants to stop handling components and abort the loop.
+         */
+        boolean process(ByteBuf buf, int index, int length) throws Exception;
     }
 
     /**
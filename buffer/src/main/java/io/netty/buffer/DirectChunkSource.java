@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Provides the memory which backs the chunks of the direct arenas of a {@link PooledByteBufAllocator}.
+ *
+ * Implementations can be used to back chunks by memory that was obtained in a different way then
+ * {@link ByteBuffer#allocateDirect(int)}, for example by anonymous {@code mmap} regions which use huge pages.
+ */
+@UnstableApi
+public interface DirectChunkSource {
+
+    /**
+     * The default {@link DirectChunkSource} which allocates chunks via {@link ByteBuffer#allocateDirect(int)} or
+     * without a {@code Cleaner} if supported by the platform.
+     */
+    DirectChunkSource DEFAULT = new DirectChunkSource() {
+        @Override
+        public ByteBuffer allocate(int capacity) {
+            return PlatformDependent.useDirectBufferNoCleaner() ?
+                    PlatformDependent.allocateDirectNoCleaner(capacity) : ByteBuffer.allocateDirect(capacity);
+        }
+
+        @Override
+        public void free(ByteBuffer chunk) {
+            if (PlatformDependent.useDirectBufferNoCleaner()) {
+                PlatformDependent.freeDirectNoCleaner(chunk);
+            } else {
+                PlatformDependent.freeDirectBuffer(chunk);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "DirectChunkSource.DEFAULT";
+        }
+    };
+
+    /**
+     * Returns a new direct {@link ByteBuffer} with the given {@code capacity}. The returned {@link ByteBuffer} is
+     * exclusively owned by the caller until it is passed to {@link #free(ByteBuffer)}.
+     *
+     * This method is called while the lock of the arena (shard) which needs the chunk is held, so it should not block
+     * longer then necessary.
+     */
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * Releases the memory of a {@link ByteBuffer} that was returned by {@link #allocate(int)}. Implementations should
+     * release the memory directly and not depend on the garbage collector, as the {@link ByteBuffer} must not be used
+     * anymore once this method returns.
+     */
+    void free(ByteBuffer chunk);
+}
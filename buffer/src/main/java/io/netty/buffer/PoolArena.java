@@ -28,7 +28,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.max;
 
-abstract class PoolArena<T> implements PoolArenaMetric {
+abstract class PoolArena<T> implements PoolArenaMetric, PoolArenaThreadCacheMetric,
+        PoolArenaSizeClassMetric {
     static final boolean HAS_UNSAFE = PlatformDependent.hasUnsafe();
 
     enum SizeClass {
@@ -39,43 +40,63 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     static final int numTinySubpagePools = 512 >>> 4;
 
+    // The maximum number of pages of a run that is used for the subpages of a small size class.
+    private static final int MAX_SUBPAGE_RUN_PAGES = 8;
+
     final PooledByteBufAllocator parent;
 
-    private final int maxOrder;
+    final int maxOrder;
     final int pageSize;
     final int pageShifts;
     final int chunkSize;
-    final int subpageOverflowMask;
     final int numSmallSubpagePools;
+    // log2 of the number of size classes per doubling of the capacity.
+    final int sizeClassShift;
+    // If the allocations and deallocations per size class and the active requested and normalized bytes are counted.
+    final boolean sizeClassMetrics;
+    // The largest size class that is still allocated out of a subpage.
+    private final int maxSmallCapacity;
+    // The number of pages of the runs that back the subpages of each small size class.
+    private final int[] smallSubpageRunPages;
     final int directMemoryCacheAlignment;
     final int directMemoryCacheAlignmentMask;
     private final PoolSubpage<T>[] tinySubpagePools;
     private final PoolSubpage<T>[] smallSubpagePools;
 
-    private final PoolChunkList<T> q050;
-    private final PoolChunkList<T> q025;
-    private final PoolChunkList<T> q000;
-    private final PoolChunkList<T> qInit;
-    private final PoolChunkList<T> q075;
-    private final PoolChunkList<T> q100;
+    private final PoolArenaShard<T>[] shards;
 
     private final List<PoolChunkListMetric> chunkListMetrics;
 
-    // Metrics for allocations and deallocations
-    private long allocationsNormal;
+    // Metrics for allocations and deallocations. Normal allocations and tiny / small / normal deallocations are
+    // tracked by the PoolArenaShards as these are guarded via synchronized (shard).
     // We need to use the LongCounter here as this is not guarded via synchronized block.
     private final LongCounter allocationsTiny = PlatformDependent.newLongCounter();
     private final LongCounter allocationsSmall = PlatformDependent.newLongCounter();
     private final LongCounter allocationsHuge = PlatformDependent.newLongCounter();
     private final LongCounter activeBytesHuge = PlatformDependent.newLongCounter();
 
-    private long deallocationsTiny;
-    private long deallocationsSmall;
-    private long deallocationsNormal;
-
     // We need to use the LongCounter here as this is not guarded via synchronized block.
     private final LongCounter deallocationsHuge = PlatformDependent.newLongCounter();
 
+    // The requested and the normalized capacity of all buffers that are currently allocated out of this arena, the
+    // difference between the two is the memory that is lost to internal fragmentation. These need to be updated for
+    // every buffer, so they are only updated if sizeClassMetrics is enabled.
+    private final LongCounter activeRequestedBytes = PlatformDependent.newLongCounter();
+    private final LongCounter activeNormalizedBytes = PlatformDependent.newLongCounter();
+
+    // Allocations and deallocations per size class, see sizeClassIdx(int). Unlike the counters above these also count
+    // the buffers that are served out of, or returned to, a PoolThreadCache, so they are only updated if
+    // sizeClassMetrics is enabled.
+    private final LongCounter[] sizeClassAllocations;
+    private final LongCounter[] sizeClassDeallocations;
+
+    // Updated by the PoolThreadCaches every time they are trimmed or freed.
+    private final LongCounter threadCacheHits = PlatformDependent.newLongCounter();
+    private final LongCounter threadCacheMisses = PlatformDependent.newLongCounter();
+
+    // Used to assign PoolArenaShards to thread caches in a round-robin fashion.
+    private final AtomicInteger shardIndex = new AtomicInteger();
+
     // Number of thread caches backed by this arena.
     final AtomicInteger numThreadCaches = new AtomicInteger();
 
@@ -83,7 +104,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
     protected PoolArena(PooledByteBufAllocator parent, int pageSize,
-          int maxOrder, int pageShifts, int chunkSize, int cacheAlignment) {
+          int maxOrder, int pageShifts, int chunkSize, int cacheAlignment, int numShards,
+          int sizeClassesPerDoubling, boolean sizeClassMetrics) {
+        if (sizeClassesPerDoubling < 1 || sizeClassesPerDoubling > 8
+                || (sizeClassesPerDoubling & sizeClassesPerDoubling - 1) != 0) {
+            throw new IllegalArgumentException("sizeClassesPerDoubling: " + sizeClassesPerDoubling
+                    + " (expected: 1, 2, 4 or 8)");
+        }
         this.parent = parent;
         this.pageSize = pageSize;
         this.maxOrder = maxOrder;
@@ -91,39 +118,43 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         this.chunkSize = chunkSize;
         directMemoryCacheAlignment = cacheAlignment;
         directMemoryCacheAlignmentMask = cacheAlignment - 1;
-        subpageOverflowMask = ~(pageSize - 1);
+        sizeClassShift = log2(sizeClassesPerDoubling);
+        this.sizeClassMetrics = sizeClassMetrics;
         tinySubpagePools = newSubpagePoolArray(numTinySubpagePools);
         for (int i = 0; i < tinySubpagePools.length; i ++) {
             tinySubpagePools[i] = newSubpagePoolHead(pageSize);
         }
 
-        numSmallSubpagePools = pageShifts - 9;
+        // The small size classes are all the size classes in [512, 2 * pageSize) except pageSize itself, which is
+        // allocated as a run of one page.
+        numSmallSubpagePools = ((pageShifts - 8) << sizeClassShift) - 1;
         smallSubpagePools = newSubpagePoolArray(numSmallSubpagePools);
+        smallSubpageRunPages = new int[numSmallSubpagePools];
+        int maxSmallCapacity = 0;
         for (int i = 0; i < smallSubpagePools.length; i ++) {
             smallSubpagePools[i] = newSubpagePoolHead(pageSize);
+            int elemSize = smallCapacity(i);
+            smallSubpageRunPages[i] = computeSubpageRunPages(elemSize);
+            if (elemSize < chunkSize) {
+                maxSmallCapacity = elemSize;
+            }
         }
+        this.maxSmallCapacity = maxSmallCapacity;
 
-        q100 = new PoolChunkList<T>(this, null, 100, Integer.MAX_VALUE, chunkSize);
-        q075 = new PoolChunkList<T>(this, q100, 75, 100, chunkSize);
-        q050 = new PoolChunkList<T>(this, q075, 50, 100, chunkSize);
-        q025 = new PoolChunkList<T>(this, q050, 25, 75, chunkSize);
-        q000 = new PoolChunkList<T>(this, q025, 1, 50, chunkSize);
-        qInit = new PoolChunkList<T>(this, q000, Integer.MIN_VALUE, 25, chunkSize);
-
-        q100.prevList(q075);
-        q075.prevList(q050);
-        q050.prevList(q025);
-        q025.prevList(q000);
-        q000.prevList(null);
-        qInit.prevList(qInit);
-
-        List<PoolChunkListMetric> metrics = new ArrayList<PoolChunkListMetric>(6);
-        metrics.add(qInit);
-        metrics.add(q000);
-        metrics.add(q025);
-        metrics.add(q050);
-        metrics.add(q075);
-        metrics.add(q100);
+        int numSizeClasses = numTinySubpagePools + numSmallSubpagePools + numNormalSizeClasses(chunkSize);
+        sizeClassAllocations = newLongCounterArray(numSizeClasses);
+        sizeClassDeallocations = newLongCounterArray(numSizeClasses);
+
+        if (numShards < 1) {
+            throw new IllegalArgumentException("numShards: " + numShards + " (expected: > 0)");
+        }
+        shards = newShardArray(numShards);
+        List<PoolChunkListMetric> metrics = new ArrayList<PoolChunkListMetric>(6 * numShards);
+        for (int i = 0; i < shards.length; i ++) {
+            PoolArenaShard<T> shard = new PoolArenaShard<T>(this, chunkSize);
+            shards[i] = shard;
+            metrics.addAll(shard.chunkListMetrics);
+        }
         chunkListMetrics = Collections.unmodifiableList(metrics);
     }
 
@@ -139,6 +170,37 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return new PoolSubpage[size];
     }
 
+    private static LongCounter[] newLongCounterArray(int size) {
+        LongCounter[] counters = new LongCounter[size];
+        for (int i = 0; i < counters.length; i ++) {
+            counters[i] = PlatformDependent.newLongCounter();
+        }
+        return counters;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> PoolArenaShard<T>[] newShardArray(int size) {
+        return new PoolArenaShard[size];
+    }
+
+    /**
+     * Returns the index of the {@link PoolArenaShard} that should be used by a newly created {@link PoolThreadCache}.
+     */
+    int nextShardIndex() {
+        if (shards.length == 1) {
+            return 0;
+        }
+        return (shardIndex.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+    }
+
+    int numShards() {
+        return shards.length;
+    }
+
+    private PoolArenaShard<T> shard(PoolThreadCache cache) {
+        return shards[cache.shardIndex(this)];
+    }
+
     abstract boolean isDirect();
 
     PooledByteBuf<T> allocate(PoolThreadCache cache, int reqCapacity, int maxCapacity) {
@@ -151,19 +213,82 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return normCapacity >>> 4;
     }
 
-    static int smallIdx(int normCapacity) {
-        int tableIdx = 0;
-        int i = normCapacity >>> 10;
-        while (i != 0) {
-            i >>>= 1;
-            tableIdx ++;
+    // normCapacity >= 512
+    int smallIdx(int normCapacity) {
+        if (normCapacity == 512) {
+            return 0;
         }
-        return tableIdx;
+        int k = log2(normCapacity - 1);
+        int idx = ((k - 9) << sizeClassShift) + (normCapacity - (1 << k) >>> k - sizeClassShift);
+        // pageSize is not a small size class, so all classes above it are shifted down by one.
+        return normCapacity < pageSize ? idx : idx - 1;
     }
 
-    // capacity < pageSize
+    private int smallCapacity(int smallIdx) {
+        if (smallIdx == 0) {
+            return 512;
+        }
+        int idx = smallIdx < (pageShifts - 9) << sizeClassShift ? smallIdx - 1 : smallIdx;
+        int k = 9 + (idx >>> sizeClassShift);
+        return (1 << k) + ((idx & (1 << sizeClassShift) - 1) + 1 << k - sizeClassShift);
+    }
+
+    // normCapacity >= pageSize and a multiple of pageSize
+    int normalIdx(int normCapacity) {
+        int pages = normCapacity >>> pageShifts;
+        if (pages <= 2 << sizeClassShift) {
+            return pages - 1;
+        }
+        int k = log2(pages - 1);
+        return (k - sizeClassShift + 1 << sizeClassShift) - 1 + (pages - (1 << k) >>> k - sizeClassShift);
+    }
+
+    int normalCapacity(int normalIdx) {
+        if (normalIdx < 2 << sizeClassShift) {
+            return normalIdx + 1 << pageShifts;
+        }
+        int idx = normalIdx - (2 << sizeClassShift);
+        int k = sizeClassShift + 1 + (idx >>> sizeClassShift);
+        int pages = (1 << k) + ((idx & (1 << sizeClassShift) - 1) + 1 << k - sizeClassShift);
+        return pages << pageShifts;
+    }
+
+    /**
+     * Returns the number of normal size classes that are not bigger then {@code maxCapacity}.
+     */
+    int numNormalSizeClasses(int maxCapacity) {
+        int pages = maxCapacity >>> pageShifts;
+        if (pages == 0) {
+            return 0;
+        }
+        int normPages = sizeClassCeil(pages, sizeClassShift);
+        int idx = normalIdx(normPages << pageShifts);
+        return normPages == pages ? idx + 1 : idx;
+    }
+
+    /**
+     * Returns the number of pages of the run that is used for the subpages of the given size. The run is made big
+     * enough so that at most 1/8 of it is wasted if possible.
+     */
+    private int computeSubpageRunPages(int elemSize) {
+        int minPages = (elemSize + pageSize - 1) >>> pageShifts;
+        int maxPages = Math.min(MAX_SUBPAGE_RUN_PAGES, 1 << maxOrder);
+        for (int pages = minPages; pages <= maxPages; pages ++) {
+            int runSize = pages << pageShifts;
+            if ((runSize % elemSize) << 3 <= runSize) {
+                return pages;
+            }
+        }
+        return minPages;
+    }
+
+    int subpageRunPages(int elemSize) {
+        return isTiny(elemSize) ? 1 : smallSubpageRunPages[smallIdx(elemSize)];
+    }
+
+    // capacity < pageSize or a small size class that is allocated out of a run of more then one page.
     boolean isTinyOrSmall(int normCapacity) {
-        return (normCapacity & subpageOverflowMask) == 0;
+        return normCapacity <= maxSmallCapacity && normCapacity != pageSize;
     }
 
     // normCapacity < 512
@@ -171,8 +296,30 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return (normCapacity & 0xFFFFFE00) == 0;
     }
 
+    // normCapacity <= chunkSize. The tiny size classes come first, followed by the small and the normal ones.
+    private int sizeClassIdx(int normCapacity) {
+        if (isTinyOrSmall(normCapacity)) {
+            return isTiny(normCapacity) ? tinyIdx(normCapacity) : numTinySubpagePools + smallIdx(normCapacity);
+        }
+        return numTinySubpagePools + numSmallSubpagePools + normalIdx(normCapacity);
+    }
+
+    private int sizeClassIdxCapacity(int sizeClassIdx) {
+        if (sizeClassIdx < numTinySubpagePools) {
+            return sizeClassIdx << 4;
+        }
+        sizeClassIdx -= numTinySubpagePools;
+        if (sizeClassIdx < numSmallSubpagePools) {
+            return smallCapacity(sizeClassIdx);
+        }
+        return normalCapacity(sizeClassIdx - numSmallSubpagePools);
+    }
+
     private void allocate(PoolThreadCache cache, PooledByteBuf<T> buf, final int reqCapacity) {
         final int normCapacity = normalizeCapacity(reqCapacity);
+        if (sizeClassMetrics && normCapacity <= chunkSize) {
+            sizeClassAllocations[sizeClassIdx(normCapacity)].increment();
+        }
         if (isTinyOrSmall(normCapacity)) { // capacity < pageSize
             int tableIdx;
             PoolSubpage<T>[] table;
@@ -210,8 +357,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                     return;
                 }
             }
-            synchronized (this) {
-                allocateNormal(buf, reqCapacity, normCapacity);
+            final PoolArenaShard<T> shard = shard(cache);
+            synchronized (shard) {
+                shard.allocateNormal(buf, reqCapacity, normCapacity);
             }
 
             incTinySmallAllocation(tiny);
@@ -222,9 +370,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                 // was able to allocate out of the cache so move on
                 return;
             }
-            synchronized (this) {
-                allocateNormal(buf, reqCapacity, normCapacity);
-                ++allocationsNormal;
+            final PoolArenaShard<T> shard = shard(cache);
+            synchronized (shard) {
+                shard.allocateNormal(buf, reqCapacity, normCapacity);
+                shard.allocationsNormal.increment();
             }
         } else {
             // Huge allocations are never served via the cache so just call allocateHuge
@@ -232,19 +381,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
-    // Method must be called inside synchronized(this) { ... } block
-    private void allocateNormal(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
-        if (q050.allocate(buf, reqCapacity, normCapacity) || q025.allocate(buf, reqCapacity, normCapacity) ||
-            q000.allocate(buf, reqCapacity, normCapacity) || qInit.allocate(buf, reqCapacity, normCapacity) ||
-            q075.allocate(buf, reqCapacity, normCapacity)) {
-            return;
-        }
-
-        // Add a new chunk.
-        PoolChunk<T> c = newChunk(pageSize, maxOrder, pageShifts, chunkSize);
-        boolean success = c.allocate(buf, reqCapacity, normCapacity);
-        assert success;
-        qInit.add(c);
+    void incThreadCacheHitsAndMisses(int hits, int misses) {
+        threadCacheHits.add(hits);
+        threadCacheMisses.add(misses);
     }
 
     private void incTinySmallAllocation(boolean tiny) {
@@ -255,6 +394,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
+    void incActiveBytes(int requested, int normalized) {
+        if (sizeClassMetrics) {
+            activeRequestedBytes.add(requested);
+            activeNormalizedBytes.add(normalized);
+        }
+    }
+
     private void allocateHuge(PooledByteBuf<T> buf, int reqCapacity) {
         PoolChunk<T> chunk = newUnpooledChunk(reqCapacity);
         activeBytesHuge.add(chunk.chunkSize());
@@ -269,6 +415,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
             activeBytesHuge.add(-size);
             deallocationsHuge.increment();
         } else {
+            if (sizeClassMetrics) {
+                sizeClassDeallocations[sizeClassIdx(normCapacity)].increment();
+            }
             SizeClass sizeClass = sizeClass(normCapacity);
             if (cache != null && cache.add(this, chunk, nioBuffer, handle, normCapacity, sizeClass)) {
                 // cached so not free it.
@@ -287,46 +436,36 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     void freeChunk(PoolChunk<T> chunk, long handle, SizeClass sizeClass, ByteBuffer nioBuffer) {
-        final boolean destroyChunk;
-        synchronized (this) {
-            switch (sizeClass) {
-            case Normal:
-                ++deallocationsNormal;
-                break;
-            case Small:
-                ++deallocationsSmall;
-                break;
-            case Tiny:
-                ++deallocationsTiny;
-                break;
-            default:
-                throw new Error();
-            }
-            destroyChunk = !chunk.parent.free(chunk, handle, nioBuffer);
+        if (!chunk.shard.free(chunk, handle, sizeClass, nioBuffer)) {
+            // destroyChunk not need to be called while holding the synchronized lock.
+            destroyChunk(chunk);
+        }
+    }
+
+    /**
+     * Destroys all {@link PoolChunk}s that were completely unused for at least {@code idleNanos} and returns the
+     * number of bytes that were released.
+     */
+    long reclaim(long idleNanos) {
+        long nowNanos = System.nanoTime();
+        List<PoolChunk<T>> reclaimed = new ArrayList<PoolChunk<T>>();
+        for (PoolArenaShard<T> shard: shards) {
+            shard.reclaim(nowNanos, idleNanos, reclaimed);
         }
-        if (destroyChunk) {
+        long bytes = 0;
+        for (PoolChunk<T> chunk: reclaimed) {
+            bytes += chunk.chunkSize();
             // destroyChunk not need to be called while holding the synchronized lock.
             destroyChunk(chunk);
         }
+        return bytes;
     }
 
     PoolSubpage<T> findSubpagePoolHead(int elemSize) {
-        int tableIdx;
-        PoolSubpage<T>[] table;
         if (isTiny(elemSize)) { // < 512
-            tableIdx = elemSize >>> 4;
-            table = tinySubpagePools;
-        } else {
-            tableIdx = 0;
-            elemSize >>>= 10;
-            while (elemSize != 0) {
-                elemSize >>>= 1;
-                tableIdx ++;
-            }
-            table = smallSubpagePools;
+            return tinySubpagePools[tinyIdx(elemSize)];
         }
-
-        return table[tableIdx];
+        return smallSubpagePools[smallIdx(elemSize)];
     }
 
     int normalizeCapacity(int reqCapacity) {
@@ -339,22 +478,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         if (!isTiny(reqCapacity)) { // >= 512
-            // Doubled
-
-            int normalizedCapacity = reqCapacity;
-            normalizedCapacity --;
-            normalizedCapacity |= normalizedCapacity >>>  1;
-            normalizedCapacity |= normalizedCapacity >>>  2;
-            normalizedCapacity |= normalizedCapacity >>>  4;
-            normalizedCapacity |= normalizedCapacity >>>  8;
-            normalizedCapacity |= normalizedCapacity >>> 16;
-            normalizedCapacity ++;
-
-            if (normalizedCapacity < 0) {
-                normalizedCapacity >>>= 1;
+            // Size classes
+            int normalizedCapacity = sizeClassCapacity(reqCapacity);
+            if (directMemoryCacheAlignment > 0) {
+                while ((normalizedCapacity & directMemoryCacheAlignmentMask) != 0) {
+                    normalizedCapacity = sizeClassCapacity(normalizedCapacity + 1);
+                }
             }
-            assert directMemoryCacheAlignment == 0 || (normalizedCapacity & directMemoryCacheAlignmentMask) == 0;
-
             return normalizedCapacity;
         }
 
@@ -370,6 +500,32 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         return (reqCapacity & ~15) + 16;
     }
 
+    /**
+     * Rounds up the capacity to the next size class. Each doubling of the capacity is split into
+     * {@code 1 << sizeClassShift} equally spaced size classes, the last one being the power of two. Capacities above
+     * {@code 2 * pageSize} are allocated as runs of pages and so the size classes are applied to the number of pages.
+     */
+    private int sizeClassCapacity(int reqCapacity) {
+        if (reqCapacity > pageSize << 1) {
+            int pages = (reqCapacity + pageSize - 1) >>> pageShifts;
+            return sizeClassCeil(pages, sizeClassShift) << pageShifts;
+        }
+        return sizeClassCeil(reqCapacity, sizeClassShift);
+    }
+
+    private static int sizeClassCeil(int val, int sizeClassShift) {
+        int k = log2(val - 1);
+        if (k <= sizeClassShift) {
+            return val;
+        }
+        int step = 1 << k - sizeClassShift;
+        return val + step - 1 & -step;
+    }
+
+    private static int log2(int val) {
+        return Integer.SIZE - 1 - Integer.numberOfLeadingZeros(val);
+    }
+
     int alignCapacity(int reqCapacity) {
         int delta = reqCapacity & directMemoryCacheAlignmentMask;
         return delta == 0 ? reqCapacity : reqCapacity + directMemoryCacheAlignment - delta;
@@ -413,6 +569,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         buf.setIndex(readerIndex, writerIndex);
+        incActiveBytes(-oldCapacity, -oldMaxLength);
 
         if (freeOldMemory) {
             free(oldChunk, oldNioBuffer, oldHandle, oldMaxLength, buf.cache);
@@ -474,11 +631,7 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public long numAllocations() {
-        final long allocsNormal;
-        synchronized (this) {
-            allocsNormal = allocationsNormal;
-        }
-        return allocationsTiny.value() + allocationsSmall.value() + allocsNormal + allocationsHuge.value();
+        return allocationsTiny.value() + allocationsSmall.value() + numNormalAllocations() + allocationsHuge.value();
     }
 
     @Override
@@ -492,32 +645,45 @@ abstract class PoolArena<T> implements PoolArenaMetric {
     }
 
     @Override
-    public synchronized long numNormalAllocations() {
-        return allocationsNormal;
+    public long numNormalAllocations() {
+        long val = 0;
+        for (PoolArenaShard<T> shard: shards) {
+            val += shard.allocationsNormal.value();
+        }
+        return val;
     }
 
     @Override
     public long numDeallocations() {
-        final long deallocs;
-        synchronized (this) {
-            deallocs = deallocationsTiny + deallocationsSmall + deallocationsNormal;
-        }
-        return deallocs + deallocationsHuge.value();
+        return numTinyDeallocations() + numSmallDeallocations() + numNormalDeallocations()
+                + deallocationsHuge.value();
     }
 
     @Override
-    public synchronized long numTinyDeallocations() {
-        return deallocationsTiny;
+    public long numTinyDeallocations() {
+        long val = 0;
+        for (PoolArenaShard<T> shard: shards) {
+            val += shard.deallocationsTiny.value();
+        }
+        return val;
     }
 
     @Override
-    public synchronized long numSmallDeallocations() {
-        return deallocationsSmall;
+    public long numSmallDeallocations() {
+        long val = 0;
+        for (PoolArenaShard<T> shard: shards) {
+            val += shard.deallocationsSmall.value();
+        }
+        return val;
     }
 
     @Override
-    public synchronized long numNormalDeallocations() {
-        return deallocationsNormal;
+    public long numNormalDeallocations() {
+        long val = 0;
+        for (PoolArenaShard<T> shard: shards) {
+            val += shard.deallocationsNormal.value();
+        }
+        return val;
     }
 
     @Override
@@ -532,85 +698,126 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     @Override
     public  long numActiveAllocations() {
-        long val = allocationsTiny.value() + allocationsSmall.value() + allocationsHuge.value()
-                - deallocationsHuge.value();
-        synchronized (this) {
-            val += allocationsNormal - (deallocationsTiny + deallocationsSmall + deallocationsNormal);
-        }
-        return max(val, 0);
+        // Read the deallocations first, so we never see more deallocations then allocations.
+        long deallocs = numDeallocations();
+        return max(numAllocations() - deallocs, 0);
     }
 
     @Override
     public long numActiveTinyAllocations() {
-        return max(numTinyAllocations() - numTinyDeallocations(), 0);
+        long deallocs = numTinyDeallocations();
+        return max(numTinyAllocations() - deallocs, 0);
     }
 
     @Override
     public long numActiveSmallAllocations() {
-        return max(numSmallAllocations() - numSmallDeallocations(), 0);
+        long deallocs = numSmallDeallocations();
+        return max(numSmallAllocations() - deallocs, 0);
     }
 
     @Override
     public long numActiveNormalAllocations() {
-        final long val;
-        synchronized (this) {
-            val = allocationsNormal - deallocationsNormal;
-        }
-        return max(val, 0);
+        long deallocs = numNormalDeallocations();
+        return max(numNormalAllocations() - deallocs, 0);
     }
 
     @Override
     public long numActiveHugeAllocations() {
-        return max(numHugeAllocations() - numHugeDeallocations(), 0);
+        long deallocs = numHugeDeallocations();
+        return max(numHugeAllocations() - deallocs, 0);
+    }
+
+    @Override
+    public long numThreadCacheHits() {
+        return threadCacheHits.value();
+    }
+
+    @Override
+    public long numThreadCacheMisses() {
+        return threadCacheMisses.value();
     }
 
     @Override
     public long numActiveBytes() {
-        long val = activeBytesHuge.value();
-        synchronized (this) {
-            for (int i = 0; i < chunkListMetrics.size(); i++) {
-                for (PoolChunkMetric m: chunkListMetrics.get(i)) {
-                    val += m.chunkSize();
-                }
-            }
+        long chunks = 0;
+        for (long n: chunkUsageHistogram()) {
+            chunks += n;
         }
-        return max(0, val);
+        return max(0, activeBytesHuge.value() + chunks * chunkSize);
+    }
+
+    long numActiveHugeBytes() {
+        return activeBytesHuge.value();
     }
 
-    protected abstract PoolChunk<T> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize);
+    /**
+     * Returns the number of pooled {@link PoolChunk}s of this arena per {@link ChunkUsageHistogram} bucket.
+     */
+    long[] chunkUsageHistogram() {
+        long[] histogram = new long[ChunkUsageHistogram.NUM_BUCKETS];
+        for (PoolArenaShard<T> shard: shards) {
+            shard.chunkUsage.addTo(histogram);
+        }
+        return histogram;
+    }
+
+    @Override
+    public long numActiveRequestedBytes() {
+        return max(0, activeRequestedBytes.value());
+    }
+
+    @Override
+    public long numActiveNormalizedBytes() {
+        return max(0, activeNormalizedBytes.value());
+    }
+
+    @Override
+    public int sizeClassesPerDoubling() {
+        return 1 << sizeClassShift;
+    }
+
+    /**
+     * Returns a {@link PoolArenaMetricSnapshot} of this arena, which is created without taking any of its locks.
+     */
+    PoolArenaMetricSnapshot snapshot() {
+        int numSizeClasses = sizeClassAllocations.length;
+        int[] capacities = new int[numSizeClasses];
+        long[] allocations = new long[numSizeClasses];
+        long[] deallocations = new long[numSizeClasses];
+        for (int i = 0; i < numSizeClasses; i++) {
+            capacities[i] = sizeClassIdxCapacity(i);
+            // Read the deallocations first, so we never see more deallocations then allocations.
+            deallocations[i] = sizeClassDeallocations[i].value();
+            allocations[i] = sizeClassAllocations[i].value();
+        }
+        return new PoolArenaMetricSnapshot(this, capacities, allocations, deallocations, chunkUsageHistogram());
+    }
+
+    protected abstract PoolChunk<T> newChunk(PoolArenaShard<T> shard, int pageSize, int maxOrder,
+                                             int pageShifts, int chunkSize);
     protected abstract PoolChunk<T> newUnpooledChunk(int capacity);
     protected abstract PooledByteBuf<T> newByteBuf(int maxCapacity);
     protected abstract void memoryCopy(T src, int srcOffset, T dst, int dstOffset, int length);
     protected abstract void destroyChunk(PoolChunk<T> chunk);
 
     @Override
-    public synchronized String toString() {
-        StringBuilder buf = new StringBuilder()
-            .append("Chunk(s) at 0~25%:")
-            .append(StringUtil.NEWLINE)
-            .append(qInit)
-            .append(StringUtil.NEWLINE)
-            .append("Chunk(s) at 0~50%:")
-            .append(StringUtil.NEWLINE)
-            .append(q000)
-            .append(StringUtil.NEWLINE)
-            .append("Chunk(s) at 25~75%:")
-            .append(StringUtil.NEWLINE)
-            .append(q025)
-            .append(StringUtil.NEWLINE)
-            .append("Chunk(s) at 50~100%:")
-            .append(StringUtil.NEWLINE)
-            .append(q050)
-            .append(StringUtil.NEWLINE)
-            .append("Chunk(s) at 75~100%:")
-            .append(StringUtil.NEWLINE)
-            .append(q075)
-            .append(StringUtil.NEWLINE)
-            .append("Chunk(s) at 100%:")
-            .append(StringUtil.NEWLINE)
-            .append(q100)
-            .append(StringUtil.NEWLINE)
-            .append("tiny subpages:");
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < shards.length; i ++) {
+            if (shards.length > 1) {
+                buf.append("Shard ")
+                   .append(i)
+                   .append(':')
+                   .append(StringUtil.NEWLINE);
+            }
+            buf.append(shards[i]);
+        }
+        buf.append("active requested bytes: ")
+           .append(numActiveRequestedBytes())
+           .append(", active normalized bytes: ")
+           .append(numActiveNormalizedBytes())
+           .append(StringUtil.NEWLINE)
+           .append("tiny subpages:");
         appendPoolSubPages(buf, tinySubpagePools);
         buf.append(StringUtil.NEWLINE)
            .append("small subpages:");
@@ -648,7 +855,9 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         } finally {
             destroyPoolSubPages(smallSubpagePools);
             destroyPoolSubPages(tinySubpagePools);
-            destroyPoolChunkLists(qInit, q000, q025, q050, q075, q100);
+            for (PoolArenaShard<T> shard: shards) {
+                shard.destroy();
+            }
         }
     }
 
@@ -658,18 +867,20 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
     }
 
-    private void destroyPoolChunkLists(PoolChunkList<T>... chunkLists) {
-        for (PoolChunkList<T> chunkList: chunkLists) {
-            chunkList.destroy(this);
-        }
-    }
-
     static final class HeapArena extends PoolArena<byte[]> {
 
         HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
-                int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, int numShards) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, numShards,
+                    PooledByteBufAllocator.defaultSizeClassesPerDoubling(),
+                    PooledByteBufAllocator.defaultSizeClassMetrics());
+        }
+
+        HeapArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, int numShards,
+                int sizeClassesPerDoubling, boolean sizeClassMetrics) {
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, numShards, sizeClassesPerDoubling, sizeClassMetrics);
         }
 
         private static byte[] newByteArray(int size) {
@@ -682,8 +893,10 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         @Override
-        protected PoolChunk<byte[]> newChunk(int pageSize, int maxOrder, int pageShifts, int chunkSize) {
-            return new PoolChunk<byte[]>(this, newByteArray(chunkSize), pageSize, maxOrder, pageShifts, chunkSize, 0);
+        protected PoolChunk<byte[]> newChunk(PoolArenaShard<byte[]> shard, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize) {
+            return new PoolChunk<byte[]>(
+                    shard, newByteArray(chunkSize), pageSize, maxOrder, pageShifts, chunkSize, 0);
         }
 
         @Override
@@ -714,10 +927,21 @@ abstract class PoolArena<T> implements PoolArenaMetric {
 
     static final class DirectArena extends PoolArena<ByteBuffer> {
 
+        private final DirectChunkSource chunkSource;
+
+        DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, int numShards) {
+            this(parent, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, numShards,
+                    DirectChunkSource.DEFAULT, PooledByteBufAllocator.defaultSizeClassesPerDoubling(),
+                    PooledByteBufAllocator.defaultSizeClassMetrics());
+        }
+
         DirectArena(PooledByteBufAllocator parent, int pageSize, int maxOrder,
-                int pageShifts, int chunkSize, int directMemoryCacheAlignment) {
+                int pageShifts, int chunkSize, int directMemoryCacheAlignment, int numShards,
+                DirectChunkSource chunkSource, int sizeClassesPerDoubling, boolean sizeClassMetrics) {
             super(parent, pageSize, maxOrder, pageShifts, chunkSize,
-                    directMemoryCacheAlignment);
+                    directMemoryCacheAlignment, numShards, sizeClassesPerDoubling, sizeClassMetrics);
+            this.chunkSource = chunkSource;
         }
 
         @Override
@@ -738,16 +962,16 @@ abstract class PoolArena<T> implements PoolArenaMetric {
         }
 
         @Override
-        protected PoolChunk<ByteBuffer> newChunk(int pageSize, int maxOrder,
+        protected PoolChunk<ByteBuffer> newChunk(PoolArenaShard<ByteBuffer> shard, int pageSize, int maxOrder,
                 int pageShifts, int chunkSize) {
             if (directMemoryCacheAlignment == 0) {
-                return new PoolChunk<ByteBuffer>(this,
+                return new PoolChunk<ByteBuffer>(shard,
                         allocateDirect(chunkSize), pageSize, maxOrder,
                         pageShifts, chunkSize, 0);
             }
             final ByteBuffer memory = allocateDirect(chunkSize
                     + directMemoryCacheAlignment);
-            return new PoolChunk<ByteBuffer>(this, memory, pageSize,
+            return new PoolChunk<ByteBuffer>(shard, memory, pageSize,
                     maxOrder, pageShifts, chunkSize,
                     offsetCacheLine(memory));
         }
@@ -764,18 +988,13 @@ abstract class PoolArena<T> implements PoolArenaMetric {
                     offsetCacheLine(memory));
         }
 
-        private static ByteBuffer allocateDirect(int capacity) {
-            return PlatformDependent.useDirectBufferNoCleaner() ?
-                    PlatformDependent.allocateDirectNoCleaner(capacity) : ByteBuffer.allocateDirect(capacity);
+        private ByteBuffer allocateDirect(int capacity) {
+            return chunkSource.allocate(capacity);
         }
 
         @Override
         protected void destroyChunk(PoolChunk<ByteBuffer> chunk) {
-            if (PlatformDependent.useDirectBufferNoCleaner()) {
-                PlatformDependent.freeDirectNoCleaner(chunk.memory);
-            } else {
-                PlatformDependent.freeDirectBuffer(chunk.memory);
-            }
+            chunkSource.free(chunk.memory);
         }
 
         @Override
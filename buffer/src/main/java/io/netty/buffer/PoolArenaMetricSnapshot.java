@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.StringUtil;
+
+import static java.lang.Math.max;
+
+/**
+ * An immutable snapshot of the metrics of an arena, see {@link PooledByteBufAllocatorMetric#snapshot()}.
+ *
+ * A snapshot is created without taking any of the locks of the arena, so it is cheap enough to be taken at a high
+ * frequency. Every counter is read exactly once, so all the values of a snapshot are consistent with each other
+ * (for example the number of active allocations is always the difference of the allocations and deallocations).
+ */
+public final class PoolArenaMetricSnapshot {
+
+    private final int numThreadCaches;
+    private final long numTinyAllocations;
+    private final long numSmallAllocations;
+    private final long numNormalAllocations;
+    private final long numHugeAllocations;
+    private final long numTinyDeallocations;
+    private final long numSmallDeallocations;
+    private final long numNormalDeallocations;
+    private final long numHugeDeallocations;
+    private final long numThreadCacheHits;
+    private final long numThreadCacheMisses;
+    private final long numActiveBytes;
+    private final long numActiveRequestedBytes;
+    private final long numActiveNormalizedBytes;
+    private final int[] sizeClassCapacities;
+    private final long[] sizeClassAllocations;
+    private final long[] sizeClassDeallocations;
+    private final long[] chunkUsageHistogram;
+
+    PoolArenaMetricSnapshot(PoolArena<?> arena, int[] sizeClassCapacities, long[] sizeClassAllocations,
+                            long[] sizeClassDeallocations, long[] chunkUsageHistogram) {
+        numThreadCaches = arena.numThreadCaches();
+        // Read the deallocations first, so we never see more deallocations then allocations.
+        numTinyDeallocations = arena.numTinyDeallocations();
+        numSmallDeallocations = arena.numSmallDeallocations();
+        numNormalDeallocations = arena.numNormalDeallocations();
+        numHugeDeallocations = arena.numHugeDeallocations();
+        numTinyAllocations = arena.numTinyAllocations();
+        numSmallAllocations = arena.numSmallAllocations();
+        numNormalAllocations = arena.numNormalAllocations();
+        numHugeAllocations = arena.numHugeAllocations();
+        numThreadCacheHits = arena.numThreadCacheHits();
+        numThreadCacheMisses = arena.numThreadCacheMisses();
+        numActiveRequestedBytes = arena.numActiveRequestedBytes();
+        numActiveNormalizedBytes = arena.numActiveNormalizedBytes();
+        this.sizeClassCapacities = sizeClassCapacities;
+        this.sizeClassAllocations = sizeClassAllocations;
+        this.sizeClassDeallocations = sizeClassDeallocations;
+        this.chunkUsageHistogram = chunkUsageHistogram;
+        long chunks = 0;
+        for (long n: chunkUsageHistogram) {
+            chunks += n;
+        }
+        numActiveBytes = arena.numActiveHugeBytes() + chunks * arena.chunkSize;
+    }
+
+    /**
+     * Returns the number of thread caches backed by the arena.
+     */
+    public int numThreadCaches() {
+        return numThreadCaches;
+    }
+
+    /**
+     * Return the number of allocations done via the arena. This includes all sizes.
+     */
+    public long numAllocations() {
+        return numTinyAllocations + numSmallAllocations + numNormalAllocations + numHugeAllocations;
+    }
+
+    /**
+     * Return the number of tiny allocations done via the arena.
+     */
+    public long numTinyAllocations() {
+        return numTinyAllocations;
+    }
+
+    /**
+     * Return the number of small allocations done via the arena.
+     */
+    public long numSmallAllocations() {
+        return numSmallAllocations;
+    }
+
+    /**
+     * Return the number of normal allocations done via the arena.
+     */
+    public long numNormalAllocations() {
+        return numNormalAllocations;
+    }
+
+    /**
+     * Return the number of huge allocations done via the arena.
+     */
+    public long numHugeAllocations() {
+        return numHugeAllocations;
+    }
+
+    /**
+     * Return the number of deallocations done via the arena. This includes all sizes.
+     */
+    public long numDeallocations() {
+        return numTinyDeallocations + numSmallDeallocations + numNormalDeallocations + numHugeDeallocations;
+    }
+
+    /**
+     * Return the number of tiny deallocations done via the arena.
+     */
+    public long numTinyDeallocations() {
+        return numTinyDeallocations;
+    }
+
+    /**
+     * Return the number of small deallocations done via the arena.
+     */
+    public long numSmallDeallocations() {
+        return numSmallDeallocations;
+    }
+
+    /**
+     * Return the number of normal deallocations done via the arena.
+     */
+    public long numNormalDeallocations() {
+        return numNormalDeallocations;
+    }
+
+    /**
+     * Return the number of huge deallocations done via the arena.
+     */
+    public long numHugeDeallocations() {
+        return numHugeDeallocations;
+    }
+
+    /**
+     * Return the number of currently active allocations.
+     */
+    public long numActiveAllocations() {
+        return numActiveTinyAllocations() + numActiveSmallAllocations() + numActiveNormalAllocations()
+                + numActiveHugeAllocations();
+    }
+
+    /**
+     * Return the number of currently active tiny allocations.
+     */
+    public long numActiveTinyAllocations() {
+        return max(numTinyAllocations - numTinyDeallocations, 0);
+    }
+
+    /**
+     * Return the number of currently active small allocations.
+     */
+    public long numActiveSmallAllocations() {
+        return max(numSmallAllocations - numSmallDeallocations, 0);
+    }
+
+    /**
+     * Return the number of currently active normal allocations.
+     */
+    public long numActiveNormalAllocations() {
+        return max(numNormalAllocations - numNormalDeallocations, 0);
+    }
+
+    /**
+     * Return the number of currently active huge allocations.
+     */
+    public long numActiveHugeAllocations() {
+        return max(numHugeAllocations - numHugeDeallocations, 0);
+    }
+
+    /**
+     * Return the number of allocations that were served out of a thread cache.
+     */
+    public long numThreadCacheHits() {
+        return numThreadCacheHits;
+    }
+
+    /**
+     * Return the number of allocations that could not be served out of a thread cache.
+     */
+    public long numThreadCacheMisses() {
+        return numThreadCacheMisses;
+    }
+
+    /**
+     * Return the number of active bytes that are currently allocated by the arena.
+     */
+    public long numActiveBytes() {
+        return numActiveBytes;
+    }
+
+    /**
+     * Return the sum of the requested capacities of all buffers that are currently allocated out of the arena.
+     */
+    public long numActiveRequestedBytes() {
+        return numActiveRequestedBytes;
+    }
+
+    /**
+     * Return the sum of the normalized capacities of all buffers that are currently allocated out of the arena.
+     */
+    public long numActiveNormalizedBytes() {
+        return numActiveNormalizedBytes;
+    }
+
+    /**
+     * Return the number of size classes of the arena. The tiny size classes come first, followed by the small and
+     * the normal ones. Huge allocations do not belong to any size class.
+     */
+    public int numSizeClasses() {
+        return sizeClassCapacities.length;
+    }
+
+    /**
+     * Return the capacity of the buffers of the given size class.
+     */
+    public int sizeClassCapacity(int sizeClassIdx) {
+        return sizeClassCapacities[sizeClassIdx];
+    }
+
+    /**
+     * Return the number of allocations of the given size class. Unlike {@link #numTinyAllocations()} and friends this
+     * includes the allocations that were served out of a thread cache. This is always {@code 0} unless the size
+     * class metrics were enabled via {@code io.netty.allocator.sizeClassMetrics}.
+     */
+    public long numSizeClassAllocations(int sizeClassIdx) {
+        return sizeClassAllocations[sizeClassIdx];
+    }
+
+    /**
+     * Return the number of deallocations of the given size class. Unlike {@link #numTinyDeallocations()} and
+     * friends this includes the buffers that were added to a thread cache. This is always {@code 0} unless the size
+     * class metrics were enabled via {@code io.netty.allocator.sizeClassMetrics}.
+     */
+    public long numSizeClassDeallocations(int sizeClassIdx) {
+        return sizeClassDeallocations[sizeClassIdx];
+    }
+
+    /**
+     * Return the number of currently active allocations of the given size class.
+     */
+    public long numActiveSizeClassAllocations(int sizeClassIdx) {
+        return max(sizeClassAllocations[sizeClassIdx] - sizeClassDeallocations[sizeClassIdx], 0);
+    }
+
+    /**
+     * Return the number of buckets of the chunk usage histogram. Bucket {@code i} holds the chunks whose usage is
+     * at least {@code i * 100 / numChunkUsageBuckets()} percent and less then
+     * {@code (i + 1) * 100 / numChunkUsageBuckets()} percent, except that the last bucket also holds the completely
+     * used chunks.
+     */
+    public int numChunkUsageBuckets() {
+        return chunkUsageHistogram.length;
+    }
+
+    /**
+     * Return the number of chunks of the arena in the given bucket of the chunk usage histogram.
+     *
+     * @see #numChunkUsageBuckets()
+     */
+    public long numChunks(int usageBucket) {
+        return chunkUsageHistogram[usageBucket];
+    }
+
+    /**
+     * Return the number of chunks of the arena, not counting the ones of huge allocations.
+     */
+    public long numChunks() {
+        long chunks = 0;
+        for (long n: chunkUsageHistogram) {
+            chunks += n;
+        }
+        return chunks;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(StringUtil.simpleClassName(this))
+                .append("(numThreadCaches: ").append(numThreadCaches)
+                .append("; numAllocations: ").append(numAllocations())
+                .append("; numDeallocations: ").append(numDeallocations())
+                .append("; numActiveAllocations: ").append(numActiveAllocations())
+                .append("; numActiveBytes: ").append(numActiveBytes)
+                .append("; numThreadCacheHits: ").append(numThreadCacheHits)
+                .append("; numThreadCacheMisses: ").append(numThreadCacheMisses)
+                .append("; numChunks: ").append(numChunks())
+                .append(')');
+        return sb.toString();
+    }
+}
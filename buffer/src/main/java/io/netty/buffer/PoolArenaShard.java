@@ -0,0 +1,183 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.buffer.PoolArena.SizeClass;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A shard of a {@link PoolArena} which owns its own set of {@link PoolChunkList}s (and so {@link PoolChunk}s).
+ *
+ * All modifications of the {@link PoolChunk}s that belong to a shard are guarded by {@code synchronized (shard)}.
+ * The allocation / deallocation counters and the {@link ChunkUsageHistogram} of the shard are only updated while
+ * holding the lock too, but can be read without it. Using more then one shard per
+ * {@link PoolArena} allows threads that share the same arena to allocate normal sized buffers concurrently, as
+ * each thread is pinned to one shard. This comes at the cost of keeping at least one {@link PoolChunk} per used
+ * shard.
+ */
+final class PoolArenaShard<T> {
+
+    final PoolArena<T> arena;
+
+    private final PoolChunkList<T> q050;
+    private final PoolChunkList<T> q025;
+    private final PoolChunkList<T> q000;
+    private final PoolChunkList<T> qInit;
+    private final PoolChunkList<T> q075;
+    private final PoolChunkList<T> q100;
+
+    final List<PoolChunkListMetric> chunkListMetrics;
+
+    // Metrics for allocations and deallocations. These are only updated inside synchronized (this) but use a
+    // LongCounter so the metrics can be read without taking the lock.
+    final LongCounter allocationsNormal = PlatformDependent.newLongCounter();
+    final LongCounter deallocationsTiny = PlatformDependent.newLongCounter();
+    final LongCounter deallocationsSmall = PlatformDependent.newLongCounter();
+    final LongCounter deallocationsNormal = PlatformDependent.newLongCounter();
+
+    final ChunkUsageHistogram chunkUsage = new ChunkUsageHistogram();
+
+    PoolArenaShard(PoolArena<T> arena, int chunkSize) {
+        this.arena = arena;
+
+        q100 = new PoolChunkList<T>(this, null, 100, Integer.MAX_VALUE, chunkSize);
+        q075 = new PoolChunkList<T>(this, q100, 75, 100, chunkSize);
+        q050 = new PoolChunkList<T>(this, q075, 50, 100, chunkSize);
+        q025 = new PoolChunkList<T>(this, q050, 25, 75, chunkSize);
+        q000 = new PoolChunkList<T>(this, q025, 1, 50, chunkSize);
+        qInit = new PoolChunkList<T>(this, q000, Integer.MIN_VALUE, 25, chunkSize);
+
+        q100.prevList(q075);
+        q075.prevList(q050);
+        q050.prevList(q025);
+        q025.prevList(q000);
+        q000.prevList(null);
+        qInit.prevList(qInit);
+
+        List<PoolChunkListMetric> metrics = new ArrayList<PoolChunkListMetric>(6);
+        metrics.add(qInit);
+        metrics.add(q000);
+        metrics.add(q025);
+        metrics.add(q050);
+        metrics.add(q075);
+        metrics.add(q100);
+        chunkListMetrics = Collections.unmodifiableList(metrics);
+    }
+
+    // Method must be called inside synchronized(this) { ... } block
+    void allocateNormal(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
+        if (q050.allocate(buf, reqCapacity, normCapacity) || q025.allocate(buf, reqCapacity, normCapacity) ||
+            q000.allocate(buf, reqCapacity, normCapacity) || qInit.allocate(buf, reqCapacity, normCapacity) ||
+            q075.allocate(buf, reqCapacity, normCapacity)) {
+            return;
+        }
+
+        // Add a new chunk.
+        PoolChunk<T> c = arena.newChunk(this, arena.pageSize, arena.maxOrder, arena.pageShifts, arena.chunkSize);
+        chunkUsage.add(c.usageBucket());
+        boolean success = c.allocate(buf, reqCapacity, normCapacity);
+        assert success;
+        qInit.add(c);
+    }
+
+    /**
+     * Free the {@code handle} out of the given {@link PoolChunk} which must belong to this shard. Returns
+     * {@code false} if the {@link PoolChunk} became unused and so should be destroyed by the caller.
+     */
+    boolean free(PoolChunk<T> chunk, long handle, SizeClass sizeClass, ByteBuffer nioBuffer) {
+        assert chunk.shard == this;
+        synchronized (this) {
+            switch (sizeClass) {
+            case Normal:
+                deallocationsNormal.increment();
+                break;
+            case Small:
+                deallocationsSmall.increment();
+                break;
+            case Tiny:
+                deallocationsTiny.increment();
+                break;
+            default:
+                throw new Error();
+            }
+            if (chunk.parent.free(chunk, handle, nioBuffer)) {
+                return true;
+            }
+            chunkUsage.remove(chunk.usageBucket());
+            return false;
+        }
+    }
+
+    /**
+     * Removes all {@link PoolChunk}s that are unused since at least {@code idleNanos} and adds them to
+     * {@code reclaimed}, so the caller can destroy them outside of the lock.
+     */
+    synchronized void reclaim(long nowNanos, long idleNanos, List<PoolChunk<T>> reclaimed) {
+        // Completely unused chunks can only be contained in qInit as all the other lists will release them directly.
+        int start = reclaimed.size();
+        qInit.reclaim(nowNanos, idleNanos, reclaimed);
+        for (int i = start; i < reclaimed.size(); i++) {
+            chunkUsage.remove(reclaimed.get(i).usageBucket());
+        }
+    }
+
+    void destroy() {
+        destroyPoolChunkLists(qInit, q000, q025, q050, q075, q100);
+    }
+
+    private void destroyPoolChunkLists(PoolChunkList<T>... chunkLists) {
+        for (PoolChunkList<T> chunkList: chunkLists) {
+            chunkList.destroy(arena);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return new StringBuilder()
+            .append("Chunk(s) at 0~25%:")
+            .append(StringUtil.NEWLINE)
+            .append(qInit)
+            .append(StringUtil.NEWLINE)
+            .append("Chunk(s) at 0~50%:")
+            .append(StringUtil.NEWLINE)
+            .append(q000)
+            .append(StringUtil.NEWLINE)
+            .append("Chunk(s) at 25~75%:")
+            .append(StringUtil.NEWLINE)
+            .append(q025)
+            .append(StringUtil.NEWLINE)
+            .append("Chunk(s) at 50~100%:")
+            .append(StringUtil.NEWLINE)
+            .append(q050)
+            .append(StringUtil.NEWLINE)
+            .append("Chunk(s) at 75~100%:")
+            .append(StringUtil.NEWLINE)
+            .append(q075)
+            .append(StringUtil.NEWLINE)
+            .append("Chunk(s) at 100%:")
+            .append(StringUtil.NEWLINE)
+            .append(q100)
+            .append(StringUtil.NEWLINE)
+            .toString();
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Expose the size class and internal fragmentation metrics of an arena. The {@link PoolArenaMetric}s that are
+ * returned by {@link PooledByteBufAllocatorMetric#heapArenas()} and
+ * {@link PooledByteBufAllocatorMetric#directArenas()} also implement this interface.
+ */
+@UnstableApi
+public interface PoolArenaSizeClassMetric {
+
+    /**
+     * Return the number of bytes that were requested by the buffers that are currently allocated by the arena. This is
+     * always {@code 0} unless the size class metrics were enabled via {@code io.netty.allocator.sizeClassMetrics}.
+     */
+    long numActiveRequestedBytes();
+
+    /**
+     * Return the number of bytes that back the buffers that are currently allocated by the arena, which is their
+     * requested capacity rounded up to the size class. The difference to {@link #numActiveRequestedBytes()} is the
+     * memory that is lost to internal fragmentation. This is always {@code 0} unless the size class metrics were
+     * enabled via {@code io.netty.allocator.sizeClassMetrics}.
+     */
+    long numActiveNormalizedBytes();
+
+    /**
+     * Return the number of size classes each doubling of the capacity is split into.
+     */
+    int sizeClassesPerDoubling();
+}
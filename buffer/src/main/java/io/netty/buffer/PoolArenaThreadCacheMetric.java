@@ -0,0 +1,40 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Expose the thread cache metrics of an arena. The {@link PoolArenaMetric}s that are returned by
+ * {@link PooledByteBufAllocatorMetric#heapArenas()} and {@link PooledByteBufAllocatorMetric#directArenas()} also
+ * implement this interface.
+ */
+@UnstableApi
+public interface PoolArenaThreadCacheMetric {
+
+    /**
+     * Return the number of allocations that were served out of the thread caches backed by this arena.
+     * The thread caches publish their statistics periodically, so this value may lag behind.
+     */
+    long numThreadCacheHits();
+
+    /**
+     * Return the number of allocations that could have been served out of the thread caches backed by this arena
+     * but were not, because the cache for the requested size was empty.
+     * The thread caches publish their statistics periodically, so this value may lag behind.
+     */
+    long numThreadCacheMisses();
+}
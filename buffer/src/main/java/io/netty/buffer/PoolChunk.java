@@ -36,7 +36,8 @@ import java.util.Deque;
  *
  * For simplicity all sizes are normalized according to PoolArena#normalizeCapacity method
  * This ensures that when we request for memory segments of size >= pageSize the normalizedCapacity
- * equals the next nearest power of 2
+ * is one of the size classes of the arena, which is either a multiple of pageSize (a run of pages) or a small
+ * size class that is allocated out of a subpage
  *
  * To search for the first offset in chunk that has at least requested size available we construct a
  * complete balanced binary tree and store it in an array (just like heaps) - memoryMap
@@ -86,12 +87,16 @@ import java.util.Deque;
  *
  * Algorithm: [allocateRun(size)]
  * ----------
- * 1) Compute d = log_2(chunkSize/size)
- * 2) Return allocateNode(d)
+ * 1) Compute n = size/pageSize and d = maxOrder - ceil(log_2(n))
+ * 2) id = allocateNode(d)
+ * 3) if n is not a power of 2 only the first n pages of id are marked as used, by marking the biggest child nodes
+ *    that cover them as unusable. The pages at the end of id stay free and can be used by other allocations.
+ *    The handle of the run encodes n, so the same nodes can be marked as free again when the run is freed.
  *
  * Algorithm: [allocateSubpage(size)]
  * ----------
- * 1) use allocateNode(maxOrder) to find an empty (i.e., unused) leaf (i.e., page)
+ * 1) use allocateRun(n * pageSize) to find an empty (i.e., unused) run of n pages, where n is 1 for tiny sizes and
+ *    is chosen by the PoolArena for small sizes so that little of the run is wasted
  * 2) use this handle to construct the PoolSubpage object or if it already exists just call init(normCapacity)
  *    note that this PoolSubpage object is added to subpagesPool in the PoolArena when we init() it
  *
@@ -108,14 +113,14 @@ final class PoolChunk<T> implements PoolChunkMetric {
     private static final int INTEGER_SIZE_MINUS_ONE = Integer.SIZE - 1;
 
     final PoolArena<T> arena;
+    /** The {@link PoolArenaShard} that owns this chunk, {@code null} if unpooled. */
+    final PoolArenaShard<T> shard;
     final T memory;
     final boolean unpooled;
     final int offset;
     private final byte[] memoryMap;
     private final byte[] depthMap;
     private final PoolSubpage<T>[] subpages;
-    /** Used to determine if the requested capacity is equal to or greater than pageSize. */
-    private final int subpageOverflowMask;
     private final int pageSize;
     private final int pageShifts;
     private final int maxOrder;
@@ -134,6 +139,10 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     private int freeBytes;
 
+    // Used to detect chunks that were completely unused for some time, see isIdle(...).
+    private boolean allocatedSinceIdleCheck;
+    private long unusedSinceNanos;
+
     PoolChunkList<T> parent;
     PoolChunk<T> prev;
     PoolChunk<T> next;
@@ -141,9 +150,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
-    PoolChunk(PoolArena<T> arena, T memory, int pageSize, int maxOrder, int pageShifts, int chunkSize, int offset) {
+    PoolChunk(PoolArenaShard<T> shard, T memory, int pageSize, int maxOrder, int pageShifts, int chunkSize,
+              int offset) {
         unpooled = false;
-        this.arena = arena;
+        this.shard = shard;
+        arena = shard.arena;
         this.memory = memory;
         this.pageSize = pageSize;
         this.pageShifts = pageShifts;
@@ -152,7 +163,6 @@ final class PoolChunk<T> implements PoolChunkMetric {
         this.offset = offset;
         unusable = (byte) (maxOrder + 1);
         log2ChunkSize = log2(chunkSize);
-        subpageOverflowMask = ~(pageSize - 1);
         freeBytes = chunkSize;
 
         assert maxOrder < 30 : "maxOrder should be < 30, but is: " + maxOrder;
@@ -180,12 +190,12 @@ final class PoolChunk<T> implements PoolChunkMetric {
     PoolChunk(PoolArena<T> arena, T memory, int size, int offset) {
         unpooled = true;
         this.arena = arena;
+        shard = null;
         this.memory = memory;
         this.offset = offset;
         memoryMap = null;
         depthMap = null;
         subpages = null;
-        subpageOverflowMask = 0;
         pageSize = 0;
         pageShifts = 0;
         maxOrder = 0;
@@ -204,7 +214,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
     @Override
     public int usage() {
         final int freeBytes;
-        synchronized (arena) {
+        synchronized (shard) {
             freeBytes = this.freeBytes;
         }
         return usage(freeBytes);
@@ -222,22 +232,56 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return 100 - freePercentage;
     }
 
+    // Method must be called inside synchronized(shard) { ... } block
+    int usageBucket() {
+        return ChunkUsageHistogram.bucket(usage(freeBytes));
+    }
+
+    private void updateFreeBytes(int delta) {
+        int oldBucket = usageBucket();
+        freeBytes += delta;
+        int newBucket = usageBucket();
+        if (oldBucket != newBucket) {
+            shard.chunkUsage.move(oldBucket, newBucket);
+        }
+    }
+
     boolean allocate(PooledByteBuf<T> buf, int reqCapacity, int normCapacity) {
         final long handle;
-        if ((normCapacity & subpageOverflowMask) != 0) { // >= pageSize
-            handle =  allocateRun(normCapacity);
-        } else {
+        if (arena.isTinyOrSmall(normCapacity)) {
             handle = allocateSubpage(normCapacity);
+        } else {
+            handle =  allocateRun(normCapacity);
         }
 
         if (handle < 0) {
             return false;
         }
+        allocatedSinceIdleCheck = true;
         ByteBuffer nioBuffer = cachedNioBuffers != null ? cachedNioBuffers.pollLast() : null;
         initBuf(buf, nioBuffer, handle, reqCapacity);
         return true;
     }
 
+    /**
+     * Returns {@code true} if this chunk is completely unused and nothing was allocated out of it for at least
+     * {@code idleNanos}. As the time is only taken when this method is called, a chunk which was used since the last
+     * call is only considered idle if {@code idleNanos} is {@code 0}.
+     *
+     * Method must be called inside synchronized(shard) { ... } block
+     */
+    boolean isIdle(long nowNanos, long idleNanos) {
+        if (freeBytes != chunkSize) {
+            return false;
+        }
+        if (allocatedSinceIdleCheck) {
+            allocatedSinceIdleCheck = false;
+            unusedSinceNanos = nowNanos;
+            return idleNanos == 0;
+        }
+        return nowNanos - unusedSinceNanos >= idleNanos;
+    }
+
     /**
      * Update method used by allocate
      * This is triggered only when a successor is allocated and all its predecessors
@@ -317,18 +361,88 @@ final class PoolChunk<T> implements PoolChunkMetric {
      * Allocate a run of pages (>=1)
      *
      * @param normCapacity normalized capacity
-     * @return index in memoryMap
+     * @return handle of the run
      */
     private long allocateRun(int normCapacity) {
-        int d = maxOrder - (log2(normCapacity) - pageShifts);
+        int pages = normCapacity >>> pageShifts;
+        int id = allocateRunNode(pages);
+        if (id < 0) {
+            return id;
+        }
+        return (long) pages << Integer.SIZE | id;
+    }
+
+    /**
+     * Allocate the first {@code pages} pages of a free node that is big enough to hold them
+     *
+     * @param pages number of pages
+     * @return index in memoryMap
+     */
+    private int allocateRunNode(int pages) {
+        int d = maxOrder - (log2(pages - 1) + 1); // pages rounded up to the next power of 2
         int id = allocateNode(d);
         if (id < 0) {
             return id;
         }
-        freeBytes -= runLength(id);
+        if (pages != runPages(id)) {
+            allocatePrefix(id, pages);
+            updateParentsAlloc(id);
+        }
+        updateFreeBytes(-(pages << pageShifts));
         return id;
     }
 
+    /**
+     * Marks the first {@code pages} pages of the completely free node {@code id} as unusable, leaving the remaining
+     * pages of the node free.
+     */
+    private void allocatePrefix(int id, int pages) {
+        int runPages = runPages(id);
+        if (pages == runPages) {
+            setValue(id, unusable);
+            return;
+        }
+        int half = runPages >>> 1;
+        int left = id << 1;
+        if (pages > half) {
+            setValue(left, unusable);
+            allocatePrefix(left ^ 1, pages - half);
+        } else {
+            allocatePrefix(left, pages);
+        }
+        byte val1 = value(left);
+        byte val2 = value(left ^ 1);
+        setValue(id, val1 < val2 ? val1 : val2);
+    }
+
+    /**
+     * Frees the first {@code pages} pages of the node {@code id}, which were marked as unusable by
+     * {@link #allocatePrefix(int, int)}.
+     */
+    private void freePrefix(int id, int pages) {
+        int runPages = runPages(id);
+        if (pages == runPages) {
+            setValue(id, depth(id));
+            return;
+        }
+        int half = runPages >>> 1;
+        int left = id << 1;
+        if (pages > half) {
+            setValue(left, depth(left));
+            freePrefix(left ^ 1, pages - half);
+        } else {
+            freePrefix(left, pages);
+        }
+        byte logChild = depth(left);
+        byte val1 = value(left);
+        byte val2 = value(left ^ 1);
+        if (val1 == logChild && val2 == logChild) {
+            setValue(id, depth(id));
+        } else {
+            setValue(id, val1 < val2 ? val1 : val2);
+        }
+    }
+
     /**
      * Create / initialize a new PoolSubpage of normCapacity
      * Any PoolSubpage created / initialized here is added to subpage pool in the PoolArena that owns this PoolChunk
@@ -340,22 +454,20 @@ final class PoolChunk<T> implements PoolChunkMetric {
         // Obtain the head of the PoolSubPage pool that is owned by the PoolArena and synchronize on it.
         // This is need as we may add it back and so alter the linked-list structure.
         PoolSubpage<T> head = arena.findSubpagePoolHead(normCapacity);
-        int d = maxOrder; // subpages are only be allocated from pages i.e., leaves
+        int pages = arena.subpageRunPages(normCapacity);
         synchronized (head) {
-            int id = allocateNode(d);
+            int id = allocateRunNode(pages);
             if (id < 0) {
                 return id;
             }
 
             final PoolSubpage<T>[] subpages = this.subpages;
-            final int pageSize = this.pageSize;
-
-            freeBytes -= pageSize;
+            final int runSize = pages << pageShifts;
 
             int subpageIdx = subpageIdx(id);
             PoolSubpage<T> subpage = subpages[subpageIdx];
-            if (subpage == null) {
-                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), pageSize, normCapacity);
+            if (subpage == null || subpage.memoryMapIdx != id || subpage.pageSize != runSize) {
+                subpage = new PoolSubpage<T>(head, this, id, runOffset(id), runSize, normCapacity);
                 subpages[subpageIdx] = subpage;
             } else {
                 subpage.init(head, normCapacity);
@@ -376,7 +488,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
         int memoryMapIdx = memoryMapIdx(handle);
         int bitmapIdx = bitmapIdx(handle);
 
-        if (bitmapIdx != 0) { // free a subpage
+        final int pages;
+        if (isSubpage(bitmapIdx)) { // free a subpage
             PoolSubpage<T> subpage = subpages[subpageIdx(memoryMapIdx)];
             assert subpage != null && subpage.doNotDestroy;
 
@@ -388,9 +501,12 @@ final class PoolChunk<T> implements PoolChunkMetric {
                     return;
                 }
             }
+            pages = subpage.pageSize >>> pageShifts;
+        } else {
+            pages = bitmapIdx;
         }
-        freeBytes += runLength(memoryMapIdx);
-        setValue(memoryMapIdx, depth(memoryMapIdx));
+        updateFreeBytes(pages << pageShifts);
+        freePrefix(memoryMapIdx, pages);
         updateParentsFree(memoryMapIdx);
 
         if (nioBuffer != null && cachedNioBuffers != null &&
@@ -402,11 +518,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
     void initBuf(PooledByteBuf<T> buf, ByteBuffer nioBuffer, long handle, int reqCapacity) {
         int memoryMapIdx = memoryMapIdx(handle);
         int bitmapIdx = bitmapIdx(handle);
-        if (bitmapIdx == 0) {
-            byte val = value(memoryMapIdx);
-            assert val == unusable : String.valueOf(val);
+        if (!isSubpage(bitmapIdx)) {
+            int pages = bitmapIdx;
+            assert pages > 0 && pages <= runPages(memoryMapIdx) : String.valueOf(pages);
             buf.init(this, nioBuffer, handle, runOffset(memoryMapIdx) + offset,
-                    reqCapacity, runLength(memoryMapIdx), arena.parent.threadCache());
+                    reqCapacity, pages << pageShifts, arena.parent.threadCache());
         } else {
             initBufWithSubpage(buf, nioBuffer, handle, bitmapIdx, reqCapacity);
         }
@@ -418,7 +534,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     private void initBufWithSubpage(PooledByteBuf<T> buf, ByteBuffer nioBuffer,
                                     long handle, int bitmapIdx, int reqCapacity) {
-        assert bitmapIdx != 0;
+        assert isSubpage(bitmapIdx);
 
         int memoryMapIdx = memoryMapIdx(handle);
 
@@ -454,6 +570,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return 1 << log2ChunkSize - depth(id);
     }
 
+    private int runPages(int id) {
+        // represents the number of pages of node 'id' in the tree
+        return 1 << maxOrder - depth(id);
+    }
+
     private int runOffset(int id) {
         // represents the 0-based offset in #bytes from start of the byte-array chunk
         int shift = id ^ 1 << depth(id);
@@ -461,7 +582,8 @@ final class PoolChunk<T> implements PoolChunkMetric {
     }
 
     private int subpageIdx(int memoryMapIdx) {
-        return memoryMapIdx ^ maxSubpageAllocs; // remove highest set bit, to get offset
+        // index of the first page of the run, remove highest set bit of the left most leaf to get offset
+        return memoryMapIdx << maxOrder - depth(memoryMapIdx) ^ maxSubpageAllocs;
     }
 
     private static int memoryMapIdx(long handle) {
@@ -472,6 +594,11 @@ final class PoolChunk<T> implements PoolChunkMetric {
         return (int) (handle >>> Integer.SIZE);
     }
 
+    private static boolean isSubpage(int bitmapIdx) {
+        // Runs of pages store the number of pages in the upper 32 bits of the handle, see PoolSubpage.toHandle(...)
+        return (bitmapIdx & 0x40000000) != 0;
+    }
+
     @Override
     public int chunkSize() {
         return chunkSize;
@@ -479,7 +606,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
 
     @Override
     public int freeBytes() {
-        synchronized (arena) {
+        synchronized (shard) {
             return freeBytes;
         }
     }
@@ -487,7 +614,7 @@ final class PoolChunk<T> implements PoolChunkMetric {
     @Override
     public String toString() {
         final int freeBytes;
-        synchronized (arena) {
+        synchronized (shard) {
             freeBytes = this.freeBytes;
         }
 
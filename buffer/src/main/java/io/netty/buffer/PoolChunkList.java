@@ -29,7 +29,7 @@ import java.nio.ByteBuffer;
 
 final class PoolChunkList<T> implements PoolChunkListMetric {
     private static final Iterator<PoolChunkMetric> EMPTY_METRICS = Collections.<PoolChunkMetric>emptyList().iterator();
-    private final PoolArena<T> arena;
+    private final PoolArenaShard<T> shard;
     private final PoolChunkList<T> nextList;
     private final int minUsage;
     private final int maxUsage;
@@ -42,9 +42,9 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
 
-    PoolChunkList(PoolArena<T> arena, PoolChunkList<T> nextList, int minUsage, int maxUsage, int chunkSize) {
+    PoolChunkList(PoolArenaShard<T> shard, PoolChunkList<T> nextList, int minUsage, int maxUsage, int chunkSize) {
         assert minUsage <= maxUsage;
-        this.arena = arena;
+        this.shard = shard;
         this.nextList = nextList;
         this.minUsage = minUsage;
         this.maxUsage = maxUsage;
@@ -105,6 +105,22 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
         return true;
     }
 
+    /**
+     * Removes all {@link PoolChunk}s which are idle (see {@link PoolChunk#isIdle(long, long)}) from this
+     * {@link PoolChunkList} and adds them to {@code reclaimed}.
+     */
+    void reclaim(long nowNanos, long idleNanos, List<PoolChunk<T>> reclaimed) {
+        PoolChunk<T> cur = head;
+        while (cur != null) {
+            PoolChunk<T> next = cur.next;
+            if (cur.isIdle(nowNanos, idleNanos)) {
+                remove(cur);
+                reclaimed.add(cur);
+            }
+            cur = next;
+        }
+    }
+
     private boolean move(PoolChunk<T> chunk) {
         assert chunk.usage() < maxUsage;
 
@@ -188,7 +204,7 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
 
     @Override
     public Iterator<PoolChunkMetric> iterator() {
-        synchronized (arena) {
+        synchronized (shard) {
             if (head == null) {
                 return EMPTY_METRICS;
             }
@@ -207,7 +223,7 @@ final class PoolChunkList<T> implements PoolChunkListMetric {
     @Override
     public String toString() {
         StringBuilder buf = new StringBuilder();
-        synchronized (arena) {
+        synchronized (shard) {
             if (head == null) {
                 return "none";
             }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically gives memory of a {@link PooledByteBufAllocator} that is not used anymore back, driven by the
+ * {@link PooledByteBufAllocatorMetric#usedDirectMemory()} of the allocator:
+ *
+ * <ul>
+ *     <li>below the low watermark nothing is done, as the memory is most likely needed again soon.</li>
+ *     <li>between the low and the high watermark chunks which are unused for at least the idle time are released and
+ *     the thread caches of threads which did not allocate since the last run are trimmed.</li>
+ *     <li>above the high watermark all unused chunks are released and all thread caches are trimmed.</li>
+ * </ul>
+ *
+ * All reclaimers share one daemon thread and only hold a weak reference to the allocator, so they never prevent
+ * the allocator from being garbage collected.
+ */
+final class PoolReclaimer implements Runnable {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(PoolReclaimer.class);
+
+    private static final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new DefaultThreadFactory("pooledByteBufAllocatorReclaimer", true, Thread.MIN_PRIORITY));
+
+    private final WeakReference<PooledByteBufAllocator> allocatorRef;
+    private final long idleNanos;
+    private final long lowWatermark;
+    private final long highWatermark;
+    private volatile ScheduledFuture<?> future;
+
+    private PoolReclaimer(PooledByteBufAllocator allocator, long idleNanos, long lowWatermark, long highWatermark) {
+        allocatorRef = new WeakReference<PooledByteBufAllocator>(allocator);
+        this.idleNanos = idleNanos;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+    }
+
+    static void schedule(PooledByteBufAllocator allocator, long intervalMillis, long idleMillis,
+                         long lowWatermark, long highWatermark) {
+        PoolReclaimer reclaimer = new PoolReclaimer(
+                allocator, TimeUnit.MILLISECONDS.toNanos(idleMillis), lowWatermark, highWatermark);
+        reclaimer.future = executor.scheduleWithFixedDelay(
+                reclaimer, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void run() {
+        PooledByteBufAllocator allocator = allocatorRef.get();
+        if (allocator == null) {
+            future.cancel(false);
+            return;
+        }
+        try {
+            long usedDirectMemory = allocator.metric().usedDirectMemory();
+            if (usedDirectMemory < lowWatermark) {
+                return;
+            }
+            boolean force = usedDirectMemory >= highWatermark;
+            long reclaimed = allocator.reclaim(force ? 0 : idleNanos, force);
+            if (reclaimed > 0 && logger.isDebugEnabled()) {
+                logger.debug("Reclaimed {} byte(s) of unused chunks (usedDirectMemory: {})",
+                        reclaimed, usedDirectMemory);
+            }
+        } catch (Throwable t) {
+            logger.warn("Unexpected exception while reclaiming memory of {}", allocator, t);
+        }
+    }
+}
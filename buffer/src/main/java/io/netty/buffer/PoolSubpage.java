@@ -19,9 +19,10 @@ package io.netty.buffer;
 final class PoolSubpage<T> implements PoolSubpageMetric {
 
     final PoolChunk<T> chunk;
-    private final int memoryMapIdx;
+    final int memoryMapIdx;
     private final int runOffset;
-    private final int pageSize;
+    // The size of the run of pages that backs this subpage, which may span more then one page for small size classes.
+    final int pageSize;
     private final long[] bitmap;
 
     PoolSubpage<T> prev;
@@ -204,7 +205,7 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
         final int maxNumElems;
         final int numAvail;
         final int elemSize;
-        synchronized (chunk.arena) {
+        synchronized (chunk.shard) {
             if (!this.doNotDestroy) {
                 doNotDestroy = false;
                 // Not used for creating the String.
@@ -227,21 +228,21 @@ final class PoolSubpage<T> implements PoolSubpageMetric {
 
     @Override
     public int maxNumElements() {
-        synchronized (chunk.arena) {
+        synchronized (chunk.shard) {
             return maxNumElems;
         }
     }
 
     @Override
     public int numAvailable() {
-        synchronized (chunk.arena) {
+        synchronized (chunk.shard) {
             return numAvail;
         }
     }
 
     @Override
     public int elementSize() {
-        synchronized (chunk.arena) {
+        synchronized (chunk.shard) {
             return elemSize;
         }
     }
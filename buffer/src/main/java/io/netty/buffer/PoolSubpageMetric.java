@@ -36,7 +36,7 @@ public interface PoolSubpageMetric {
     int elementSize();
 
     /**
-     * Return the size (in bytes) of this page.
+     * Return the size (in bytes) of this page, or of the run of pages if the subpage spans more then one page.
      */
     int pageSize();
 }
@@ -40,6 +40,12 @@ final class PoolThreadCache {
 
     private static final InternalLogger logger = InternalLoggerFactory.getInstance(PoolThreadCache.class);
 
+    // When adaptive sizing is used a cache may grow up to this factor of its configured size.
+    static final int ADAPTIVE_MAX_SIZE_FACTOR = 4;
+    // When adaptive sizing is used normal caches are created for buffers up to maxCachedBufferCapacity shifted by this
+    // value. These caches are empty until the size they serve becomes hot.
+    static final int ADAPTIVE_MAX_CACHED_BUFFER_CAPACITY_SHIFT = 3;
+
     final PoolArena<byte[]> heapArena;
     final PoolArena<ByteBuffer> directArena;
 
@@ -51,13 +57,18 @@ final class PoolThreadCache {
     private final MemoryRegionCache<byte[]>[] normalHeapCaches;
     private final MemoryRegionCache<ByteBuffer>[] normalDirectCaches;
 
-    // Used for bitshifting when calculate the index of normal caches later
-    private final int numShiftsNormalDirect;
-    private final int numShiftsNormalHeap;
+    // The index of the PoolArenaShard that is used by this cache for each of the arenas.
+    private final int heapShardIndex;
+    private final int directShardIndex;
+
     private final int freeSweepAllocationThreshold;
     private final AtomicBoolean freed = new AtomicBoolean();
 
     private int allocations;
+    // Never reset, unlike allocations which wraps at freeSweepAllocationThreshold.
+    private long totalAllocations;
+    // The value of totalAllocations when trimIfIdle(...) was called the last time.
+    private long allocationsAtIdleCheck = -1;
 
     // TODO: Test if adding padding helps under contention
     //private long pad0, pad1, pad2, pad3, pad4, pad5, pad6, pad7;
@@ -65,6 +76,21 @@ final class PoolThreadCache {
     PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
                     int tinyCacheSize, int smallCacheSize, int normalCacheSize,
                     int maxCachedBufferCapacity, int freeSweepAllocationThreshold) {
+        this(heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize, maxCachedBufferCapacity,
+                freeSweepAllocationThreshold, false);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param adaptive if {@code true} the number of buffers each cache retains is adjusted on every sweep (which
+     *                 happens every {@code freeSweepAllocationThreshold} allocations) based on how often the size
+     *                 it serves was requested since the last sweep. In this mode normal caches are also created for
+     *                 sizes above {@code maxCachedBufferCapacity}, which only retain buffers once they are hot.
+     */
+    PoolThreadCache(PoolArena<byte[]> heapArena, PoolArena<ByteBuffer> directArena,
+                    int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                    int maxCachedBufferCapacity, int freeSweepAllocationThreshold, boolean adaptive) {
         if (maxCachedBufferCapacity < 0) {
             throw new IllegalArgumentException("maxCachedBufferCapacity: "
                     + maxCachedBufferCapacity + " (expected: >= 0)");
@@ -74,40 +100,40 @@ final class PoolThreadCache {
         this.directArena = directArena;
         if (directArena != null) {
             tinySubPageDirectCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny, directArena, adaptive);
             smallSubPageDirectCaches = createSubPageCaches(
-                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small);
+                    smallCacheSize, directArena.numSmallSubpagePools, SizeClass.Small, directArena, adaptive);
 
-            numShiftsNormalDirect = log2(directArena.pageSize);
             normalDirectCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, directArena);
+                    normalCacheSize, maxCachedBufferCapacity, directArena, adaptive);
 
+            directShardIndex = directArena.nextShardIndex();
             directArena.numThreadCaches.getAndIncrement();
         } else {
             // No directArea is configured so just null out all caches
             tinySubPageDirectCaches = null;
             smallSubPageDirectCaches = null;
             normalDirectCaches = null;
-            numShiftsNormalDirect = -1;
+            directShardIndex = -1;
         }
         if (heapArena != null) {
             // Create the caches for the heap allocations
             tinySubPageHeapCaches = createSubPageCaches(
-                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny);
+                    tinyCacheSize, PoolArena.numTinySubpagePools, SizeClass.Tiny, heapArena, adaptive);
             smallSubPageHeapCaches = createSubPageCaches(
-                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small);
+                    smallCacheSize, heapArena.numSmallSubpagePools, SizeClass.Small, heapArena, adaptive);
 
-            numShiftsNormalHeap = log2(heapArena.pageSize);
             normalHeapCaches = createNormalCaches(
-                    normalCacheSize, maxCachedBufferCapacity, heapArena);
+                    normalCacheSize, maxCachedBufferCapacity, heapArena, adaptive);
 
+            heapShardIndex = heapArena.nextShardIndex();
             heapArena.numThreadCaches.getAndIncrement();
         } else {
             // No heapArea is configured so just null out all caches
             tinySubPageHeapCaches = null;
             smallSubPageHeapCaches = null;
             normalHeapCaches = null;
-            numShiftsNormalHeap = -1;
+            heapShardIndex = -1;
         }
 
         // Only check if there are caches in use.
@@ -120,13 +146,14 @@ final class PoolThreadCache {
     }
 
     private static <T> MemoryRegionCache<T>[] createSubPageCaches(
-            int cacheSize, int numCaches, SizeClass sizeClass) {
+            int cacheSize, int numCaches, SizeClass sizeClass, PoolArena<T> area, boolean adaptive) {
         if (cacheSize > 0 && numCaches > 0) {
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[numCaches];
+            int maxSize = adaptive ? cacheSize * ADAPTIVE_MAX_SIZE_FACTOR : cacheSize;
             for (int i = 0; i < cache.length; i++) {
                 // TODO: maybe use cacheSize / cache.length
-                cache[i] = new SubPageMemoryRegionCache<T>(cacheSize, sizeClass);
+                cache[i] = new SubPageMemoryRegionCache<T>(area, cacheSize, maxSize, sizeClass, adaptive);
             }
             return cache;
         } else {
@@ -135,15 +162,29 @@ final class PoolThreadCache {
     }
 
     private static <T> MemoryRegionCache<T>[] createNormalCaches(
-            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area) {
+            int cacheSize, int maxCachedBufferCapacity, PoolArena<T> area, boolean adaptive) {
         if (cacheSize > 0 && maxCachedBufferCapacity > 0) {
-            int max = Math.min(area.chunkSize, maxCachedBufferCapacity);
-            int arraySize = Math.max(1, log2(max / area.pageSize) + 1);
+            int max = Math.min(area.chunkSize, adaptive ?
+                    maxCachedBufferCapacity << ADAPTIVE_MAX_CACHED_BUFFER_CAPACITY_SHIFT : maxCachedBufferCapacity);
+            int arraySize = Math.max(1, area.numNormalSizeClasses(max));
 
             @SuppressWarnings("unchecked")
             MemoryRegionCache<T>[] cache = new MemoryRegionCache[arraySize];
             for (int i = 0; i < cache.length; i++) {
-                cache[i] = new NormalMemoryRegionCache<T>(cacheSize);
+                if (!adaptive) {
+                    cache[i] = new NormalMemoryRegionCache<T>(area, cacheSize, cacheSize, false);
+                } else {
+                    long capacity = area.normalCapacity(i);
+                    if (capacity <= maxCachedBufferCapacity) {
+                        cache[i] = new NormalMemoryRegionCache<T>(
+                                area, cacheSize, cacheSize * ADAPTIVE_MAX_SIZE_FACTOR, true);
+                    } else {
+                        // Start empty and bound the cache so it never holds more bytes then a cache for
+                        // maxCachedBufferCapacity sized buffers would.
+                        int maxSize = (int) Math.max(1, cacheSize * (long) maxCachedBufferCapacity / capacity);
+                        cache[i] = new NormalMemoryRegionCache<T>(area, 0, maxSize, true);
+                    }
+                }
             }
             return cache;
         } else {
@@ -151,13 +192,12 @@ final class PoolThreadCache {
         }
     }
 
-    private static int log2(int val) {
-        int res = 0;
-        while (val > 1) {
-            val >>= 1;
-            res++;
-        }
-        return res;
+    /**
+     * Returns the index of the {@link PoolArenaShard} of the given {@link PoolArena} that should be used by the
+     * {@link Thread} that owns this cache.
+     */
+    int shardIndex(PoolArena<?> area) {
+        return area.isDirect() ? directShardIndex : heapShardIndex;
     }
 
     /**
@@ -188,6 +228,7 @@ final class PoolThreadCache {
             return false;
         }
         boolean allocated = cache.allocate(buf, reqCapacity);
+        totalAllocations++;
         if (++ allocations >= freeSweepAllocationThreshold) {
             allocations = 0;
             trim();
@@ -289,6 +330,18 @@ final class PoolThreadCache {
         trim(normalHeapCaches);
     }
 
+    /**
+     * Trims the cache if nothing was allocated out of it since the last call of this method, or if {@code force} is
+     * {@code true}. Must be called from the {@link Thread} that owns this cache.
+     */
+    void trimIfIdle(boolean force) {
+        if (force || totalAllocations == allocationsAtIdleCheck) {
+            trim();
+            allocations = 0;
+        }
+        allocationsAtIdleCheck = totalAllocations;
+    }
+
     private static void trim(MemoryRegionCache<?>[] caches) {
         if (caches == null) {
             return;
@@ -314,7 +367,7 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForSmall(PoolArena<?> area, int normCapacity) {
-        int idx = PoolArena.smallIdx(normCapacity);
+        int idx = area.smallIdx(normCapacity);
         if (area.isDirect()) {
             return cache(smallSubPageDirectCaches, idx);
         }
@@ -322,11 +375,10 @@ final class PoolThreadCache {
     }
 
     private MemoryRegionCache<?> cacheForNormal(PoolArena<?> area, int normCapacity) {
+        int idx = area.normalIdx(normCapacity);
         if (area.isDirect()) {
-            int idx = log2(normCapacity >> numShiftsNormalDirect);
             return cache(normalDirectCaches, idx);
         }
-        int idx = log2(normCapacity >> numShiftsNormalHeap);
         return cache(normalHeapCaches, idx);
     }
 
@@ -341,8 +393,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by TINY or SMALL size.
      */
     private static final class SubPageMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        SubPageMemoryRegionCache(int size, SizeClass sizeClass) {
-            super(size, sizeClass);
+        SubPageMemoryRegionCache(PoolArena<T> area, int size, int maxSize, SizeClass sizeClass, boolean adaptive) {
+            super(area, size, maxSize, sizeClass, adaptive);
         }
 
         @Override
@@ -356,8 +408,8 @@ final class PoolThreadCache {
      * Cache used for buffers which are backed by NORMAL size.
      */
     private static final class NormalMemoryRegionCache<T> extends MemoryRegionCache<T> {
-        NormalMemoryRegionCache(int size) {
-            super(size, SizeClass.Normal);
+        NormalMemoryRegionCache(PoolArena<T> area, int size, int maxSize, boolean adaptive) {
+            super(area, size, maxSize, SizeClass.Normal, adaptive);
         }
 
         @Override
@@ -368,15 +420,25 @@ final class PoolThreadCache {
     }
 
     private abstract static class MemoryRegionCache<T> {
+        private final PoolArena<T> area;
         private final int size;
         private final Queue<Entry<T>> queue;
         private final SizeClass sizeClass;
+        private final boolean adaptive;
+        // The number of entries the cache may hold, which is always <= size. It is only adjusted if the cache is
+        // adaptive. This is only a hint and so it is fine to read it from other threads without synchronization.
+        private int limit;
         private int allocations;
+        private int misses;
 
-        MemoryRegionCache(int size, SizeClass sizeClass) {
-            this.size = MathUtil.safeFindNextPositivePowerOfTwo(size);
+        MemoryRegionCache(PoolArena<T> area, int size, int maxSize, SizeClass sizeClass, boolean adaptive) {
+            assert size <= maxSize;
+            this.area = area;
+            this.size = MathUtil.safeFindNextPositivePowerOfTwo(maxSize);
             queue = PlatformDependent.newFixedMpscQueue(this.size);
             this.sizeClass = sizeClass;
+            this.adaptive = adaptive;
+            limit = adaptive ? size : this.size;
         }
 
         /**
@@ -390,6 +452,9 @@ final class PoolThreadCache {
          */
         @SuppressWarnings("unchecked")
         public final boolean add(PoolChunk<T> chunk, ByteBuffer nioBuffer, long handle) {
+            if (adaptive && queue.size() >= limit) {
+                return false;
+            }
             Entry<T> entry = newEntry(chunk, nioBuffer, handle);
             boolean queued = queue.offer(entry);
             if (!queued) {
@@ -406,6 +471,8 @@ final class PoolThreadCache {
         public final boolean allocate(PooledByteBuf<T> buf, int reqCapacity) {
             Entry<T> entry = queue.poll();
             if (entry == null) {
+                // misses is not thread-safe which is fine as this is only called from the same thread all time.
+                ++ misses;
                 return false;
             }
             initBuf(entry.chunk, entry.nioBuffer, entry.handle, buf, reqCapacity);
@@ -420,6 +487,7 @@ final class PoolThreadCache {
          * Clear out this cache and free up all previous cached {@link PoolChunk}s and {@code handle}s.
          */
         public final int free() {
+            updateMetrics();
             return free(Integer.MAX_VALUE);
         }
 
@@ -441,8 +509,21 @@ final class PoolThreadCache {
          * Free up cached {@link PoolChunk}s if not allocated frequently enough.
          */
         public final void trim() {
-            int free = size - allocations;
-            allocations = 0;
+            int free;
+            if (adaptive) {
+                // Size the cache by the number of times its size was requested since the last trim. If it was not
+                // requested at all we halve the limit so memory is given back gradually.
+                int demand = allocations + misses;
+                int newLimit = limit >>> 1;
+                if (demand > 0) {
+                    newLimit = Math.min(size, Math.max(newLimit, MathUtil.safeFindNextPositivePowerOfTwo(demand)));
+                }
+                limit = newLimit;
+                free = queue.size() - newLimit;
+            } else {
+                free = size - allocations;
+            }
+            updateMetrics();
 
             // We not even allocated all the number that are
             if (free > 0) {
@@ -450,6 +531,17 @@ final class PoolThreadCache {
             }
         }
 
+        /**
+         * Publish the number of hits and misses since the last call to the {@link PoolArena} and reset them.
+         */
+        private void updateMetrics() {
+            if (allocations != 0 || misses != 0) {
+                area.incThreadCacheHitsAndMisses(allocations, misses);
+                allocations = 0;
+                misses = 0;
+            }
+        }
+
         @SuppressWarnings({ "unchecked", "rawtypes" })
         private  void freeEntry(Entry entry) {
             PoolChunk chunk = entry.chunk;
@@ -16,16 +16,58 @@
 
 package io.netty.buffer;
 
+import io.netty.util.IllegalReferenceCountException;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
 
 abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(PooledByteBuf.class);
+    private static final String PROP_OWNED_REF_CNT = "io.netty.buffer.ownedRefCnt";
+    // If enabled the reference count of the buffers that are allocated by an EventExecutor is biased towards it,
+    // see bias(EventExecutor).
+    static final boolean ownedRefCnt;
+
+    static {
+        ownedRefCnt = SystemPropertyUtil.getBoolean(PROP_OWNED_REF_CNT, false);
+        if (logger.isDebugEnabled()) {
+            logger.debug("-D{}: {}", PROP_OWNED_REF_CNT, ownedRefCnt);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<PooledByteBuf> sharedRefCntUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(PooledByteBuf.class, "sharedRefCnt");
+
+    // Set in sharedRefCnt once the references of the owner were merged into it. A sharedRefCnt of MERGED means the
+    // buffer was deallocated.
+    private static final int MERGED = 1;
 
     private final Recycler.Handle<PooledByteBuf<T>> recyclerHandle;
 
+    // If the buffer is biased these are the Thread and the EventExecutor that allocated it, null otherwise.
+    private Thread ownerThread;
+    private EventExecutor ownerExecutor;
+    // The references that are held by the owner, only accessed by the ownerThread. Once this is 0 the references of
+    // the owner were merged into sharedRefCnt and the buffer is no longer biased.
+    private int ownerRefCnt;
+    // Incremented every time the buffer is biased, so a merge which was requested for an earlier allocation is ignored.
+    private int generation;
+    // (references held by all threads but the owner << 1) | MERGED, may be negative until the merge.
+    private volatile int sharedRefCnt;
+
     protected PoolChunk<T> chunk;
     protected long handle;
     protected T memory;
@@ -65,6 +107,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
         this.offset = offset;
         this.length = length;
         this.maxLength = maxLength;
+        chunk.arena.incActiveBytes(length, maxLength);
     }
 
     /**
@@ -72,11 +115,200 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
      */
     final void reuse(int maxCapacity) {
         maxCapacity(maxCapacity);
+        ownerThread = null;
+        ownerExecutor = null;
         setRefCnt(1);
         setIndex0(0, 0);
         discardMarks();
     }
 
+    /**
+     * Bias the reference count of this buffer towards the current {@link Thread}, which must be the one of the given
+     * {@link EventExecutor}. Must be called right after the buffer was allocated and before it is visible to any other
+     * {@link Thread}.
+     * <p>
+     * The owner updates its references without any atomic operation. All other threads update the shared count, which
+     * may become negative if they release references that were retained by the owner. In this case the owner is asked
+     * to merge its references into the shared count, the same happens once the owner released all its references. The
+     * buffer is deallocated once the references were merged and the shared count reaches zero, so if another thread
+     * releases the last reference {@link #release()} returns {@code false} and the buffer is deallocated by the owner.
+     */
+    final void bias(EventExecutor executor) {
+        assert executor.inEventLoop();
+        assert super.refCnt() == 1;
+
+        ownerThread = Thread.currentThread();
+        ownerExecutor = executor;
+        ownerRefCnt = 1;
+        generation++;
+        // The buffer is not visible to any other thread yet, so an ordered write is enough.
+        sharedRefCntUpdater.lazySet(this, 0);
+    }
+
+    @Override
+    public ByteBuf retain() {
+        return ownerThread == null ? super.retain() : retainBiased(1);
+    }
+
+    @Override
+    public ByteBuf retain(int increment) {
+        return ownerThread == null ? super.retain(increment)
+                : retainBiased(checkPositive(increment, "increment"));
+    }
+
+    @Override
+    public boolean release() {
+        return ownerThread == null ? super.release() : releaseBiased(1);
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return ownerThread == null ? super.release(decrement)
+                : releaseBiased(checkPositive(decrement, "decrement"));
+    }
+
+    @Override
+    public int refCnt() {
+        return ownerThread == null ? super.refCnt() : biasedRefCnt();
+    }
+
+    @Override
+    int internalRefCnt() {
+        if (ownerThread == null) {
+            return super.internalRefCnt();
+        }
+        // Only used by ensureAccessible(), so there is no need to look at the shared count as long as the owner
+        // holds a reference.
+        return isOwnedByCurrentThread() ? ownerRefCnt : biasedRefCnt();
+    }
+
+    private boolean isOwnedByCurrentThread() {
+        return ownerThread == Thread.currentThread() && ownerRefCnt != 0;
+    }
+
+    private int biasedRefCnt() {
+        int rawCnt = sharedRefCnt;
+        if ((rawCnt & MERGED) != 0) {
+            return rawCnt >>> 1;
+        }
+        int refCnt = (rawCnt >> 1) + ownerRefCnt;
+        if (ownerThread == Thread.currentThread()) {
+            return refCnt;
+        }
+        // Other threads may not see the latest references of the owner, but as these were not merged yet the buffer
+        // was not deallocated.
+        return Math.max(1, refCnt);
+    }
+
+    private ByteBuf retainBiased(int increment) {
+        if (isOwnedByCurrentThread()) {
+            int ownerRefCnt = this.ownerRefCnt;
+            if (increment > (Integer.MAX_VALUE >>> 1) - ownerRefCnt) {
+                throw new IllegalReferenceCountException(ownerRefCnt, increment);
+            }
+            this.ownerRefCnt = ownerRefCnt + increment;
+            return this;
+        }
+        for (;;) {
+            int rawCnt = sharedRefCnt;
+            if (rawCnt == MERGED) {
+                throw new IllegalReferenceCountException(0, increment);
+            }
+            if (increment > (Integer.MAX_VALUE >>> 1) - (rawCnt >> 1)) {
+                throw new IllegalReferenceCountException(rawCnt >> 1, increment);
+            }
+            // all changes to the raw count are 2x the "real" change
+            if (sharedRefCntUpdater.compareAndSet(this, rawCnt, rawCnt + (increment << 1))) {
+                return this;
+            }
+        }
+    }
+
+    private boolean releaseBiased(int decrement) {
+        if (isOwnedByCurrentThread()) {
+            int ownerRefCnt = this.ownerRefCnt;
+            if (decrement < ownerRefCnt) {
+                this.ownerRefCnt = ownerRefCnt - decrement;
+                return false;
+            }
+            // The owner gives up its last reference, from now on all updates are done on the shared count.
+            return mergeOwnerRefCnt(-decrement);
+        }
+        // Read these before the update, as the buffer may be deallocated and reused once the references of the owner
+        // were merged.
+        EventExecutor ownerExecutor = this.ownerExecutor;
+        int generation = this.generation;
+        for (;;) {
+            int rawCnt = sharedRefCnt;
+            int refCnt = rawCnt >> 1;
+            if ((rawCnt & MERGED) != 0) {
+                if (decrement > refCnt) {
+                    throw new IllegalReferenceCountException(refCnt, -decrement);
+                }
+                if (sharedRefCntUpdater.compareAndSet(this, rawCnt, rawCnt - (decrement << 1))) {
+                    if (decrement == refCnt) {
+                        deallocate();
+                        return true;
+                    }
+                    return false;
+                }
+            } else {
+                if (decrement > refCnt - (Integer.MIN_VALUE >> 1)) {
+                    throw new IllegalReferenceCountException(refCnt, -decrement);
+                }
+                if (sharedRefCntUpdater.compareAndSet(this, rawCnt, rawCnt - (decrement << 1))) {
+                    if (refCnt >= 0 && decrement > refCnt) {
+                        // The references of the owner are needed to tell if this was the last reference.
+                        requestMerge(ownerExecutor, generation);
+                    }
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void requestMerge(EventExecutor ownerExecutor, int generation) {
+        MergeTask task = new MergeTask(this, generation);
+        try {
+            ownerExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Once the EventExecutor terminated its Thread can no longer update the references of the owner, so they
+            // can be merged by any other Thread.
+            ownerExecutor.terminationFuture().addListener(task);
+        }
+    }
+
+    private void merge(int generation) {
+        if (generation == this.generation && ownerRefCnt != 0) {
+            mergeOwnerRefCnt(0);
+        }
+    }
+
+    /**
+     * Merge the references of the owner, adjusted by the given delta, into the shared count. Must only be called by the
+     * owner.
+     */
+    private boolean mergeOwnerRefCnt(int delta) {
+        int ownerRefCnt = this.ownerRefCnt;
+        for (;;) {
+            int rawCnt = sharedRefCnt;
+            assert (rawCnt & MERGED) == 0;
+            long refCnt = (long) (rawCnt >> 1) + ownerRefCnt + delta;
+            if (refCnt < 0 || refCnt > Integer.MAX_VALUE >>> 1) {
+                throw new IllegalReferenceCountException((rawCnt >> 1) + ownerRefCnt, delta);
+            }
+            // all changes to the raw count are 2x the "real" change
+            if (sharedRefCntUpdater.compareAndSet(this, rawCnt, (int) refCnt << 1 | MERGED)) {
+                this.ownerRefCnt = 0;
+                if (refCnt == 0) {
+                    deallocate();
+                    return true;
+                }
+                return false;
+            }
+        }
+    }
+
     @Override
     public final int capacity() {
         return length;
@@ -94,6 +326,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
         } else {
             if (newCapacity > length) {
                 if (newCapacity <= maxLength) {
+                    chunk.arena.incActiveBytes(newCapacity - length, 0);
                     length = newCapacity;
                     return this;
                 }
@@ -101,11 +334,13 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
                 if (newCapacity > maxLength >>> 1) {
                     if (maxLength <= 512) {
                         if (newCapacity > maxLength - 16) {
+                            chunk.arena.incActiveBytes(newCapacity - length, 0);
                             length = newCapacity;
                             setIndex(Math.min(readerIndex(), newCapacity), Math.min(writerIndex(), newCapacity));
                             return this;
                         }
-                    } else { // > 512 (i.e. >= 1024)
+                    } else { // > 512
+                        chunk.arena.incActiveBytes(newCapacity - length, 0);
                         length = newCapacity;
                         setIndex(Math.min(readerIndex(), newCapacity), Math.min(writerIndex(), newCapacity));
                         return this;
@@ -168,6 +403,7 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
             final long handle = this.handle;
             this.handle = -1;
             memory = null;
+            chunk.arena.incActiveBytes(-length, -maxLength);
             chunk.arena.free(chunk, tmpNioBuf, handle, maxLength, cache);
             tmpNioBuf = null;
             chunk = null;
@@ -182,4 +418,24 @@ abstract class PooledByteBuf<T> extends AbstractReferenceCountedByteBuf {
     protected final int idx(int index) {
         return offset + index;
     }
+
+    private static final class MergeTask implements Runnable, FutureListener<Object> {
+        private final PooledByteBuf<?> buf;
+        private final int generation;
+
+        MergeTask(PooledByteBuf<?> buf, int generation) {
+            this.buf = buf;
+            this.generation = generation;
+        }
+
+        @Override
+        public void run() {
+            buf.merge(generation);
+        }
+
+        @Override
+        public void operationComplete(Future<Object> future) {
+            buf.merge(generation);
+        }
+    }
 }
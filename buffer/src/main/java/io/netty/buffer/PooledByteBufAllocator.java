@@ -17,11 +17,13 @@
 package io.netty.buffer;
 
 import io.netty.util.NettyRuntime;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
@@ -29,6 +31,11 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
 
 public class PooledByteBufAllocator extends AbstractByteBufAllocator implements ByteBufAllocatorMetricProvider {
 
@@ -43,8 +50,19 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private static final int DEFAULT_NORMAL_CACHE_SIZE;
     private static final int DEFAULT_MAX_CACHED_BUFFER_CAPACITY;
     private static final int DEFAULT_CACHE_TRIM_INTERVAL;
+    private static final boolean DEFAULT_ADAPTIVE_CACHE;
     private static final boolean DEFAULT_USE_CACHE_FOR_ALL_THREADS;
     private static final int DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT;
+    private static final int DEFAULT_NUM_ARENA_SHARDS;
+    private static final int DEFAULT_SIZE_CLASSES_PER_DOUBLING;
+    private static final boolean DEFAULT_SIZE_CLASS_METRICS;
+    private static final long DEFAULT_RECLAIM_INTERVAL_MILLIS;
+    private static final long DEFAULT_RECLAIM_IDLE_MILLIS;
+    private static final long DEFAULT_RECLAIM_LOW_WATERMARK;
+    private static final long DEFAULT_RECLAIM_HIGH_WATERMARK;
+    private static final int DEFAULT_ALLOCATION_SAMPLING_INTERVAL;
+    private static final int DEFAULT_ALLOCATION_PROFILER_STACK_DEPTH;
+    private static final int DEFAULT_ALLOCATION_PROFILER_MAX_SITES;
     static final int DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK;
 
     private static final int MIN_PAGE_SIZE = 4096;
@@ -111,12 +129,60 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         DEFAULT_CACHE_TRIM_INTERVAL = SystemPropertyUtil.getInt(
                 "io.netty.allocator.cacheTrimInterval", 8192);
 
+        // if enabled the thread caches are resized on every trim based on the sizes that were requested, and sizes
+        // above maxCachedBufferCapacity are cached as well once they are frequently used
+        DEFAULT_ADAPTIVE_CACHE = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.adaptiveCache", false);
+
         DEFAULT_USE_CACHE_FOR_ALL_THREADS = SystemPropertyUtil.getBoolean(
                 "io.netty.allocator.useCacheForAllThreads", true);
 
         DEFAULT_DIRECT_MEMORY_CACHE_ALIGNMENT = SystemPropertyUtil.getInt(
                 "io.netty.allocator.directMemoryCacheAlignment", 0);
 
+        // Use 1 by default so allocations of normal sized buffers that can not be served by the thread cache are
+        // synchronized on one lock per arena. Using more shards reduces the contention if a lot of threads share the
+        // same arena at the cost of more chunks that need to be kept around.
+        DEFAULT_NUM_ARENA_SHARDS = Math.max(1, SystemPropertyUtil.getInt(
+                "io.netty.allocator.numArenaShards", 1));
+
+        // Split every doubling of the capacity into 4 size classes by default, so most buffers waste at most 20% of
+        // their memory instead of up to 50% if capacities are rounded up to the next power of two. Use 1 to get the
+        // power of two size classes back.
+        int defaultSizeClassesPerDoubling = SystemPropertyUtil.getInt(
+                "io.netty.allocator.sizeClassesPerDoubling", 4);
+        if (defaultSizeClassesPerDoubling < 1 || defaultSizeClassesPerDoubling > 8
+                || (defaultSizeClassesPerDoubling & defaultSizeClassesPerDoubling - 1) != 0) {
+            defaultSizeClassesPerDoubling = 4;
+        }
+        DEFAULT_SIZE_CLASSES_PER_DOUBLING = defaultSizeClassesPerDoubling;
+
+        // The per size class and internal fragmentation metrics are disabled by default as they need to be updated on
+        // every allocation and deallocation, including the ones that are served out of a thread cache.
+        DEFAULT_SIZE_CLASS_METRICS = SystemPropertyUtil.getBoolean(
+                "io.netty.allocator.sizeClassMetrics", false);
+
+        // Reclaiming is disabled by default. If enabled, chunks which are unused for the idle time are released and the
+        // caches of idle threads are trimmed every interval as long as the used direct memory is above the low
+        // watermark. Above the high watermark all unused chunks are released and all thread caches are trimmed.
+        DEFAULT_RECLAIM_INTERVAL_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.reclaimInterval", 0));
+        DEFAULT_RECLAIM_IDLE_MILLIS = Math.max(0, SystemPropertyUtil.getLong(
+                "io.netty.allocator.reclaimIdleTime", 60000));
+        DEFAULT_RECLAIM_LOW_WATERMARK = SystemPropertyUtil.getLong(
+                "io.netty.allocator.reclaimLowWatermark", 0);
+        DEFAULT_RECLAIM_HIGH_WATERMARK = SystemPropertyUtil.getLong(
+                "io.netty.allocator.reclaimHighWatermark", Long.MAX_VALUE);
+
+        // The allocation profiler is disabled by default. If enabled, one out of samplingInterval allocations is
+        // tracked per call-site until the buffer is released.
+        DEFAULT_ALLOCATION_SAMPLING_INTERVAL = Math.max(0, SystemPropertyUtil.getInt(
+                "io.netty.allocator.allocationSamplingInterval", 0));
+        DEFAULT_ALLOCATION_PROFILER_STACK_DEPTH = Math.max(1, SystemPropertyUtil.getInt(
+                "io.netty.allocator.allocationProfilerStackDepth", 8));
+        DEFAULT_ALLOCATION_PROFILER_MAX_SITES = Math.max(1, SystemPropertyUtil.getInt(
+                "io.netty.allocator.allocationProfilerMaxSites", 1024));
+
         // Use 1023 by default as we use an ArrayDeque as backing storage which will then allocate an internal array
         // of 1024 elements. Otherwise we would allocate 2048 and only use 1024 which is wasteful.
         DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK = SystemPropertyUtil.getInt(
@@ -141,9 +207,21 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             logger.debug("-Dio.netty.allocator.normalCacheSize: {}", DEFAULT_NORMAL_CACHE_SIZE);
             logger.debug("-Dio.netty.allocator.maxCachedBufferCapacity: {}", DEFAULT_MAX_CACHED_BUFFER_CAPACITY);
             logger.debug("-Dio.netty.allocator.cacheTrimInterval: {}", DEFAULT_CACHE_TRIM_INTERVAL);
+            logger.debug("-Dio.netty.allocator.adaptiveCache: {}", DEFAULT_ADAPTIVE_CACHE);
             logger.debug("-Dio.netty.allocator.useCacheForAllThreads: {}", DEFAULT_USE_CACHE_FOR_ALL_THREADS);
             logger.debug("-Dio.netty.allocator.maxCachedByteBuffersPerChunk: {}",
                     DEFAULT_MAX_CACHED_BYTEBUFFERS_PER_CHUNK);
+            logger.debug("-Dio.netty.allocator.numArenaShards: {}", DEFAULT_NUM_ARENA_SHARDS);
+            logger.debug("-Dio.netty.allocator.sizeClassesPerDoubling: {}", DEFAULT_SIZE_CLASSES_PER_DOUBLING);
+            logger.debug("-Dio.netty.allocator.sizeClassMetrics: {}", DEFAULT_SIZE_CLASS_METRICS);
+            logger.debug("-Dio.netty.allocator.reclaimInterval: {}", DEFAULT_RECLAIM_INTERVAL_MILLIS);
+            logger.debug("-Dio.netty.allocator.reclaimIdleTime: {}", DEFAULT_RECLAIM_IDLE_MILLIS);
+            logger.debug("-Dio.netty.allocator.reclaimLowWatermark: {}", DEFAULT_RECLAIM_LOW_WATERMARK);
+            logger.debug("-Dio.netty.allocator.reclaimHighWatermark: {}", DEFAULT_RECLAIM_HIGH_WATERMARK);
+            logger.debug("-Dio.netty.allocator.allocationSamplingInterval: {}", DEFAULT_ALLOCATION_SAMPLING_INTERVAL);
+            logger.debug("-Dio.netty.allocator.allocationProfilerStackDepth: {}",
+                    DEFAULT_ALLOCATION_PROFILER_STACK_DEPTH);
+            logger.debug("-Dio.netty.allocator.allocationProfilerMaxSites: {}", DEFAULT_ALLOCATION_PROFILER_MAX_SITES);
         }
     }
 
@@ -155,11 +233,20 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     private final int tinyCacheSize;
     private final int smallCacheSize;
     private final int normalCacheSize;
+    private final int numArenaShards;
+    private final int sizeClassesPerDoubling;
+    private final boolean sizeClassMetrics;
     private final List<PoolArenaMetric> heapArenaMetrics;
     private final List<PoolArenaMetric> directArenaMetrics;
     private final PoolThreadLocalCache threadCache;
+    // The thread caches which are used by an EventExecutor and so can be trimmed by the PoolReclaimer.
+    private final ConcurrentMap<PoolThreadCache, EventExecutor> executorThreadCaches =
+            PlatformDependent.newConcurrentHashMap();
     private final int chunkSize;
     private final PooledByteBufAllocatorMetric metric;
+    private final AllocationProfiler profiler =
+            new AllocationProfiler(DEFAULT_ALLOCATION_SAMPLING_INTERVAL, DEFAULT_ALLOCATION_PROFILER_STACK_DEPTH,
+                    DEFAULT_ALLOCATION_PROFILER_MAX_SITES);
 
     public PooledByteBufAllocator() {
         this(false);
@@ -208,13 +295,108 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
     public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
                                   int tinyCacheSize, int smallCacheSize, int normalCacheSize,
                                   boolean useCacheForAllThreads, int directMemoryCacheAlignment) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, DEFAULT_NUM_ARENA_SHARDS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param numArenaShards the number of shards each arena is split into. Each shard owns its own chunks and lock,
+     *                       so using more then one shard allows threads that share an arena to allocate buffers that
+     *                       can not be served out of their thread cache concurrently.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  int numArenaShards) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, numArenaShards, DirectChunkSource.DEFAULT);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param numArenaShards the number of shards each arena is split into. Each shard owns its own chunks and lock,
+     *                       so using more then one shard allows threads that share an arena to allocate buffers that
+     *                       can not be served out of their thread cache concurrently.
+     * @param directChunkSource the {@link DirectChunkSource} which is used to allocate and free the memory of the
+     *                          chunks of the direct arenas.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  int numArenaShards, DirectChunkSource directChunkSource) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, numArenaShards, directChunkSource,
+                DEFAULT_SIZE_CLASSES_PER_DOUBLING);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param numArenaShards the number of shards each arena is split into. Each shard owns its own chunks and lock,
+     *                       so using more then one shard allows threads that share an arena to allocate buffers that
+     *                       can not be served out of their thread cache concurrently.
+     * @param directChunkSource the {@link DirectChunkSource} which is used to allocate and free the memory of the
+     *                          chunks of the direct arenas.
+     * @param sizeClassesPerDoubling the number of size classes each doubling of the capacity is split into, which
+     *                               must be {@code 1}, {@code 2}, {@code 4} or {@code 8}. The requested capacity of
+     *                               a buffer is rounded up to the next size class, so more size classes waste less
+     *                               memory per buffer.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  int numArenaShards, DirectChunkSource directChunkSource,
+                                  int sizeClassesPerDoubling) {
+        this(preferDirect, nHeapArena, nDirectArena, pageSize, maxOrder,
+                tinyCacheSize, smallCacheSize, normalCacheSize,
+                useCacheForAllThreads, directMemoryCacheAlignment, numArenaShards, directChunkSource,
+                sizeClassesPerDoubling, DEFAULT_SIZE_CLASS_METRICS);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param numArenaShards the number of shards each arena is split into. Each shard owns its own chunks and lock,
+     *                       so using more then one shard allows threads that share an arena to allocate buffers that
+     *                       can not be served out of their thread cache concurrently.
+     * @param directChunkSource the {@link DirectChunkSource} which is used to allocate and free the memory of the
+     *                          chunks of the direct arenas.
+     * @param sizeClassesPerDoubling the number of size classes each doubling of the capacity is split into, which
+     *                               must be {@code 1}, {@code 2}, {@code 4} or {@code 8}. The requested capacity of
+     *                               a buffer is rounded up to the next size class, so more size classes waste less
+     *                               memory per buffer.
+     * @param sizeClassMetrics {@code true} if the arenas should count the allocations and deallocations of every
+     *                         size class, which is reported by {@link PoolArenaMetricSnapshot}, and the requested
+     *                         and normalized bytes, which are reported by {@link PoolArenaSizeClassMetric}. This adds
+     *                         atomic updates to every allocation and deallocation, including the ones that are
+     *                         served out of a thread cache.
+     */
+    public PooledByteBufAllocator(boolean preferDirect, int nHeapArena, int nDirectArena, int pageSize, int maxOrder,
+                                  int tinyCacheSize, int smallCacheSize, int normalCacheSize,
+                                  boolean useCacheForAllThreads, int directMemoryCacheAlignment,
+                                  int numArenaShards, DirectChunkSource directChunkSource,
+                                  int sizeClassesPerDoubling, boolean sizeClassMetrics) {
         super(preferDirect);
+        checkNotNull(directChunkSource, "directChunkSource");
         threadCache = new PoolThreadLocalCache(useCacheForAllThreads);
         this.tinyCacheSize = tinyCacheSize;
         this.smallCacheSize = smallCacheSize;
         this.normalCacheSize = normalCacheSize;
         chunkSize = validateAndCalculateChunkSize(pageSize, maxOrder);
 
+        if (numArenaShards < 1) {
+            throw new IllegalArgumentException("numArenaShards: " + numArenaShards + " (expected: > 0)");
+        }
+        this.numArenaShards = numArenaShards;
+        this.sizeClassesPerDoubling = sizeClassesPerDoubling;
+        this.sizeClassMetrics = sizeClassMetrics;
+
         if (nHeapArena < 0) {
             throw new IllegalArgumentException("nHeapArena: " + nHeapArena + " (expected: >= 0)");
         }
@@ -243,7 +425,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             for (int i = 0; i < heapArenas.length; i ++) {
                 PoolArena.HeapArena arena = new PoolArena.HeapArena(this,
                         pageSize, maxOrder, pageShifts, chunkSize,
-                        directMemoryCacheAlignment);
+                        directMemoryCacheAlignment, numArenaShards, sizeClassesPerDoubling, sizeClassMetrics);
                 heapArenas[i] = arena;
                 metrics.add(arena);
             }
@@ -258,7 +440,8 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             List<PoolArenaMetric> metrics = new ArrayList<PoolArenaMetric>(directArenas.length);
             for (int i = 0; i < directArenas.length; i ++) {
                 PoolArena.DirectArena arena = new PoolArena.DirectArena(
-                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment);
+                        this, pageSize, maxOrder, pageShifts, chunkSize, directMemoryCacheAlignment, numArenaShards,
+                        directChunkSource, sizeClassesPerDoubling, sizeClassMetrics);
                 directArenas[i] = arena;
                 metrics.add(arena);
             }
@@ -268,6 +451,11 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
             directArenaMetrics = Collections.emptyList();
         }
         metric = new PooledByteBufAllocatorMetric(this);
+
+        if (DEFAULT_RECLAIM_INTERVAL_MILLIS > 0) {
+            PoolReclaimer.schedule(this, DEFAULT_RECLAIM_INTERVAL_MILLIS, DEFAULT_RECLAIM_IDLE_MILLIS,
+                    DEFAULT_RECLAIM_LOW_WATERMARK, DEFAULT_RECLAIM_HIGH_WATERMARK);
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -319,7 +507,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     new UnpooledHeapByteBuf(this, initialCapacity, maxCapacity);
         }
 
-        return toLeakAwareBuffer(buf);
+        return biasIfOwned(buf, toLeakAwareBuffer(buf, profiler));
     }
 
     @Override
@@ -336,7 +524,19 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
                     new UnpooledDirectByteBuf(this, initialCapacity, maxCapacity);
         }
 
-        return toLeakAwareBuffer(buf);
+        return biasIfOwned(buf, toLeakAwareBuffer(buf, profiler));
+    }
+
+    // Buffers that are tracked are never biased, as their tracker is only closed if release() deallocated the buffer,
+    // which may be deferred until the owner merged its references.
+    private static ByteBuf biasIfOwned(ByteBuf buf, ByteBuf leakAwareBuf) {
+        if (PooledByteBuf.ownedRefCnt && buf == leakAwareBuf && buf instanceof PooledByteBuf) {
+            EventExecutor executor = ThreadExecutorMap.currentExecutor();
+            if (executor != null) {
+                ((PooledByteBuf<?>) buf).bias(executor);
+            }
+        }
+        return leakAwareBuf;
     }
 
     /**
@@ -402,6 +602,30 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return DEFAULT_NORMAL_CACHE_SIZE;
     }
 
+    /**
+     * Default number of shards per arena - System Property: io.netty.allocator.numArenaShards - default 1
+     */
+    public static int defaultNumArenaShards() {
+        return DEFAULT_NUM_ARENA_SHARDS;
+    }
+
+    /**
+     * Default number of size classes per doubling of the capacity - System Property:
+     * io.netty.allocator.sizeClassesPerDoubling - default 4
+     */
+    public static int defaultSizeClassesPerDoubling() {
+        return DEFAULT_SIZE_CLASSES_PER_DOUBLING;
+    }
+
+    /**
+     * Default if the arenas count the allocations and deallocations of every size class and the requested and
+     * normalized bytes - System Property:
+     * io.netty.allocator.sizeClassMetrics - default false
+     */
+    public static boolean defaultSizeClassMetrics() {
+        return DEFAULT_SIZE_CLASS_METRICS;
+    }
+
     /**
      * Return {@code true} if direct memory cache alignment is supported, {@code false} otherwise.
      */
@@ -445,9 +669,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
             Thread current = Thread.currentThread();
             if (useCacheForAllThreads || current instanceof FastThreadLocalThread) {
-                return new PoolThreadCache(
+                PoolThreadCache cache = new PoolThreadCache(
                         heapArena, directArena, tinyCacheSize, smallCacheSize, normalCacheSize,
-                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL);
+                        DEFAULT_MAX_CACHED_BUFFER_CAPACITY, DEFAULT_CACHE_TRIM_INTERVAL, DEFAULT_ADAPTIVE_CACHE);
+                EventExecutor executor = ThreadExecutorMap.currentExecutor();
+                if (executor != null) {
+                    executorThreadCaches.put(cache, executor);
+                }
+                return cache;
             }
             // No caching so just use 0 as sizes.
             return new PoolThreadCache(heapArena, directArena, 0, 0, 0, 0, 0);
@@ -455,6 +684,7 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
 
         @Override
         protected void onRemoval(PoolThreadCache threadCache) {
+            executorThreadCaches.remove(threadCache);
             threadCache.free();
         }
 
@@ -475,6 +705,79 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         }
     }
 
+    /**
+     * Sample one out of {@code samplingInterval} allocations of this allocator and track the capacity of the sampled
+     * buffers per call-site until they are released, which can be inspected via
+     * {@link PooledByteBufAllocatorMetric#topAllocationSites(int)}. Sampling every allocation ({@code 1}) is
+     * expensive as the stack of each allocation is captured, {@code 0} disables sampling.
+     */
+    public void setAllocationSamplingInterval(int samplingInterval) {
+        profiler.samplingInterval(samplingInterval);
+    }
+
+    int allocationSamplingInterval() {
+        return profiler.samplingInterval();
+    }
+
+    List<AllocationSiteMetric> topAllocationSites(int n) {
+        return profiler.topSites(n);
+    }
+
+    /**
+     * Trim thread local cache for the current {@link Thread}, which will give back any cached memory that was not
+     * allocated frequently since the last trim operation.
+     *
+     * Returns {@code true} if a cache for the current {@link Thread} exists and so was trimmed, false otherwise.
+     */
+    public boolean trimCurrentThreadCache() {
+        if (threadCache.isSet()) {
+            threadCache.get().trim();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Trims the thread caches which are used by an {@link EventExecutor} and destroys all chunks which were unused
+     * for at least {@code idleNanos}. If {@code force} is {@code false} only the thread caches of threads which did
+     * not allocate since the last call are trimmed.
+     *
+     * As the thread caches are trimmed by their own {@link Thread}s, memory which is given back by them can only be
+     * reclaimed by the next call of this method. Returns the number of bytes of the destroyed chunks.
+     */
+    long reclaim(long idleNanos, final boolean force) {
+        for (Map.Entry<PoolThreadCache, EventExecutor> entry: executorThreadCaches.entrySet()) {
+            final PoolThreadCache cache = entry.getKey();
+            try {
+                entry.getValue().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        cache.trimIfIdle(force);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The EventExecutor was shutdown, the cache will be freed once its Thread terminates.
+                executorThreadCaches.remove(cache);
+            }
+        }
+
+        long reclaimed = 0;
+        reclaimed += reclaim(heapArenas, idleNanos);
+        reclaimed += reclaim(directArenas, idleNanos);
+        return reclaimed;
+    }
+
+    private static long reclaim(PoolArena<?>[] arenas, long idleNanos) {
+        if (arenas == null) {
+            return 0;
+        }
+        long reclaimed = 0;
+        for (PoolArena<?> arena: arenas) {
+            reclaimed += arena.reclaim(idleNanos);
+        }
+        return reclaimed;
+    }
+
     @Override
     public PooledByteBufAllocatorMetric metric() {
         return metric;
@@ -580,6 +883,14 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return chunkSize;
     }
 
+    final int numArenaShards() {
+        return numArenaShards;
+    }
+
+    final int sizeClassesPerDoubling() {
+        return sizeClassesPerDoubling;
+    }
+
     final long usedHeapMemory() {
         return usedMemory(heapArenas);
     }
@@ -602,6 +913,25 @@ public class PooledByteBufAllocator extends AbstractByteBufAllocator implements
         return used;
     }
 
+    final List<PoolArenaMetricSnapshot> heapArenaSnapshots() {
+        return snapshots(heapArenas);
+    }
+
+    final List<PoolArenaMetricSnapshot> directArenaSnapshots() {
+        return snapshots(directArenas);
+    }
+
+    private static List<PoolArenaMetricSnapshot> snapshots(PoolArena<?>[] arenas) {
+        if (arenas == null) {
+            return null;
+        }
+        List<PoolArenaMetricSnapshot> snapshots = new ArrayList<PoolArenaMetricSnapshot>(arenas.length);
+        for (PoolArena<?> arena : arenas) {
+            snapshots.add(arena.snapshot());
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+
     final PoolThreadCache threadCache() {
         PoolThreadCache cache =  threadCache.get();
         assert cache != null;
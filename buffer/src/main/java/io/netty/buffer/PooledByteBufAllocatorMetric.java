@@ -94,6 +94,48 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
         return allocator.chunkSize();
     }
 
+    /**
+     * Return the number of shards each arena is split into.
+     */
+    public int numArenaShards() {
+        return allocator.numArenaShards();
+    }
+
+    /**
+     * Return the number of size classes each doubling of the capacity is split into.
+     */
+    public int sizeClassesPerDoubling() {
+        return allocator.sizeClassesPerDoubling();
+    }
+
+    /**
+     * Return the interval in which allocations are sampled by the allocation profiler, {@code 0} if disabled.
+     *
+     * @see PooledByteBufAllocator#setAllocationSamplingInterval(int)
+     */
+    public int allocationSamplingInterval() {
+        return allocator.allocationSamplingInterval();
+    }
+
+    /**
+     * Return the {@code n} call-sites whose sampled buffers, which were not released yet, hold the most memory
+     * in descending order.
+     *
+     * @see PooledByteBufAllocator#setAllocationSamplingInterval(int)
+     */
+    public List<AllocationSiteMetric> topAllocationSites(int n) {
+        return allocator.topAllocationSites(n);
+    }
+
+    /**
+     * Return an immutable snapshot of the metrics of all arenas. The snapshot is created without taking any of the
+     * locks that are used when allocating, so it is safe to call this method at a high frequency.
+     */
+    public PooledByteBufAllocatorMetricSnapshot snapshot() {
+        return new PooledByteBufAllocatorMetricSnapshot(
+                allocator.heapArenaSnapshots(), allocator.directArenaSnapshots());
+    }
+
     @Override
     public long usedHeapMemory() {
         return allocator.usedHeapMemory();
@@ -116,7 +158,9 @@ public final class PooledByteBufAllocatorMetric implements ByteBufAllocatorMetri
                 .append("; smallCacheSize: ").append(smallCacheSize())
                 .append("; normalCacheSize: ").append(normalCacheSize())
                 .append("; numThreadLocalCaches: ").append(numThreadLocalCaches())
-                .append("; chunkSize: ").append(chunkSize()).append(')');
+                .append("; chunkSize: ").append(chunkSize())
+                .append("; numArenaShards: ").append(numArenaShards())
+                .append("; sizeClassesPerDoubling: ").append(sizeClassesPerDoubling()).append(')');
         return sb.toString();
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.util.internal.StringUtil;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the metrics of a {@link PooledByteBufAllocator}, see
+ * {@link PooledByteBufAllocatorMetric#snapshot()}.
+ */
+public final class PooledByteBufAllocatorMetricSnapshot implements ByteBufAllocatorMetric {
+
+    private final List<PoolArenaMetricSnapshot> heapArenas;
+    private final List<PoolArenaMetricSnapshot> directArenas;
+    private final long usedHeapMemory;
+    private final long usedDirectMemory;
+
+    PooledByteBufAllocatorMetricSnapshot(List<PoolArenaMetricSnapshot> heapArenas,
+                                         List<PoolArenaMetricSnapshot> directArenas) {
+        this.heapArenas = heapArenas == null ? Collections.<PoolArenaMetricSnapshot>emptyList() : heapArenas;
+        this.directArenas = directArenas == null ? Collections.<PoolArenaMetricSnapshot>emptyList() : directArenas;
+        usedHeapMemory = usedMemory(heapArenas);
+        usedDirectMemory = usedMemory(directArenas);
+    }
+
+    private static long usedMemory(List<PoolArenaMetricSnapshot> arenas) {
+        if (arenas == null) {
+            return -1;
+        }
+        long used = 0;
+        for (PoolArenaMetricSnapshot arena : arenas) {
+            used += arena.numActiveBytes();
+            if (used < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Return a {@link List} of the snapshots of all heap arenas.
+     */
+    public List<PoolArenaMetricSnapshot> heapArenas() {
+        return heapArenas;
+    }
+
+    /**
+     * Return a {@link List} of the snapshots of all direct arenas.
+     */
+    public List<PoolArenaMetricSnapshot> directArenas() {
+        return directArenas;
+    }
+
+    @Override
+    public long usedHeapMemory() {
+        return usedHeapMemory;
+    }
+
+    @Override
+    public long usedDirectMemory() {
+        return usedDirectMemory;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(StringUtil.simpleClassName(this))
+                .append("(usedHeapMemory: ").append(usedHeapMemory)
+                .append("; usedDirectMemory: ").append(usedDirectMemory)
+                .append("; numHeapArenas: ").append(heapArenas.size())
+                .append("; numDirectArenas: ").append(directArenas.size())
+                .append(')');
+        return sb.toString();
+    }
+}
@@ -636,6 +636,11 @@ class WrappedCompositeByteBuf extends CompositeByteBuf {
         return wrapped.toComponentIndex(offset);
     }
 
+    @Override
+    public final int forEachComponent(int index, int length, ComponentProcessor processor) {
+        return wrapped.forEachComponent(index, length, processor);
+    }
+
     @Override
     public final int toByteIndex(int cIndex) {
         return wrapped.toByteIndex(cIndex);
@@ -23,6 +23,7 @@ import org.junit.Test;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
@@ -1047,6 +1048,104 @@ public abstract class AbstractCompositeByteBufTest extends AbstractByteBufTest {
         cbuf.release();
     }
 
+    @Test
+    public void testToComponentIndex() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, wrappedBuffer(new byte[] {1, 2}), EMPTY_BUFFER, wrappedBuffer(new byte[] {3}));
+        assertEquals(0, cbuf.toComponentIndex(0));
+        assertEquals(0, cbuf.toComponentIndex(1));
+        assertEquals(2, cbuf.toComponentIndex(2));
+        cbuf.release();
+    }
+
+    @Test
+    public void testAddComponentsCollectionInMiddle() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, wrappedBuffer(new byte[] {1}), wrappedBuffer(new byte[] {5}));
+
+        List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+        buffers.add(wrappedBuffer(new byte[] {2}));
+        buffers.add(wrappedBuffer(new byte[] {3, 4}));
+        cbuf.addComponents(1, buffers);
+        cbuf.writerIndex(cbuf.capacity());
+
+        assertEquals(4, cbuf.numComponents());
+        assertEquals(4, cbuf.toByteIndex(3));
+        assertEquals(wrappedBuffer(new byte[] {1, 2, 3, 4, 5}), cbuf);
+        cbuf.addComponents(1, Collections.<ByteBuf>emptyList());
+        assertEquals(4, cbuf.numComponents());
+        cbuf.release();
+    }
+
+    @Test
+    public void testRemoveComponentInMiddle() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, wrappedBuffer(new byte[] {1}), wrappedBuffer(new byte[] {2, 3}),
+                wrappedBuffer(new byte[] {4}), wrappedBuffer(new byte[] {5}));
+        cbuf.removeComponent(1);
+        cbuf.writerIndex(cbuf.capacity());
+
+        assertEquals(3, cbuf.capacity());
+        assertEquals(1, cbuf.toByteIndex(1));
+        assertEquals(2, cbuf.toByteIndex(2));
+        assertEquals(wrappedBuffer(new byte[] {1, 4, 5}), cbuf);
+        cbuf.release();
+    }
+
+    @Test
+    public void testForEachComponent() {
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, wrappedBuffer(new byte[] {0, 1, 2}), EMPTY_BUFFER,
+                wrappedBuffer(new byte[] {3, 4}), wrappedBuffer(new byte[] {5, 6, 7}));
+
+        final ByteBuf collected = buffer();
+        final List<Integer> lengths = new ArrayList<Integer>();
+        assertEquals(-1, cbuf.forEachComponent(1, 5, new CompositeByteBuf.ComponentProcessor() {
+            @Override
+            public boolean process(ByteBuf buf, int index, int length) {
+                collected.writeBytes(buf, index, length);
+                lengths.add(length);
+                return true;
+            }
+        }));
+        assertEquals(wrappedBuffer(new byte[] {1, 2, 3, 4, 5}), collected);
+        assertEquals(Arrays.asList(2, 2, 1), lengths);
+
+        assertEquals(3, cbuf.forEachComponent(0, 8, new CompositeByteBuf.ComponentProcessor() {
+            @Override
+            public boolean process(ByteBuf buf, int index, int length) {
+                return buf.getByte(index) != 3;
+            }
+        }));
+        assertEquals(-1, cbuf.forEachComponent(8, 0, new CompositeByteBuf.ComponentProcessor() {
+            @Override
+            public boolean process(ByteBuf buf, int index, int length) {
+                throw new AssertionError();
+            }
+        }));
+        collected.release();
+        cbuf.release();
+    }
+
+    @Test
+    public void testNioBuffersMultipleNioBufferComponent() {
+        CompositeByteBuf inner = compositeBuffer();
+        inner.addComponents(true, wrappedBuffer(new byte[] {1, 2}), wrappedBuffer(new byte[] {3}));
+        CompositeByteBuf cbuf = compositeBuffer();
+        cbuf.addComponents(true, wrappedBuffer(new byte[] {0}), inner, wrappedBuffer(new byte[] {4}));
+
+        ByteBuffer[] buffers = cbuf.nioBuffers(0, 5);
+        assertEquals(4, buffers.length);
+        ByteBuf merged = buffer();
+        for (ByteBuffer buffer: buffers) {
+            merged.writeBytes(buffer);
+        }
+        assertEquals(wrappedBuffer(new byte[] {0, 1, 2, 3, 4}), merged);
+        assertEquals(2, cbuf.nioBuffers(1, 3).length);
+        merged.release();
+        cbuf.release();
+    }
+
     @Test
     public void testIterator() {
         CompositeByteBuf cbuf = compositeBuffer();
@@ -16,6 +16,7 @@
 package io.netty.buffer;
 
 import io.netty.util.AsciiString;
+import io.netty.util.ByteProcessor;
 import io.netty.util.CharsetUtil;
 import org.junit.Test;
 
@@ -134,6 +135,135 @@ public class ByteBufUtilTest {
                 -1));
     }
 
+    @Test
+    public void equalsDirectAndHeapBuffers() {
+        byte[] bytes = new byte[67];
+        new Random().nextBytes(bytes);
+        ByteBuf heap = Unpooled.wrappedBuffer(bytes);
+        ByteBuf direct = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+        ByteBuf directCopy = direct.copy();
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                assertTrue(ByteBufUtil.equals(heap, i, direct, i, bytes.length - i));
+                assertTrue(ByteBufUtil.equals(heap, i, heap.copy(), i, bytes.length - i));
+                assertTrue(ByteBufUtil.equals(direct, i, directCopy, i, bytes.length - i));
+            }
+            direct.setByte(33, ~bytes[33]);
+            assertFalse(ByteBufUtil.equals(heap, 0, direct, 0, bytes.length));
+            assertFalse(ByteBufUtil.equals(directCopy, 0, direct, 0, bytes.length));
+            assertFalse(ByteBufUtil.equals(directCopy, 30, direct, 30, 4));
+            assertFalse(ByteBufUtil.equals(heap, 0, Unpooled.wrappedBuffer(direct.copy()), 0, bytes.length));
+            assertTrue(ByteBufUtil.equals(heap, 34, direct, 34, bytes.length - 34));
+        } finally {
+            direct.release();
+            directCopy.release();
+        }
+    }
+
+    @Test
+    public void hashCodeReadsMultipleIntsAtOnce() {
+        Random rand = new Random();
+        for (int len = 0; len < 40; len++) {
+            byte[] bytes = new byte[len];
+            rand.nextBytes(bytes);
+            ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+            assertEquals(intAtATimeHashCode(bytes), ByteBufUtil.hashCode(buffer));
+            assertEquals(intAtATimeHashCode(bytes), ByteBufUtil.hashCode(buffer.order(ByteOrder.LITTLE_ENDIAN)));
+        }
+    }
+
+    private static int intAtATimeHashCode(byte[] bytes) {
+        ByteBuf buffer = Unpooled.wrappedBuffer(bytes);
+        int hashCode = 1;
+        while (buffer.readableBytes() >= 4) {
+            hashCode = 31 * hashCode + buffer.readInt();
+        }
+        while (buffer.isReadable()) {
+            hashCode = 31 * hashCode + buffer.readByte();
+        }
+        return hashCode == 0 ? 1 : hashCode;
+    }
+
+    @Test
+    public void indexOfByte() {
+        for (ByteBuf buffer : new ByteBuf[] {
+                Unpooled.buffer(37).writeZero(37), Unpooled.directBuffer(37).writeZero(37),
+                Unpooled.compositeBuffer().addComponents(true,
+                        Unpooled.buffer(19).writeZero(19), Unpooled.directBuffer(18).writeZero(18)) }) {
+            try {
+                for (int i = 0; i < 37; i++) {
+                    buffer.setByte(i, 0x80);
+                    assertEquals(i, buffer.indexOf(0, 37, (byte) 0x80));
+                    assertEquals(i, buffer.indexOf(37, 0, (byte) 0x80));
+                    assertEquals(i, buffer.indexOf(i, i + 1, (byte) 0x80));
+                    assertEquals(-1, buffer.indexOf(i + 1, 37, (byte) 0x80));
+                    assertEquals(-1, buffer.indexOf(i, 0, (byte) 0x80));
+                    assertEquals(-1, buffer.indexOf(0, 37, (byte) 0x7F));
+                    buffer.setByte(i, 0);
+                }
+
+                buffer.setByte(3, '\r');
+                buffer.setByte(29, '\n');
+                buffer.setByte(30, '\r');
+                assertEquals(29, buffer.forEachByte(ByteProcessor.FIND_LF));
+                assertEquals(3, buffer.forEachByte(ByteProcessor.FIND_CRLF));
+                assertEquals(30, buffer.forEachByteDesc(ByteProcessor.FIND_CRLF));
+                assertEquals(29, buffer.forEachByteDesc(ByteProcessor.FIND_LF));
+                assertEquals(4, buffer.forEachByte(3, 34, ByteProcessor.FIND_NUL));
+                assertEquals(-1, buffer.forEachByte(4, 25, ByteProcessor.FIND_CRLF));
+                assertEquals(-1, buffer.forEachByteDesc(4, 25, ByteProcessor.FIND_CRLF));
+                assertEquals(-1, buffer.forEachByte(ByteProcessor.FIND_COMMA));
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    @Test
+    public void indexOfNeedle() {
+        Random rand = new Random();
+        for (int i = 0; i < 10000; i++) {
+            // Use a small alphabet so periodic needles and partial matches are common.
+            byte[] haystack = randomBytes(rand, rand.nextInt(64), 3);
+            byte[] needle = rand.nextBoolean() || haystack.length == 0 ? randomBytes(rand, rand.nextInt(8), 3) :
+                    Arrays.copyOfRange(haystack, rand.nextInt(haystack.length), haystack.length);
+            ByteBuf haystackBuf = Unpooled.wrappedBuffer(new byte[3], haystack).readerIndex(3);
+            int expected = naiveIndexOf(needle, haystack);
+            assertEquals(expected == -1 ? -1 : expected + 3,
+                         ByteBufUtil.indexOf(Unpooled.wrappedBuffer(needle), haystackBuf));
+        }
+    }
+
+    @Test
+    public void indexOfPeriodicNeedle() {
+        ByteBuf haystack = Unpooled.copiedBuffer("abababababaxababababac", CharsetUtil.US_ASCII);
+        assertEquals(12, ByteBufUtil.indexOf(Unpooled.copiedBuffer("ababababac", CharsetUtil.US_ASCII), haystack));
+        assertEquals(0, ByteBufUtil.indexOf(Unpooled.copiedBuffer("ababababa", CharsetUtil.US_ASCII), haystack));
+        assertEquals(-1, ByteBufUtil.indexOf(Unpooled.copiedBuffer("abac", CharsetUtil.US_ASCII),
+                                             haystack.slice(0, 10)));
+        assertEquals(0, ByteBufUtil.indexOf(Unpooled.EMPTY_BUFFER, haystack));
+    }
+
+    private static byte[] randomBytes(Random rand, int length, int alphabet) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (rand.nextInt(alphabet) - 1);
+        }
+        return bytes;
+    }
+
+    private static int naiveIndexOf(byte[] needle, byte[] haystack) {
+        outer: for (int i = 0; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
     @SuppressWarnings("deprecation")
     @Test
     public void writeShortBE() {
@@ -26,7 +26,7 @@ public class PoolArenaTest {
 
     @Test
     public void testNormalizeCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 0);
+        PoolArena<ByteBuffer> arena = newDirectArena(0, 1);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
         int[] expectedResult = {0, 16, 512, 1024, 1024, 2048};
         for (int i = 0; i < reqCapacities.length; i ++) {
@@ -36,7 +36,7 @@ public class PoolArenaTest {
 
     @Test
     public void testNormalizeAlignedCapacity() throws Exception {
-        PoolArena<ByteBuffer> arena = new PoolArena.DirectArena(null, 0, 0, 9, 999999, 64);
+        PoolArena<ByteBuffer> arena = newDirectArena(64, 1);
         int[] reqCapacities = {0, 15, 510, 1024, 1023, 1025};
         int[] expectedResult = {0, 64, 512, 1024, 1024, 2048};
         for (int i = 0; i < reqCapacities.length; i ++) {
@@ -44,6 +44,142 @@ public class PoolArenaTest {
         }
     }
 
+    @Test
+    public void testNormalizeCapacityWithSizeClasses() {
+        PoolArena<ByteBuffer> arena = newDirectArena(0, 4);
+        int[] reqCapacities = {0, 15, 510, 513, 641, 1025, 4097, 7000, 8191, 8193, 9 * 1024, 12289, 16385,
+                24577, 40000, 8192 << 11};
+        int[] expectedResult = {0, 16, 512, 640, 768, 1280, 5120, 7168, 8192, 10240, 10240, 14336, 24576,
+                32768, 40960, 8192 << 11};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testNormalizeAlignedCapacityWithSizeClasses() {
+        PoolArena<ByteBuffer> arena = newDirectArena(256, 4);
+        int[] reqCapacities = {513, 641, 1025, 9 * 1024};
+        int[] expectedResult = {768, 768, 1280, 10240};
+        for (int i = 0; i < reqCapacities.length; i ++) {
+            Assert.assertEquals(expectedResult[i], arena.normalizeCapacity(reqCapacities[i]));
+        }
+    }
+
+    @Test
+    public void testSizeClassIndexes() {
+        for (int sizeClassesPerDoubling = 1; sizeClassesPerDoubling <= 8; sizeClassesPerDoubling <<= 1) {
+            PoolArena<ByteBuffer> arena = newDirectArena(0, sizeClassesPerDoubling);
+            int numSmall = 0;
+            int numNormal = 0;
+            int last = -1;
+            for (int reqCapacity = 512; reqCapacity <= arena.chunkSize; reqCapacity += 64) {
+                int normCapacity = arena.normalizeCapacity(reqCapacity);
+                Assert.assertTrue(normCapacity >= reqCapacity);
+                if (normCapacity == last) {
+                    continue;
+                }
+                Assert.assertTrue(normCapacity > last);
+                last = normCapacity;
+                if (arena.isTinyOrSmall(normCapacity)) {
+                    Assert.assertEquals(numSmall ++, arena.smallIdx(normCapacity));
+                    Assert.assertSame(arena.findSubpagePoolHead(normCapacity),
+                            arena.findSubpagePoolHead(normCapacity));
+                } else {
+                    Assert.assertEquals(0, normCapacity % arena.pageSize);
+                    Assert.assertEquals(numNormal, arena.normalIdx(normCapacity));
+                    Assert.assertEquals(normCapacity, arena.normalCapacity(numNormal));
+                    Assert.assertEquals(++ numNormal, arena.numNormalSizeClasses(normCapacity));
+                }
+            }
+            Assert.assertEquals(arena.numSmallSubpages(), numSmall);
+        }
+    }
+
+    @Test
+    public void testPartialRuns() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                false, 1, 0, 8192, 11, 0, 0, 0, false, 0, 1, DirectChunkSource.DEFAULT, 4);
+        PoolArenaMetric metric = allocator.metric().heapArenas().get(0);
+
+        // 5 pages out of a run of 8 pages, the remaining 3 pages can be used by the next allocations.
+        ByteBuf b1 = allocator.heapBuffer(5 * 8192);
+        ByteBuf b2 = allocator.heapBuffer(2 * 8192);
+        ByteBuf b3 = allocator.heapBuffer(8192);
+        Assert.assertEquals(0, offset(b1));
+        Assert.assertEquals(6 * 8192, offset(b2));
+        Assert.assertEquals(5 * 8192, offset(b3));
+        Assert.assertEquals(8 * 8192, usedBytes(metric));
+
+        // 10 KiB buffers are allocated out of a subpage that spans 4 pages.
+        ByteBuf b4 = allocator.heapBuffer(9 * 1024);
+        Assert.assertEquals(10240, ((PooledByteBuf<?>) unwrap(b4)).maxLength);
+        Assert.assertEquals(12 * 8192, usedBytes(metric));
+
+        Assert.assertTrue(b1.release());
+        Assert.assertEquals(7 * 8192, usedBytes(metric));
+        ByteBuf b5 = allocator.heapBuffer(4 * 8192);
+        Assert.assertEquals(0, offset(b5));
+
+        Assert.assertTrue(b2.release());
+        Assert.assertTrue(b3.release());
+        Assert.assertTrue(b4.release());
+        Assert.assertTrue(b5.release());
+        // The subpage is kept as it is the only one of its size class.
+        Assert.assertEquals(4 * 8192, usedBytes(metric));
+    }
+
+    @Test
+    public void testInternalFragmentationMetrics() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, false, 0, 1, DirectChunkSource.DEFAULT, 4, true);
+        PoolArenaSizeClassMetric metric = (PoolArenaSizeClassMetric) allocator.metric().directArenas().get(0);
+        Assert.assertEquals(4, metric.sizeClassesPerDoubling());
+
+        ByteBuf b1 = allocator.directBuffer(9 * 1024);
+        ByteBuf b2 = allocator.directBuffer(100);
+        Assert.assertEquals(9 * 1024 + 100, metric.numActiveRequestedBytes());
+        Assert.assertEquals(10240 + 112, metric.numActiveNormalizedBytes());
+
+        // Growing within the size class only changes the requested bytes.
+        b1.capacity(10000);
+        Assert.assertEquals(10000 + 100, metric.numActiveRequestedBytes());
+        Assert.assertEquals(10240 + 112, metric.numActiveNormalizedBytes());
+
+        // Growing above the size class moves the buffer to the next one.
+        b1.capacity(10241);
+        Assert.assertEquals(10241 + 100, metric.numActiveRequestedBytes());
+        Assert.assertEquals(12288 + 112, metric.numActiveNormalizedBytes());
+
+        Assert.assertTrue(b1.release());
+        Assert.assertTrue(b2.release());
+        Assert.assertEquals(0, metric.numActiveRequestedBytes());
+        Assert.assertEquals(0, metric.numActiveNormalizedBytes());
+    }
+
+    private static PoolArena<ByteBuffer> newDirectArena(int alignment, int sizeClassesPerDoubling) {
+        return new PoolArena.DirectArena(null, 8192, 11, 13, 8192 << 11, alignment, 1,
+                DirectChunkSource.DEFAULT, sizeClassesPerDoubling, false);
+    }
+
+    private static long usedBytes(PoolArenaMetric metric) {
+        long used = 0;
+        for (PoolChunkListMetric list: metric.chunkLists()) {
+            for (PoolChunkMetric chunk: list) {
+                used += chunk.chunkSize() - chunk.freeBytes();
+            }
+        }
+        return used;
+    }
+
+    private static int offset(ByteBuf buf) {
+        return ((PooledByteBuf<?>) unwrap(buf)).offset;
+    }
+
+    private static ByteBuf unwrap(ByteBuf buf) {
+        return buf instanceof PooledByteBuf ? buf : buf.unwrap();
+    }
+
     @Test
     public void testDirectArenaOffsetCacheLine() throws Exception {
         int capacity = 5;
@@ -54,7 +190,7 @@ public class PoolArenaTest {
                     ? PlatformDependent.allocateDirectNoCleaner(capacity + alignment)
                     : ByteBuffer.allocateDirect(capacity + alignment);
 
-            PoolArena.DirectArena arena = new PoolArena.DirectArena(null, 0, 0, 9, 9, alignment);
+            PoolArena.DirectArena arena = (PoolArena.DirectArena) newDirectArena(alignment, 4);
             int offset = arena.offsetCacheLine(bb);
             long address = PlatformDependent.directBufferAddress(bb);
 
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.buffer.PoolArena.SizeClass;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PoolThreadCacheTest {
+
+    private static final int MAX_CACHED_BUFFER_CAPACITY = 32 * 1024;
+    private static final int SWEEP_THRESHOLD = 16;
+
+    private PoolArena<byte[]> arena;
+
+    @Before
+    public void setUp() {
+        // Disable the caches of the allocator itself so only the caches created by the tests are used.
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false, 1, 0, 8192, 11, 0, 0, 0);
+        arena = allocator.threadCache().heapArena;
+    }
+
+    @Test
+    public void testStaticCacheDoesNotCacheAboveMaxCachedBufferCapacity() {
+        PoolThreadCache cache = new PoolThreadCache(
+                arena, null, 16, 16, 4, MAX_CACHED_BUFFER_CAPACITY, SWEEP_THRESHOLD, false);
+        try {
+            assertFalse(add(cache, 64 * 1024));
+            assertTrue(add(cache, 32 * 1024));
+        } finally {
+            cache.free();
+        }
+    }
+
+    @Test
+    public void testAdaptiveCacheGrowsForHotSizes() {
+        PoolThreadCache cache = new PoolThreadCache(
+                arena, null, 16, 16, 4, MAX_CACHED_BUFFER_CAPACITY, SWEEP_THRESHOLD, true);
+        try {
+            int size = 64 * 1024;
+            // Not hot yet.
+            assertFalse(add(cache, size));
+
+            // Every allocation misses the cache and the last one triggers a trim which resizes the cache.
+            allocateAndRelease(cache, size, SWEEP_THRESHOLD);
+            assertEquals(SWEEP_THRESHOLD, arena.numThreadCacheMisses());
+
+            // The cache must never hold more bytes then 4 * 32 KiB.
+            assertTrue(add(cache, size));
+            assertTrue(add(cache, size));
+            assertFalse(add(cache, size));
+
+            // Must be served out of the cache.
+            long allocations = arena.numNormalAllocations();
+            assertTrue(arena.allocate(cache, size, size).release());
+            assertEquals(allocations, arena.numNormalAllocations());
+        } finally {
+            cache.free();
+        }
+        assertEquals(1, arena.numThreadCacheHits());
+    }
+
+    @Test
+    public void testAdaptiveCacheShrinksForColdSizes() {
+        PoolThreadCache cache = new PoolThreadCache(
+                arena, null, 16, 16, 4, MAX_CACHED_BUFFER_CAPACITY, SWEEP_THRESHOLD, true);
+        try {
+            int size = 64 * 1024;
+            allocateAndRelease(cache, size, SWEEP_THRESHOLD);
+            assertTrue(add(cache, size));
+            assertTrue(add(cache, size));
+
+            // Only request another size for two sweeps, which should halve the limit twice.
+            allocateAndRelease(cache, 16 * 1024, SWEEP_THRESHOLD * 2);
+            assertFalse(add(cache, size));
+
+            // The entries must have been freed by the trim.
+            assertEquals(0, arena.numActiveNormalAllocations());
+        } finally {
+            cache.free();
+        }
+    }
+
+    @Test
+    public void testTrimIfIdle() {
+        PoolThreadCache cache = new PoolThreadCache(
+                arena, null, 16, 16, 4, MAX_CACHED_BUFFER_CAPACITY, SWEEP_THRESHOLD, false);
+        try {
+            assertTrue(add(cache, 16 * 1024));
+
+            // Not known to be idle yet.
+            cache.trimIfIdle(false);
+            assertEquals(1, arena.numActiveNormalAllocations());
+
+            // Nothing was allocated since the last check.
+            cache.trimIfIdle(false);
+            assertEquals(0, arena.numActiveNormalAllocations());
+
+            // Served out of the cache, so the cache is not idle anymore.
+            assertTrue(add(cache, 16 * 1024));
+            assertTrue(arena.allocate(cache, 16 * 1024, 16 * 1024).release());
+            assertTrue(add(cache, 16 * 1024));
+            cache.trimIfIdle(false);
+            assertEquals(1, arena.numActiveNormalAllocations());
+            cache.trimIfIdle(true);
+            assertEquals(0, arena.numActiveNormalAllocations());
+        } finally {
+            cache.free();
+        }
+    }
+
+    @Test
+    public void testTrimIfIdleNotFooledBySweepThreshold() {
+        PoolThreadCache cache = new PoolThreadCache(
+                arena, null, 16, 16, 4, MAX_CACHED_BUFFER_CAPACITY, SWEEP_THRESHOLD, false);
+        try {
+            cache.trimIfIdle(false);
+            // Exactly one sweep worth of allocations between the checks, the cache is busy and must not be trimmed.
+            allocateAndRelease(cache, 16 * 1024, SWEEP_THRESHOLD - 1);
+            assertTrue(add(cache, 16 * 1024));
+            assertTrue(arena.allocate(cache, 16 * 1024, 16 * 1024).release());
+            assertTrue(add(cache, 16 * 1024));
+            cache.trimIfIdle(false);
+            assertEquals(1, arena.numActiveNormalAllocations());
+        } finally {
+            cache.free();
+        }
+    }
+
+    private void allocateAndRelease(PoolThreadCache cache, int size, int times) {
+        for (int i = 0; i < times; i++) {
+            // The buffer is not bound to our cache, so releasing it will not add it to the cache.
+            assertTrue(arena.allocate(cache, size, size).release());
+        }
+    }
+
+    private boolean add(PoolThreadCache cache, int size) {
+        PooledByteBuf<byte[]> buf = arena.allocate(arena.parent.threadCache(), size, size);
+        boolean added = cache.add(arena, buf.chunk, null, buf.handle, buf.maxLength, SizeClass.Normal);
+        if (!added) {
+            buf.release();
+        }
+        return added;
+    }
+}
@@ -16,6 +16,10 @@
 
 package io.netty.buffer;
 
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ResourceLeakTracker;
+import io.netty.util.concurrent.DefaultEventExecutor;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.concurrent.FastThreadLocalThread;
 import io.netty.util.internal.PlatformDependent;
@@ -23,11 +27,14 @@ import io.netty.util.internal.SystemPropertyUtil;
 import org.junit.Assume;
 import org.junit.Test;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.LockSupport;
@@ -36,7 +43,9 @@ import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<PooledByteBufAllocator> {
 
@@ -117,6 +126,17 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         testArenaMetrics0(new PooledByteBufAllocator(true, 2, 2, 8192, 11, 1000, 1000, 1000, true, 64), 100, 1, 1, 0);
     }
 
+    @Test
+    public void testArenaMetricsNoCacheShards() {
+        testArenaMetrics0(new PooledByteBufAllocator(true, 2, 2, 8192, 11, 0, 0, 0, true, 0, 4), 100, 0, 100, 100);
+    }
+
+    @Test
+    public void testArenaMetricsCacheShards() {
+        testArenaMetrics0(new PooledByteBufAllocator(true, 2, 2, 8192, 11, 1000, 1000, 1000, true, 0, 4),
+                100, 1, 1, 0);
+    }
+
     private static void testArenaMetrics0(
             PooledByteBufAllocator allocator, int num, int expectedActive, int expectedAlloc, int expectedDealloc) {
         for (int i = 0; i < num; i++) {
@@ -160,6 +180,64 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         assertPoolChunkListMetric(lists.get(5), 100, 100);
     }
 
+    @Test
+    public void testPoolChunkListMetricShards() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, 3);
+        assertEquals(3, allocator.metric().numArenaShards());
+        for (PoolArenaMetric arenaMetric: allocator.metric().heapArenas()) {
+            List<PoolChunkListMetric> lists = arenaMetric.chunkLists();
+            assertEquals(18, lists.size());
+            assertEquals(18, arenaMetric.numChunkLists());
+            for (int i = 0; i < lists.size(); i += 6) {
+                assertPoolChunkListMetric(lists.get(i), 1, 25);
+                assertPoolChunkListMetric(lists.get(i + 1), 1, 50);
+                assertPoolChunkListMetric(lists.get(i + 2), 25, 75);
+                assertPoolChunkListMetric(lists.get(i + 4), 75, 100);
+                assertPoolChunkListMetric(lists.get(i + 5), 100, 100);
+            }
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testThreadsSharingArenaUseDifferentShards() throws Exception {
+        final PooledByteBufAllocator allocator =
+                new PooledByteBufAllocator(false, 1, 0, 8192, 11, 0, 0, 0, true, 0, 2);
+        final ByteBuf[] buffers = new ByteBuf[2];
+        for (int i = 0; i < buffers.length; i++) {
+            final int idx = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    buffers[idx] = allocator.heapBuffer(8192 * 2);
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+
+        PoolArenaMetric arena = allocator.metric().heapArenas().get(0);
+        assertEquals(2, arena.numNormalAllocations());
+        // Each thread must have used its own shard and so its own chunk.
+        assertEquals(1, countChunks(arena.chunkLists().subList(0, 6)));
+        assertEquals(1, countChunks(arena.chunkLists().subList(6, 12)));
+
+        for (ByteBuf buffer: buffers) {
+            assertTrue(buffer.release());
+        }
+        assertEquals(2, arena.numNormalDeallocations());
+        assertEquals(0, arena.numActiveNormalAllocations());
+    }
+
+    private static int countChunks(List<PoolChunkListMetric> lists) {
+        int chunks = 0;
+        for (PoolChunkListMetric list: lists) {
+            for (PoolChunkMetric ignored: list) {
+                chunks++;
+            }
+        }
+        return chunks;
+    }
+
     private static void assertPoolChunkListMetric(PoolChunkListMetric m, int min, int max) {
         assertEquals(min, m.minUsage());
         assertEquals(max, m.maxUsage());
@@ -240,6 +318,362 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
         assertFalse(lists.get(5).iterator().hasNext());
     }
 
+    @Test
+    public void testAllocationProfiler() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(false);
+        assertEquals(0, allocator.metric().allocationSamplingInterval());
+        allocateToProfile(allocator, 1024).release();
+        assertTrue(allocator.metric().topAllocationSites(10).isEmpty());
+
+        allocator.setAllocationSamplingInterval(1);
+        ByteBuf buffer = allocateToProfile(allocator, 1024);
+        ByteBuf slice = buffer.retainedSlice();
+        List<AllocationSiteMetric> sites = allocator.metric().topAllocationSites(10);
+        assertEquals(1, sites.size());
+        AllocationSiteMetric site = sites.get(0);
+        assertEquals("allocateToProfile", site.stackTrace().get(0).getMethodName());
+        assertEquals(1, site.numSampledAllocations());
+        assertEquals(1, site.numSampledActiveAllocations());
+        assertEquals(1024, site.sampledActiveBytes());
+        assertEquals(1024, site.estimatedActiveBytes());
+
+        // Only tracked until the last reference is released.
+        assertFalse(buffer.release());
+        assertEquals(1024, allocator.metric().topAllocationSites(1).get(0).sampledActiveBytes());
+        assertTrue(slice.release());
+        site = allocator.metric().topAllocationSites(1).get(0);
+        assertEquals(1, site.numSampledAllocations());
+        assertEquals(0, site.numSampledActiveAllocations());
+        assertEquals(0, site.sampledActiveBytes());
+        assertEquals(0, site.estimatedActiveBytes());
+
+        allocator.setAllocationSamplingInterval(0);
+        allocateToProfile(allocator, 1024).release();
+        assertEquals(1, allocator.metric().topAllocationSites(1).get(0).numSampledAllocations());
+    }
+
+    @Test
+    public void testAllocationProfilerEvictsIdleSites() {
+        AllocationProfiler profiler = new AllocationProfiler(1, 1, 1);
+        ByteBuf buffer = Unpooled.buffer(16);
+        ResourceLeakTracker<ByteBuf> first = sampleFirstSite(profiler, buffer);
+        assertNotNull(first);
+        // The only slot is taken by a site with a live sample.
+        assertNull(sampleSecondSite(profiler, buffer));
+
+        assertTrue(first.close(buffer));
+        ResourceLeakTracker<ByteBuf> second = sampleSecondSite(profiler, buffer);
+        assertNotNull(second);
+        List<AllocationSiteMetric> sites = profiler.topSites(10);
+        assertEquals(1, sites.size());
+        assertEquals("sampleSecondSite", sites.get(0).stackTrace().get(0).getMethodName());
+        assertTrue(second.close(buffer));
+        buffer.release();
+    }
+
+    private static ResourceLeakTracker<ByteBuf> sampleFirstSite(AllocationProfiler profiler, ByteBuf buffer) {
+        return profiler.sample(buffer);
+    }
+
+    private static ResourceLeakTracker<ByteBuf> sampleSecondSite(AllocationProfiler profiler, ByteBuf buffer) {
+        return profiler.sample(buffer);
+    }
+
+    private static ByteBuf allocateToProfile(ByteBufAllocator allocator, int capacity) {
+        return allocator.heapBuffer(capacity);
+    }
+
+    @Test
+    public void testDirectChunkSource() {
+        int chunkSize = 16 * 1024 * 1024;
+        final List<ByteBuffer> allocated = new ArrayList<ByteBuffer>();
+        final List<ByteBuffer> freed = new ArrayList<ByteBuffer>();
+        DirectChunkSource source = new DirectChunkSource() {
+            @Override
+            public ByteBuffer allocate(int capacity) {
+                ByteBuffer chunk = DirectChunkSource.DEFAULT.allocate(capacity);
+                allocated.add(chunk);
+                return chunk;
+            }
+
+            @Override
+            public void free(ByteBuffer chunk) {
+                freed.add(chunk);
+                DirectChunkSource.DEFAULT.free(chunk);
+            }
+        };
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, false, 0, 1, source);
+
+        // Huge buffers are backed by an unpooled chunk which must also be obtained via the DirectChunkSource.
+        ByteBuf huge = allocator.directBuffer(chunkSize + 1);
+        assertEquals(1, allocated.size());
+        assertTrue(huge.release());
+        assertEquals(allocated, freed);
+
+        ByteBuf buffer = allocator.directBuffer(chunkSize);
+        assertEquals(2, allocated.size());
+        buffer.setLong(chunkSize - 8, 1);
+        assertEquals(1, buffer.getLong(chunkSize - 8));
+
+        // The chunk must be given back to the DirectChunkSource as soon as it is completely unused.
+        assertTrue(buffer.release());
+        assertEquals(allocated, freed);
+    }
+
+    @Test
+    public void testReclaimUnusedChunks() {
+        int chunkSize = 16 * 1024 * 1024;
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        assertTrue(allocator.directBuffer(8192).release());
+
+        // The chunk is unused but must only be reclaimed once it was idle long enough.
+        assertEquals(1, countChunks(arena.chunkLists()));
+        assertEquals(0, allocator.reclaim(TimeUnit.HOURS.toNanos(1), false));
+        assertEquals(1, countChunks(arena.chunkLists()));
+
+        assertEquals(chunkSize, allocator.reclaim(0, false));
+        assertEquals(0, countChunks(arena.chunkLists()));
+        assertEquals(0, allocator.metric().usedDirectMemory());
+
+        // The allocator must still be usable.
+        assertTrue(allocator.directBuffer(8192).release());
+        assertEquals(1, countChunks(arena.chunkLists()));
+    }
+
+    @Test(timeout = 5000)
+    public void testReclaimTrimsThreadCachesOfEventExecutors() {
+        int chunkSize = 16 * 1024 * 1024;
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 64);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        EventExecutor executor = new DefaultEventExecutor();
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    assertTrue(allocator.directBuffer(8192).release());
+                }
+            }).syncUninterruptibly();
+            // The buffer is held by the thread cache of the executor.
+            assertEquals(1, arena.numActiveNormalAllocations());
+
+            assertEquals(0, allocator.reclaim(Long.MAX_VALUE, true));
+            // The cache is trimmed by the executor itself, so wait until all pending tasks were run.
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+            assertEquals(0, arena.numActiveNormalAllocations());
+            assertEquals(chunkSize, allocator.reclaim(0, false));
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test
+    public void testMetricSnapshot() {
+        int chunkSize = 16 * 1024 * 1024;
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, true, 0, 1, DirectChunkSource.DEFAULT, 4, true);
+        ByteBuf tiny = allocator.directBuffer(16);
+        ByteBuf small = allocator.directBuffer(1024);
+        ByteBuf normal = allocator.directBuffer(chunkSize / 2);
+        ByteBuf huge = allocator.directBuffer(chunkSize + 1);
+
+        PooledByteBufAllocatorMetricSnapshot snapshot = allocator.metric().snapshot();
+        assertEquals(0, snapshot.heapArenas().size());
+        assertEquals(1, snapshot.directArenas().size());
+        PoolArenaMetricSnapshot arena = snapshot.directArenas().get(0);
+        assertEquals(4, arena.numAllocations());
+        assertEquals(1, arena.numTinyAllocations());
+        assertEquals(1, arena.numSmallAllocations());
+        assertEquals(1, arena.numNormalAllocations());
+        assertEquals(1, arena.numHugeAllocations());
+        assertEquals(4, arena.numActiveAllocations());
+        assertEquals(0, arena.numDeallocations());
+        assertEquals(1, arena.numChunks());
+        // The tiny and small buffers use one page each.
+        assertEquals(1, arena.numChunks(5));
+        assertEquals(2L * chunkSize + 1, arena.numActiveBytes());
+        assertEquals(arena.numActiveBytes(), snapshot.usedDirectMemory());
+        assertEquals(allocator.metric().usedDirectMemory(), snapshot.usedDirectMemory());
+
+        assertSizeClass(arena, 16, 1, 0);
+        assertSizeClass(arena, 1024, 1, 0);
+        assertSizeClass(arena, chunkSize / 2, 1, 0);
+
+        assertTrue(tiny.release());
+        assertTrue(small.release());
+        assertTrue(normal.release());
+        assertTrue(huge.release());
+
+        // The snapshot must not change.
+        assertEquals(4, arena.numActiveAllocations());
+
+        arena = allocator.metric().snapshot().directArenas().get(0);
+        assertEquals(4, arena.numDeallocations());
+        assertEquals(0, arena.numActiveAllocations());
+        assertEquals(0, arena.numActiveHugeAllocations());
+        assertSizeClass(arena, 16, 1, 1);
+        assertSizeClass(arena, 1024, 1, 1);
+        assertSizeClass(arena, chunkSize / 2, 1, 1);
+        // The chunk is still in qInit and so not destroyed.
+        assertEquals(1, arena.numChunks(0));
+        assertEquals(1, arena.numChunks());
+        assertEquals(chunkSize, arena.numActiveBytes());
+    }
+
+    @Test
+    public void testMetricSnapshotWithoutSizeClassMetrics() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(
+                true, 0, 1, 8192, 11, 0, 0, 0, true, 0, 1, DirectChunkSource.DEFAULT, 4, false);
+        ByteBuf tiny = allocator.directBuffer(16);
+        assertEquals(1, allocator.metric().snapshot().directArenas().get(0).numTinyAllocations());
+        assertSizeClass(allocator.metric().snapshot().directArenas().get(0), 16, 0, 0);
+        PoolArenaSizeClassMetric metric = (PoolArenaSizeClassMetric) allocator.metric().directArenas().get(0);
+        assertEquals(0, metric.numActiveRequestedBytes());
+        assertEquals(0, metric.numActiveNormalizedBytes());
+
+        assertTrue(tiny.release());
+        assertSizeClass(allocator.metric().snapshot().directArenas().get(0), 16, 0, 0);
+    }
+
+    @Test(timeout = 5000)
+    public void testOwnedRefCntReleasedByOwner() {
+        final PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        final PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        final EventExecutor executor = new DefaultEventExecutor();
+        try {
+            executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuf buf = newOwnedBuffer(allocator, executor);
+                    buf.retain(2);
+                    assertEquals(3, buf.refCnt());
+                    assertFalse(buf.release(2));
+                    assertEquals(1, buf.refCnt());
+                    assertTrue(buf.release());
+                    assertEquals(0, buf.refCnt());
+                    assertEquals(0, arena.numActiveAllocations());
+                    try {
+                        buf.release();
+                        fail();
+                    } catch (IllegalReferenceCountException expected) {
+                        // expected
+                    }
+                }
+            }).syncUninterruptibly();
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testOwnedRefCntReleasedByOtherThread() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        EventExecutor executor = new DefaultEventExecutor();
+        try {
+            ByteBuf buf = allocateOwnedBuffer(allocator, executor, 2);
+            assertEquals(1, arena.numActiveAllocations());
+
+            // The owner still holds a reference, so this can not be the last one.
+            assertFalse(buf.release());
+            assertEquals(1, buf.refCnt());
+            runPendingTasks(executor);
+            assertEquals(1, arena.numActiveAllocations());
+
+            // The references of the owner were merged, so the last reference is released by this thread.
+            assertTrue(buf.release());
+            assertEquals(0, buf.refCnt());
+            assertEquals(0, arena.numActiveAllocations());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testOwnedRefCntHandedOffToOtherThread() {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        EventExecutor executor = new DefaultEventExecutor();
+        try {
+            ByteBuf buf = allocateOwnedBuffer(allocator, executor, 1);
+            buf.retain();
+            assertFalse(buf.release());
+            // The last reference is counted by the owner, so it needs to merge before the buffer is deallocated.
+            assertFalse(buf.release());
+            runPendingTasks(executor);
+            assertEquals(0, buf.refCnt());
+            assertEquals(0, arena.numActiveAllocations());
+        } finally {
+            executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testOwnedRefCntReleasedAfterOwnerTerminated() throws Exception {
+        PooledByteBufAllocator allocator = new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0);
+        PoolArenaMetric arena = allocator.metric().directArenas().get(0);
+        EventExecutor executor = new DefaultEventExecutor();
+        ByteBuf buf = allocateOwnedBuffer(allocator, executor, 1);
+        executor.shutdownGracefully(0, 0, TimeUnit.MILLISECONDS).syncUninterruptibly();
+
+        assertFalse(buf.release());
+        // The references of the owner are merged once the termination of the executor was observed.
+        while (arena.numActiveAllocations() != 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, buf.refCnt());
+    }
+
+    private static ByteBuf allocateOwnedBuffer(final PooledByteBufAllocator allocator, final EventExecutor executor,
+                                               final int refCnt) {
+        return executor.submit(new Callable<ByteBuf>() {
+            @Override
+            public ByteBuf call() {
+                ByteBuf buf = newOwnedBuffer(allocator, executor);
+                if (refCnt > 1) {
+                    buf.retain(refCnt - 1);
+                }
+                return buf;
+            }
+        }).syncUninterruptibly().getNow();
+    }
+
+    private static ByteBuf newOwnedBuffer(PooledByteBufAllocator allocator, EventExecutor executor) {
+        // Allocate out of the arena directly, so the buffer is never wrapped by a leak-aware buffer.
+        PoolThreadCache cache = allocator.threadCache();
+        PooledByteBuf<ByteBuffer> buf = cache.directArena.allocate(cache, 16, Integer.MAX_VALUE);
+        buf.bias(executor);
+        return buf;
+    }
+
+    private static void runPendingTasks(EventExecutor executor) {
+        executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                // NOOP
+            }
+        }).syncUninterruptibly();
+    }
+
+    private static void assertSizeClass(PoolArenaMetricSnapshot arena, int capacity, long allocations,
+                                        long deallocations) {
+        for (int i = 0; i < arena.numSizeClasses(); i++) {
+            if (arena.sizeClassCapacity(i) == capacity) {
+                assertEquals(allocations, arena.numSizeClassAllocations(i));
+                assertEquals(deallocations, arena.numSizeClassDeallocations(i));
+                assertEquals(allocations - deallocations, arena.numActiveSizeClassAllocations(i));
+                return;
+            }
+        }
+        throw new AssertionError("No size class with capacity " + capacity);
+    }
+
     @Test (timeout = 4000)
     public void testThreadCacheDestroyedByThreadCleaner() throws InterruptedException {
         testThreadCacheDestroyed(false);
@@ -410,12 +844,20 @@ public class PooledByteBufAllocatorTest extends AbstractByteBufAllocatorTest<Poo
 
     @Test
     public void testConcurrentUsage() throws Throwable {
+        // We use no caches and only one arena to maximize the chance of hitting the race-condition we
+        // had before.
+        testConcurrentUsage0(new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0));
+    }
+
+    @Test
+    public void testConcurrentUsageShards() throws Throwable {
+        testConcurrentUsage0(new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0, true, 0, 4));
+    }
+
+    private static void testConcurrentUsage0(ByteBufAllocator allocator) throws Throwable {
         long runningTime = MILLISECONDS.toNanos(SystemPropertyUtil.getLong(
                 "io.netty.buffer.PooledByteBufAllocatorTest.testConcurrentUsageTime", 15000));
 
-        // We use no caches and only one arena to maximize the chance of hitting the race-condition we
-        // had before.
-        ByteBufAllocator allocator = new PooledByteBufAllocator(true, 1, 1, 8192, 11, 0, 0, 0);
         List<AllocationThread> threads = new ArrayList<AllocationThread>();
         try {
             for (int i = 0; i < 512; i++) {
@@ -106,12 +106,16 @@ public class HashedWheelTimer implements Timer {
     private final int mask;
     private final CountDownLatch startTimeInitialized = new CountDownLatch(1);
     private final Queue<HashedWheelTimeout> timeouts = PlatformDependent.newMpscQueue();
-    private final Queue<HashedWheelTimeout> cancelledTimeouts = PlatformDependent.newMpscQueue();
     private final AtomicLong pendingTimeouts = new AtomicLong(0);
     private final long maxPendingTimeouts;
+    private final boolean countInstance;
 
     private volatile long startTime;
 
+    // The Timer that is exposed via Timeout.timer(). This is only different from this instance if the timer is used
+    // as a shard of a ShardedHashedWheelTimer, and is set before any Timeout is created.
+    Timer owner = this;
+
     /**
      * Creates a new timer with the default thread factory
      * ({@link Executors#defaultThreadFactory()}), default tick duration, and
@@ -241,6 +245,18 @@ public class HashedWheelTimer implements Timer {
             ThreadFactory threadFactory,
             long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
             long maxPendingTimeouts) {
+        this(threadFactory, tickDuration, unit, ticksPerWheel, leakDetection, maxPendingTimeouts, true);
+    }
+
+    /**
+     * Creates a new timer. If {@code countInstance} is {@code false} the timer is not taken into account when
+     * checking for too many instances, which is used for all but one of the shards of a
+     * {@link ShardedHashedWheelTimer}.
+     */
+    HashedWheelTimer(
+            ThreadFactory threadFactory,
+            long tickDuration, TimeUnit unit, int ticksPerWheel, boolean leakDetection,
+            long maxPendingTimeouts, boolean countInstance) {
 
         if (threadFactory == null) {
             throw new NullPointerException("threadFactory");
@@ -284,8 +300,9 @@ public class HashedWheelTimer implements Timer {
         leak = leakDetection || !workerThread.isDaemon() ? leakDetector.track(this) : null;
 
         this.maxPendingTimeouts = maxPendingTimeouts;
+        this.countInstance = countInstance;
 
-        if (INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT &&
+        if (countInstance && INSTANCE_COUNTER.incrementAndGet() > INSTANCE_COUNT_LIMIT &&
             WARNED_TOO_MANY_INSTANCES.compareAndSet(false, true)) {
             reportTooManyInstances();
         }
@@ -299,7 +316,7 @@ public class HashedWheelTimer implements Timer {
             // This object is going to be GCed and it is assumed the ship has sailed to do a proper shutdown. If
             // we have not yet shutdown then we want to make sure we decrement the active instance count.
             if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
-                INSTANCE_COUNTER.decrementAndGet();
+                decrementInstanceCount();
             }
         }
     }
@@ -374,7 +391,7 @@ public class HashedWheelTimer implements Timer {
         if (!WORKER_STATE_UPDATER.compareAndSet(this, WORKER_STATE_STARTED, WORKER_STATE_SHUTDOWN)) {
             // workerState can be 0 or 2 at this moment - let it always be 2.
             if (WORKER_STATE_UPDATER.getAndSet(this, WORKER_STATE_SHUTDOWN) != WORKER_STATE_SHUTDOWN) {
-                INSTANCE_COUNTER.decrementAndGet();
+                decrementInstanceCount();
                 if (leak != null) {
                     boolean closed = leak.close(this);
                     assert closed;
@@ -399,7 +416,7 @@ public class HashedWheelTimer implements Timer {
                 Thread.currentThread().interrupt();
             }
         } finally {
-            INSTANCE_COUNTER.decrementAndGet();
+            decrementInstanceCount();
             if (leak != null) {
                 boolean closed = leak.close(this);
                 assert closed;
@@ -408,6 +425,19 @@ public class HashedWheelTimer implements Timer {
         return worker.unprocessedTimeouts();
     }
 
+    private void decrementInstanceCount() {
+        if (countInstance) {
+            INSTANCE_COUNTER.decrementAndGet();
+        }
+    }
+
+    /**
+     * Returns {@code true} if the calling thread is the worker thread of this timer.
+     */
+    boolean inWorkerThread() {
+        return Thread.currentThread() == workerThread;
+    }
+
     @Override
     public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
         if (task == null) {
@@ -478,7 +508,6 @@ public class HashedWheelTimer implements Timer {
                 final long deadline = waitForNextTick();
                 if (deadline > 0) {
                     int idx = (int) (tick & mask);
-                    processCancelledTasks();
                     HashedWheelBucket bucket =
                             wheel[idx];
                     transferTimeoutsToBuckets();
@@ -500,7 +529,6 @@ public class HashedWheelTimer implements Timer {
                     unprocessedTimeouts.add(timeout);
                 }
             }
-            processCancelledTasks();
         }
 
         private void transferTimeoutsToBuckets() {
@@ -525,22 +553,9 @@ public class HashedWheelTimer implements Timer {
 
                 HashedWheelBucket bucket = wheel[stopIndex];
                 bucket.addTimeout(timeout);
-            }
-        }
-
-        private void processCancelledTasks() {
-            for (;;) {
-                HashedWheelTimeout timeout = cancelledTimeouts.poll();
-                if (timeout == null) {
-                    // all processed
-                    break;
-                }
-                try {
-                    timeout.remove();
-                } catch (Throwable t) {
-                    if (logger.isWarnEnabled()) {
-                        logger.warn("An exception was thrown while process a cancellation task", t);
-                    }
+                if (timeout.isCancelled()) {
+                    // Was cancelled while we added it and so the cancelling thread may not have seen the bucket.
+                    bucket.remove(timeout);
                 }
             }
         }
@@ -610,12 +625,12 @@ public class HashedWheelTimer implements Timer {
         long remainingRounds;
 
         // This will be used to chain timeouts in HashedWheelTimerBucket via a double-linked-list.
-        // As only the workerThread will act on it there is no need for synchronization / volatile.
+        // These are only accessed while holding the lock of the bucket.
         HashedWheelTimeout next;
         HashedWheelTimeout prev;
 
-        // The bucket to which the timeout was added
-        HashedWheelBucket bucket;
+        // The bucket to which the timeout was added. This is volatile as cancel() may read it from any thread.
+        volatile HashedWheelBucket bucket;
 
         HashedWheelTimeout(HashedWheelTimer timer, TimerTask task, long deadline) {
             this.timer = timer;
@@ -625,7 +640,7 @@ public class HashedWheelTimer implements Timer {
 
         @Override
         public Timer timer() {
-            return timer;
+            return timer.owner;
         }
 
         @Override
@@ -635,24 +650,18 @@ public class HashedWheelTimer implements Timer {
 
         @Override
         public boolean cancel() {
-            // only update the state it will be removed from HashedWheelBucket on next tick.
             if (!compareAndSetState(ST_INIT, ST_CANCELLED)) {
                 return false;
             }
-            // If a task should be canceled we put this to another queue which will be processed on each tick.
-            // So this means that we will have a GC latency of max. 1 tick duration which is good enough. This way
-            // we can make again use of our MpscLinkedQueue and so minimize the locking / overhead as much as possible.
-            timer.cancelledTimeouts.add(this);
-            return true;
-        }
+            timer.pendingTimeouts.decrementAndGet();
 
-        void remove() {
+            // Unlink the timeout from its bucket directly so it does not stay reachable until the worker reaches the
+            // bucket. If it was not transferred to a bucket yet the worker will drop it in transferTimeoutsToBuckets().
             HashedWheelBucket bucket = this.bucket;
             if (bucket != null) {
                 bucket.remove(this);
-            } else {
-                timer.pendingTimeouts.decrementAndGet();
             }
+            return true;
         }
 
         public boolean compareAndSetState(int expected, int state) {
@@ -677,6 +686,7 @@ public class HashedWheelTimer implements Timer {
             if (!compareAndSetState(ST_INIT, ST_EXPIRED)) {
                 return;
             }
+            timer.pendingTimeouts.decrementAndGet();
 
             try {
                 task.run(this);
@@ -721,6 +731,10 @@ public class HashedWheelTimer implements Timer {
      * Bucket that stores HashedWheelTimeouts. These are stored in a linked-list like datastructure to allow easy
      * removal of HashedWheelTimeouts in the middle. Also the HashedWheelTimeout act as nodes themself and so no
      * extra object creation is needed.
+     * <p>
+     * All access to the linked-list is guarded by the monitor of the bucket, so that
+     * {@link HashedWheelTimeout#cancel()} can unlink a timeout from any thread. The lock is only contended if a
+     * cancellation races with the worker thread processing the same bucket.
      */
     private static final class HashedWheelBucket {
         // Used for the linked-list datastructure
@@ -730,9 +744,8 @@ public class HashedWheelTimer implements Timer {
         /**
          * Add {@link HashedWheelTimeout} to this bucket.
          */
-        public void addTimeout(HashedWheelTimeout timeout) {
+        public synchronized void addTimeout(HashedWheelTimeout timeout) {
             assert timeout.bucket == null;
-            timeout.bucket = this;
             if (head == null) {
                 head = tail = timeout;
             } else {
@@ -740,36 +753,69 @@ public class HashedWheelTimer implements Timer {
                 timeout.prev = tail;
                 tail = timeout;
             }
+            timeout.bucket = this;
         }
 
         /**
          * Expire all {@link HashedWheelTimeout}s for the given {@code deadline}.
          */
         public void expireTimeouts(long deadline) {
-            HashedWheelTimeout timeout = head;
-
-            // process all timeouts
-            while (timeout != null) {
-                HashedWheelTimeout next = timeout.next;
-                if (timeout.remainingRounds <= 0) {
-                    next = remove(timeout);
-                    if (timeout.deadline <= deadline) {
-                        timeout.expire();
+            // Unlink all due timeouts while holding the lock but run the tasks outside of it, as a TimerTask may
+            // block or cancel other timeouts.
+            HashedWheelTimeout expired = null;
+            synchronized (this) {
+                HashedWheelTimeout timeout = head;
+
+                // process all timeouts
+                while (timeout != null) {
+                    HashedWheelTimeout next = timeout.next;
+                    if (timeout.remainingRounds <= 0) {
+                        next = unlink(timeout);
+                        if (timeout.deadline <= deadline) {
+                            // Reuse the next pointer to chain the expired timeouts.
+                            timeout.next = expired;
+                            expired = timeout;
+                        } else {
+                            // The timeout was placed into a wrong slot. This should never happen.
+                            throw new IllegalStateException(String.format(
+                                    "timeout.deadline (%d) > deadline (%d)", timeout.deadline, deadline));
+                        }
+                    } else if (timeout.isCancelled()) {
+                        next = unlink(timeout);
                     } else {
-                        // The timeout was placed into a wrong slot. This should never happen.
-                        throw new IllegalStateException(String.format(
-                                "timeout.deadline (%d) > deadline (%d)", timeout.deadline, deadline));
+                        timeout.remainingRounds --;
                     }
-                } else if (timeout.isCancelled()) {
-                    next = remove(timeout);
-                } else {
-                    timeout.remainingRounds --;
+                    timeout = next;
                 }
-                timeout = next;
+            }
+
+            // The chain is in reverse order so reverse it again to preserve the order in which the timeouts were
+            // added.
+            HashedWheelTimeout ordered = null;
+            while (expired != null) {
+                HashedWheelTimeout next = expired.next;
+                expired.next = ordered;
+                ordered = expired;
+                expired = next;
+            }
+            while (ordered != null) {
+                HashedWheelTimeout next = ordered.next;
+                ordered.next = null;
+                ordered.expire();
+                ordered = next;
             }
         }
 
-        public HashedWheelTimeout remove(HashedWheelTimeout timeout) {
+        /**
+         * Remove the given {@link HashedWheelTimeout} from this bucket if it is still contained in it.
+         */
+        public synchronized void remove(HashedWheelTimeout timeout) {
+            if (timeout.bucket == this) {
+                unlink(timeout);
+            }
+        }
+
+        private HashedWheelTimeout unlink(HashedWheelTimeout timeout) {
             HashedWheelTimeout next = timeout.next;
             // remove timeout that was either processed or cancelled by updating the linked-list
             if (timeout.prev != null) {
@@ -795,44 +841,24 @@ public class HashedWheelTimer implements Timer {
             timeout.prev = null;
             timeout.next = null;
             timeout.bucket = null;
-            timeout.timer.pendingTimeouts.decrementAndGet();
             return next;
         }
 
         /**
          * Clear this bucket and return all not expired / cancelled {@link Timeout}s.
          */
-        public void clearTimeouts(Set<Timeout> set) {
+        public synchronized void clearTimeouts(Set<Timeout> set) {
             for (;;) {
-                HashedWheelTimeout timeout = pollTimeout();
+                HashedWheelTimeout timeout = head;
                 if (timeout == null) {
                     return;
                 }
+                unlink(timeout);
                 if (timeout.isExpired() || timeout.isCancelled()) {
                     continue;
                 }
                 set.add(timeout);
             }
         }
-
-        private HashedWheelTimeout pollTimeout() {
-            HashedWheelTimeout head = this.head;
-            if (head == null) {
-                return null;
-            }
-            HashedWheelTimeout next = head.next;
-            if (next == null) {
-                tail = this.head =  null;
-            } else {
-                this.head = next;
-                next.prev = null;
-            }
-
-            // null out prev and next to allow for GC.
-            head.next = null;
-            head.prev = null;
-            head.bucket = null;
-            return head;
-        }
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+
+/**
+ * A {@link Timer} which spreads its {@link Timeout}s over multiple {@link HashedWheelTimer}s, each of them with its
+ * own worker thread.
+ * <p>
+ * A single {@link HashedWheelTimer} funnels all calls to {@link #newTimeout(TimerTask, long, TimeUnit)} through one
+ * queue which is drained by one worker thread. When a very high number of timeouts is scheduled this worker may not
+ * be able to keep up. This implementation selects the shard based on the calling thread, so that all timeouts
+ * scheduled by the same thread (for example an {@link io.netty.util.concurrent.EventExecutor}) end up in the same
+ * wheel while different threads do not contend on the same queue.
+ * <p>
+ * The same accuracy considerations as for {@link HashedWheelTimer} apply. As every shard starts its own thread you
+ * should share one instance across your application.
+ */
+@UnstableApi
+public final class ShardedHashedWheelTimer implements Timer {
+
+    // Every shard starts its own thread, so do not use more than a few by default even on hosts with many cores.
+    private static final int DEFAULT_MAX_SHARDS = 8;
+
+    private final HashedWheelTimer[] shards;
+
+    /**
+     * Creates a new timer with one shard per available processor, but at most {@value #DEFAULT_MAX_SHARDS}, the
+     * default thread factory ({@link Executors#defaultThreadFactory()}), default tick duration, and default number of
+     * ticks per wheel.
+     */
+    public ShardedHashedWheelTimer() {
+        this(Math.min(NettyRuntime.availableProcessors(), DEFAULT_MAX_SHARDS));
+    }
+
+    /**
+     * Creates a new timer with the default thread factory ({@link Executors#defaultThreadFactory()}), default tick
+     * duration, and default number of ticks per wheel.
+     *
+     * @param shards the number of {@link HashedWheelTimer}s to use
+     * @throws IllegalArgumentException if {@code shards} is &lt;= 0
+     */
+    public ShardedHashedWheelTimer(int shards) {
+        this(Executors.defaultThreadFactory(), 100, TimeUnit.MILLISECONDS, 512, shards);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory  a {@link ThreadFactory} that creates a background {@link Thread} for each shard
+     * @param tickDuration   the duration between tick
+     * @param unit           the time unit of the {@code tickDuration}
+     * @param ticksPerWheel  the size of the wheel of each shard
+     * @param shards         the number of {@link HashedWheelTimer}s to use
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration}, {@code ticksPerWheel} and {@code shards}
+     *                                  is &lt;= 0
+     */
+    public ShardedHashedWheelTimer(
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel, int shards) {
+        this(threadFactory, tickDuration, unit, ticksPerWheel, shards, -1);
+    }
+
+    /**
+     * Creates a new timer.
+     *
+     * @param threadFactory       a {@link ThreadFactory} that creates a background {@link Thread} for each shard
+     * @param tickDuration        the duration between tick
+     * @param unit                the time unit of the {@code tickDuration}
+     * @param ticksPerWheel       the size of the wheel of each shard
+     * @param shards              the number of {@link HashedWheelTimer}s to use
+     * @param maxPendingTimeouts  The maximum number of pending timeouts per shard after which call to
+     *                            {@code newTimeout} will result in
+     *                            {@link java.util.concurrent.RejectedExecutionException} being thrown.
+     *                            No maximum pending timeouts limit is assumed if this value is 0 or negative.
+     * @throws NullPointerException     if either of {@code threadFactory} and {@code unit} is {@code null}
+     * @throws IllegalArgumentException if either of {@code tickDuration}, {@code ticksPerWheel} and {@code shards}
+     *                                  is &lt;= 0
+     */
+    public ShardedHashedWheelTimer(
+            ThreadFactory threadFactory, long tickDuration, TimeUnit unit, int ticksPerWheel, int shards,
+            long maxPendingTimeouts) {
+        checkPositive(shards, "shards");
+        this.shards = new HashedWheelTimer[shards];
+        boolean success = false;
+        try {
+            for (int i = 0; i < shards; i ++) {
+                // Only count the first shard, so the whole timer counts as one HashedWheelTimer instance.
+                HashedWheelTimer shard = new HashedWheelTimer(
+                        threadFactory, tickDuration, unit, ticksPerWheel, true, maxPendingTimeouts, i == 0);
+                shard.owner = this;
+                this.shards[i] = shard;
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (HashedWheelTimer shard: this.shards) {
+                    if (shard != null) {
+                        shard.stop();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts the background threads of all shards explicitly. The background threads will start automatically on
+     * demand even if you did not call this method.
+     *
+     * @throws IllegalStateException if this timer has been {@linkplain #stop() stopped} already
+     */
+    public void start() {
+        for (HashedWheelTimer shard: shards) {
+            shard.start();
+        }
+    }
+
+    @Override
+    public Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        return shard().newTimeout(task, delay, unit);
+    }
+
+    private HashedWheelTimer shard() {
+        if (shards.length == 1) {
+            return shards[0];
+        }
+        return shards[(int) (Thread.currentThread().getId() % shards.length)];
+    }
+
+    @Override
+    public Set<Timeout> stop() {
+        for (HashedWheelTimer shard: shards) {
+            if (shard.inWorkerThread()) {
+                throw new IllegalStateException(
+                        ShardedHashedWheelTimer.class.getSimpleName() +
+                                ".stop() cannot be called from " +
+                                TimerTask.class.getSimpleName());
+            }
+        }
+        Set<Timeout> unprocessed = new HashSet<Timeout>();
+        for (HashedWheelTimer shard: shards) {
+            unprocessed.addAll(shard.stop());
+        }
+        return Collections.unmodifiableSet(unprocessed);
+    }
+
+    /**
+     * Returns the number of pending timeouts of this {@link Timer}, summed over all shards.
+     */
+    public long pendingTimeouts() {
+        long pending = 0;
+        for (HashedWheelTimer shard: shards) {
+            pending += shard.pendingTimeouts();
+        }
+        return pending;
+    }
+
+    /**
+     * Returns the number of {@link HashedWheelTimer}s used by this timer.
+     */
+    public int shards() {
+        return shards.length;
+    }
+}
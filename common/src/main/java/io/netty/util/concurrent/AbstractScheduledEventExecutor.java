@@ -18,6 +18,9 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.DefaultPriorityQueue;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PriorityQueue;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
 
 import java.util.Comparator;
 import java.util.Queue;
@@ -29,6 +32,19 @@ import java.util.concurrent.TimeUnit;
  * Abstract base class for {@link EventExecutor}s that want to support scheduling.
  */
 public abstract class AbstractScheduledEventExecutor extends AbstractEventExecutor {
+    private static final InternalLogger logger =
+            InternalLoggerFactory.getInstance(AbstractScheduledEventExecutor.class);
+
+    // If > 0 the scheduled tasks are stored in a hierarchical timing wheel with the given tick duration instead of a
+    // binary heap.
+    private static final long TIMING_WHEEL_TICK_NANOS =
+            Math.max(0, SystemPropertyUtil.getLong("io.netty.eventexecutor.timingWheelTickNanos", 0));
+
+    static {
+        if (logger.isDebugEnabled()) {
+            logger.debug("-Dio.netty.eventexecutor.timingWheelTickNanos: {}", TIMING_WHEEL_TICK_NANOS);
+        }
+    }
 
     private static final Comparator<ScheduledFutureTask<?>> SCHEDULED_FUTURE_TASK_COMPARATOR =
             new Comparator<ScheduledFutureTask<?>>() {
@@ -39,6 +55,8 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
             };
 
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue;
+    // Same instance as scheduledTaskQueue if the timing wheel is used, null otherwise.
+    private ScheduledTaskTimingWheel timingWheel;
 
     protected AbstractScheduledEventExecutor() {
     }
@@ -53,10 +71,15 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
 
     PriorityQueue<ScheduledFutureTask<?>> scheduledTaskQueue() {
         if (scheduledTaskQueue == null) {
-            scheduledTaskQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
-                    SCHEDULED_FUTURE_TASK_COMPARATOR,
-                    // Use same initial capacity as java.util.PriorityQueue
-                    11);
+            if (TIMING_WHEEL_TICK_NANOS > 0) {
+                timingWheel = new ScheduledTaskTimingWheel(SCHEDULED_FUTURE_TASK_COMPARATOR, TIMING_WHEEL_TICK_NANOS);
+                scheduledTaskQueue = timingWheel;
+            } else {
+                scheduledTaskQueue = new DefaultPriorityQueue<ScheduledFutureTask<?>>(
+                        SCHEDULED_FUTURE_TASK_COMPARATOR,
+                        // Use same initial capacity as java.util.PriorityQueue
+                        11);
+            }
         }
         return scheduledTaskQueue;
     }
@@ -101,6 +124,11 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
     protected final Runnable pollScheduledTask(long nanoTime) {
         assert inEventLoop();
 
+        ScheduledTaskTimingWheel timingWheel = this.timingWheel;
+        if (timingWheel != null) {
+            return timingWheel.pollExpired(nanoTime);
+        }
+
         Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
         ScheduledFutureTask<?> scheduledTask = scheduledTaskQueue == null ? null : scheduledTaskQueue.peek();
         if (scheduledTask == null) {
@@ -118,29 +146,36 @@ public abstract class AbstractScheduledEventExecutor extends AbstractEventExecut
      * Return the nanoseconds when the next scheduled task is ready to be run or {@code -1} if no task is scheduled.
      */
     protected final long nextScheduledTaskNano() {
-        Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
-        ScheduledFutureTask<?> scheduledTask = scheduledTaskQueue == null ? null : scheduledTaskQueue.peek();
-        if (scheduledTask == null) {
+        ScheduledTaskTimingWheel timingWheel = this.timingWheel;
+        long deadlineNanos = timingWheel != null ? timingWheel.exactNextDeadlineNanos()
+                                                 : nextScheduledTaskDeadlineNanos();
+        if (deadlineNanos == -1) {
             return -1;
         }
-        return Math.max(0, scheduledTask.deadlineNanos() - nanoTime());
+        return ScheduledFutureTask.deadlineToDelayNanos(deadlineNanos);
     }
 
-    final ScheduledFutureTask<?> peekScheduledTask() {
-        Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
-        if (scheduledTaskQueue == null) {
-            return null;
+    /**
+     * Return the deadline (in nanoseconds) when the next scheduled task is ready to be run or {@code -1}
+     * if no task is scheduled. The returned value may be earlier than the actual deadline, in which case no task will
+     * be ready yet once it is reached.
+     */
+    protected final long nextScheduledTaskDeadlineNanos() {
+        ScheduledTaskTimingWheel timingWheel = this.timingWheel;
+        if (timingWheel != null) {
+            return timingWheel.nextDeadlineNanos();
         }
-        return scheduledTaskQueue.peek();
+        Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
+        ScheduledFutureTask<?> scheduledTask = scheduledTaskQueue == null ? null : scheduledTaskQueue.peek();
+        return scheduledTask == null ? -1 : scheduledTask.deadlineNanos();
     }
 
     /**
      * Returns {@code true} if a scheduled task is ready for processing.
      */
     protected final boolean hasScheduledTasks() {
-        Queue<ScheduledFutureTask<?>> scheduledTaskQueue = this.scheduledTaskQueue;
-        ScheduledFutureTask<?> scheduledTask = scheduledTaskQueue == null ? null : scheduledTaskQueue.peek();
-        return scheduledTask != null && scheduledTask.deadlineNanos() <= nanoTime();
+        long deadlineNanos = nextScheduledTaskDeadlineNanos();
+        return deadlineNanos != -1 && deadlineNanos <= nanoTime();
     }
 
     @Override
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import io.netty.util.internal.DefaultPriorityQueue;
+import io.netty.util.internal.PriorityQueue;
+
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hierarchical timing wheel which stores the {@link ScheduledFutureTask}s of an
+ * {@link AbstractScheduledEventExecutor} as an alternative to a binary heap.
+ * <p>
+ * Tasks are put into buckets by their deadline divided by the tick duration. Each level of the wheel has 64 buckets
+ * and covers 64 times the range of the previous one, so adding and cancelling a task is {@code O(1)} no matter how
+ * many tasks are scheduled. Once the time of a bucket is reached its tasks are moved into the buckets of the lower
+ * levels, and finally into a small binary heap of expired tasks. This keeps the order of the tasks exact, the tick
+ * duration only controls how many tasks end up in the heap at once and how often tasks are moved between levels.
+ * <p>
+ * Like {@link DefaultPriorityQueue} this class is not thread-safe and must only be used from within the
+ * {@link EventExecutor}.
+ */
+final class ScheduledTaskTimingWheel extends AbstractQueue<ScheduledFutureTask<?>>
+        implements PriorityQueue<ScheduledFutureTask<?>> {
+
+    static final int NO_BUCKET = -1;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    // Ticks are never negative so 63 bits need to be covered.
+    private static final int LEVELS = (Long.SIZE - 1 + SLOT_BITS - 1) / SLOT_BITS;
+
+    private final long tickNanos;
+    private final DefaultPriorityQueue<ScheduledFutureTask<?>> expired;
+    private final ScheduledFutureTask<?>[] buckets = new ScheduledFutureTask<?>[LEVELS * SLOTS];
+    // One bit per bucket which is set if the bucket is not empty.
+    private final long[] occupied = new long[LEVELS];
+    // All tasks in the wheel have a tick greater than this, all tasks in the expired heap one that is less or equal.
+    private long currentTick;
+    private int wheelSize;
+
+    ScheduledTaskTimingWheel(Comparator<ScheduledFutureTask<?>> comparator, long tickNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos: " + tickNanos + " (expected: > 0)");
+        }
+        this.tickNanos = tickNanos;
+        expired = new DefaultPriorityQueue<ScheduledFutureTask<?>>(comparator, 11);
+    }
+
+    /**
+     * Returns the deadline of the next task or an earlier point in time if the exact deadline is not known without
+     * moving tasks between levels. Returns {@code -1} if no task is stored at all.
+     */
+    long nextDeadlineNanos() {
+        ScheduledFutureTask<?> task = expired.peek();
+        if (task != null) {
+            return task.deadlineNanos();
+        }
+        if (wheelSize == 0) {
+            return -1;
+        }
+        int level = firstOccupiedLevel();
+        return bucketStart(level, Long.numberOfTrailingZeros(occupied[level])) * tickNanos;
+    }
+
+    /**
+     * Returns the exact deadline of the next task or {@code -1} if no task is stored at all. In contrast to
+     * {@link #nextDeadlineNanos()} this may need to iterate over all tasks of a bucket.
+     */
+    long exactNextDeadlineNanos() {
+        ScheduledFutureTask<?> task = expired.peek();
+        if (task != null) {
+            return task.deadlineNanos();
+        }
+        if (wheelSize == 0) {
+            return -1;
+        }
+        int level = firstOccupiedLevel();
+        task = buckets[level * SLOTS + Long.numberOfTrailingZeros(occupied[level])];
+        long deadlineNanos = Long.MAX_VALUE;
+        do {
+            deadlineNanos = Math.min(deadlineNanos, task.deadlineNanos());
+            task = task.wheelNext;
+        } while (task != null);
+        return deadlineNanos;
+    }
+
+    /**
+     * Removes and returns the next task if its deadline is less or equal to the given {@code nanoTime}, otherwise
+     * returns {@code null}.
+     */
+    ScheduledFutureTask<?> pollExpired(long nanoTime) {
+        advance(tick(nanoTime));
+        ScheduledFutureTask<?> task = expired.peek();
+        if (task == null || task.deadlineNanos() > nanoTime) {
+            return null;
+        }
+        expired.poll();
+        return task;
+    }
+
+    @Override
+    public boolean offer(ScheduledFutureTask<?> task) {
+        long tick = tick(task.deadlineNanos());
+        if (tick <= currentTick) {
+            return expired.offer(task);
+        }
+        addToWheel(task, tick);
+        return true;
+    }
+
+    @Override
+    public ScheduledFutureTask<?> poll() {
+        ScheduledFutureTask<?> task = peek();
+        if (task != null) {
+            expired.poll();
+        }
+        return task;
+    }
+
+    @Override
+    public ScheduledFutureTask<?> peek() {
+        // Move the tasks of the earliest buckets into the expired heap, even if their time was not reached yet.
+        while (expired.isEmpty() && wheelSize != 0) {
+            int level = firstOccupiedLevel();
+            expireBucket(level, Long.numberOfTrailingZeros(occupied[level]));
+        }
+        return expired.peek();
+    }
+
+    @Override
+    public int size() {
+        return expired.size() + wheelSize;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof ScheduledFutureTask && removeTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof ScheduledFutureTask && containsTyped((ScheduledFutureTask<?>) o);
+    }
+
+    @Override
+    public boolean removeTyped(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket == NO_BUCKET) {
+            return expired.removeTyped(task);
+        }
+        removeFromWheel(task);
+        return true;
+    }
+
+    @Override
+    public boolean containsTyped(ScheduledFutureTask<?> task) {
+        return task.wheelBucket != NO_BUCKET || expired.containsTyped(task);
+    }
+
+    @Override
+    public void priorityChanged(ScheduledFutureTask<?> task) {
+        if (task.wheelBucket == NO_BUCKET) {
+            if (expired.containsTyped(task)) {
+                // The task may need to move back into the wheel.
+                expired.removeTyped(task);
+                offer(task);
+            }
+        } else {
+            removeFromWheel(task);
+            offer(task);
+        }
+    }
+
+    @Override
+    public void clear() {
+        expired.clear();
+        for (int i = 0; i < buckets.length; i++) {
+            ScheduledFutureTask<?> task = buckets[i];
+            while (task != null) {
+                ScheduledFutureTask<?> next = task.wheelNext;
+                unlink(task);
+                task = next;
+            }
+        }
+        Arrays.fill(buckets, null);
+        Arrays.fill(occupied, 0);
+        wheelSize = 0;
+    }
+
+    @Override
+    public void clearIgnoringIndexes() {
+        expired.clearIgnoringIndexes();
+        Arrays.fill(buckets, null);
+        Arrays.fill(occupied, 0);
+        wheelSize = 0;
+    }
+
+    @Override
+    public Iterator<ScheduledFutureTask<?>> iterator() {
+        return new WheelIterator();
+    }
+
+    private long tick(long nanos) {
+        return nanos <= 0 ? 0 : nanos / tickNanos;
+    }
+
+    private void addToWheel(ScheduledFutureTask<?> task, long tick) {
+        assert tick > currentTick;
+        // The level is given by the highest slot in which the tick differs from the current tick.
+        int level = (Long.SIZE - 1 - Long.numberOfLeadingZeros(tick ^ currentTick)) / SLOT_BITS;
+        int slot = (int) (tick >>> level * SLOT_BITS) & SLOT_MASK;
+        int bucket = level * SLOTS + slot;
+        ScheduledFutureTask<?> head = buckets[bucket];
+        if (head != null) {
+            head.wheelPrev = task;
+        }
+        task.wheelNext = head;
+        task.wheelBucket = bucket;
+        buckets[bucket] = task;
+        occupied[level] |= 1L << slot;
+        wheelSize++;
+    }
+
+    private void removeFromWheel(ScheduledFutureTask<?> task) {
+        int bucket = task.wheelBucket;
+        ScheduledFutureTask<?> prev = task.wheelPrev;
+        ScheduledFutureTask<?> next = task.wheelNext;
+        if (prev == null) {
+            buckets[bucket] = next;
+            if (next == null) {
+                occupied[bucket >>> SLOT_BITS] &= ~(1L << (bucket & SLOT_MASK));
+            }
+        } else {
+            prev.wheelNext = next;
+        }
+        if (next != null) {
+            next.wheelPrev = prev;
+        }
+        unlink(task);
+        wheelSize--;
+    }
+
+    private static void unlink(ScheduledFutureTask<?> task) {
+        task.wheelBucket = NO_BUCKET;
+        task.wheelPrev = null;
+        task.wheelNext = null;
+    }
+
+    private int firstOccupiedLevel() {
+        for (int level = 0; level < LEVELS; level++) {
+            if (occupied[level] != 0) {
+                return level;
+            }
+        }
+        throw new IllegalStateException("no occupied bucket");
+    }
+
+    /**
+     * Returns the first tick of the given bucket.
+     */
+    private long bucketStart(int level, int slot) {
+        int shift = (level + 1) * SLOT_BITS;
+        long prefix = shift >= Long.SIZE ? 0 : currentTick & -1L << shift;
+        return prefix | (long) slot << level * SLOT_BITS;
+    }
+
+    /**
+     * Moves all buckets whose time was reached to the lower levels respectively the expired heap.
+     */
+    private void advance(long tick) {
+        if (tick <= currentTick) {
+            return;
+        }
+        while (wheelSize != 0) {
+            // The first occupied bucket of the lowest level always contains the tasks with the lowest deadlines.
+            int level = firstOccupiedLevel();
+            int slot = Long.numberOfTrailingZeros(occupied[level]);
+            if (bucketStart(level, slot) > tick) {
+                break;
+            }
+            expireBucket(level, slot);
+        }
+        // All remaining buckets start after the given tick, so their position is still valid.
+        currentTick = tick;
+    }
+
+    private void expireBucket(int level, int slot) {
+        // All buckets of the lower levels are empty, so moving the current tick to the start of the bucket keeps
+        // the position of all other tasks valid.
+        currentTick = bucketStart(level, slot);
+        int bucket = level * SLOTS + slot;
+        ScheduledFutureTask<?> task = buckets[bucket];
+        buckets[bucket] = null;
+        occupied[level] &= ~(1L << slot);
+        while (task != null) {
+            ScheduledFutureTask<?> next = task.wheelNext;
+            unlink(task);
+            wheelSize--;
+            offer(task);
+            task = next;
+        }
+    }
+
+    private final class WheelIterator implements Iterator<ScheduledFutureTask<?>> {
+        private final Iterator<ScheduledFutureTask<?>> expiredIterator = expired.iterator();
+        private int bucket = -1;
+        private ScheduledFutureTask<?> next;
+
+        @Override
+        public boolean hasNext() {
+            if (expiredIterator.hasNext() || next != null) {
+                return true;
+            }
+            while (++bucket < buckets.length) {
+                next = buckets[bucket];
+                if (next != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public ScheduledFutureTask<?> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (expiredIterator.hasNext()) {
+                return expiredIterator.next();
+            }
+            ScheduledFutureTask<?> task = next;
+            next = task.wheelNext;
+            return task;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove");
+        }
+    }
+}
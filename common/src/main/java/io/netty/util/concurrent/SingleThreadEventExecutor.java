@@ -18,6 +18,7 @@ package io.netty.util.concurrent;
 import io.netty.util.internal.ObjectUtil;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
@@ -161,7 +162,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         super(parent);
         this.addTaskWakesUp = addTaskWakesUp;
         this.maxPendingTasks = Math.max(16, maxPendingTasks);
-        this.executor = ObjectUtil.checkNotNull(executor, "executor");
+        this.executor = ThreadExecutorMap.apply(executor, this);
         taskQueue = newTaskQueue(this.maxPendingTasks);
         rejectedExecutionHandler = ObjectUtil.checkNotNull(rejectedHandler, "rejectedHandler");
     }
@@ -231,8 +232,8 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
 
         BlockingQueue<Runnable> taskQueue = (BlockingQueue<Runnable>) this.taskQueue;
         for (;;) {
-            ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
-            if (scheduledTask == null) {
+            long deadlineNanos = nextScheduledTaskDeadlineNanos();
+            if (deadlineNanos == -1) {
                 Runnable task = null;
                 try {
                     task = taskQueue.take();
@@ -244,7 +245,7 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
                 }
                 return task;
             } else {
-                long delayNanos = scheduledTask.delayNanos();
+                long delayNanos = ScheduledFutureTask.deadlineToDelayNanos(deadlineNanos);
                 Runnable task = null;
                 if (delayNanos > 0) {
                     try {
@@ -435,12 +436,12 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      * Returns the amount of time left until the scheduled task with the closest dead line is executed.
      */
     protected long delayNanos(long currentTimeNanos) {
-        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
-        if (scheduledTask == null) {
+        long deadlineNanos = nextScheduledTaskDeadlineNanos();
+        if (deadlineNanos == -1) {
             return SCHEDULE_PURGE_INTERVAL;
         }
 
-        return scheduledTask.delayNanos(currentTimeNanos);
+        return ScheduledFutureTask.deadlineToDelayNanos(currentTimeNanos, deadlineNanos);
     }
 
     /**
@@ -449,11 +450,11 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
      */
     @UnstableApi
     protected long deadlineNanos() {
-        ScheduledFutureTask<?> scheduledTask = peekScheduledTask();
-        if (scheduledTask == null) {
+        long deadlineNanos = nextScheduledTaskDeadlineNanos();
+        if (deadlineNanos == -1) {
             return nanoTime() + SCHEDULE_PURGE_INTERVAL;
         }
-        return scheduledTask.deadlineNanos();
+        return deadlineNanos;
     }
 
     /**
@@ -778,6 +779,54 @@ public abstract class SingleThreadEventExecutor extends AbstractScheduledEventEx
         }
     }
 
+    /**
+     * Execute all the given tasks in iteration order. In contrast to calling {@link #execute(Runnable)} for each of
+     * the tasks this will wake up the thread at most once, which can save a lot of (possibly expensive) wakeups if
+     * many tasks are submitted from outside the {@link EventExecutor}.
+     * <p>
+     * If one of the tasks is rejected the tasks that were added before it will still be executed.
+     */
+    @UnstableApi
+    public void executeAll(Collection<? extends Runnable> tasks) {
+        ObjectUtil.checkNotNull(tasks, "tasks");
+        boolean inEventLoop = inEventLoop();
+        boolean wakeup = false;
+        int added = 0;
+        try {
+            for (Runnable task: tasks) {
+                addTask(task);
+                added++;
+                if (!wakeup && wakesUpForTask(task)) {
+                    wakeup = true;
+                }
+            }
+        } finally {
+            if (added > 0) {
+                if (!inEventLoop) {
+                    startThread();
+                }
+                if (!addTaskWakesUp && wakeup) {
+                    wakeup(inEventLoop);
+                }
+            }
+        }
+        if (!inEventLoop && isShutdown()) {
+            boolean reject = false;
+            try {
+                for (Runnable task: tasks) {
+                    if (removeTask(task)) {
+                        reject = true;
+                    }
+                }
+            } catch (UnsupportedOperationException e) {
+                // See execute(Runnable)
+            }
+            if (reject) {
+                reject();
+            }
+        }
+    }
+
     @Override
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
         throwIfInEventLoop("invokeAny");
@@ -245,6 +245,41 @@ public class HashedWheelTimerTest {
         timer.stop();
     }
 
+    @Test(timeout = 3000)
+    public void testCancelFromTimerTask() throws InterruptedException {
+        final HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 10,
+                TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Timeout toCancel = timer.newTimeout(createNoOpTimerTask(), 10, TimeUnit.MINUTES);
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                // The cancelled timeout is already transferred to its bucket and so is unlinked directly.
+                if (toCancel.cancel()) {
+                    latch.countDown();
+                }
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        latch.await();
+        assertTrue(toCancel.isCancelled());
+        assertEquals(0, timer.pendingTimeouts());
+        assertTrue(timer.stop().isEmpty());
+    }
+
+    @Test(timeout = 3000)
+    public void testCancelUpdatesPendingTimeoutsImmediately() {
+        final HashedWheelTimer timer = new HashedWheelTimer(Executors.defaultThreadFactory(), 100,
+                TimeUnit.MILLISECONDS, 32, true, 1);
+        Timeout timeout = timer.newTimeout(createNoOpTimerTask(), 5, TimeUnit.SECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, timer.pendingTimeouts());
+
+        // Should not be rejected as the cancelled timeout does not count anymore.
+        timer.newTimeout(createNoOpTimerTask(), 5, TimeUnit.SECONDS);
+        assertEquals(1, timer.stop().size());
+    }
+
     private static TimerTask createNoOpTimerTask() {
         return new TimerTask() {
             @Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardedHashedWheelTimerTest {
+
+    @Test(timeout = 5000)
+    public void testTimeoutsFromMultipleThreads() throws Exception {
+        final ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(
+                Executors.defaultThreadFactory(), 10, TimeUnit.MILLISECONDS, 64, 4);
+        final int threads = 8;
+        final int timeoutsPerThread = 100;
+        final CountDownLatch latch = new CountDownLatch(threads * timeoutsPerThread);
+        final TimerTask task = new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                latch.countDown();
+            }
+        };
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < timeoutsPerThread; j++) {
+                        timer.newTimeout(task, j % 20, TimeUnit.MILLISECONDS);
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        for (Thread worker: workers) {
+            worker.join();
+        }
+        latch.await();
+        assertEquals(0, timer.pendingTimeouts());
+        assertTrue(timer.stop().isEmpty());
+    }
+
+    @Test(timeout = 3000)
+    public void testDefaultShards() {
+        ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer();
+        assertEquals(Math.min(NettyRuntime.availableProcessors(), 8), timer.shards());
+        assertTrue(timer.stop().isEmpty());
+    }
+
+    @Test(timeout = 3000)
+    public void testCancelAndStop() {
+        ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(2);
+        assertEquals(2, timer.shards());
+        Timeout cancelled = timer.newTimeout(createNoOpTimerTask(), 10, TimeUnit.MINUTES);
+        Timeout pending = timer.newTimeout(createNoOpTimerTask(), 10, TimeUnit.MINUTES);
+        assertSame(timer, pending.timer());
+        assertEquals(2, timer.pendingTimeouts());
+        assertTrue(cancelled.cancel());
+        assertEquals(1, timer.pendingTimeouts());
+
+        Set<Timeout> unprocessed = timer.stop();
+        assertEquals(1, unprocessed.size());
+        assertTrue(unprocessed.contains(pending));
+        assertFalse(pending.isExpired());
+
+        try {
+            timer.newTimeout(createNoOpTimerTask(), 1, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+    }
+
+    @Test(timeout = 3000)
+    public void testStopFromTimerTask() throws InterruptedException {
+        final ShardedHashedWheelTimer timer = new ShardedHashedWheelTimer(2);
+        final CountDownLatch latch = new CountDownLatch(1);
+        timer.newTimeout(new TimerTask() {
+            @Override
+            public void run(Timeout timeout) {
+                try {
+                    timer.stop();
+                } catch (IllegalStateException expected) {
+                    latch.countDown();
+                }
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        latch.await();
+        timer.stop();
+    }
+
+    private static TimerTask createNoOpTimerTask() {
+        return new TimerTask() {
+            @Override
+            public void run(final Timeout timeout) throws Exception {
+            }
+        };
+    }
+}
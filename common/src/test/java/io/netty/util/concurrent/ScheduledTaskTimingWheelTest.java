@@ -0,0 +1,161 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.util.concurrent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ScheduledTaskTimingWheelTest {
+    private static final Comparator<ScheduledFutureTask<?>> COMPARATOR = new Comparator<ScheduledFutureTask<?>>() {
+        @Override
+        public int compare(ScheduledFutureTask<?> o1, ScheduledFutureTask<?> o2) {
+            return o1.compareTo(o2);
+        }
+    };
+
+    private static final Callable<Void> NOOP = new Callable<Void>() {
+        @Override
+        public Void call() {
+            return null;
+        }
+    };
+
+    private static ScheduledFutureTask<Void> newTask(long deadlineNanos) {
+        return new ScheduledFutureTask<Void>(GlobalEventExecutor.INSTANCE, NOOP, deadlineNanos);
+    }
+
+    @Test
+    public void testPollExpiredInOrder() {
+        testPollExpiredInOrder(1);
+        testPollExpiredInOrder(1000);
+        testPollExpiredInOrder(1000000);
+    }
+
+    private static void testPollExpiredInOrder(long tickNanos) {
+        Random random = new Random(tickNanos);
+        ScheduledTaskTimingWheel wheel = new ScheduledTaskTimingWheel(COMPARATOR, tickNanos);
+        List<ScheduledFutureTask<?>> tasks = new ArrayList<ScheduledFutureTask<?>>();
+        for (int i = 0; i < 10000; i++) {
+            long deadline;
+            switch (random.nextInt(4)) {
+                case 0:
+                    deadline = random.nextInt(1000);
+                    break;
+                case 1:
+                    deadline = random.nextInt(100000000);
+                    break;
+                case 2:
+                    deadline = random.nextLong() & Long.MAX_VALUE;
+                    break;
+                default:
+                    deadline = Long.MAX_VALUE;
+                    break;
+            }
+            ScheduledFutureTask<?> task = newTask(deadline);
+            tasks.add(task);
+            assertTrue(wheel.offer(task));
+        }
+        assertEquals(tasks.size(), wheel.size());
+
+        // Cancel some of the tasks.
+        for (int i = 0; i < tasks.size(); i += 3) {
+            ScheduledFutureTask<?> task = tasks.get(i);
+            assertTrue(wheel.containsTyped(task));
+            assertTrue(wheel.removeTyped(task));
+            assertFalse(wheel.containsTyped(task));
+        }
+
+        long now = 0;
+        long last = -1;
+        int polled = 0;
+        while (!wheel.isEmpty()) {
+            long nextDeadline = wheel.nextDeadlineNanos();
+            assertTrue(nextDeadline >= 0);
+            // Jump to the next deadline or do a smaller step to also test not yet expired buckets.
+            now = random.nextBoolean() ? nextDeadline : now + (nextDeadline - now) / 2;
+            ScheduledFutureTask<?> task;
+            while ((task = wheel.pollExpired(now)) != null) {
+                assertTrue(task.deadlineNanos() <= now);
+                assertTrue(task.deadlineNanos() >= last);
+                // The lower bound must never be after the actual deadline.
+                assertTrue(nextDeadline <= task.deadlineNanos());
+                last = task.deadlineNanos();
+                polled++;
+            }
+            if (now == Long.MAX_VALUE) {
+                break;
+            }
+        }
+        assertTrue(wheel.isEmpty());
+        assertEquals(tasks.size() - (tasks.size() + 2) / 3, polled);
+        assertEquals(-1, wheel.nextDeadlineNanos());
+    }
+
+    @Test
+    public void testQueueMethods() {
+        ScheduledTaskTimingWheel wheel = new ScheduledTaskTimingWheel(COMPARATOR, 1000);
+        ScheduledFutureTask<?> a = newTask(5000000);
+        ScheduledFutureTask<?> b = newTask(5);
+        ScheduledFutureTask<?> c = newTask(Long.MAX_VALUE);
+        ScheduledFutureTask<?> d = newTask(5000001);
+        wheel.add(a);
+        wheel.add(b);
+        wheel.add(c);
+        wheel.add(d);
+        assertEquals(4, wheel.size());
+
+        Set<ScheduledFutureTask<?>> all = new HashSet<ScheduledFutureTask<?>>();
+        for (ScheduledFutureTask<?> task: wheel) {
+            assertTrue(all.add(task));
+        }
+        assertEquals(4, all.size());
+        assertEquals(4, wheel.toArray().length);
+
+        assertSame(b, wheel.peek());
+        assertSame(b, wheel.poll());
+        assertSame(a, wheel.poll());
+        assertTrue(wheel.remove(c));
+        assertFalse(wheel.contains(c));
+        assertSame(d, wheel.peek());
+        // Adding a task with an earlier deadline after peek() moved the current tick must still work.
+        ScheduledFutureTask<?> e = newTask(10);
+        wheel.add(e);
+        assertSame(e, wheel.poll());
+        assertSame(d, wheel.poll());
+        assertNull(wheel.poll());
+        assertTrue(wheel.isEmpty());
+
+        wheel.add(a);
+        wheel.add(b);
+        wheel.clear();
+        assertTrue(wheel.isEmpty());
+        assertEquals(ScheduledTaskTimingWheel.NO_BUCKET, a.wheelBucket);
+        assertNull(wheel.pollExpired(Long.MAX_VALUE));
+    }
+}
@@ -54,6 +54,9 @@ import java.util.concurrent.Future;
  * <p>
  * The {@link FlushConsolidationHandler} should be put as first {@link ChannelHandler} in the
  * {@link ChannelPipeline} to have the best effect.
+ * <p>
+ * If the consolidation should apply to every {@link Channel} without adding a handler, consider using
+ * {@link io.netty.channel.ChannelOption#FLUSH_CONSOLIDATION} instead.
  */
 public class FlushConsolidationHandler extends ChannelDuplexHandler {
     private final int explicitFlushAfterFlushes;
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.timeout;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A timer which can be shared by {@link IdleStateHandler}s, {@link ReadTimeoutHandler}s and
+ * {@link WriteTimeoutHandler}s to coalesce their timeouts.
+ * <p>
+ * By default each of these handlers schedules its own tasks via {@link EventExecutor#schedule}, which means that
+ * every connection keeps up to three tasks in the scheduled task queue of its {@link EventExecutor}, and each of
+ * them is re-scheduled whenever it fires. When such a handler is created with a {@link CoalescedIdleTimer} all its
+ * timeouts are instead stored in a coarse timing wheel that is kept per {@link EventExecutor}. Only a single task
+ * per {@link EventExecutor} is scheduled, which advances the wheel once per tick. Adding and removing a timeout is
+ * a constant time operation that does not allocate.
+ * <p>
+ * The events that are triggered are the same as without the timer, but they may be triggered up to one tick duration
+ * later than the configured timeout. Timeouts are never triggered early.
+ */
+@UnstableApi
+public final class CoalescedIdleTimer {
+
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(CoalescedIdleTimer.class);
+    private static final long MIN_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int WHEEL_SIZE = 512;
+
+    private final long tickNanos;
+    private final FastThreadLocal<Wheel> wheels = new FastThreadLocal<Wheel>();
+
+    /**
+     * Creates a new instance.
+     *
+     * @param tickDuration  the duration between two ticks, which is the precision of the timeouts
+     * @param unit          the {@link TimeUnit} of {@code tickDuration}
+     */
+    public CoalescedIdleTimer(long tickDuration, TimeUnit unit) {
+        ObjectUtil.checkNotNull(unit, "unit");
+        tickNanos = Math.max(unit.toNanos(ObjectUtil.checkPositive(tickDuration, "tickDuration")), MIN_TICK_NANOS);
+    }
+
+    /**
+     * Returns the duration between two ticks in the given {@link TimeUnit}.
+     */
+    public long tickDuration(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Schedules the {@link Task} to be run after the given delay. Must be called from the {@link EventExecutor}.
+     */
+    void schedule(EventExecutor executor, Task task, long delayNanos) {
+        assert executor.inEventLoop();
+        Wheel first = wheels.get();
+        Wheel wheel = first;
+        // Usually a thread only serves a single EventExecutor, so the chain has only one element.
+        while (wheel != null && wheel.executor != executor) {
+            wheel = wheel.nextWheel;
+        }
+        if (wheel == null) {
+            wheel = new Wheel(executor, first);
+            wheels.set(wheel);
+        }
+        wheel.add(task, delayNanos);
+    }
+
+    /**
+     * Cancels the {@link Task} if it is scheduled. Can be called from any thread.
+     */
+    void cancel(final Task task) {
+        final Wheel wheel = task.wheel;
+        if (wheel == null) {
+            return;
+        }
+        if (wheel.executor.inEventLoop()) {
+            wheel.remove(task);
+        } else {
+            try {
+                wheel.executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (task.wheel == wheel) {
+                            wheel.remove(task);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ignore) {
+                // The EventExecutor was shut down, so the task will never run anyway.
+            }
+        }
+    }
+
+    /**
+     * A task that can be scheduled by a {@link CoalescedIdleTimer}. Each instance acts as node of the linked-list
+     * of its bucket, so no extra objects are created when it is scheduled.
+     */
+    abstract static class Task implements Runnable {
+        // Only accessed by the EventExecutor of the wheel.
+        Wheel wheel;
+        int bucket;
+        long deadlineNanos;
+        Task prevInBucket;
+        Task nextInBucket;
+    }
+
+    private final class Wheel implements Runnable {
+        private final EventExecutor executor;
+        // Wheel of another EventExecutor that is served by the same thread.
+        private final Wheel nextWheel;
+        private final Task[] heads = new Task[WHEEL_SIZE];
+        private final long startTime = System.nanoTime();
+        // The last tick whose bucket was expired.
+        private long processedTick = -1;
+        private int size;
+        private ScheduledFuture<?> tickFuture;
+
+        Wheel(EventExecutor executor, Wheel nextWheel) {
+            this.executor = executor;
+            this.nextWheel = nextWheel;
+        }
+
+        void add(Task task, long delayNanos) {
+            if (task.wheel != null) {
+                remove(task);
+            }
+            long deadline = System.nanoTime() + Math.max(0, delayNanos);
+            // Round up so we never run a task before its deadline, and never add to a bucket that was already
+            // processed in the current round.
+            long tick = Math.max((deadline - startTime + tickNanos - 1) / tickNanos, processedTick + 1);
+            int bucket = (int) (tick & (WHEEL_SIZE - 1));
+
+            task.wheel = this;
+            task.bucket = bucket;
+            task.deadlineNanos = deadline;
+            Task head = heads[bucket];
+            task.nextInBucket = head;
+            if (head != null) {
+                head.prevInBucket = task;
+            }
+            heads[bucket] = task;
+
+            if (size++ == 0 && tickFuture == null) {
+                scheduleTick();
+            }
+        }
+
+        void remove(Task task) {
+            assert task.wheel == this;
+            Task prev = task.prevInBucket;
+            Task next = task.nextInBucket;
+            if (prev == null) {
+                heads[task.bucket] = next;
+            } else {
+                prev.nextInBucket = next;
+            }
+            if (next != null) {
+                next.prevInBucket = prev;
+            }
+            task.prevInBucket = null;
+            task.nextInBucket = null;
+            task.wheel = null;
+            size--;
+        }
+
+        private void scheduleTick() {
+            long nextTickTime = startTime + (processedTick + 1) * tickNanos;
+            tickFuture = executor.schedule(this, nextTickTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run() {
+            tickFuture = null;
+            long now = System.nanoTime();
+            long currentTick = (now - startTime) / tickNanos;
+            // If we fell behind for more than a full round, each bucket needs to be visited only once.
+            long firstTick = Math.max(processedTick + 1, currentTick - WHEEL_SIZE + 1);
+            for (long tick = firstTick; tick <= currentTick; tick++) {
+                processedTick = tick;
+                expire((int) (tick & (WHEEL_SIZE - 1)), now);
+            }
+            processedTick = Math.max(processedTick, currentTick);
+            if (size > 0 && tickFuture == null) {
+                scheduleTick();
+            }
+        }
+
+        private void expire(int bucket, long now) {
+            Task task = heads[bucket];
+            while (task != null) {
+                Task next = task.nextInBucket;
+                if (task.deadlineNanos - now <= 0) {
+                    remove(task);
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        logger.warn("An exception was thrown by {}.", task.getClass().getName(), t);
+                    }
+                    // The task may have removed or re-added the next task, in which case we start over with the
+                    // bucket. Tasks that are added while running are never due in this bucket, so this terminates.
+                    if (next != null && (next.wheel != this || next.bucket != bucket)) {
+                        next = heads[bucket];
+                    }
+                }
+                task = next;
+            }
+        }
+    }
+}
@@ -111,16 +111,20 @@ public class IdleStateHandler extends ChannelDuplexHandler {
     private final long readerIdleTimeNanos;
     private final long writerIdleTimeNanos;
     private final long allIdleTimeNanos;
+    private final CoalescedIdleTimer timer;
 
     private ScheduledFuture<?> readerIdleTimeout;
+    private AbstractIdleTask readerIdleTask;
     private long lastReadTime;
     private boolean firstReaderIdleEvent = true;
 
     private ScheduledFuture<?> writerIdleTimeout;
+    private AbstractIdleTask writerIdleTask;
     private long lastWriteTime;
     private boolean firstWriterIdleEvent = true;
 
     private ScheduledFuture<?> allIdleTimeout;
+    private AbstractIdleTask allIdleTask;
     private boolean firstAllIdleEvent = true;
 
     private byte state; // 0 - none, 1 - initialized, 2 - destroyed
@@ -189,11 +193,43 @@ public class IdleStateHandler extends ChannelDuplexHandler {
     public IdleStateHandler(boolean observeOutput,
             long readerIdleTime, long writerIdleTime, long allIdleTime,
             TimeUnit unit) {
+        this(observeOutput, readerIdleTime, writerIdleTime, allIdleTime, unit, null);
+    }
+
+    /**
+     * Creates a new instance firing {@link IdleStateEvent}s.
+     *
+     * @param observeOutput
+     *        whether or not the consumption of {@code bytes} should be taken into
+     *        consideration when assessing write idleness. The default is {@code false}.
+     * @param readerIdleTime
+     *        an {@link IdleStateEvent} whose state is {@link IdleState#READER_IDLE}
+     *        will be triggered when no read was performed for the specified
+     *        period of time.  Specify {@code 0} to disable.
+     * @param writerIdleTime
+     *        an {@link IdleStateEvent} whose state is {@link IdleState#WRITER_IDLE}
+     *        will be triggered when no write was performed for the specified
+     *        period of time.  Specify {@code 0} to disable.
+     * @param allIdleTime
+     *        an {@link IdleStateEvent} whose state is {@link IdleState#ALL_IDLE}
+     *        will be triggered when neither read nor write was performed for
+     *        the specified period of time.  Specify {@code 0} to disable.
+     * @param unit
+     *        the {@link TimeUnit} of {@code readerIdleTime},
+     *        {@code writeIdleTime}, and {@code allIdleTime}
+     * @param timer
+     *        the {@link CoalescedIdleTimer} that is used to schedule the idle checks, or {@code null}
+     *        if they should be scheduled on the {@link io.netty.util.concurrent.EventExecutor} directly.
+     */
+    public IdleStateHandler(boolean observeOutput,
+            long readerIdleTime, long writerIdleTime, long allIdleTime,
+            TimeUnit unit, CoalescedIdleTimer timer) {
         if (unit == null) {
             throw new NullPointerException("unit");
         }
 
         this.observeOutput = observeOutput;
+        this.timer = timer;
 
         if (readerIdleTime <= 0) {
             readerIdleTimeNanos = 0;
@@ -319,15 +355,18 @@ public class IdleStateHandler extends ChannelDuplexHandler {
 
         lastReadTime = lastWriteTime = ticksInNanos();
         if (readerIdleTimeNanos > 0) {
-            readerIdleTimeout = schedule(ctx, new ReaderIdleTimeoutTask(ctx),
+            readerIdleTask = new ReaderIdleTimeoutTask(ctx);
+            readerIdleTimeout = schedule(ctx, readerIdleTask,
                     readerIdleTimeNanos, TimeUnit.NANOSECONDS);
         }
         if (writerIdleTimeNanos > 0) {
-            writerIdleTimeout = schedule(ctx, new WriterIdleTimeoutTask(ctx),
+            writerIdleTask = new WriterIdleTimeoutTask(ctx);
+            writerIdleTimeout = schedule(ctx, writerIdleTask,
                     writerIdleTimeNanos, TimeUnit.NANOSECONDS);
         }
         if (allIdleTimeNanos > 0) {
-            allIdleTimeout = schedule(ctx, new AllIdleTimeoutTask(ctx),
+            allIdleTask = new AllIdleTimeoutTask(ctx);
+            allIdleTimeout = schedule(ctx, allIdleTask,
                     allIdleTimeNanos, TimeUnit.NANOSECONDS);
         }
     }
@@ -343,12 +382,24 @@ public class IdleStateHandler extends ChannelDuplexHandler {
      * This method is visible for testing!
      */
     ScheduledFuture<?> schedule(ChannelHandlerContext ctx, Runnable task, long delay, TimeUnit unit) {
+        if (timer != null) {
+            // The task is cancelled via the timer in destroy().
+            timer.schedule(ctx.executor(), (AbstractIdleTask) task, unit.toNanos(delay));
+            return null;
+        }
         return ctx.executor().schedule(task, delay, unit);
     }
 
     private void destroy() {
         state = 2;
 
+        if (timer != null) {
+            cancel(timer, readerIdleTask);
+            cancel(timer, writerIdleTask);
+            cancel(timer, allIdleTask);
+        }
+        readerIdleTask = writerIdleTask = allIdleTask = null;
+
         if (readerIdleTimeout != null) {
             readerIdleTimeout.cancel(false);
             readerIdleTimeout = null;
@@ -363,6 +414,12 @@ public class IdleStateHandler extends ChannelDuplexHandler {
         }
     }
 
+    private static void cancel(CoalescedIdleTimer timer, AbstractIdleTask task) {
+        if (task != null) {
+            timer.cancel(task);
+        }
+    }
+
     /**
      * Is called when an {@link IdleStateEvent} should be fired. This implementation calls
      * {@link ChannelHandlerContext#fireUserEventTriggered(Object)}.
@@ -449,7 +506,7 @@ public class IdleStateHandler extends ChannelDuplexHandler {
         return false;
     }
 
-    private abstract static class AbstractIdleTask implements Runnable {
+    private abstract static class AbstractIdleTask extends CoalescedIdleTimer.Task {
 
         private final ChannelHandlerContext ctx;
 
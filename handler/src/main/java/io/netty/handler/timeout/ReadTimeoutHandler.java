@@ -84,6 +84,21 @@ public class ReadTimeoutHandler extends IdleStateHandler {
         super(timeout, 0, 0, unit);
     }
 
+    /**
+     * Creates a new instance.
+     *
+     * @param timeout
+     *        read timeout
+     * @param unit
+     *        the {@link TimeUnit} of {@code timeout}
+     * @param timer
+     *        the {@link CoalescedIdleTimer} that is used to detect the timeout, or {@code null}
+     *        if the timeout should be scheduled on the {@link io.netty.util.concurrent.EventExecutor} directly.
+     */
+    public ReadTimeoutHandler(long timeout, TimeUnit unit, CoalescedIdleTimer timer) {
+        super(false, timeout, 0, 0, unit, timer);
+    }
+
     @Override
     protected final void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) throws Exception {
         assert evt.state() == IdleState.READER_IDLE;
@@ -66,6 +66,7 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
     private static final long MIN_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
 
     private final long timeoutNanos;
+    private final CoalescedIdleTimer timer;
 
     /**
      * A doubly-linked list to track all WriteTimeoutTasks
@@ -93,9 +94,25 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
      *        the {@link TimeUnit} of {@code timeout}
      */
     public WriteTimeoutHandler(long timeout, TimeUnit unit) {
+        this(timeout, unit, null);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param timeout
+     *        write timeout
+     * @param unit
+     *        the {@link TimeUnit} of {@code timeout}
+     * @param timer
+     *        the {@link CoalescedIdleTimer} that is used to detect the timeouts, or {@code null}
+     *        if they should be scheduled on the {@link io.netty.util.concurrent.EventExecutor} directly.
+     */
+    public WriteTimeoutHandler(long timeout, TimeUnit unit, CoalescedIdleTimer timer) {
         if (unit == null) {
             throw new NullPointerException("unit");
         }
+        this.timer = timer;
 
         if (timeout <= 0) {
             timeoutNanos = 0;
@@ -118,7 +135,7 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
         WriteTimeoutTask task = lastTask;
         lastTask = null;
         while (task != null) {
-            task.scheduledFuture.cancel(false);
+            task.cancel();
             WriteTimeoutTask prev = task.prev;
             task.prev = null;
             task.next = null;
@@ -129,9 +146,13 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
     private void scheduleTimeout(final ChannelHandlerContext ctx, final ChannelPromise promise) {
         // Schedule a timeout.
         final WriteTimeoutTask task = new WriteTimeoutTask(ctx, promise);
-        task.scheduledFuture = ctx.executor().schedule(task, timeoutNanos, TimeUnit.NANOSECONDS);
+        if (timer != null) {
+            timer.schedule(ctx.executor(), task, timeoutNanos);
+        } else {
+            task.scheduledFuture = ctx.executor().schedule(task, timeoutNanos, TimeUnit.NANOSECONDS);
+        }
 
-        if (!task.scheduledFuture.isDone()) {
+        if (task.scheduledFuture == null || !task.scheduledFuture.isDone()) {
             addWriteTimeoutTask(task);
 
             // Cancel the scheduled timeout if the flush promise is complete.
@@ -180,7 +201,7 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
         }
     }
 
-    private final class WriteTimeoutTask implements Runnable, ChannelFutureListener {
+    private final class WriteTimeoutTask extends CoalescedIdleTimer.Task implements ChannelFutureListener {
 
         private final ChannelHandlerContext ctx;
         private final ChannelPromise promise;
@@ -214,8 +235,16 @@ public class WriteTimeoutHandler extends ChannelOutboundHandlerAdapter {
         @Override
         public void operationComplete(ChannelFuture future) throws Exception {
             // scheduledFuture has already be set when reaching here
-            scheduledFuture.cancel(false);
+            cancel();
             removeWriteTimeoutTask(this);
         }
+
+        void cancel() {
+            if (scheduledFuture != null) {
+                scheduledFuture.cancel(false);
+            } else {
+                timer.cancel(this);
+            }
+        }
     }
 }
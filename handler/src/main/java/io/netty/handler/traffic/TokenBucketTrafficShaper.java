@@ -0,0 +1,320 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.traffic;
+
+import io.netty.util.concurrent.FastThreadLocal;
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * Holds the global read and write limits that are shared by all the {@link TokenBucketTrafficShapingHandler}s
+ * created with it.
+ * <p>
+ * Each limit is enforced by a token bucket which is refilled lazily from {@link System#nanoTime()} using only
+ * atomic operations. To keep the contention on the shared bucket low every {@link Thread} (usually an
+ * {@link io.netty.channel.EventLoop}) takes its tokens in chunks of roughly one millisecond worth of traffic and
+ * hands them out to its own channels without any synchronization.
+ * <p>
+ * In contrast to {@link GlobalChannelTrafficShapingHandler} no {@link TrafficCounter} is involved, so there is
+ * no check interval and the limits are enforced continuously, with bursts bounded by {@code maxBurstMillis}.
+ */
+@UnstableApi
+public final class TokenBucketTrafficShaper {
+
+    /**
+     * Default maximum burst in milliseconds: 100 ms.
+     */
+    public static final long DEFAULT_MAX_BURST_MILLIS = 100;
+
+    private final long writeLimit;
+    private final long readLimit;
+    private final long maxBurstNanos;
+    private final GlobalBucket writeBucket;
+    private final GlobalBucket readBucket;
+    private final FastThreadLocal<LoopBucket> writeLoopBuckets;
+    private final FastThreadLocal<LoopBucket> readLoopBuckets;
+    private final LongCounter writtenBytes = PlatformDependent.newLongCounter();
+    private final LongCounter readBytes = PlatformDependent.newLongCounter();
+
+    /**
+     * Create a new instance.
+     *
+     * @param writeLimit
+     *          the global write limit in bytes per second, {@code 0} means no limit.
+     * @param readLimit
+     *          the global read limit in bytes per second, {@code 0} means no limit.
+     */
+    public TokenBucketTrafficShaper(long writeLimit, long readLimit) {
+        this(writeLimit, readLimit, DEFAULT_MAX_BURST_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param writeLimit
+     *          the global write limit in bytes per second, {@code 0} means no limit.
+     * @param readLimit
+     *          the global read limit in bytes per second, {@code 0} means no limit.
+     * @param maxBurst
+     *          the maximum amount of time worth of traffic that can be accumulated while the traffic is below
+     *          the limits. This applies to the global and the per channel limits.
+     * @param unit
+     *          the {@link TimeUnit} of {@code maxBurst}.
+     */
+    public TokenBucketTrafficShaper(long writeLimit, long readLimit, long maxBurst, TimeUnit unit) {
+        this.writeLimit = checkPositiveOrZero(writeLimit, "writeLimit");
+        this.readLimit = checkPositiveOrZero(readLimit, "readLimit");
+        if (unit == null) {
+            throw new NullPointerException("unit");
+        }
+        maxBurstNanos = checkPositive(unit.toNanos(maxBurst), "maxBurst");
+        writeBucket = writeLimit == 0 ? null : new GlobalBucket(writeLimit, maxBurstNanos);
+        readBucket = readLimit == 0 ? null : new GlobalBucket(readLimit, maxBurstNanos);
+        writeLoopBuckets = newLoopBuckets(writeBucket);
+        readLoopBuckets = newLoopBuckets(readBucket);
+    }
+
+    private static FastThreadLocal<LoopBucket> newLoopBuckets(final GlobalBucket bucket) {
+        if (bucket == null) {
+            return null;
+        }
+        return new FastThreadLocal<LoopBucket>() {
+            @Override
+            protected LoopBucket initialValue() {
+                return new LoopBucket(bucket);
+            }
+        };
+    }
+
+    /**
+     * Returns the global write limit in bytes per second, {@code 0} means no limit.
+     */
+    public long writeLimit() {
+        return writeLimit;
+    }
+
+    /**
+     * Returns the global read limit in bytes per second, {@code 0} means no limit.
+     */
+    public long readLimit() {
+        return readLimit;
+    }
+
+    /**
+     * Returns the maximum burst in nanoseconds.
+     */
+    public long maxBurstNanos() {
+        return maxBurstNanos;
+    }
+
+    /**
+     * Returns the number of bytes written by all the channels shaped by this instance.
+     */
+    public long cumulativeWrittenBytes() {
+        return writtenBytes.value();
+    }
+
+    /**
+     * Returns the number of bytes read by all the channels shaped by this instance.
+     */
+    public long cumulativeReadBytes() {
+        return readBytes.value();
+    }
+
+    /**
+     * Returns the write bucket of the calling {@link Thread} or {@code null} if writes are not limited globally.
+     */
+    LoopBucket writeBucket() {
+        return writeLoopBuckets == null ? null : writeLoopBuckets.get();
+    }
+
+    /**
+     * Returns the read bucket of the calling {@link Thread} or {@code null} if reads are not limited globally.
+     */
+    LoopBucket readBucket() {
+        return readLoopBuckets == null ? null : readLoopBuckets.get();
+    }
+
+    void written(long bytes) {
+        writtenBytes.add(bytes);
+    }
+
+    void read(long bytes) {
+        readBytes.add(bytes);
+    }
+
+    static long bucketCapacity(long limit, long maxBurstNanos) {
+        long capacity = (long) (limit * (maxBurstNanos / (double) TimeUnit.SECONDS.toNanos(1)));
+        return Math.max(1, capacity);
+    }
+
+    static long delayNanos(long tokens, long limit) {
+        // Time needed to get back to at least one token.
+        return (long) ((1 - tokens) * (TimeUnit.SECONDS.toNanos(1) / (double) limit));
+    }
+
+    /**
+     * Token bucket shared between all threads. Tokens may go negative, which is a debt paid back by the refill, so
+     * a single message bigger than the bucket capacity can still be sent.
+     */
+    static final class GlobalBucket {
+        private final long limit;
+        private final long capacity;
+        private final double nanosPerToken;
+        private final AtomicLong tokens;
+        private final AtomicLong lastRefillNanos;
+
+        GlobalBucket(long limit, long maxBurstNanos) {
+            this.limit = limit;
+            capacity = bucketCapacity(limit, maxBurstNanos);
+            nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double) limit;
+            tokens = new AtomicLong(capacity);
+            lastRefillNanos = new AtomicLong(System.nanoTime());
+        }
+
+        long limit() {
+            return limit;
+        }
+
+        long capacity() {
+            return capacity;
+        }
+
+        /**
+         * Take {@code amount} tokens if at least one token is available.
+         *
+         * @return the number of tokens taken, which is either {@code amount} or {@code 0}.
+         */
+        long take(long amount, long now) {
+            refill(now);
+            for (;;) {
+                long current = tokens.get();
+                if (current <= 0) {
+                    return 0;
+                }
+                if (tokens.compareAndSet(current, current - amount)) {
+                    return amount;
+                }
+            }
+        }
+
+        void consume(long amount) {
+            tokens.addAndGet(-amount);
+        }
+
+        long delayNanos(long now) {
+            refill(now);
+            long current = tokens.get();
+            return current > 0 ? 0 : TokenBucketTrafficShaper.delayNanos(current, limit);
+        }
+
+        private void refill(long now) {
+            long last = lastRefillNanos.get();
+            long elapsed = now - last;
+            if (elapsed < nanosPerToken) {
+                return;
+            }
+            long added = (long) (elapsed / nanosPerToken);
+            // Only account for the time that was converted into tokens so fractions are not lost.
+            if (!lastRefillNanos.compareAndSet(last, last + (long) (added * nanosPerToken))) {
+                // Someone else refilled concurrently.
+                return;
+            }
+            for (;;) {
+                long current = tokens.get();
+                long next = current + Math.min(added, capacity);
+                if (next > capacity) {
+                    next = Math.max(current, capacity);
+                }
+                if (tokens.compareAndSet(current, next)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread confined view of a {@link GlobalBucket} which caches a chunk of its tokens.
+     */
+    static final class LoopBucket {
+        private final GlobalBucket bucket;
+        private final long chunk;
+        private long tokens;
+
+        LoopBucket(GlobalBucket bucket) {
+            this.bucket = bucket;
+            // Roughly one millisecond worth of traffic.
+            chunk = Math.max(1, Math.min(bucket.capacity(), bucket.limit() / 1000));
+        }
+
+        long delayNanos(long now) {
+            if (tokens > 0) {
+                return 0;
+            }
+            tokens = bucket.take(chunk, now);
+            return tokens > 0 ? 0 : bucket.delayNanos(now);
+        }
+
+        void consume(long bytes) {
+            tokens -= bytes;
+            if (tokens < 0) {
+                // Move the debt to the shared bucket right away so other threads see it.
+                bucket.consume(-tokens);
+                tokens = 0;
+            }
+        }
+    }
+
+    /**
+     * Token bucket of a single channel, only accessed from the channel's executor.
+     */
+    static final class ChannelBucket {
+        private final long limit;
+        private final long capacity;
+        private final double nanosPerToken;
+        private long tokens;
+        private long lastRefillNanos;
+
+        ChannelBucket(long limit, long maxBurstNanos) {
+            this.limit = limit;
+            capacity = bucketCapacity(limit, maxBurstNanos);
+            nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double) limit;
+            tokens = capacity;
+            lastRefillNanos = System.nanoTime();
+        }
+
+        long delayNanos(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed >= nanosPerToken) {
+                long added = (long) (elapsed / nanosPerToken);
+                lastRefillNanos += (long) (added * nanosPerToken);
+                tokens = Math.min(capacity, tokens + added);
+            }
+            return tokens > 0 ? 0 : TokenBucketTrafficShaper.delayNanos(tokens, limit);
+        }
+
+        void consume(long bytes) {
+            tokens -= bytes;
+        }
+    }
+}
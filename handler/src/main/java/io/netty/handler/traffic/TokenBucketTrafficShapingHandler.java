@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.traffic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.channel.PendingWriteQueue;
+import io.netty.handler.traffic.TokenBucketTrafficShaper.ChannelBucket;
+import io.netty.handler.traffic.TokenBucketTrafficShaper.LoopBucket;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.UnstableApi;
+
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * Shapes the traffic of a single channel against its own limits and the global limits of a shared
+ * {@link TokenBucketTrafficShaper}.
+ * <p>
+ * A write is passed through directly as long as both the channel and the global bucket hold tokens, otherwise it
+ * is kept in a {@link PendingWriteQueue} until the buckets are refilled. Both buckets may go into debt, so messages
+ * bigger than the bucket capacity are sent without being split. While more than {@code maxQueueSize} bytes are
+ * queued the channel is marked as not writable via
+ * {@link ChannelOutboundBuffer#setUserDefinedWritability(int, boolean)}.
+ * <p>
+ * Reads are accounted after the fact: once a bucket is in debt, reading is suspended until it is paid back.
+ * <p>
+ * Unlike the other traffic shaping handlers this handler is not {@link Sharable}, create one instance per channel
+ * and share the {@link TokenBucketTrafficShaper} instead:
+ * <pre>
+ * TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(globalWriteLimit, globalReadLimit);
+ * ...
+ * pipeline.addLast(new TokenBucketTrafficShapingHandler(shaper, channelWriteLimit, channelReadLimit));
+ * </pre>
+ */
+@UnstableApi
+public class TokenBucketTrafficShapingHandler extends ChannelDuplexHandler {
+
+    /**
+     * Default max size to not exceed in the pending write queue before the channel is marked as not writable:
+     * 4MB.
+     */
+    public static final long DEFAULT_MAX_QUEUE_SIZE = 4 * 1024 * 1024L;
+
+    /**
+     * Index used for {@link ChannelOutboundBuffer#setUserDefinedWritability(int, boolean)}.
+     */
+    static final int USER_DEFINED_WRITABILITY_INDEX = 4;
+
+    private final TokenBucketTrafficShaper shaper;
+    private final long writeLimit;
+    private final long readLimit;
+    private final long maxQueueSize;
+
+    private ChannelHandlerContext ctx;
+    private PendingWriteQueue queue;
+    private ChannelBucket writeBucket;
+    private ChannelBucket readBucket;
+    private ScheduledFuture<?> writeFuture;
+    private ScheduledFuture<?> readFuture;
+    private boolean flushPending;
+    private boolean writeSuspended;
+    private boolean readSuspended;
+    private boolean readPending;
+    private boolean autoReadDisabled;
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writeFuture = null;
+            writeQueued();
+        }
+    };
+
+    private final Runnable readTask = new Runnable() {
+        @Override
+        public void run() {
+            readFuture = null;
+            resumeRead();
+        }
+    };
+
+    /**
+     * Create a new instance which is only limited by the global limits of the given
+     * {@link TokenBucketTrafficShaper}.
+     */
+    public TokenBucketTrafficShapingHandler(TokenBucketTrafficShaper shaper) {
+        this(shaper, 0, 0);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param shaper
+     *          the {@link TokenBucketTrafficShaper} holding the global limits.
+     * @param writeLimit
+     *          the write limit of the channel in bytes per second, {@code 0} means no limit.
+     * @param readLimit
+     *          the read limit of the channel in bytes per second, {@code 0} means no limit.
+     */
+    public TokenBucketTrafficShapingHandler(TokenBucketTrafficShaper shaper, long writeLimit, long readLimit) {
+        this(shaper, writeLimit, readLimit, DEFAULT_MAX_QUEUE_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param shaper
+     *          the {@link TokenBucketTrafficShaper} holding the global limits.
+     * @param writeLimit
+     *          the write limit of the channel in bytes per second, {@code 0} means no limit.
+     * @param readLimit
+     *          the read limit of the channel in bytes per second, {@code 0} means no limit.
+     * @param maxQueueSize
+     *          the maximum number of bytes queued before the channel is marked as not writable.
+     */
+    public TokenBucketTrafficShapingHandler(TokenBucketTrafficShaper shaper, long writeLimit, long readLimit,
+                                            long maxQueueSize) {
+        if (shaper == null) {
+            throw new NullPointerException("shaper");
+        }
+        this.shaper = shaper;
+        this.writeLimit = checkPositiveOrZero(writeLimit, "writeLimit");
+        this.readLimit = checkPositiveOrZero(readLimit, "readLimit");
+        this.maxQueueSize = checkPositive(maxQueueSize, "maxQueueSize");
+    }
+
+    /**
+     * Returns the {@link TokenBucketTrafficShaper} holding the global limits.
+     */
+    public TokenBucketTrafficShaper shaper() {
+        return shaper;
+    }
+
+    /**
+     * Returns the write limit of the channel in bytes per second, {@code 0} means no limit.
+     */
+    public long writeLimit() {
+        return writeLimit;
+    }
+
+    /**
+     * Returns the read limit of the channel in bytes per second, {@code 0} means no limit.
+     */
+    public long readLimit() {
+        return readLimit;
+    }
+
+    /**
+     * Returns the number of bytes that are queued because of the limits, as estimated by the
+     * {@link PendingWriteQueue}.
+     */
+    public long queueSize() {
+        PendingWriteQueue queue = this.queue;
+        return queue == null ? 0 : queue.bytes();
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+        this.ctx = ctx;
+        queue = new PendingWriteQueue(ctx);
+        long maxBurstNanos = shaper.maxBurstNanos();
+        writeBucket = writeLimit == 0 ? null : new ChannelBucket(writeLimit, maxBurstNanos);
+        readBucket = readLimit == 0 ? null : new ChannelBucket(readLimit, maxBurstNanos);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        if (!queue.isEmpty()) {
+            if (ctx.channel().isActive()) {
+                // Nothing shapes the channel anymore, so just write everything.
+                queue.removeAndWriteAll();
+                ctx.flush();
+            } else {
+                queue.removeAndFailAll(new ClosedChannelException());
+            }
+        }
+        if (writeSuspended) {
+            setUserDefinedWritability(true);
+        }
+        if (readSuspended) {
+            readSuspended = false;
+            resumeAutoRead();
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        cancel();
+        queue.removeAndFailAll(new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    private void cancel() {
+        if (writeFuture != null) {
+            writeFuture.cancel(false);
+            writeFuture = null;
+        }
+        if (readFuture != null) {
+            readFuture.cancel(false);
+            readFuture = null;
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        long size = calculateSize(msg);
+        if (size > 0) {
+            shaper.read(size);
+            long now = System.nanoTime();
+            long delay = 0;
+            if (readBucket != null) {
+                readBucket.consume(size);
+                delay = readBucket.delayNanos(now);
+            }
+            LoopBucket loopBucket = shaper.readBucket();
+            if (loopBucket != null) {
+                loopBucket.consume(size);
+                delay = Math.max(delay, loopBucket.delayNanos(now));
+            }
+            if (delay > 0 && !readSuspended) {
+                suspendRead(delay);
+            }
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    private void suspendRead(long delay) {
+        readSuspended = true;
+        ChannelConfig config = ctx.channel().config();
+        if (config.isAutoRead()) {
+            // Stop reading on our own, setAutoRead(true) will issue a read again once resumed.
+            config.setAutoRead(false);
+            autoReadDisabled = true;
+        }
+        readFuture = ctx.executor().schedule(readTask, delay, TimeUnit.NANOSECONDS);
+    }
+
+    private void resumeRead() {
+        long now = System.nanoTime();
+        long delay = readBucket == null ? 0 : readBucket.delayNanos(now);
+        LoopBucket loopBucket = shaper.readBucket();
+        if (loopBucket != null) {
+            delay = Math.max(delay, loopBucket.delayNanos(now));
+        }
+        if (delay > 0) {
+            readFuture = ctx.executor().schedule(readTask, delay, TimeUnit.NANOSECONDS);
+            return;
+        }
+        readSuspended = false;
+        resumeAutoRead();
+    }
+
+    private void resumeAutoRead() {
+        if (autoReadDisabled) {
+            autoReadDisabled = false;
+            readPending = false;
+            ctx.channel().config().setAutoRead(true);
+        } else if (readPending) {
+            readPending = false;
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void read(ChannelHandlerContext ctx) throws Exception {
+        if (readSuspended) {
+            readPending = true;
+        } else {
+            ctx.read();
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        long delay = 0;
+        if (queue.isEmpty()) {
+            // Keep the order of the writes, only bypass the queue when nothing is queued.
+            long size = calculateSize(msg);
+            if (size > 0) {
+                delay = tryAcquire(size);
+            }
+            if (delay == 0) {
+                if (size > 0) {
+                    shaper.written(size);
+                }
+                ctx.write(msg, promise);
+                return;
+            }
+        }
+        queue.add(msg, promise);
+        if (writeFuture == null) {
+            writeFuture = ctx.executor().schedule(writeTask, delay, TimeUnit.NANOSECONDS);
+        }
+        if (!writeSuspended && queue.bytes() > maxQueueSize) {
+            writeSuspended = true;
+            setUserDefinedWritability(false);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (!queue.isEmpty()) {
+            flushPending = true;
+        }
+        ctx.flush();
+    }
+
+    /**
+     * Consumes {@code size} tokens if both the channel and the global bucket have tokens left.
+     *
+     * @return {@code 0} if the tokens were consumed or the number of nanoseconds to wait otherwise.
+     */
+    private long tryAcquire(long size) {
+        long now = System.nanoTime();
+        long delay = writeBucket == null ? 0 : writeBucket.delayNanos(now);
+        if (delay > 0) {
+            return delay;
+        }
+        LoopBucket loopBucket = shaper.writeBucket();
+        if (loopBucket != null) {
+            delay = loopBucket.delayNanos(now);
+            if (delay > 0) {
+                return delay;
+            }
+            loopBucket.consume(size);
+        }
+        if (writeBucket != null) {
+            writeBucket.consume(size);
+        }
+        return 0;
+    }
+
+    private void writeQueued() {
+        boolean written = false;
+        while (!queue.isEmpty()) {
+            long size = calculateSize(queue.current());
+            if (size > 0) {
+                long delay = tryAcquire(size);
+                if (delay != 0) {
+                    writeFuture = ctx.executor().schedule(writeTask, delay, TimeUnit.NANOSECONDS);
+                    break;
+                }
+                shaper.written(size);
+            }
+            queue.removeAndWrite();
+            written = true;
+        }
+        if (written && flushPending) {
+            flushPending = !queue.isEmpty();
+            ctx.flush();
+        }
+        if (writeSuspended && queue.bytes() <= maxQueueSize) {
+            writeSuspended = false;
+            setUserDefinedWritability(true);
+        }
+    }
+
+    private void setUserDefinedWritability(boolean writable) {
+        ChannelOutboundBuffer cob = ctx.channel().unsafe().outboundBuffer();
+        if (cob != null) {
+            cob.setUserDefinedWritability(USER_DEFINED_WRITABILITY_INDEX, writable);
+        }
+    }
+
+    /**
+     * Calculate the size of the given {@link Object}.
+     *
+     * This implementation supports {@link ByteBuf}, {@link ByteBufHolder} and {@link FileRegion}.
+     * Sub-classes may override this.
+     * @param msg the msg for which the size should be calculated.
+     * @return size the size of the msg or {@code -1} if unknown, in which case the message is not shaped.
+     */
+    protected long calculateSize(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        if (msg instanceof FileRegion) {
+            return ((FileRegion) msg).count();
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.timeout;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CoalescedIdleTimerTest {
+
+    private final CoalescedIdleTimer timer = new CoalescedIdleTimer(5, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void testIdleStateHandler() throws Exception {
+        final List<Object> events = new ArrayList<Object>();
+        IdleStateHandler idleStateHandler = new IdleStateHandler(false, 20, 0, 100, TimeUnit.MILLISECONDS, timer);
+        EmbeddedChannel channel = new EmbeddedChannel(idleStateHandler, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                events.add(evt);
+            }
+        });
+
+        sleepAndRun(channel, 40);
+        assertEquals(1, events.size());
+        assertSame(IdleStateEvent.FIRST_READER_IDLE_STATE_EVENT, events.get(0));
+
+        sleepAndRun(channel, 80);
+        assertTrue(events.contains(IdleStateEvent.FIRST_ALL_IDLE_STATE_EVENT));
+        assertTrue(events.contains(IdleStateEvent.READER_IDLE_STATE_EVENT));
+
+        // Removing the handler must cancel the timeouts.
+        channel.pipeline().remove(idleStateHandler);
+        int size = events.size();
+        sleepAndRun(channel, 50);
+        assertEquals(size, events.size());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testReaderNotIdle() throws Exception {
+        final List<Object> events = new ArrayList<Object>();
+        EmbeddedChannel channel = new EmbeddedChannel(
+                new IdleStateHandler(false, 50, 0, 0, TimeUnit.MILLISECONDS, timer),
+                new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+                        events.add(evt);
+                    }
+                });
+
+        for (int i = 0; i < 5; i++) {
+            sleepAndRun(channel, 20);
+            assertTrue(channel.writeInbound("Hello, World!"));
+            assertEquals("Hello, World!", channel.readInbound());
+        }
+        assertTrue(events.isEmpty());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testReadTimeoutHandler() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new ReadTimeoutHandler(20, TimeUnit.MILLISECONDS, timer));
+        sleepAndRun(channel, 40);
+        try {
+            channel.checkException();
+            fail();
+        } catch (ReadTimeoutException expected) {
+            // expected
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    public void testWriteTimeoutHandler() throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(new WriteTimeoutHandler(20, TimeUnit.MILLISECONDS, timer));
+
+        // Completed writes must not time out.
+        assertTrue(channel.writeOutbound("completed"));
+        assertEquals("completed", channel.readOutbound());
+        sleepAndRun(channel, 40);
+        channel.checkException();
+        assertTrue(channel.isOpen());
+
+        // This write is never flushed and so should time out.
+        channel.write("pending");
+        sleepAndRun(channel, 40);
+        try {
+            channel.checkException();
+            fail();
+        } catch (WriteTimeoutException expected) {
+            // expected
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    private static void sleepAndRun(EmbeddedChannel channel, long millis) throws InterruptedException {
+        Thread.sleep(millis);
+        channel.runScheduledPendingTasks();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.handler.traffic;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTrafficShapingHandlerTest {
+
+    @Test(timeout = 5000)
+    public void testChannelWriteLimit() throws Exception {
+        TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(0, 0);
+        testWriteLimit(shaper, new TokenBucketTrafficShapingHandler(shaper, 1000, 0));
+    }
+
+    @Test(timeout = 5000)
+    public void testGlobalWriteLimit() throws Exception {
+        TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(1000, 0);
+        testWriteLimit(shaper, new TokenBucketTrafficShapingHandler(shaper));
+    }
+
+    private static void testWriteLimit(TokenBucketTrafficShaper shaper, TokenBucketTrafficShapingHandler handler)
+            throws Exception {
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        // The default burst allows for 100 bytes at 1000 bytes per second, so this leaves a debt of 100 bytes.
+        ChannelFuture first = channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[200]));
+        assertTrue(first.isSuccess());
+        readAndRelease(channel, 200);
+
+        long start = System.nanoTime();
+        ChannelFuture second = channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        ChannelFuture third = channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        assertFalse(second.isDone());
+        assertFalse(third.isDone());
+        assertTrue(handler.queueSize() >= 200);
+        assertNull(channel.readOutbound());
+
+        while (!third.isDone()) {
+            Thread.sleep(5);
+            channel.runPendingTasks();
+        }
+        // Both the first and the second write have to be paid back before the third may go.
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue(second.isSuccess());
+        assertTrue(third.isSuccess());
+        assertEquals(0, handler.queueSize());
+        readAndRelease(channel, 100);
+        readAndRelease(channel, 100);
+        assertEquals(400, shaper.cumulativeWrittenBytes());
+        assertFalse(channel.finish());
+    }
+
+    @Test(timeout = 5000)
+    public void testWritabilityAndOrder() throws Exception {
+        TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(0, 0);
+        TokenBucketTrafficShapingHandler handler = new TokenBucketTrafficShapingHandler(shaper, 1000, 0, 300);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[200]));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        assertTrue(channel.isWritable());
+        // Unknown messages are not shaped but must not overtake the queued ones.
+        channel.writeAndFlush("unshaped");
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        assertFalse(channel.isWritable());
+
+        readAndRelease(channel, 200);
+        while (handler.queueSize() != 0) {
+            Thread.sleep(5);
+            channel.runPendingTasks();
+        }
+        assertTrue(channel.isWritable());
+        readAndRelease(channel, 100);
+        assertEquals("unshaped", channel.readOutbound());
+        readAndRelease(channel, 100);
+        assertFalse(channel.finish());
+    }
+
+    @Test(timeout = 5000)
+    public void testReadLimit() throws Exception {
+        TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(0, 1000);
+        EmbeddedChannel channel = new EmbeddedChannel(new TokenBucketTrafficShapingHandler(shaper));
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[50]));
+        assertTrue(channel.config().isAutoRead());
+        channel.writeInbound(Unpooled.wrappedBuffer(new byte[100]));
+        assertFalse(channel.config().isAutoRead());
+
+        while (!channel.config().isAutoRead()) {
+            Thread.sleep(5);
+            channel.runPendingTasks();
+        }
+        assertEquals(150, shaper.cumulativeReadBytes());
+        ByteBuf buf;
+        while ((buf = channel.readInbound()) != null) {
+            buf.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testQueuedWritesFailedOnClose() {
+        TokenBucketTrafficShaper shaper = new TokenBucketTrafficShaper(0, 0);
+        EmbeddedChannel channel = new EmbeddedChannel(new TokenBucketTrafficShapingHandler(shaper, 1000, 0));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[100]));
+        // Needs to wait for the second write to be paid back.
+        ByteBuf queued = Unpooled.wrappedBuffer(new byte[100]);
+        ChannelFuture future = channel.writeAndFlush(queued);
+        assertFalse(future.isDone());
+        channel.close();
+        assertFalse(future.isSuccess());
+        assertEquals(0, queued.refCnt());
+        ByteBuf buf;
+        while ((buf = channel.readOutbound()) != null) {
+            buf.release();
+        }
+        assertFalse(channel.finish());
+    }
+
+    private static void readAndRelease(EmbeddedChannel channel, int expectedBytes) {
+        ByteBuf buf = channel.readOutbound();
+        assertEquals(expectedBytes, buf.readableBytes());
+        buf.release();
+    }
+}
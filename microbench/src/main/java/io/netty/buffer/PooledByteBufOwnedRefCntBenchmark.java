@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.buffer;
+
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the reference counting of {@link PooledByteBuf}s that are biased towards the thread that allocated them
+ * with the atomic reference counting, for the retain / release patterns of the pipeline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PooledByteBufOwnedRefCntBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "true", "false" })
+    public boolean owned;
+
+    private PoolThreadCache cache;
+    private PooledByteBuf<byte[]> buf;
+
+    @Setup
+    public void setUp() {
+        // The state is confined to the benchmark thread, so the ImmediateEventExecutor is fine as the owner.
+        cache = PooledByteBufAllocator.DEFAULT.threadCache();
+        buf = allocate();
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.release();
+    }
+
+    private PooledByteBuf<byte[]> allocate() {
+        PooledByteBuf<byte[]> buf = cache.heapArena.allocate(cache, 256, Integer.MAX_VALUE);
+        if (owned) {
+            buf.bias(ImmediateEventExecutor.INSTANCE);
+        }
+        return buf;
+    }
+
+    @Benchmark
+    public boolean retainRelease() {
+        buf.retain();
+        return buf.release();
+    }
+
+    @Benchmark
+    public boolean retainedSliceRelease() {
+        // Like a decoder that passes on a frame of the cumulation.
+        return buf.retainedSlice(0, 64).release();
+    }
+
+    @Benchmark
+    public boolean retainedDuplicateRelease() {
+        // Like a handler that writes the same buffer more then once.
+        return buf.retainedDuplicate().release();
+    }
+
+    @Benchmark
+    public boolean allocateRelease() {
+        return allocate().release();
+    }
+}
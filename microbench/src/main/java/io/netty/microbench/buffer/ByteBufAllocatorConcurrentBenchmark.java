@@ -16,6 +16,7 @@
 package io.netty.microbench.buffer;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.microbench.util.AbstractMicrobenchmark;
 import org.openjdk.jmh.annotations.Benchmark;
@@ -34,11 +35,27 @@ public class ByteBufAllocatorConcurrentBenchmark  extends AbstractMicrobenchmark
 
     private static final ByteBufAllocator unpooledAllocator = new UnpooledByteBufAllocator(true, true);
 
-    @Param({ "00064", "00256", "01024", "04096" })
+    // Use a single arena and disable the thread-local cache so all threads contend on the same arena.
+    private static final ByteBufAllocator pooledAllocator =
+            new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0, true, 0, 1);
+    private static final ByteBufAllocator shardedPooledAllocator =
+            new PooledByteBufAllocator(true, 0, 1, 8192, 11, 0, 0, 0, true, 0, 8);
+
+    @Param({ "00064", "00256", "01024", "04096", "08192", "16384", "65536" })
     public int size;
 
     @Benchmark
     public boolean allocateRelease() {
         return unpooledAllocator.directBuffer(size).release();
     }
+
+    @Benchmark
+    public boolean pooledAllocateRelease() {
+        return pooledAllocator.directBuffer(size).release();
+    }
+
+    @Benchmark
+    public boolean shardedPooledAllocateRelease() {
+        return shardedPooledAllocator.directBuffer(size).release();
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import io.netty.util.ByteProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+
+/**
+ * Benchmarks searching, comparing and hashing the content of {@link ByteBuf}s, which all read 8 bytes at a time.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 10)
+@Measurement(iterations = 25)
+public class ByteBufSearchBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "16", "256", "4096" })
+    public int size;
+
+    @Param({ "true", "false" })
+    public boolean direct;
+
+    private ByteBuf haystack;
+    private ByteBuf copy;
+    private ByteBuf needle;
+    private final ByteProcessor indexOfProcessor = new ByteProcessor.IndexOfProcessor((byte) '\n');
+
+    @Setup
+    public void setup() {
+        // Random lower case text which ends with a needle and a line feed.
+        Random random = new Random(42);
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(26));
+        }
+        byte[] needleBytes = "netty-needle".getBytes();
+        int needleLength = Math.min(needleBytes.length, size - 1);
+        System.arraycopy(needleBytes, 0, bytes, size - 1 - needleLength, needleLength);
+        bytes[size - 1] = '\n';
+
+        haystack = newBuffer(bytes);
+        copy = newBuffer(bytes);
+        needle = newBuffer(needleBytes).writerIndex(needleLength);
+    }
+
+    private ByteBuf newBuffer(byte[] bytes) {
+        return direct ? Unpooled.directBuffer(bytes.length).writeBytes(bytes) : Unpooled.wrappedBuffer(bytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        haystack.release();
+        copy.release();
+        needle.release();
+    }
+
+    @Benchmark
+    public int indexOfByte() {
+        return haystack.indexOf(haystack.readerIndex(), haystack.writerIndex(), (byte) '\n');
+    }
+
+    @Benchmark
+    public int forEachByteFindLf() {
+        return haystack.forEachByte(ByteProcessor.FIND_LF);
+    }
+
+    @Benchmark
+    public int forEachByteFindCrlf() {
+        return haystack.forEachByte(ByteProcessor.FIND_CRLF);
+    }
+
+    @Benchmark
+    public int forEachByteCustomProcessor() {
+        // Not known to the buffer, so it is processed byte by byte.
+        return haystack.forEachByte(indexOfProcessor);
+    }
+
+    @Benchmark
+    public int indexOfNeedle() {
+        return ByteBufUtil.indexOf(needle, haystack);
+    }
+
+    @Benchmark
+    public boolean equals() {
+        return ByteBufUtil.equals(haystack, copy);
+    }
+
+    @Benchmark
+    public int hashCodeOfBuffer() {
+        return ByteBufUtil.hashCode(haystack);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.buffer;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Benchmarks the access to {@link CompositeByteBuf}s which consist out of a lot of small components, like it is
+ * common when aggregating HTTP content.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 10)
+@Measurement(iterations = 25)
+public class CompositeByteBufBenchmark extends AbstractMicrobenchmark {
+
+    @Param({ "16", "1024", "8192" })
+    public int components;
+
+    @Param({ "64" })
+    public int componentSize;
+
+    private CompositeByteBuf composite;
+    private ByteBuf[] buffers;
+    private int[] randomIndexes;
+
+    private final CompositeByteBuf.ComponentProcessor sumProcessor = new CompositeByteBuf.ComponentProcessor() {
+        @Override
+        public boolean process(ByteBuf buf, int index, int length) {
+            sum += length;
+            return true;
+        }
+    };
+    private long sum;
+
+    @Setup
+    public void setup() {
+        buffers = new ByteBuf[components];
+        for (int i = 0; i < components; i++) {
+            buffers[i] = Unpooled.wrappedBuffer(new byte[componentSize]);
+        }
+        composite = newComposite();
+
+        randomIndexes = new int[1024];
+        Random random = new Random(42);
+        for (int i = 0; i < randomIndexes.length; i++) {
+            randomIndexes[i] = random.nextInt(composite.capacity());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        composite.release();
+        for (ByteBuf buffer: buffers) {
+            buffer.release();
+        }
+    }
+
+    private CompositeByteBuf newComposite() {
+        CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        for (ByteBuf buffer: buffers) {
+            buffer.retain();
+        }
+        composite.addComponents(true, buffers);
+        return composite;
+    }
+
+    @Benchmark
+    public long sequentialGetByte() {
+        CompositeByteBuf composite = this.composite;
+        long sum = 0;
+        for (int i = 0, capacity = composite.capacity(); i < capacity; i++) {
+            sum += composite.getByte(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long randomGetByte() {
+        CompositeByteBuf composite = this.composite;
+        long sum = 0;
+        for (int index: randomIndexes) {
+            sum += composite.getByte(index);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long randomGetInt() {
+        CompositeByteBuf composite = this.composite;
+        long sum = 0;
+        for (int index: randomIndexes) {
+            sum += composite.getInt(Math.min(index, composite.capacity() - 4));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public ByteBuffer[] nioBuffers() {
+        return composite.nioBuffers();
+    }
+
+    @Benchmark
+    public long forEachComponent() {
+        sum = 0;
+        composite.forEachComponent(composite.readerIndex(), composite.readableBytes(), sumProcessor);
+        return sum;
+    }
+
+    @Benchmark
+    public int addComponentsArray() {
+        CompositeByteBuf composite = newComposite();
+        int capacity = composite.capacity();
+        composite.release();
+        return capacity;
+    }
+
+    @Benchmark
+    public int addComponentsCollection() {
+        List<ByteBuf> list = new ArrayList<ByteBuf>(buffers.length);
+        for (ByteBuf buffer: buffers) {
+            list.add(buffer.retain());
+        }
+        CompositeByteBuf composite = Unpooled.compositeBuffer(Integer.MAX_VALUE);
+        // Insert in front of an existing component, so the existing one needs to be moved.
+        composite.addComponent(true, buffers[0].retain());
+        composite.addComponents(0, list);
+        int capacity = composite.capacity();
+        composite.release();
+        return capacity;
+    }
+
+    @Benchmark
+    public int discardReadComponents() {
+        CompositeByteBuf composite = newComposite();
+        // Read one component at a time and discard it, like a decoder that consumes the cumulated buffer.
+        while (composite.isReadable()) {
+            composite.skipBytes(componentSize);
+            composite.discardReadComponents();
+        }
+        int capacity = composite.capacity();
+        composite.release();
+        return capacity;
+    }
+}
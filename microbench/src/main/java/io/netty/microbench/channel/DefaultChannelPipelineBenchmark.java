@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.microbench.channel;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.microbench.util.AbstractMicrobenchmark;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast events are propagated through a pipeline whose handlers do not handle these events. With
+ * {@code skippable} set to {@code false} the handlers explicitly forward every event, so they can not be skipped.
+ */
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class DefaultChannelPipelineBenchmark extends AbstractMicrobenchmark {
+
+    private static final int EVENTS = 100;
+
+    @ChannelHandler.Sharable
+    private static final class SkippableHandler extends ChannelDuplexHandler { }
+
+    @ChannelHandler.Sharable
+    private static final class ForwardingHandler extends ChannelDuplexHandler {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            ctx.fireChannelReadComplete();
+        }
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private static final class ConsumingOutboundHandler extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            // NOOP
+        }
+    }
+
+    @ChannelHandler.Sharable
+    private static final class ConsumingHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            // NOOP
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) {
+            // NOOP
+        }
+    }
+
+    @Param({ "4", "12" })
+    public int extraHandlers;
+
+    @Param({ "false", "true" })
+    public boolean skippable;
+
+    private ChannelPipeline pipeline;
+    private ChannelHandlerContext lastContext;
+    private ChannelPromise promise;
+    private final Object msg = new Object();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        pipeline = new EmbeddedChannel().pipeline();
+        pipeline.addLast(new ConsumingOutboundHandler());
+        ChannelHandler handler = skippable ? new SkippableHandler() : new ForwardingHandler();
+        for (int i = 0; i < extraHandlers; i++) {
+            pipeline.addLast(handler);
+        }
+        pipeline.addLast(new ConsumingHandler());
+        lastContext = pipeline.lastContext();
+        promise = pipeline.voidPromise();
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        pipeline.channel().close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void fireChannelRead() {
+        for (int i = 0; i < EVENTS; i++) {
+            pipeline.fireChannelRead(msg);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void fireChannelReadComplete() {
+        for (int i = 0; i < EVENTS; i++) {
+            pipeline.fireChannelReadComplete();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void write() {
+        for (int i = 0; i < EVENTS; i++) {
+            lastContext.write(msg, promise);
+        }
+    }
+}
@@ -36,7 +36,20 @@ import java.util.concurrent.TimeUnit;
 @State(Scope.Benchmark)
 public class ScheduledFutureTaskBenchmark extends AbstractMicrobenchmark {
 
-    static final EventLoop executor = new DefaultEventLoop();
+    static EventLoop executor;
+
+    /**
+     * {@code 0} uses the binary heap, any other value the timing wheel with the given tick duration.
+     */
+    @Param({ "0", "1000000" })
+    long timingWheelTickNanos;
+
+    @Setup(Level.Trial)
+    public void start() {
+        // Every trial runs in its own forked JVM, so the property is picked up when the executor is created.
+        System.setProperty("io.netty.eventexecutor.timingWheelTickNanos", String.valueOf(timingWheelTickNanos));
+        executor = new DefaultEventLoop();
+    }
 
     @State(Scope.Thread)
     public static class FuturesHolder {
@@ -55,10 +68,14 @@ public class ScheduledFutureTaskBenchmark extends AbstractMicrobenchmark {
 
         @Setup(Level.Invocation)
         public void reset() {
-            futures.clear();
             executor.submit(new Runnable() {
                 @Override
                 public void run() {
+                    // Cancel what may be left over from the previous invocation.
+                    for (ScheduledFuture<Void> future: futures) {
+                        future.cancel(false);
+                    }
+                    futures.clear();
                     for (int i = 1; i <= num; i++) {
                         futures.add(executor.schedule(NO_OP, i, TimeUnit.HOURS));
                     }
@@ -84,6 +101,21 @@ public class ScheduledFutureTaskBenchmark extends AbstractMicrobenchmark {
         }).syncUninterruptibly();
     }
 
+    @Benchmark
+    public Future<?> scheduleAndCancel(final FuturesHolder futuresHolder) {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                List<ScheduledFuture<Void>> futures = futuresHolder.futures;
+                for (int i = 0; i < futuresHolder.num; i++) {
+                    // Spread the deadlines like idle timeouts of connections that are created over time.
+                    futures.get(i).cancel(false);
+                    futures.set(i, executor.schedule(FuturesHolder.NO_OP, 30000 + i, TimeUnit.MILLISECONDS));
+                }
+            }
+        }).syncUninterruptibly();
+    }
+
     @Benchmark
     public Future<?> cancelInReverseOrder(final FuturesHolder futuresHolder) {
         return executor.submit(new Runnable() {
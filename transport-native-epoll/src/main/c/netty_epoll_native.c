@@ -51,11 +51,21 @@
 #define TCP_FASTOPEN 23
 #endif
 
+// UDP_GRO is defined in linux 5.0. We define this here so older kernels can compile.
+#ifndef UDP_GRO
+#define UDP_GRO 104
+#endif
+
+#ifndef SOL_UDP
+#define SOL_UDP 17
+#endif
+
 // optional
 extern int epoll_create1(int flags) __attribute__((weak));
 
 #ifdef IO_NETTY_SENDMMSG_NOT_FOUND
 extern int sendmmsg(int sockfd, struct mmsghdr* msgvec, unsigned int vlen, unsigned int flags) __attribute__((weak));
+extern int recvmmsg(int sockfd, struct mmsghdr* msgvec, unsigned int vlen, int flags, struct timespec* timeout) __attribute__((weak));
 
 #ifndef __USE_GNU
 struct mmsghdr {
@@ -71,6 +81,11 @@ static jfieldID packetScopeIdFieldId = NULL;
 static jfieldID packetPortFieldId = NULL;
 static jfieldID packetMemoryAddressFieldId = NULL;
 static jfieldID packetCountFieldId = NULL;
+static jfieldID packetSenderAddrFieldId = NULL;
+static jfieldID packetSenderAddrLenFieldId = NULL;
+static jfieldID packetSenderScopeIdFieldId = NULL;
+static jfieldID packetSenderPortFieldId = NULL;
+static jfieldID packetSegmentSizeFieldId = NULL;
 
 // util methods
 static int getSysctlValue(const char * property, int* returnValue) {
@@ -304,6 +319,82 @@ static jint netty_epoll_native_sendmmsg0(JNIEnv* env, jclass clazz, jint fd, job
     return (jint) res;
 }
 
+static jint netty_epoll_native_recvmmsg0(JNIEnv* env, jclass clazz, jint fd, jobjectArray packets, jint offset, jint len) {
+    // Large enough for the UDP_GRO control message.
+    const size_t controlSize = CMSG_SPACE(sizeof(int));
+    struct mmsghdr msg[len];
+    struct sockaddr_storage addr[len];
+    char control[len * controlSize] __attribute__((aligned(__alignof__(struct cmsghdr))));
+    int i;
+
+    memset(msg, 0, sizeof(msg));
+
+    for (i = 0; i < len; i++) {
+        jobject packet = (*env)->GetObjectArrayElement(env, packets, i + offset);
+
+        msg[i].msg_hdr.msg_name = &addr[i];
+        msg[i].msg_hdr.msg_namelen = (socklen_t) sizeof(addr[i]);
+
+        msg[i].msg_hdr.msg_iov = (struct iovec*) (intptr_t) (*env)->GetLongField(env, packet, packetMemoryAddressFieldId);
+        msg[i].msg_hdr.msg_iovlen = (*env)->GetIntField(env, packet, packetCountFieldId);
+
+        msg[i].msg_hdr.msg_control = &control[i * controlSize];
+        msg[i].msg_hdr.msg_controllen = controlSize;
+    }
+
+    int res;
+    int err;
+    do {
+       res = recvmmsg(fd, msg, len, 0, NULL);
+       // keep on reading if it was interrupted
+    } while (res == -1 && ((err = errno) == EINTR));
+
+    if (res < 0) {
+        return -err;
+    }
+
+    for (i = 0; i < res; i++) {
+        jobject packet = (*env)->GetObjectArrayElement(env, packets, i + offset);
+        jbyteArray address = (jbyteArray) (*env)->GetObjectField(env, packet, packetSenderAddrFieldId);
+
+        (*env)->SetIntField(env, packet, packetCountFieldId, msg[i].msg_len);
+
+        if (addr[i].ss_family == AF_INET) {
+            struct sockaddr_in* s = (struct sockaddr_in*) &addr[i];
+            (*env)->SetByteArrayRegion(env, address, 0, 4, (jbyte*) &s->sin_addr.s_addr);
+            (*env)->SetIntField(env, packet, packetSenderAddrLenFieldId, 4);
+            (*env)->SetIntField(env, packet, packetSenderScopeIdFieldId, 0);
+            (*env)->SetIntField(env, packet, packetSenderPortFieldId, ntohs(s->sin_port));
+        } else {
+            struct sockaddr_in6* s = (struct sockaddr_in6*) &addr[i];
+            if (IN6_IS_ADDR_V4MAPPED(&s->sin6_addr)) {
+                // We only need the last 4 bytes for a mapped address.
+                (*env)->SetByteArrayRegion(env, address, 0, 4, (jbyte*) &(s->sin6_addr.s6_addr[12]));
+                (*env)->SetIntField(env, packet, packetSenderAddrLenFieldId, 4);
+                (*env)->SetIntField(env, packet, packetSenderScopeIdFieldId, 0);
+            } else {
+                (*env)->SetByteArrayRegion(env, address, 0, 16, (jbyte*) &(s->sin6_addr.s6_addr));
+                (*env)->SetIntField(env, packet, packetSenderAddrLenFieldId, 16);
+                (*env)->SetIntField(env, packet, packetSenderScopeIdFieldId, s->sin6_scope_id);
+            }
+            (*env)->SetIntField(env, packet, packetSenderPortFieldId, ntohs(s->sin6_port));
+        }
+
+        // If UDP_GRO is enabled the kernel may have coalesced multiple datagrams, in which case it tells us the
+        // size of the segments.
+        jint segmentSize = 0;
+        struct cmsghdr* cmsg;
+        for (cmsg = CMSG_FIRSTHDR(&msg[i].msg_hdr); cmsg != NULL; cmsg = CMSG_NXTHDR(&msg[i].msg_hdr, cmsg)) {
+            if (cmsg->cmsg_level == SOL_UDP && cmsg->cmsg_type == UDP_GRO) {
+                segmentSize = *((int*) CMSG_DATA(cmsg));
+                break;
+            }
+        }
+        (*env)->SetIntField(env, packet, packetSegmentSizeFieldId, segmentSize);
+    }
+    return (jint) res;
+}
+
 static jstring netty_epoll_native_kernelVersion(JNIEnv* env, jclass clazz) {
     struct utsname name;
 
@@ -324,6 +415,19 @@ static jboolean netty_epoll_native_isSupportingSendmmsg(JNIEnv* env, jclass claz
     return JNI_FALSE;
 }
 
+static jint netty_epoll_native_errnoENOBUFS(JNIEnv* env, jclass clazz) {
+    return ENOBUFS;
+}
+
+static jboolean netty_epoll_native_isSupportingRecvmmsg(JNIEnv* env, jclass clazz) {
+    // Use & to avoid warnings with -Wtautological-pointer-compare when recvmmsg is
+    // not weakly defined.
+    if (&recvmmsg != NULL) {
+        return JNI_TRUE;
+    }
+    return JNI_FALSE;
+}
+
 static jboolean netty_epoll_native_isSupportingTcpFastopen(JNIEnv* env, jclass clazz) {
     int fastopen = 0;
     getSysctlValue("/proc/sys/net/ipv4/tcp_fastopen", &fastopen);
@@ -402,6 +506,8 @@ static const JNINativeMethod statically_referenced_fixed_method_table[] = {
   { "epollerr", "()I", (void *) netty_epoll_native_epollerr },
   { "tcpMd5SigMaxKeyLen", "()I", (void *) netty_epoll_native_tcpMd5SigMaxKeyLen },
   { "isSupportingSendmmsg", "()Z", (void *) netty_epoll_native_isSupportingSendmmsg },
+  { "isSupportingRecvmmsg", "()Z", (void *) netty_epoll_native_isSupportingRecvmmsg },
+  { "errnoENOBUFS", "()I", (void *) netty_epoll_native_errnoENOBUFS },
   { "isSupportingTcpFastopen", "()Z", (void *) netty_epoll_native_isSupportingTcpFastopen },
   { "kernelVersion", "()Ljava/lang/String;", (void *) netty_epoll_native_kernelVersion }
 };
@@ -418,7 +524,7 @@ static const JNINativeMethod fixed_method_table[] = {
   { "epollCtlAdd0", "(III)I", (void *) netty_epoll_native_epollCtlAdd0 },
   { "epollCtlMod0", "(III)I", (void *) netty_epoll_native_epollCtlMod0 },
   { "epollCtlDel0", "(II)I", (void *) netty_epoll_native_epollCtlDel0 },
-  // "sendmmsg0" has a dynamic signature
+  // "sendmmsg0" and "recvmmsg0" have a dynamic signature
   { "sizeofEpollEvent", "()I", (void *) netty_epoll_native_sizeofEpollEvent },
   { "offsetofEpollData", "()I", (void *) netty_epoll_native_offsetofEpollData },
   { "splice0", "(IJIJJ)I", (void *) netty_epoll_native_splice0 }
@@ -426,7 +532,7 @@ static const JNINativeMethod fixed_method_table[] = {
 static const jint fixed_method_table_size = sizeof(fixed_method_table) / sizeof(fixed_method_table[0]);
 
 static jint dynamicMethodsTableSize() {
-    return fixed_method_table_size + 1; // 1 is for the dynamic method signatures.
+    return fixed_method_table_size + 2; // 2 is for the dynamic method signatures.
 }
 
 static JNINativeMethod* createDynamicMethodsTable(const char* packagePrefix) {
@@ -437,6 +543,11 @@ static JNINativeMethod* createDynamicMethodsTable(const char* packagePrefix) {
     dynamicMethod->name = "sendmmsg0";
     dynamicMethod->signature = netty_unix_util_prepend("(I[L", dynamicTypeName);
     dynamicMethod->fnPtr = (void *) netty_epoll_native_sendmmsg0;
+
+    ++dynamicMethod;
+    dynamicMethod->name = "recvmmsg0";
+    dynamicMethod->signature = netty_unix_util_prepend("(I[L", dynamicTypeName);
+    dynamicMethod->fnPtr = (void *) netty_epoll_native_recvmmsg0;
     free(dynamicTypeName);
     return dynamicMethods;
 }
@@ -547,6 +658,36 @@ static jint netty_epoll_native_JNI_OnLoad(JNIEnv* env, const char* packagePrefix
         goto error;
     }
 
+    packetSenderAddrFieldId = (*env)->GetFieldID(env, nativeDatagramPacketCls, "senderAddr", "[B");
+    if (packetSenderAddrFieldId == NULL) {
+        netty_unix_errors_throwRuntimeException(env, "failed to get field ID: NativeDatagramPacket.senderAddr");
+        goto error;
+    }
+
+    packetSenderAddrLenFieldId = (*env)->GetFieldID(env, nativeDatagramPacketCls, "senderAddrLen", "I");
+    if (packetSenderAddrLenFieldId == NULL) {
+        netty_unix_errors_throwRuntimeException(env, "failed to get field ID: NativeDatagramPacket.senderAddrLen");
+        goto error;
+    }
+
+    packetSenderScopeIdFieldId = (*env)->GetFieldID(env, nativeDatagramPacketCls, "senderScopeId", "I");
+    if (packetSenderScopeIdFieldId == NULL) {
+        netty_unix_errors_throwRuntimeException(env, "failed to get field ID: NativeDatagramPacket.senderScopeId");
+        goto error;
+    }
+
+    packetSenderPortFieldId = (*env)->GetFieldID(env, nativeDatagramPacketCls, "senderPort", "I");
+    if (packetSenderPortFieldId == NULL) {
+        netty_unix_errors_throwRuntimeException(env, "failed to get field ID: NativeDatagramPacket.senderPort");
+        goto error;
+    }
+
+    packetSegmentSizeFieldId = (*env)->GetFieldID(env, nativeDatagramPacketCls, "segmentSize", "I");
+    if (packetSegmentSizeFieldId == NULL) {
+        netty_unix_errors_throwRuntimeException(env, "failed to get field ID: NativeDatagramPacket.segmentSize");
+        goto error;
+    }
+
     return NETTY_JNI_VERSION;
 
 error:
@@ -573,6 +714,11 @@ error:
    packetPortFieldId = NULL;
    packetMemoryAddressFieldId = NULL;
    packetCountFieldId = NULL;
+   packetSenderAddrFieldId = NULL;
+   packetSenderAddrLenFieldId = NULL;
+   packetSenderScopeIdFieldId = NULL;
+   packetSenderPortFieldId = NULL;
+   packetSegmentSizeFieldId = NULL;
 
    return JNI_ERR;
 }
@@ -590,6 +736,11 @@ static void netty_epoll_native_JNI_OnUnLoad(JNIEnv* env) {
     packetPortFieldId = NULL;
     packetMemoryAddressFieldId = NULL;
     packetCountFieldId = NULL;
+    packetSenderAddrFieldId = NULL;
+    packetSenderAddrLenFieldId = NULL;
+    packetSenderScopeIdFieldId = NULL;
+    packetSenderPortFieldId = NULL;
+    packetSegmentSizeFieldId = NULL;
 }
 
 // Invoked by the JVM when statically linked
@@ -421,6 +421,14 @@ abstract class AbstractEpollChannel extends AbstractChannel implements UnixChann
             eventLoop().execute(epollInReadyRunnable);
         }
 
+        /**
+         * Called once EPOLLERR event is ready to be processed. Sub-classes may use this to read from the error queue
+         * of the socket, any other error will be handled by {@link #epollInReady()} and {@link #epollOutReady()}.
+         */
+        void epollErrReady() {
+            // NOOP
+        }
+
         /**
          * Called once EPOLLRDHUP event is ready to be processed
          */
@@ -31,6 +31,7 @@ import io.netty.channel.FileRegion;
 import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.internal.ChannelUtils;
 import io.netty.channel.socket.DuplexChannel;
+import io.netty.channel.unix.Buffer;
 import io.netty.channel.unix.FileDescriptor;
 import io.netty.channel.unix.IovArray;
 import io.netty.channel.unix.SocketWritableByteChannel;
@@ -47,8 +48,11 @@ import java.net.SocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.Queue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static io.netty.channel.internal.ChannelUtils.MAX_BYTES_PER_GATHERING_WRITE_ATTEMPTED_LOW_THRESHOLD;
 import static io.netty.channel.internal.ChannelUtils.WRITE_STATUS_SNDBUF_FULL;
@@ -70,6 +74,9 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
     private static final ClosedChannelException FAIL_SPLICE_IF_CLOSED_CLOSED_CHANNEL_EXCEPTION =
             ThrowableUtil.unknownStackTrace(new ClosedChannelException(),
             AbstractEpollStreamChannel.class, "failSpliceIfClosed(...)");
+    // How often the completions of zero-copy writes are polled once the channel was closed, and for how long.
+    private static final long ZEROCOPY_DRAIN_INTERVAL_MILLIS = 10;
+    private static final long ZEROCOPY_DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(60);
     private final Runnable flushTask = new Runnable() {
         @Override
         public void run() {
@@ -86,6 +93,17 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
 
     private WritableByteChannel byteChannel;
 
+    // Lazy init these if we need to do zero-copy writes. The queue contains the zero-copy writes the kernel did not
+    // complete yet and the promises of messages written after them, in write order.
+    private ArrayDeque<ZeroCopyWrite> zeroCopyWrites;
+    private int[] zeroCopyCompletion;
+    // The id the kernel will assign to the next zero-copy write.
+    private int zeroCopySequence;
+    // Set once the kernel told us that it needed to copy the data anyway.
+    private boolean zeroCopyCopied;
+    // Set if a message that can not be written in order with pending zero-copy writes is waiting for them.
+    private boolean zeroCopyWriteStalled;
+
     protected AbstractEpollStreamChannel(Channel parent, int fd) {
         this(parent, new LinuxSocket(fd));
     }
@@ -429,8 +447,17 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
         int writeSpinCount = config().getWriteSpinCount();
         do {
             final int msgCount = in.size();
-            // Do gathering write if the outbound buffer entries start with more than one ByteBuf.
-            if (msgCount > 1 && in.current() instanceof ByteBuf) {
+            final Object msg = in.current();
+            if (msg instanceof ByteBuf && (hasPendingZeroCopyWrites() || isZeroCopyWrite((ByteBuf) msg))) {
+                writeSpinCount -= writeBytesZeroCopy(in, (ByteBuf) msg);
+            } else if (msgCount > 0 && hasPendingZeroCopyWrites() && !canWriteAfterZeroCopyWrites()) {
+                // The promise of this message could not be notified in order, so wait until the kernel completed
+                // the pending zero-copy writes. EpollStreamUnsafe.epollErrReady() will flush again.
+                zeroCopyWriteStalled = true;
+                clearFlag(Native.EPOLLOUT);
+                return;
+            } else if (msgCount > 1 && msg instanceof ByteBuf) {
+                // Do gathering write if the outbound buffer entries start with more than one ByteBuf.
                 writeSpinCount -= doWriteMultiple(in);
             } else if (msgCount == 0) {
                 // Wrote all messages.
@@ -462,6 +489,216 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
         }
     }
 
+    /**
+     * Returns the minimum number of readable bytes a {@link ByteBuf} must have to be written via
+     * {@code MSG_ZEROCOPY}, or {@code -1} if zero-copy writes are not used.
+     */
+    int zeroCopyWriteThreshold() {
+        return -1;
+    }
+
+    private boolean isZeroCopyWrite(ByteBuf buf) {
+        int threshold = zeroCopyWriteThreshold();
+        int readableBytes = buf.readableBytes();
+        return threshold >= 0 && !zeroCopyCopied && readableBytes > 0 && readableBytes >= threshold &&
+                (buf.hasMemoryAddress() || buf.isDirect() && buf.nioBufferCount() == 1);
+    }
+
+    private boolean hasPendingZeroCopyWrites() {
+        return zeroCopyWrites != null && !zeroCopyWrites.isEmpty();
+    }
+
+    private boolean canWriteAfterZeroCopyWrites() {
+        // Completions may already be queued, so check before waiting for the next EPOLLERR.
+        processZeroCopyCompletions();
+        return !hasPendingZeroCopyWrites();
+    }
+
+    /**
+     * Write the given {@link ByteBuf} via {@code MSG_ZEROCOPY} if possible, or by copying it otherwise. The
+     * {@link ByteBuf} is removed from the {@link ChannelOutboundBuffer} once all of it was handed to the kernel, but
+     * its {@link ChannelPromise} is only notified once all zero-copy writes up to this point were completed by the
+     * kernel. This keeps the promises in write order and ensures the memory is not used anymore when they are
+     * notified.
+     * @return The value that should be decremented from the write quantum, see
+     * {@link #doWriteSingle(ChannelOutboundBuffer)}.
+     */
+    private int writeBytesZeroCopy(ChannelOutboundBuffer in, ByteBuf buf) throws Exception {
+        final int readerIndex = buf.readerIndex();
+        final int readableBytes = buf.readableBytes();
+        if (readableBytes == 0) {
+            // Nothing to write, but the promise still needs to wait for the pending zero-copy writes.
+            removeZeroCopyAware(in, buf);
+            return 0;
+        }
+        int written = -1;
+        if (isZeroCopyWrite(buf)) {
+            final long memoryAddress;
+            final int pos;
+            final int limit;
+            if (buf.hasMemoryAddress()) {
+                memoryAddress = buf.memoryAddress();
+                pos = readerIndex;
+                limit = buf.writerIndex();
+            } else {
+                ByteBuffer nioBuf = buf.internalNioBuffer(readerIndex, readableBytes);
+                memoryAddress = Buffer.memoryAddress(nioBuf);
+                pos = nioBuf.position();
+                limit = nioBuf.limit();
+            }
+            written = socket.sendAddressZeroCopy(memoryAddress, pos, limit);
+            if (written > 0) {
+                // Retain the buffer as the kernel may still access its memory until the completion was received.
+                addZeroCopyWrite(new ZeroCopyWrite(zeroCopySequence++, buf.retain()));
+            }
+        }
+        if (written < 0) {
+            // Either the kernel can not pin more memory at the moment or zero-copy should not be used for this
+            // buffer, just copy the data.
+            written = writeBytesCopy(buf);
+        }
+        if (written == 0) {
+            return WRITE_STATUS_SNDBUF_FULL;
+        }
+
+        in.progress(written);
+        if (written == readableBytes) {
+            removeZeroCopyAware(in, buf);
+        } else {
+            buf.readerIndex(readerIndex + written);
+        }
+        return 1;
+    }
+
+    /**
+     * Remove the given {@link ByteBuf} from the {@link ChannelOutboundBuffer} and notify its {@link ChannelPromise}
+     * once all pending zero-copy writes were completed by the kernel.
+     */
+    private void removeZeroCopyAware(ChannelOutboundBuffer in, ByteBuf buf) {
+        ChannelPromise promise = in.removeDeferred();
+        // Release the reference that was held by the ChannelOutboundBuffer.
+        buf.release();
+        if (promise != null) {
+            if (hasPendingZeroCopyWrites()) {
+                addZeroCopyWrite(new ZeroCopyWrite(promise));
+            } else {
+                promise.trySuccess();
+            }
+        }
+    }
+
+    private int writeBytesCopy(ByteBuf buf) throws IOException {
+        if (buf.hasMemoryAddress()) {
+            return socket.writeAddress(buf.memoryAddress(), buf.readerIndex(), buf.writerIndex());
+        }
+        if (buf.nioBufferCount() == 1) {
+            ByteBuffer nioBuf = buf.internalNioBuffer(buf.readerIndex(), buf.readableBytes());
+            return socket.write(nioBuf, nioBuf.position(), nioBuf.limit());
+        }
+        // Never merge the components via nioBuffer() as this would return a heap ByteBuffer, which can not be
+        // passed to the native write.
+        IovArray array = ((EpollEventLoop) eventLoop()).cleanIovArray();
+        array.maxBytes(config().getMaxBytesPerGatheringWrite());
+        array.add(buf);
+        return (int) socket.writevAddresses(array.memoryAddress(0), array.count());
+    }
+
+    private void addZeroCopyWrite(ZeroCopyWrite write) {
+        if (zeroCopyWrites == null) {
+            zeroCopyWrites = new ArrayDeque<ZeroCopyWrite>();
+            zeroCopyCompletion = new int[3];
+        }
+        zeroCopyWrites.add(write);
+    }
+
+    /**
+     * Read all pending zero-copy completion notifications from the error queue of the socket, release the
+     * buffers of the completed writes and notify the promises that are not waiting for earlier writes anymore.
+     */
+    private void processZeroCopyCompletions() {
+        if (zeroCopyWrites == null) {
+            return;
+        }
+        try {
+            if (readZeroCopyCompletions(socket, zeroCopyWrites, zeroCopyCompletion)) {
+                // The kernel copied the data anyway, so there is no gain in using zero-copy for this connection.
+                zeroCopyCopied = true;
+            }
+        } catch (IOException e) {
+            // Any error of the socket itself will be picked up by the next read or write.
+            logger.debug("Failed to read zero-copy completions from the error queue", e);
+        }
+    }
+
+    /**
+     * Read all pending zero-copy completion notifications from the error queue of the given socket and complete
+     * the matching writes.
+     * @return {@code true} if the kernel reported that it copied the data of any of the writes.
+     */
+    private static boolean readZeroCopyCompletions(LinuxSocket socket, ArrayDeque<ZeroCopyWrite> writes,
+                                                   int[] completion) throws IOException {
+        boolean copied = false;
+        while (socket.recvZeroCopyCompletion(completion)) {
+            copied |= completion[2] != 0;
+            // The ids are unsigned 32 bit values that may wrap around.
+            int first = completion[0];
+            long range = (completion[1] - first) & 0xFFFFFFFFL;
+            for (ZeroCopyWrite write: writes) {
+                if (write.buf != null && ((write.sequence - first) & 0xFFFFFFFFL) <= range) {
+                    write.release();
+                }
+            }
+            // Promises are only notified once all writes before them were completed.
+            for (;;) {
+                ZeroCopyWrite write = writes.peek();
+                if (write == null || write.buf != null) {
+                    break;
+                }
+                writes.poll();
+                write.notifyPromise();
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * Once the socket is closed its error queue can not be read anymore, but the kernel may still use the memory of
+     * pending zero-copy writes until all of the data was acknowledged. Keep a duplicate of the file descriptor and
+     * poll it until the kernel completed these writes, so their buffers are not reused before.
+     */
+    private LinuxSocket dupForZeroCopyCompletions() {
+        if (!hasPendingZeroCopyWrites()) {
+            return null;
+        }
+        try {
+            return socket.dup();
+        } catch (IOException e) {
+            logger.debug("Failed to duplicate the socket to wait for pending zero-copy writes", e);
+            return null;
+        }
+    }
+
+    private void drainZeroCopyWrites(LinuxSocket zeroCopySocket) {
+        zeroCopyWriteStalled = false;
+        if (!hasPendingZeroCopyWrites()) {
+            return;
+        }
+        ZeroCopyDrainTask task = new ZeroCopyDrainTask(
+                zeroCopySocket, zeroCopyWrites, zeroCopyCompletion, eventLoop());
+        zeroCopyWrites = null;
+        if (zeroCopySocket == null) {
+            task.abandon();
+        } else {
+            try {
+                // Send a FIN now, the socket itself stays open until the duplicate is closed.
+                zeroCopySocket.shutdown();
+            } catch (IOException ignore) {
+                // The connection is already gone, the completions will still be reported.
+            }
+            task.schedule();
+        }
+    }
+
     /**
      * Attempt to write a single object.
      * @param in the collection which contains objects to write.
@@ -679,6 +916,9 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
 
     @Override
     protected void doClose() throws Exception {
+        // Pick up all completions that are already there before the socket is closed.
+        processZeroCopyCompletions();
+        LinuxSocket zeroCopySocket = dupForZeroCopyCompletions();
         try {
             // Calling super.doClose() first so spliceTo(...) will fail on next call.
             super.doClose();
@@ -686,6 +926,7 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             safeClosePipe(pipeIn);
             safeClosePipe(pipeOut);
             clearSpliceQueue();
+            drainZeroCopyWrites(zeroCopySocket);
         }
     }
 
@@ -721,6 +962,15 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             return super.prepareToClose();
         }
 
+        @Override
+        void epollErrReady() {
+            processZeroCopyCompletions();
+            if (zeroCopyWriteStalled && !hasPendingZeroCopyWrites()) {
+                zeroCopyWriteStalled = false;
+                flush0();
+            }
+        }
+
         private void handleReadException(ChannelPipeline pipeline, ByteBuf byteBuf, Throwable cause, boolean close,
                 EpollRecvByteAllocatorHandle allocHandle) {
             if (byteBuf != null) {
@@ -1049,4 +1299,112 @@ public abstract class AbstractEpollStreamChannel extends AbstractEpollChannel im
             return AbstractEpollStreamChannel.this.alloc();
         }
     }
+
+    private static final class ZeroCopyWrite {
+        final int sequence;
+        // null once the kernel completed the write or if this only holds the promise of a written message.
+        ByteBuf buf;
+        final ChannelPromise promise;
+
+        ZeroCopyWrite(int sequence, ByteBuf buf) {
+            this.sequence = sequence;
+            this.buf = buf;
+            promise = null;
+        }
+
+        ZeroCopyWrite(ChannelPromise promise) {
+            sequence = 0;
+            buf = null;
+            this.promise = promise;
+        }
+
+        void release() {
+            buf.release();
+            buf = null;
+        }
+
+        void notifyPromise() {
+            if (promise != null) {
+                promise.trySuccess();
+            }
+        }
+    }
+
+    /**
+     * Polls the completions of the zero-copy writes of a closed channel via a duplicate of its file descriptor.
+     */
+    private static final class ZeroCopyDrainTask implements Runnable {
+        private final LinuxSocket socket;
+        private final ArrayDeque<ZeroCopyWrite> writes;
+        private final int[] completion;
+        private final EventLoop loop;
+        private final long deadline;
+
+        ZeroCopyDrainTask(LinuxSocket socket, ArrayDeque<ZeroCopyWrite> writes, int[] completion, EventLoop loop) {
+            this.socket = socket;
+            this.writes = writes;
+            this.completion = completion;
+            this.loop = loop;
+            deadline = System.nanoTime() + ZEROCOPY_DRAIN_TIMEOUT_NANOS;
+        }
+
+        @Override
+        public void run() {
+            try {
+                readZeroCopyCompletions(socket, writes, completion);
+            } catch (IOException e) {
+                logger.debug("Failed to read zero-copy completions from the error queue of a closed channel", e);
+            }
+            if (writes.isEmpty()) {
+                close();
+            } else if (System.nanoTime() - deadline >= 0) {
+                close();
+                abandon();
+            } else {
+                schedule();
+            }
+        }
+
+        void schedule() {
+            try {
+                loop.schedule(this, ZEROCOPY_DRAIN_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                close();
+                abandon();
+            }
+        }
+
+        /**
+         * Give up on the remaining writes. The kernel already accepted their data so the promises are notified,
+         * but the buffers are not released as the kernel may still use their memory.
+         */
+        void abandon() {
+            int buffers = 0;
+            for (;;) {
+                ZeroCopyWrite write = writes.poll();
+                if (write == null) {
+                    break;
+                }
+                if (write.buf != null) {
+                    buffers++;
+                }
+                write.notifyPromise();
+            }
+            if (buffers > 0 && logger.isWarnEnabled()) {
+                logger.warn("Zero-copy writes of a closed channel could not be completed, {} buffer(s) will " +
+                        "not be released", buffers);
+            }
+        }
+
+        private void close() {
+            if (socket == null) {
+                return;
+            }
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.debug("Failed to close a duplicated socket", e);
+            }
+        }
+    }
 }
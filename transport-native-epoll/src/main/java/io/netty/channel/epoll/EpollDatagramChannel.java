@@ -30,6 +30,8 @@ import io.netty.channel.socket.DatagramPacket;
 import io.netty.channel.unix.DatagramSocketAddress;
 import io.netty.channel.unix.IovArray;
 import io.netty.channel.unix.UnixChannelUtil;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.internal.RecyclableArrayList;
 import io.netty.util.internal.StringUtil;
 
 import java.io.IOException;
@@ -454,6 +456,30 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
                     do {
                         data = allocHandle.allocate(allocator);
                         allocHandle.attemptedBytesRead(data.writableBytes());
+
+                        int datagramSize = config().getMaxDatagramPayloadSize();
+                        boolean gro = config().isUdpGro();
+                        int numDatagram = datagramSize == 0 ? 1 : data.writableBytes() / datagramSize;
+                        if (gro && !data.hasMemoryAddress() && data.nioBufferCount() != 1) {
+                            // Datagrams that were coalesced by the kernel can only be split again if they are read
+                            // via recvmmsg(...), which needs a buffer that is backed by a single memory region.
+                            ByteBuf buffer = allocator.directBuffer(data.writableBytes());
+                            data.release();
+                            data = buffer;
+                        }
+                        // Check if recvmmsg(...) is supported which is only the case for GLIBC 2.12+. If UDP_GRO is
+                        // enabled it is always used, as only recvmmsg(...) reports the segment size of coalesced
+                        // datagrams.
+                        if (Native.IS_SUPPORTING_RECVMMSG && (gro || datagramSize != 0 && numDatagram > 1) &&
+                                (data.hasMemoryAddress() || data.nioBufferCount() == 1)) {
+                            ByteBuf buffer = data;
+                            data = null;
+                            if (!scatteringRead(allocHandle, buffer, datagramSize, numDatagram, gro)) {
+                                break;
+                            }
+                            continue;
+                        }
+
                         final DatagramSocketAddress remoteAddress;
                         if (data.hasMemoryAddress()) {
                             // has a memory address so use optimized call
@@ -503,5 +529,80 @@ public final class EpollDatagramChannel extends AbstractEpollChannel implements
                 epollInFinally(config);
             }
         }
+
+        /**
+         * Read multiple datagrams into the given {@link ByteBuf} via {@code recvmmsg(...)}. If {@code UDP_GRO} is used
+         * one datagram slot covers the whole {@link ByteBuf}, as the kernel may coalesce multiple datagrams into it.
+         * The {@link ByteBuf} will always be released by this method.
+         */
+        private boolean scatteringRead(EpollRecvByteAllocatorHandle allocHandle, ByteBuf data,
+                                       int datagramSize, int numDatagram, boolean gro) throws IOException {
+            RecyclableArrayList datagramPackets = null;
+            int fired = 0;
+            try {
+                int slotSize = gro ? data.writableBytes() : datagramSize;
+                int numSlots = gro ? 1 : numDatagram;
+                int writerIndex = data.writerIndex();
+
+                NativeDatagramPacketArray array = ((EpollEventLoop) eventLoop()).cleanDatagramPacketArray();
+                for (int i = 0, offset = writerIndex; i < numSlots; i++, offset += slotSize) {
+                    if (!array.addWritable(data, offset, slotSize)) {
+                        break;
+                    }
+                }
+                int slots = array.count();
+                allocHandle.attemptedBytesRead(slots * slotSize);
+
+                NativeDatagramPacketArray.NativeDatagramPacket[] packets = array.packets();
+                int received = Native.recvmmsg(socket.intValue(), packets, 0, slots);
+                if (received == 0) {
+                    allocHandle.lastBytesRead(-1);
+                    return false;
+                }
+
+                // recvmmsg(...) does not report IP_RECVORIGDSTADDR, so use the local address of the channel.
+                InetSocketAddress local = (InetSocketAddress) localAddress();
+                datagramPackets = RecyclableArrayList.newInstance();
+                int bytesReceived = 0;
+                for (int i = 0, offset = writerIndex; i < received; i++, offset += slotSize) {
+                    NativeDatagramPacketArray.NativeDatagramPacket packet = packets[i];
+                    int bytes = packet.receivedBytes();
+                    InetSocketAddress sender = packet.sender();
+                    bytesReceived += bytes;
+
+                    int segmentSize = packet.segmentSize();
+                    if (segmentSize > 0 && bytes > segmentSize) {
+                        // The kernel coalesced multiple datagrams, split these again.
+                        for (int segmentOffset = 0; segmentOffset < bytes; segmentOffset += segmentSize) {
+                            int length = Math.min(segmentSize, bytes - segmentOffset);
+                            datagramPackets.add(new DatagramPacket(
+                                    data.retainedSlice(offset + segmentOffset, length), local, sender));
+                        }
+                    } else {
+                        datagramPackets.add(new DatagramPacket(data.retainedSlice(offset, bytes), local, sender));
+                    }
+                }
+                allocHandle.incMessagesRead(datagramPackets.size());
+                allocHandle.lastBytesRead(bytesReceived);
+
+                // Only fire the packets once we are done with the NativeDatagramPacketArray as it is also used
+                // when writing and so may be modified by a write done from within channelRead(...).
+                readPending = false;
+                ChannelPipeline pipeline = pipeline();
+                while (fired < datagramPackets.size()) {
+                    pipeline.fireChannelRead(datagramPackets.get(fired++));
+                }
+                return true;
+            } finally {
+                data.release();
+                if (datagramPackets != null) {
+                    // Release all packets that were not fired through the pipeline yet.
+                    for (int i = fired; i < datagramPackets.size(); i++) {
+                        ReferenceCountUtil.release(datagramPackets.get(i));
+                    }
+                    datagramPackets.recycle();
+                }
+            }
+        }
     }
 }
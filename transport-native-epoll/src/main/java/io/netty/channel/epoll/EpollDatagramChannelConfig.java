@@ -29,9 +29,13 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Map;
 
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
 public final class EpollDatagramChannelConfig extends EpollChannelConfig implements DatagramChannelConfig {
     private static final RecvByteBufAllocator DEFAULT_RCVBUF_ALLOCATOR = new FixedRecvByteBufAllocator(2048);
     private boolean activeOnOpen;
+    private volatile int maxDatagramSize;
+    private volatile boolean gro;
 
     EpollDatagramChannelConfig(EpollDatagramChannel channel) {
         super(channel);
@@ -48,7 +52,8 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
                 ChannelOption.IP_MULTICAST_ADDR, ChannelOption.IP_MULTICAST_IF, ChannelOption.IP_MULTICAST_TTL,
                 ChannelOption.IP_TOS, ChannelOption.DATAGRAM_CHANNEL_ACTIVE_ON_REGISTRATION,
                 EpollChannelOption.SO_REUSEPORT, EpollChannelOption.IP_TRANSPARENT,
-                EpollChannelOption.IP_RECVORIGDSTADDR);
+                EpollChannelOption.IP_RECVORIGDSTADDR, EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE,
+                EpollChannelOption.UDP_GRO, EpollChannelOption.UDP_SEGMENT);
     }
 
     @SuppressWarnings({ "unchecked", "deprecation" })
@@ -93,6 +98,15 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
         if (option == EpollChannelOption.IP_RECVORIGDSTADDR) {
             return (T) Boolean.valueOf(isIpRecvOrigDestAddr());
         }
+        if (option == EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE) {
+            return (T) Integer.valueOf(getMaxDatagramPayloadSize());
+        }
+        if (option == EpollChannelOption.UDP_GRO) {
+            return (T) Boolean.valueOf(isUdpGro());
+        }
+        if (option == EpollChannelOption.UDP_SEGMENT) {
+            return (T) Integer.valueOf(getUdpSegment());
+        }
         return super.getOption(option);
     }
 
@@ -127,6 +141,12 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
             setIpTransparent((Boolean) value);
         } else if (option == EpollChannelOption.IP_RECVORIGDSTADDR) {
             setIpRecvOrigDestAddr((Boolean) value);
+        } else if (option == EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE) {
+            setMaxDatagramPayloadSize((Integer) value);
+        } else if (option == EpollChannelOption.UDP_GRO) {
+            setUdpGro((Boolean) value);
+        } else if (option == EpollChannelOption.UDP_SEGMENT) {
+            setUdpSegment((Integer) value);
         } else {
             return super.setOption(option, value);
         }
@@ -432,4 +452,82 @@ public final class EpollDatagramChannelConfig extends EpollChannelConfig impleme
         }
     }
 
+    /**
+     * Set the maximum {@link io.netty.channel.socket.DatagramPacket} size. This will be used to determine if
+     * {@code recvmmsg} should be used when reading from the underlying socket. When {@code recvmmsg} is used
+     * we may be able to read multiple {@link io.netty.channel.socket.DatagramPacket}s with one syscall and so
+     * greatly improve the performance. This number will be used to slice {@link io.netty.buffer.ByteBuf}s returned by
+     * the used {@link RecvByteBufAllocator}. You can use {@code 0} to disable the usage of recvmmsg, any other bigger
+     * value will enable it.
+     */
+    public EpollDatagramChannelConfig setMaxDatagramPayloadSize(int maxDatagramSize) {
+        this.maxDatagramSize = checkPositiveOrZero(maxDatagramSize, "maxDatagramSize");
+        return this;
+    }
+
+    /**
+     * Get the maximum {@link io.netty.channel.socket.DatagramPacket} size.
+     */
+    public int getMaxDatagramPayloadSize() {
+        return maxDatagramSize;
+    }
+
+    /**
+     * Enable / disable <a href="https://lwn.net/Articles/768995/">UDP_GRO</a>. If enabled the kernel may coalesce
+     * multiple datagrams of the same flow into one buffer, which will be split again into individual
+     * {@link io.netty.channel.socket.DatagramPacket}s, no matter if {@link #setMaxDatagramPayloadSize(int)} is used
+     * or not. The {@link RecvByteBufAllocator} should return buffers that are big enough to hold the coalesced
+     * datagrams.
+     *
+     * @throws IllegalStateException if {@code gro} is {@code true} but {@code recvmmsg} is not supported, as the
+     * coalesced datagrams could not be split again.
+     */
+    public EpollDatagramChannelConfig setUdpGro(boolean gro) {
+        if (gro && !Native.IS_SUPPORTING_RECVMMSG) {
+            throw new IllegalStateException("UDP_GRO requires recvmmsg(...) support");
+        }
+        try {
+            ((EpollDatagramChannel) channel).socket.setUdpGro(gro);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+        this.gro = gro;
+        return this;
+    }
+
+    /**
+     * Returns if {@code UDP_GRO} is enabled.
+     */
+    public boolean isUdpGro() {
+        // Return the cached value as this is queried for every read and so we want to save the syscall.
+        return gro;
+    }
+
+    /**
+     * Set the size of the segments that are used when sending datagrams via
+     * <a href="https://lwn.net/Articles/752184/">UDP_SEGMENT</a>. If set to a value bigger than {@code 0} the kernel
+     * will split each datagram written by this channel into segments of the given size, which allows to send many
+     * datagrams with a single syscall. Use {@code 0} to disable it, which is the default.
+     */
+    public EpollDatagramChannelConfig setUdpSegment(int segmentSize) {
+        checkPositiveOrZero(segmentSize, "segmentSize");
+        try {
+            ((EpollDatagramChannel) channel).socket.setUdpSegment(segmentSize);
+            return this;
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
+    /**
+     * Returns the size of the segments that are used when sending datagrams via {@code UDP_SEGMENT}.
+     */
+    public int getUdpSegment() {
+        try {
+            return ((EpollDatagramChannel) channel).socket.getUdpSegment();
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+    }
+
 }
@@ -66,12 +66,15 @@ class EpollEventLoop extends SingleThreadEventLoop {
     private NativeDatagramPacketArray datagramPacketArray;
 
     private final SelectStrategy selectStrategy;
+    // Not null if the EventLoop should spin before it parks.
+    private final EpollSpinSelectStrategy spinStrategy;
     private final IntSupplier selectNowSupplier = new IntSupplier() {
         @Override
         public int get() throws Exception {
             return epollWaitNow();
         }
     };
+    // 1 if the EventLoop is awake or a wakeup is pending already, so no one needs to write to the eventfd.
     @SuppressWarnings("unused") // AtomicIntegerFieldUpdater
     private volatile int wakenUp;
     private volatile int ioRatio = 50;
@@ -83,6 +86,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
                    SelectStrategy strategy, RejectedExecutionHandler rejectedExecutionHandler) {
         super(parent, executor, false, DEFAULT_MAX_PENDING_TASKS, rejectedExecutionHandler);
         selectStrategy = ObjectUtil.checkNotNull(strategy, "strategy");
+        spinStrategy = strategy instanceof EpollSpinSelectStrategy ? (EpollSpinSelectStrategy) strategy : null;
         if (maxEvents == 0) {
             allowGrowing = true;
             events = new EpollEventArray(4096);
@@ -209,6 +213,11 @@ class EpollEventLoop extends SingleThreadEventLoop {
                                                     : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
     }
 
+    @Override
+    public int registeredChannels() {
+        return channels.size();
+    }
+
     /**
      * Returns the percentage of the desired amount of time spent for I/O in the event loop.
      */
@@ -227,28 +236,62 @@ class EpollEventLoop extends SingleThreadEventLoop {
         this.ioRatio = ioRatio;
     }
 
-    private int epollWait(boolean oldWakeup) throws IOException {
-        // If a task was submitted when wakenUp value was 1, the task didn't get a chance to produce wakeup event.
-        // So we need to check task queue again before calling epoll_wait. If we don't, the task might be pended
-        // until epoll_wait was timed out. It might be pended until idle timeout if IdleStateHandler existed
-        // in pipeline.
-        if (oldWakeup && hasTasks()) {
-            return epollWaitNow();
+    private int epollWait() throws IOException {
+        // Reset the flag before checking the task queue again, so a task that is added concurrently will either be
+        // seen here or write to the eventfd.
+        WAKEN_UP_UPDATER.set(this, 0);
+        try {
+            if (hasTasks() || isShuttingDown()) {
+                return epollWaitNow();
+            }
+
+            int delaySeconds;
+            int delayNanos;
+            long curDeadlineNanos = deadlineNanos();
+            if (curDeadlineNanos == prevDeadlineNanos) {
+                delaySeconds = -1;
+                delayNanos = -1;
+            } else {
+                long totalDelay = delayNanos(System.nanoTime());
+                prevDeadlineNanos = curDeadlineNanos;
+                delaySeconds = (int) min(totalDelay / 1000000000L, Integer.MAX_VALUE);
+                delayNanos = (int) min(totalDelay - delaySeconds * 1000000000L, MAX_SCHEDULED_TIMERFD_NS);
+            }
+            return Native.epollWait(epollFd, events, timerFd, delaySeconds, delayNanos);
+        } finally {
+            // We are awake again, so there is no need for anyone to write to the eventfd until we are about to block
+            // the next time. This coalesces the wakeups of all threads that submit tasks in the meantime.
+            WAKEN_UP_UPDATER.lazySet(this, 1);
         }
+    }
 
-        int delaySeconds;
-        int delayNanos;
-        long curDeadlineNanos = deadlineNanos();
-        if (curDeadlineNanos == prevDeadlineNanos) {
-            delaySeconds = -1;
-            delayNanos = -1;
-        } else {
-            long totalDelay = delayNanos(System.nanoTime());
-            prevDeadlineNanos = curDeadlineNanos;
-            delaySeconds = (int) min(totalDelay / 1000000000L, Integer.MAX_VALUE);
-            delayNanos = (int) min(totalDelay - delaySeconds * 1000000000L, MAX_SCHEDULED_TIMERFD_NS);
+    private int epollSpinThenWait(EpollSpinSelectStrategy spinStrategy) throws IOException {
+        // While spinning wakenUp stays 1, so tasks that are submitted in the meantime do not need to write to the
+        // eventfd and are picked up by the hasTasks() check below.
+        final long spinStartTime = System.nanoTime();
+        final long spinBudget = spinStrategy.spinBudgetNanos();
+        final long scheduledDelay = delayNanos(spinStartTime);
+        final long spinDeadline = spinStartTime + min(spinBudget, scheduledDelay);
+        long currentTime;
+        for (;;) {
+            int ready = epollWaitNow();
+            currentTime = System.nanoTime();
+            if (ready > 0 || hasTasks() || isShuttingDown()) {
+                spinStrategy.spinHit(currentTime - spinStartTime);
+                return ready;
+            }
+            if (currentTime - spinDeadline >= 0) {
+                break;
+            }
         }
-        return Native.epollWait(epollFd, events, timerFd, delaySeconds, delayNanos);
+        // Only shrink the budget if it was exhausted and not if a scheduled task is due.
+        spinStrategy.spinMiss(currentTime - spinStartTime, spinBudget <= scheduledDelay);
+
+        int ready = epollWait();
+        if (ready > 0 || hasTasks()) {
+            spinStrategy.parkHit(System.nanoTime() - currentTime);
+        }
+        return ready;
     }
 
     private int epollWaitNow() throws IOException {
@@ -256,7 +299,17 @@ class EpollEventLoop extends SingleThreadEventLoop {
     }
 
     private int epollBusyWait() throws IOException {
-        return Native.epollBusyWait(epollFd, events);
+        // Same as for epollWait() the flag needs to be reset, as otherwise submitted tasks could not interrupt the
+        // busy-wait.
+        WAKEN_UP_UPDATER.set(this, 0);
+        try {
+            if (hasTasks() || isShuttingDown()) {
+                return epollWaitNow();
+            }
+            return Native.epollBusyWait(epollFd, events);
+        } finally {
+            WAKEN_UP_UPDATER.lazySet(this, 1);
+        }
     }
 
     @Override
@@ -273,39 +326,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
                         break;
 
                     case SelectStrategy.SELECT:
-                        strategy = epollWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
-
-                        // 'wakenUp.compareAndSet(false, true)' is always evaluated
-                        // before calling 'selector.wakeup()' to reduce the wake-up
-                        // overhead. (Selector.wakeup() is an expensive operation.)
-                        //
-                        // However, there is a race condition in this approach.
-                        // The race condition is triggered when 'wakenUp' is set to
-                        // true too early.
-                        //
-                        // 'wakenUp' is set to true too early if:
-                        // 1) Selector is waken up between 'wakenUp.set(false)' and
-                        //    'selector.select(...)'. (BAD)
-                        // 2) Selector is waken up between 'selector.select(...)' and
-                        //    'if (wakenUp.get()) { ... }'. (OK)
-                        //
-                        // In the first case, 'wakenUp' is set to true and the
-                        // following 'selector.select(...)' will wake up immediately.
-                        // Until 'wakenUp' is set to false again in the next round,
-                        // 'wakenUp.compareAndSet(false, true)' will fail, and therefore
-                        // any attempt to wake up the Selector will fail, too, causing
-                        // the following 'selector.select(...)' call to block
-                        // unnecessarily.
-                        //
-                        // To fix this problem, we wake up the selector again if wakenUp
-                        // is true immediately after selector.select(...).
-                        // It is inefficient in that it wakes up the selector for both
-                        // the first case (BAD - wake-up required) and the second case
-                        // (OK - no wake-up required).
-
-                        if (wakenUp == 1) {
-                            Native.eventFdWrite(eventFd.intValue(), 1L);
-                        }
+                        strategy = spinStrategy == null ? epollWait() : epollSpinThenWait(spinStrategy);
                         // fallthrough
                     default:
                 }
@@ -330,6 +351,7 @@ class EpollEventLoop extends SingleThreadEventLoop {
                     } finally {
                         // Ensure we always run tasks.
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        recordIoTime(ioTime);
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 }
@@ -404,6 +426,12 @@ class EpollEventLoop extends SingleThreadEventLoop {
                     // past.
                     AbstractEpollUnsafe unsafe = (AbstractEpollUnsafe) ch.unsafe();
 
+                    // Completions of zero-copy writes are queued on the error queue of the socket, which is signaled
+                    // via EPOLLERR. Process these first so the buffers are released as soon as possible.
+                    if ((ev & Native.EPOLLERR) != 0) {
+                        unsafe.epollErrReady();
+                    }
+
                     // First check for EPOLLOUT as we may need to fail the connect ChannelPromise before try
                     // to read from the file descriptor.
                     // See https://github.com/netty/netty/issues/3785
@@ -133,6 +133,12 @@ public final class EpollSocketChannel extends AbstractEpollStreamChannel impleme
         }
     }
 
+    @Override
+    int zeroCopyWriteThreshold() {
+        EpollSocketChannelConfig config = config();
+        return config.isZeroCopy() ? config.getZeroCopyWriteThreshold() : -1;
+    }
+
     void setTcpMd5Sig(Map<InetAddress, byte[]> keys) throws IOException {
         tcpMd5SigAddresses = TcpMd5Util.newTcpMd5Sigs(this, tcpMd5SigAddresses, keys);
     }
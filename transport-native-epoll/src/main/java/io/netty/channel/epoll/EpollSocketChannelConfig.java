@@ -36,9 +36,14 @@ import static io.netty.channel.ChannelOption.SO_RCVBUF;
 import static io.netty.channel.ChannelOption.SO_REUSEADDR;
 import static io.netty.channel.ChannelOption.SO_SNDBUF;
 import static io.netty.channel.ChannelOption.TCP_NODELAY;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
 
 public final class EpollSocketChannelConfig extends EpollChannelConfig implements SocketChannelConfig {
+    private static final int DEFAULT_ZEROCOPY_WRITE_THRESHOLD = 32 * 1024;
+
     private volatile boolean allowHalfClosure;
+    private volatile boolean zeroCopy;
+    private volatile int zeroCopyWriteThreshold = DEFAULT_ZEROCOPY_WRITE_THRESHOLD;
 
     /**
      * Creates a new instance.
@@ -60,7 +65,8 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
                 ALLOW_HALF_CLOSURE, EpollChannelOption.TCP_CORK, EpollChannelOption.TCP_NOTSENT_LOWAT,
                 EpollChannelOption.TCP_KEEPCNT, EpollChannelOption.TCP_KEEPIDLE, EpollChannelOption.TCP_KEEPINTVL,
                 EpollChannelOption.TCP_MD5SIG, EpollChannelOption.TCP_QUICKACK, EpollChannelOption.IP_TRANSPARENT,
-                EpollChannelOption.TCP_FASTOPEN_CONNECT, EpollChannelOption.SO_BUSY_POLL);
+                EpollChannelOption.TCP_FASTOPEN_CONNECT, EpollChannelOption.SO_BUSY_POLL,
+                EpollChannelOption.SO_ZEROCOPY, EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD);
     }
 
     @SuppressWarnings("unchecked")
@@ -120,6 +126,12 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
         if (option == EpollChannelOption.SO_BUSY_POLL) {
             return (T) Integer.valueOf(getSoBusyPoll());
         }
+        if (option == EpollChannelOption.SO_ZEROCOPY) {
+            return (T) Boolean.valueOf(isZeroCopy());
+        }
+        if (option == EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD) {
+            return (T) Integer.valueOf(getZeroCopyWriteThreshold());
+        }
         return super.getOption(option);
     }
 
@@ -167,6 +179,10 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
             setTcpFastOpenConnect((Boolean) value);
         } else if (option == EpollChannelOption.SO_BUSY_POLL) {
             setSoBusyPoll((Integer) value);
+        } else if (option == EpollChannelOption.SO_ZEROCOPY) {
+            setZeroCopy((Boolean) value);
+        } else if (option == EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD) {
+            setZeroCopyWriteThreshold((Integer) value);
         } else {
             return super.setOption(option, value);
         }
@@ -575,6 +591,50 @@ public final class EpollSocketChannelConfig extends EpollChannelConfig implement
         }
     }
 
+    /**
+     * Enable / disable zero-copy writes via
+     * <a href="https://www.kernel.org/doc/html/latest/networking/msg_zerocopy.html">MSG_ZEROCOPY</a>.
+     * Requires Linux kernel 4.14 or later. If enabled direct {@link io.netty.buffer.ByteBuf}s with at
+     * least {@link #getZeroCopyWriteThreshold()} readable bytes are written without copying them into the kernel.
+     * As the kernel may still access the memory after the write returns, these buffers are only released and their
+     * {@link io.netty.channel.ChannelPromise}s only notified once the kernel signals the completion of the write.
+     */
+    public EpollSocketChannelConfig setZeroCopy(boolean zeroCopy) {
+        try {
+            ((EpollSocketChannel) channel).socket.setZeroCopy(zeroCopy);
+        } catch (IOException e) {
+            throw new ChannelException(e);
+        }
+        this.zeroCopy = zeroCopy;
+        return this;
+    }
+
+    /**
+     * Returns {@code true} if zero-copy writes via {@code MSG_ZEROCOPY} are enabled, {@code false} otherwise.
+     */
+    public boolean isZeroCopy() {
+        // Return the cached value as this is queried for every write and so we want to save the syscall.
+        return zeroCopy;
+    }
+
+    /**
+     * Set the minimum number of readable bytes a {@link io.netty.buffer.ByteBuf} must have to be written via
+     * {@code MSG_ZEROCOPY}. Smaller buffers are copied as usual, as for these the overhead of pinning the memory
+     * and processing the completion is bigger than the cost of the copy. The default is {@code 32768}.
+     */
+    public EpollSocketChannelConfig setZeroCopyWriteThreshold(int zeroCopyWriteThreshold) {
+        this.zeroCopyWriteThreshold = checkPositiveOrZero(zeroCopyWriteThreshold, "zeroCopyWriteThreshold");
+        return this;
+    }
+
+    /**
+     * Returns the minimum number of readable bytes a {@link io.netty.buffer.ByteBuf} must have to be written via
+     * {@code MSG_ZEROCOPY}.
+     */
+    public int getZeroCopyWriteThreshold() {
+        return zeroCopyWriteThreshold;
+    }
+
     @Override
     public boolean isAllowHalfClosure() {
         return allowHalfClosure;
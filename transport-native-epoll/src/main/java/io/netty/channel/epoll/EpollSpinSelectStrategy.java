@@ -0,0 +1,137 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.channel.SelectStrategy;
+import io.netty.channel.SelectStrategyFactory;
+import io.netty.util.IntSupplier;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link SelectStrategy} for the {@link EpollEventLoop} which polls {@code epoll_wait} without blocking for a
+ * limited time before the loop parks in a blocking {@code epoll_wait}. This trades CPU for wakeup latency, as events
+ * and tasks that arrive while spinning are picked up without the need of a wakeup through the kernel.
+ * <p>
+ * The time spent spinning adapts to the recent arrival rate and is bounded by {@link #maxSpinNanos()}. It shrinks
+ * whenever a spin ends without finding any work and grows again if work was found while spinning or shortly after
+ * the loop parked. The time spent spinning without finding any work is reported by {@link #idleSpinNanos()}.
+ * <p>
+ * Each {@link EpollEventLoop} needs its own instance, so use a {@link SelectStrategyFactory} which returns a new
+ * instance on every call, like the one returned by {@link #newFactory(long, TimeUnit)}. Returning a different
+ * {@link SelectStrategy} for some loops allows to only enable spinning for selected loops of an
+ * {@link EpollEventLoopGroup}. Other transports ignore the spinning and treat this as the default strategy.
+ */
+@UnstableApi
+public final class EpollSpinSelectStrategy implements SelectStrategy {
+
+    // Never shrink the budget below this value, as otherwise we could not detect a high arrival rate anymore.
+    private static final long MIN_SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final long maxSpinNanos;
+    // Only written by the EventLoop thread, volatile so it can be observed by other threads.
+    private volatile long spinNanos;
+    private volatile long idleSpinNanos;
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxSpin   the maximum time to spin before parking
+     * @param unit      the {@link TimeUnit} of {@code maxSpin}
+     */
+    public EpollSpinSelectStrategy(long maxSpin, TimeUnit unit) {
+        maxSpinNanos = ObjectUtil.checkNotNull(unit, "unit").toNanos(ObjectUtil.checkPositive(maxSpin, "maxSpin"));
+        spinNanos = maxSpinNanos;
+    }
+
+    /**
+     * Returns a {@link SelectStrategyFactory} which creates a new {@link EpollSpinSelectStrategy} for each
+     * {@link EpollEventLoop}.
+     */
+    public static SelectStrategyFactory newFactory(final long maxSpin, final TimeUnit unit) {
+        // Validate the arguments early.
+        new EpollSpinSelectStrategy(maxSpin, unit);
+        return new SelectStrategyFactory() {
+            @Override
+            public SelectStrategy newSelectStrategy() {
+                return new EpollSpinSelectStrategy(maxSpin, unit);
+            }
+        };
+    }
+
+    @Override
+    public int calculateStrategy(IntSupplier selectSupplier, boolean hasTasks) throws Exception {
+        return hasTasks ? selectSupplier.get() : SelectStrategy.SELECT;
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds the {@link EpollEventLoop} spins before it parks.
+     */
+    public long maxSpinNanos() {
+        return maxSpinNanos;
+    }
+
+    /**
+     * Returns the time in nanoseconds the {@link EpollEventLoop} will spin before it parks the next time.
+     */
+    public long spinBudgetNanos() {
+        return spinNanos;
+    }
+
+    /**
+     * Returns the accumulated time in nanoseconds the {@link EpollEventLoop} spent spinning without finding any work.
+     */
+    public long idleSpinNanos() {
+        return idleSpinNanos;
+    }
+
+    /**
+     * Called by the {@link EpollEventLoop} if work was found after spinning for {@code spinTimeNanos}.
+     */
+    void spinHit(long spinTimeNanos) {
+        // The next arrival is likely to happen within the same time, so make sure we spin at least twice as long.
+        long spinNanos = this.spinNanos;
+        if (spinNanos < spinTimeNanos << 1) {
+            this.spinNanos = min(spinTimeNanos << 1);
+        }
+    }
+
+    /**
+     * Called by the {@link EpollEventLoop} if it stopped spinning without finding any work.
+     */
+    void spinMiss(long spinTimeNanos, boolean budgetExhausted) {
+        idleSpinNanos += spinTimeNanos;
+        if (budgetExhausted) {
+            spinNanos = Math.max(MIN_SPIN_NANOS, spinNanos >>> 1);
+        }
+    }
+
+    /**
+     * Called by the {@link EpollEventLoop} if it found work after being parked for {@code parkTimeNanos}.
+     */
+    void parkHit(long parkTimeNanos) {
+        if (parkTimeNanos < maxSpinNanos) {
+            // Spinning would have picked up the work, so grow the budget again.
+            spinNanos = min(Math.max(spinNanos << 1, parkTimeNanos << 1));
+        }
+    }
+
+    private long min(long spinNanos) {
+        return Math.min(maxSpinNanos, spinNanos);
+    }
+}
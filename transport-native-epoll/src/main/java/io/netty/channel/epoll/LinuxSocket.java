@@ -29,6 +29,7 @@ import java.nio.channels.ClosedChannelException;
 import static io.netty.channel.unix.Errors.ERRNO_EPIPE_NEGATIVE;
 import static io.netty.channel.unix.Errors.ioResult;
 import static io.netty.channel.unix.Errors.newConnectionResetException;
+import static io.netty.channel.unix.Errors.newIOException;
 
 /**
  * A socket which provides access Linux native methods.
@@ -39,6 +40,16 @@ final class LinuxSocket extends Socket {
             newConnectionResetException("syscall:sendfile(...)", ERRNO_EPIPE_NEGATIVE);
     private static final ClosedChannelException SENDFILE_CLOSED_CHANNEL_EXCEPTION = ThrowableUtil.unknownStackTrace(
             new ClosedChannelException(), Native.class, "sendfile(...)");
+    private static final NativeIoException SEND_ZEROCOPY_CONNECTION_RESET_EXCEPTION =
+            newConnectionResetException("syscall:send(...)", ERRNO_EPIPE_NEGATIVE);
+    private static final ClosedChannelException SEND_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION =
+            ThrowableUtil.unknownStackTrace(new ClosedChannelException(), LinuxSocket.class,
+                    "sendAddressZeroCopy(...)");
+    private static final NativeIoException RECV_ZEROCOPY_CONNECTION_RESET_EXCEPTION =
+            newConnectionResetException("syscall:recvmsg(...)", ERRNO_EPIPE_NEGATIVE);
+    private static final ClosedChannelException RECV_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION =
+            ThrowableUtil.unknownStackTrace(new ClosedChannelException(), LinuxSocket.class,
+                    "recvZeroCopyCompletion(...)");
 
     public LinuxSocket(int fd) {
         super(fd);
@@ -107,6 +118,14 @@ final class LinuxSocket extends Socket {
         setIpRecvOrigDestAddr(intValue(), enabled ? 1 : 0);
     }
 
+    void setUdpSegment(int segmentSize) throws IOException {
+        setUdpSegment(intValue(), segmentSize);
+    }
+
+    void setUdpGro(boolean gro) throws IOException {
+        setUdpGro(intValue(), gro ? 1 : 0);
+    }
+
     void getTcpInfo(EpollTcpInfo info) throws IOException {
         getTcpInfo(intValue(), info.info);
     }
@@ -164,6 +183,65 @@ final class LinuxSocket extends Socket {
         return isIpRecvOrigDestAddr(intValue()) != 0;
     }
 
+    int getUdpSegment() throws IOException {
+        return getUdpSegment(intValue());
+    }
+
+    boolean isUdpGro() throws IOException {
+        return isUdpGro(intValue()) != 0;
+    }
+
+    void setZeroCopy(boolean zeroCopy) throws IOException {
+        setZeroCopy(intValue(), zeroCopy ? 1 : 0);
+    }
+
+    boolean isZeroCopy() throws IOException {
+        return isZeroCopy(intValue()) != 0;
+    }
+
+    /**
+     * Write the data between {@code pos} and {@code limit} via {@code send(...)} using {@code MSG_ZEROCOPY}. Returns
+     * the number of written bytes, {@code 0} if the socket is not writable or {@code -1} if the kernel can not pin
+     * more memory at the moment ({@code ENOBUFS}) and the data should be written without zero-copy.
+     */
+    int sendAddressZeroCopy(long memoryAddress, int pos, int limit) throws IOException {
+        int res = sendAddressZeroCopy(intValue(), memoryAddress, pos, limit);
+        if (res >= 0) {
+            return res;
+        }
+        if (res == Native.ERRNO_ENOBUFS_NEGATIVE) {
+            return -1;
+        }
+        return ioResult("send", res, SEND_ZEROCOPY_CONNECTION_RESET_EXCEPTION,
+                SEND_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION);
+    }
+
+    /**
+     * Read the next zero-copy completion notification from the error queue of the socket. On success the inclusive
+     * range of completed sends is stored in {@code completion[0]} and {@code completion[1]}, {@code completion[2]}
+     * is {@code 1} if the kernel copied the data anyway. Returns {@code false} if no notification is pending.
+     */
+    boolean recvZeroCopyCompletion(int[] completion) throws IOException {
+        int res = recvZeroCopyCompletion(intValue(), completion);
+        if (res > 0) {
+            return true;
+        }
+        return ioResult("recvmsg", res, RECV_ZEROCOPY_CONNECTION_RESET_EXCEPTION,
+                RECV_ZEROCOPY_CLOSED_CHANNEL_EXCEPTION) > 0;
+    }
+
+    /**
+     * Returns a new {@link LinuxSocket} that refers to the same socket. The socket itself is only closed once all
+     * of its file descriptors are closed.
+     */
+    LinuxSocket dup() throws IOException {
+        int res = dup(intValue());
+        if (res < 0) {
+            throw newIOException("dup", res);
+        }
+        return new LinuxSocket(res);
+    }
+
     PeerCredentials getPeerCredentials() throws IOException {
         return getPeerCredentials(intValue());
     }
@@ -207,6 +285,12 @@ final class LinuxSocket extends Socket {
     private static native int isIpFreeBind(int fd) throws IOException;
     private static native int isIpTransparent(int fd) throws IOException;
     private static native int isIpRecvOrigDestAddr(int fd) throws IOException;
+    private static native int getUdpSegment(int fd) throws IOException;
+    private static native int isUdpGro(int fd) throws IOException;
+    private static native int isZeroCopy(int fd) throws IOException;
+    private static native int sendAddressZeroCopy(int fd, long address, int pos, int limit);
+    private static native int recvZeroCopyCompletion(int fd, int[] completion);
+    private static native int dup(int fd);
     private static native void getTcpInfo(int fd, long[] array) throws IOException;
     private static native PeerCredentials getPeerCredentials(int fd) throws IOException;
     private static native int isTcpFastOpenConnect(int fd) throws IOException;
@@ -225,5 +309,8 @@ final class LinuxSocket extends Socket {
     private static native void setIpFreeBind(int fd, int freeBind) throws IOException;
     private static native void setIpTransparent(int fd, int transparent) throws IOException;
     private static native void setIpRecvOrigDestAddr(int fd, int transparent) throws IOException;
+    private static native void setUdpSegment(int fd, int segmentSize) throws IOException;
+    private static native void setUdpGro(int fd, int gro) throws IOException;
+    private static native void setZeroCopy(int fd, int zeroCopy) throws IOException;
     private static native void setTcpMd5Sig(int fd, byte[] address, int scopeId, byte[] key) throws IOException;
 }
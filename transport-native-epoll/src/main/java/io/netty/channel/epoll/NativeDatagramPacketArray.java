@@ -22,12 +22,14 @@ import io.netty.channel.unix.IovArray;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
 
 import static io.netty.channel.unix.Limits.UIO_MAX_IOV;
 import static io.netty.channel.unix.NativeInetAddress.ipv4MappedIpv6Address;
 
 /**
- * Support <a href="http://linux.die.net/man/2/sendmmsg">sendmmsg(...)</a> on linux with GLIBC 2.14+
+ * Support <a href="http://linux.die.net/man/2/sendmmsg">sendmmsg(...)</a> on linux with GLIBC 2.14+ and
+ * <a href="http://linux.die.net/man/2/recvmmsg">recvmmsg(...)</a> on linux with GLIBC 2.12+
  */
 final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessageProcessor {
 
@@ -64,6 +66,21 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
         return true;
     }
 
+    /**
+     * Try to add a receive slot of {@code len} bytes at the given {@code index} of the {@link ByteBuf}. Returns
+     * {@code true} on success, {@code false} otherwise.
+     */
+    boolean addWritable(ByteBuf buf, int index, int len) {
+        if (count == packets.length) {
+            return false;
+        }
+        if (!packets[count].initWritable(buf, index, len)) {
+            return false;
+        }
+        count++;
+        return true;
+    }
+
     @Override
     public boolean processMessage(Object msg) {
         return msg instanceof DatagramPacket && add((DatagramPacket) msg);
@@ -112,6 +129,14 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
         private int scopeId;
         private int port;
 
+        // Filled by recvmmsg(...). If the count of bytes is bigger than the segmentSize the kernel coalesced multiple
+        // datagrams via UDP_GRO.
+        private final byte[] senderAddr = new byte[16];
+        private int senderAddrLen;
+        private int senderScopeId;
+        private int senderPort;
+        private int segmentSize;
+
         private void release() {
             array.release();
         }
@@ -139,5 +164,49 @@ final class NativeDatagramPacketArray implements ChannelOutboundBuffer.MessagePr
             port = recipient.getPort();
             return true;
         }
+
+        /**
+         * Init this instance to receive into the given region of the {@link ByteBuf} and return {@code true} if the
+         * init was successful.
+         */
+        private boolean initWritable(ByteBuf buf, int index, int len) {
+            array.clear();
+            if (!array.add(buf, index, len)) {
+                return false;
+            }
+            memoryAddress = array.memoryAddress(0);
+            count = array.count();
+            segmentSize = 0;
+            return true;
+        }
+
+        /**
+         * Returns the number of bytes that were received.
+         */
+        int receivedBytes() {
+            return count;
+        }
+
+        /**
+         * Returns the size of the segments if the kernel coalesced multiple datagrams, {@code 0} otherwise.
+         */
+        int segmentSize() {
+            return segmentSize;
+        }
+
+        /**
+         * Returns the address of the sender of the received datagram.
+         */
+        InetSocketAddress sender() throws UnknownHostException {
+            final InetAddress address;
+            if (senderAddrLen == 4) {
+                byte[] ipv4 = new byte[4];
+                System.arraycopy(senderAddr, 0, ipv4, 0, 4);
+                address = InetAddress.getByAddress(ipv4);
+            } else {
+                address = Inet6Address.getByAddress(null, senderAddr.clone(), senderScopeId);
+            }
+            return new InetSocketAddress(address, senderPort);
+        }
     }
 }
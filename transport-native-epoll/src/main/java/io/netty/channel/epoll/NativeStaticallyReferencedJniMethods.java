@@ -40,6 +40,8 @@ final class NativeStaticallyReferencedJniMethods {
     static native int iovMax();
     static native int uioMaxIov();
     static native boolean isSupportingSendmmsg();
+    static native boolean isSupportingRecvmmsg();
+    static native int errnoENOBUFS();
     static native boolean isSupportingTcpFastopen();
     static native String kernelVersion();
 }
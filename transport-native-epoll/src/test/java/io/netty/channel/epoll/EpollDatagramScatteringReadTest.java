@@ -0,0 +1,168 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.FixedRecvByteBufAllocator;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.DatagramPacket;
+import io.netty.util.CharsetUtil;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class EpollDatagramScatteringReadTest {
+
+    private static final int DATAGRAM_SIZE = 64;
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void beforeClass() {
+        group = new EpollEventLoopGroup(1);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 10000)
+    public void testScatteringRead() throws Throwable {
+        assumeTrue(Native.IS_SUPPORTING_RECVMMSG);
+        testRead(false, false, DATAGRAM_SIZE);
+    }
+
+    @Test(timeout = 10000)
+    public void testScatteringReadWithGro() throws Throwable {
+        assumeTrue(Native.IS_SUPPORTING_RECVMMSG);
+        testRead(true, false, DATAGRAM_SIZE);
+    }
+
+    @Test(timeout = 10000)
+    public void testScatteringReadWithGroAndSegmentedWrite() throws Throwable {
+        assumeTrue(Native.IS_SUPPORTING_RECVMMSG);
+        testRead(true, true, DATAGRAM_SIZE);
+    }
+
+    @Test(timeout = 10000)
+    public void testGroSplitsDatagramsWithoutMaxDatagramPayloadSize() throws Throwable {
+        assumeTrue(Native.IS_SUPPORTING_RECVMMSG);
+        // The coalesced datagrams must be split even if MAX_DATAGRAM_PAYLOAD_SIZE is left at its default.
+        testRead(true, true, 0);
+    }
+
+    private static void testRead(boolean gro, boolean segmentedWrite, int maxDatagramPayloadSize)
+            throws Throwable {
+        final int count = 16;
+        final CountDownLatch latch = new CountDownLatch(count);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+        Channel server = null;
+        Channel client = null;
+        try {
+            Bootstrap sb = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                    .option(EpollChannelOption.MAX_DATAGRAM_PAYLOAD_SIZE, maxDatagramPayloadSize)
+                    .option(EpollChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(DATAGRAM_SIZE * count))
+                    .handler(new SimpleChannelInboundHandler<DatagramPacket>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, DatagramPacket packet) {
+                            received.add(packet.content().toString(CharsetUtil.US_ASCII));
+                            latch.countDown();
+                        }
+                    });
+            server = sb.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            if (gro) {
+                try {
+                    ((EpollDatagramChannel) server).config().setUdpGro(true);
+                } catch (ChannelException e) {
+                    assumeTrue("UDP_GRO not supported", false);
+                }
+                assertTrue(((EpollDatagramChannel) server).config().isUdpGro());
+            }
+
+            Bootstrap cb = new Bootstrap().group(group).channel(EpollDatagramChannel.class)
+                    .handler(new SimpleChannelInboundHandler<Object>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, Object msg) {
+                            // NOOP
+                        }
+                    });
+            client = cb.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+            InetSocketAddress address = (InetSocketAddress) server.localAddress();
+
+            if (segmentedWrite) {
+                try {
+                    ((EpollDatagramChannel) client).config().setUdpSegment(DATAGRAM_SIZE);
+                } catch (ChannelException e) {
+                    assumeTrue("UDP_SEGMENT not supported", false);
+                }
+                assertEquals(DATAGRAM_SIZE, ((EpollDatagramChannel) client).config().getUdpSegment());
+                StringBuilder payloads = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    payloads.append(payload(i));
+                }
+                // The kernel will split this into count datagrams.
+                client.writeAndFlush(new DatagramPacket(
+                        Unpooled.copiedBuffer(payloads, CharsetUtil.US_ASCII), address)).sync();
+            } else {
+                for (int i = 0; i < count; i++) {
+                    client.write(new DatagramPacket(
+                            Unpooled.copiedBuffer(payload(i), CharsetUtil.US_ASCII), address));
+                }
+                client.flush();
+            }
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(count, received.size());
+            for (int i = 0; i < count; i++) {
+                assertTrue(received.contains(payload(i)));
+            }
+        } finally {
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+        }
+    }
+
+    private static String payload(int i) {
+        StringBuilder sb = new StringBuilder(DATAGRAM_SIZE);
+        String prefix = i + ":";
+        sb.append(prefix);
+        for (int j = prefix.length(); j < DATAGRAM_SIZE; j++) {
+            sb.append('x');
+        }
+        return sb.toString();
+    }
+}
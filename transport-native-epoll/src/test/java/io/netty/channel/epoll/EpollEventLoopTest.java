@@ -24,9 +24,11 @@ import io.netty.util.concurrent.RejectedExecutionHandlers;
 import io.netty.util.concurrent.ThreadPerTaskExecutor;
 import org.junit.Test;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -63,4 +65,51 @@ public class EpollEventLoopTest {
             group.shutdownGracefully();
         }
     }
+
+    @Test(timeout = 5000)
+    public void testSpinSelectStrategy() throws Exception {
+        final EpollSpinSelectStrategy strategy = new EpollSpinSelectStrategy(100, TimeUnit.MICROSECONDS);
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(100), strategy.maxSpinNanos());
+        assertEquals(strategy.maxSpinNanos(), strategy.spinBudgetNanos());
+
+        final EventLoop eventLoop = new EpollEventLoop(null,
+                new ThreadPerTaskExecutor(new DefaultThreadFactory(getClass())), 0,
+                strategy, RejectedExecutionHandlers.reject());
+        try {
+            // Let the EventLoop spin without finding any work, which should shrink the budget.
+            eventLoop.submit(new Runnable() {
+                @Override
+                public void run() {
+                    // NOOP
+                }
+            }).syncUninterruptibly();
+            Thread.sleep(100);
+            assertTrue(strategy.idleSpinNanos() > 0);
+            assertTrue(strategy.spinBudgetNanos() < strategy.maxSpinNanos());
+
+            // Tasks submitted while the EventLoop spins or is parked must be picked up.
+            for (int i = 0; i < 100; i++) {
+                final CountDownLatch latch = new CountDownLatch(1);
+                eventLoop.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+                latch.await();
+            }
+            assertTrue(strategy.spinBudgetNanos() <= strategy.maxSpinNanos());
+
+            final CountDownLatch scheduledLatch = new CountDownLatch(1);
+            eventLoop.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    scheduledLatch.countDown();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            scheduledLatch.await();
+        } finally {
+            eventLoop.shutdownGracefully();
+        }
+    }
 }
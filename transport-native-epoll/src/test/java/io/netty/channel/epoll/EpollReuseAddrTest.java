@@ -18,11 +18,13 @@ package io.netty.channel.epoll;
 import io.netty.bootstrap.AbstractBootstrap;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerAdapter;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
 import io.netty.util.NetUtil;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ResourceLeakDetector;
@@ -36,9 +38,14 @@ import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EpollReuseAddrTest {
@@ -114,6 +121,75 @@ public class EpollReuseAddrTest {
         future2.channel().close().syncUninterruptibly();
     }
 
+    @Test(timeout = 10000)
+    public void testBindPerEventLoop() throws Exception {
+        Assume.assumeTrue(versionEqOrGt(3, 9, 0));
+        // Find a free port first as every ServerChannel needs to be bound to the same address.
+        ServerBootstrap bootstrap = createServerBootstrap();
+        bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        ChannelFuture future = bootstrap.bind().syncUninterruptibly();
+        InetSocketAddress address = (InetSocketAddress) future.channel().localAddress();
+        future.channel().close().syncUninterruptibly();
+
+        EventLoopGroup group = new EpollEventLoopGroup(2);
+        try {
+            bootstrap = new ServerBootstrap();
+            bootstrap.group(group, group);
+            bootstrap.channel(EpollServerSocketChannel.class);
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            Set<Channel> acceptors = Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+            AtomicBoolean sameEventLoop = new AtomicBoolean(true);
+            bootstrap.childHandler(new PerEventLoopTestHandler(acceptors, sameEventLoop));
+            List<ChannelFuture> futures = bootstrap.bindPerEventLoop(address);
+            Assert.assertEquals(2, futures.size());
+            for (ChannelFuture f: futures) {
+                f.syncUninterruptibly();
+                Assert.assertEquals(address, f.channel().localAddress());
+            }
+            Assert.assertNotSame(futures.get(0).channel().eventLoop(), futures.get(1).channel().eventLoop());
+
+            while (acceptors.size() < 2) {
+                Socket socket = new Socket(address.getAddress(), address.getPort());
+                socket.setReuseAddress(true);
+                socket.close();
+            }
+            Assert.assertTrue(sameEventLoop.get());
+            for (ChannelFuture f: futures) {
+                f.channel().close().syncUninterruptibly();
+            }
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBindPerEventLoopEphemeralPort() throws Exception {
+        Assume.assumeTrue(versionEqOrGt(3, 9, 0));
+        EventLoopGroup group = new EpollEventLoopGroup(3);
+        try {
+            ServerBootstrap bootstrap = new ServerBootstrap();
+            bootstrap.group(group);
+            bootstrap.channel(EpollServerSocketChannel.class);
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            bootstrap.childHandler(new DummyHandler());
+            List<ChannelFuture> futures = bootstrap.bindPerEventLoop(new InetSocketAddress(NetUtil.LOCALHOST, 0));
+            Assert.assertEquals(3, futures.size());
+            // All ServerChannels must share the port that was picked for the first one.
+            InetSocketAddress address = (InetSocketAddress) futures.get(0).syncUninterruptibly().channel()
+                    .localAddress();
+            Assert.assertNotEquals(0, address.getPort());
+            for (ChannelFuture f: futures) {
+                f.syncUninterruptibly();
+                Assert.assertEquals(address, f.channel().localAddress());
+            }
+            for (ChannelFuture f: futures) {
+                f.channel().close().syncUninterruptibly();
+            }
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
     @Test(timeout = 10000)
     @Ignore // TODO: Unignore after making it pass on centos6-1 and debian7-1
     public void testMultipleBindDatagramChannel() throws Exception {
@@ -217,6 +293,27 @@ public class EpollReuseAddrTest {
         }
     }
 
+    @ChannelHandler.Sharable
+    private static class PerEventLoopTestHandler extends ChannelInboundHandlerAdapter {
+        private final Set<Channel> acceptors;
+        private final AtomicBoolean sameEventLoop;
+
+        PerEventLoopTestHandler(Set<Channel> acceptors, AtomicBoolean sameEventLoop) {
+            this.acceptors = acceptors;
+            this.sameEventLoop = sameEventLoop;
+        }
+
+        @Override
+        public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            Channel channel = ctx.channel();
+            if (channel.eventLoop() != channel.parent().eventLoop()) {
+                sameEventLoop.set(false);
+            }
+            acceptors.add(channel.parent());
+            ctx.close();
+        }
+    }
+
     @ChannelHandler.Sharable
     private static class DatagramSocketTestHandler extends ChannelInboundHandlerAdapter {
         private final AtomicBoolean received;
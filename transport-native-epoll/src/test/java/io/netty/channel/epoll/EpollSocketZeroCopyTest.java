@@ -0,0 +1,369 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.epoll;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class EpollSocketZeroCopyTest {
+
+    private static EventLoopGroup group;
+
+    @BeforeClass
+    public static void beforeClass() {
+        group = new EpollEventLoopGroup(2);
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        group.shutdownGracefully();
+    }
+
+    @Test
+    public void testOptions() throws Exception {
+        EpollSocketChannel ch = new EpollSocketChannel();
+        group.register(ch).syncUninterruptibly();
+        try {
+            assertFalse(ch.config().isZeroCopy());
+            try {
+                ch.config().setOption(EpollChannelOption.SO_ZEROCOPY, true);
+            } catch (ChannelException e) {
+                assumeTrue("SO_ZEROCOPY not supported", false);
+            }
+            assertTrue(ch.config().getOption(EpollChannelOption.SO_ZEROCOPY));
+            assertTrue(ch.socket.isZeroCopy());
+
+            ch.config().setOption(EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD, 1024);
+            assertEquals(1024, (int) ch.config().getOption(EpollChannelOption.ZEROCOPY_WRITE_THRESHOLD));
+        } finally {
+            ch.close().syncUninterruptibly();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeThreshold() {
+        EpollSocketChannel ch = new EpollSocketChannel();
+        group.register(ch).syncUninterruptibly();
+        try {
+            ch.config().setZeroCopyWriteThreshold(-1);
+        } finally {
+            ch.close().syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testZeroCopyWrite() throws Throwable {
+        final byte[] data = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(data);
+        final ByteBuf received = Unpooled.buffer(data.length);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Channel server = null;
+        Channel client = null;
+        try {
+            ServerBootstrap sb = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                    .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                            received.writeBytes(msg);
+                            if (!received.isWritable()) {
+                                latch.countDown();
+                            }
+                        }
+                    });
+            server = sb.bind(new InetSocketAddress(0)).sync().channel();
+
+            Bootstrap cb = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter());
+            client = cb.connect(server.localAddress()).sync().channel();
+            try {
+                ((EpollSocketChannel) client).config().setZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeTrue("SO_ZEROCOPY not supported", false);
+            }
+            ((EpollSocketChannel) client).config().setZeroCopyWriteThreshold(64 * 1024);
+
+            // Mix buffers that are written via zero-copy with buffers that are too small or not direct.
+            List<ByteBuf> buffers = new ArrayList<ByteBuf>();
+            List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+            final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+            int offset = 0;
+            int[] sizes = { 1024 * 1024, 512, 1024 * 1024, 4096 };
+            for (int i = 0; offset < data.length; i++) {
+                int size = Math.min(sizes[i % sizes.length], data.length - offset);
+                ByteBuf buf = i % 3 == 2 ? Unpooled.buffer(size) : Unpooled.directBuffer(size);
+                buf.writeBytes(data, offset, size);
+                offset += size;
+                buffers.add(buf);
+                final int index = i;
+                futures.add(client.write(buf).addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        completed.add(index);
+                    }
+                }));
+            }
+            client.flush();
+
+            for (ChannelFuture future : futures) {
+                future.sync();
+            }
+            // Once the write is done the buffers must have been released.
+            for (ByteBuf buf : buffers) {
+                assertEquals(0, buf.refCnt());
+            }
+            // The promises must be notified in write order, no matter if zero-copy was used or not.
+            for (int i = 0; i < completed.size(); i++) {
+                assertEquals(i, (int) completed.get(i));
+            }
+
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(Unpooled.wrappedBuffer(data), received);
+        } finally {
+            received.release();
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testZeroCopyWriteAndClose() throws Throwable {
+        final byte[] data = new byte[32 * 1024];
+        new Random().nextBytes(data);
+        final ByteBuf received = Unpooled.buffer(data.length);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Channel server = null;
+        Channel client = null;
+        try {
+            ServerBootstrap sb = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                    .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                            received.writeBytes(msg);
+                        }
+
+                        @Override
+                        public void channelInactive(ChannelHandlerContext ctx) {
+                            latch.countDown();
+                        }
+                    });
+            server = sb.bind(new InetSocketAddress(0)).sync().channel();
+
+            Bootstrap cb = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter());
+            client = cb.connect(server.localAddress()).sync().channel();
+            try {
+                ((EpollSocketChannel) client).config().setZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeTrue("SO_ZEROCOPY not supported", false);
+            }
+            ((EpollSocketChannel) client).config().setZeroCopyWriteThreshold(1024);
+
+            final ByteBuf buf = Unpooled.directBuffer(data.length).writeBytes(data);
+            final Channel ch = client;
+            // Close the channel directly after the data was handed to the kernel, before the write was completed.
+            ChannelFuture future = ch.eventLoop().submit(new Callable<ChannelFuture>() {
+                @Override
+                public ChannelFuture call() {
+                    ChannelFuture future = ch.writeAndFlush(buf);
+                    ch.close();
+                    return future;
+                }
+            }).sync().getNow();
+            client.closeFuture().sync();
+
+            // The data was accepted by the kernel so the write must not be failed by the close.
+            assertTrue(future.await(10, TimeUnit.SECONDS));
+            assertTrue(future.isSuccess());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(Unpooled.wrappedBuffer(data), received);
+            while (buf.refCnt() != 0) {
+                Thread.sleep(10);
+            }
+        } finally {
+            received.release();
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testCompositeWriteWhileZeroCopyWritesPending() throws Throwable {
+        final byte[] data = new byte[1024 * 1024 + 3 * 4096];
+        new Random().nextBytes(data);
+        final ByteBuf received = Unpooled.buffer(data.length);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Channel server = null;
+        Channel client = null;
+        try {
+            ServerBootstrap sb = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                    .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                            received.writeBytes(msg);
+                            if (!received.isWritable()) {
+                                latch.countDown();
+                            }
+                        }
+                    });
+            server = sb.bind(new InetSocketAddress(0)).sync().channel();
+
+            Bootstrap cb = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter());
+            client = cb.connect(server.localAddress()).sync().channel();
+            try {
+                ((EpollSocketChannel) client).config().setZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeTrue("SO_ZEROCOPY not supported", false);
+            }
+            ((EpollSocketChannel) client).config().setZeroCopyWriteThreshold(64 * 1024);
+
+            final ByteBuf zeroCopyBuf = Unpooled.directBuffer(1024 * 1024).writeBytes(data, 0, 1024 * 1024);
+            // A direct composite with more than one component is always copied, which must not merge the components
+            // into a heap buffer.
+            final CompositeByteBuf composite = Unpooled.compositeBuffer();
+            for (int offset = 1024 * 1024; offset < data.length; offset += 4096) {
+                composite.addComponent(true, Unpooled.directBuffer(4096).writeBytes(data, offset, 4096));
+            }
+            assertTrue(composite.isDirect());
+            assertTrue(composite.nioBufferCount() > 1);
+
+            final Channel ch = client;
+            // Write both in the same flush, so the composite is written while the zero-copy write is still pending.
+            ChannelFuture future = ch.eventLoop().submit(new Callable<ChannelFuture>() {
+                @Override
+                public ChannelFuture call() {
+                    ch.write(zeroCopyBuf);
+                    return ch.writeAndFlush(composite);
+                }
+            }).sync().getNow();
+
+            future.sync();
+            assertTrue(client.isActive());
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals(Unpooled.wrappedBuffer(data), received);
+        } finally {
+            received.release();
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+        }
+    }
+
+    @Test(timeout = 30000)
+    public void testEmptyWriteWhileZeroCopyWritesPending() throws Throwable {
+        Channel server = null;
+        Channel client = null;
+        try {
+            ServerBootstrap sb = new ServerBootstrap().group(group).channel(EpollServerSocketChannel.class)
+                    .childHandler(new SimpleChannelInboundHandler<ByteBuf>() {
+                        @Override
+                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) {
+                            // NOOP
+                        }
+                    });
+            server = sb.bind(new InetSocketAddress(0)).sync().channel();
+
+            Bootstrap cb = new Bootstrap().group(group).channel(EpollSocketChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter());
+            client = cb.connect(server.localAddress()).sync().channel();
+            try {
+                ((EpollSocketChannel) client).config().setZeroCopy(true);
+            } catch (ChannelException e) {
+                assumeTrue("SO_ZEROCOPY not supported", false);
+            }
+            ((EpollSocketChannel) client).config().setZeroCopyWriteThreshold(1024);
+
+            final ByteBuf buf = Unpooled.directBuffer(64 * 1024).writeZero(64 * 1024);
+            final Channel ch = client;
+            final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+            // The empty buffer is written while the zero-copy write is still pending and must neither stall the
+            // outbound buffer nor complete before the zero-copy write.
+            ChannelFuture future = ch.eventLoop().submit(new Callable<ChannelFuture>() {
+                @Override
+                public ChannelFuture call() {
+                    ch.write(buf).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) {
+                            completed.add(0);
+                        }
+                    });
+                    return ch.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(new ChannelFutureListener() {
+                        @Override
+                        public void operationComplete(ChannelFuture future) {
+                            completed.add(1);
+                        }
+                    });
+                }
+            }).sync().getNow();
+
+            assertTrue(future.await(10, TimeUnit.SECONDS));
+            assertTrue(future.isSuccess());
+            assertEquals(2, completed.size());
+            assertEquals(0, (int) completed.get(0));
+            assertEquals(1, (int) completed.get(1));
+            assertTrue(client.isActive());
+        } finally {
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelOutboundBuffer.MessageProcessor;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.socket.DuplexChannel;
+import io.netty.channel.unix.Errors;
+import io.netty.channel.unix.IovArray;
+import io.netty.channel.unix.Socket;
+import io.netty.channel.unix.UnixChannelUtil;
+import io.netty.util.internal.StringUtil;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+abstract class AbstractIOUringStreamChannel extends AbstractIOUringChannel implements DuplexChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false, 16);
+    private static final String EXPECTED_TYPES =
+            " (expected: " + StringUtil.simpleClassName(ByteBuf.class) + ')';
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(AbstractIOUringStreamChannel.class);
+
+    // The buffers that are referenced by the write in flight, they are retained as the kernel may still access them
+    // even if the ChannelOutboundBuffer released them because the Channel was closed in the meantime.
+    private final List<ByteBuf> writeBuffers = new ArrayList<ByteBuf>();
+    private final MessageProcessor iovProcessor = new MessageProcessor() {
+        @Override
+        public boolean processMessage(Object msg) {
+            if (!(msg instanceof ByteBuf)) {
+                return false;
+            }
+            ByteBuf buf = (ByteBuf) msg;
+            // Retain before adding as a CompositeByteBuf may be added partially.
+            writeBuffers.add(buf.retain());
+            return writeIovArray.add(buf);
+        }
+    };
+    private IovArray writeIovArray;
+    private IOException writeError;
+
+    AbstractIOUringStreamChannel(Channel parent, Socket fd, SocketAddress remote) {
+        super(parent, fd, remote);
+    }
+
+    AbstractIOUringStreamChannel(Socket fd, boolean active) {
+        super(null, fd, active);
+    }
+
+    @Override
+    protected AbstractIOUringUnsafe newUnsafe() {
+        return new IOUringStreamUnsafe();
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        IOException error = writeError;
+        if (error != null) {
+            // The previous write failed, report it now so the ChannelOutboundBuffer is failed and the Channel closed.
+            writeError = null;
+            throw error;
+        }
+        if (!isIoRegistered() || isInFlight(WRITE | POLL_OUT)) {
+            // The completion will trigger the next write.
+            return;
+        }
+        for (;;) {
+            Object msg = in.current();
+            if (msg == null) {
+                // Wrote all messages.
+                return;
+            }
+            if (((ByteBuf) msg).isReadable()) {
+                break;
+            }
+            in.remove();
+        }
+
+        final int fd = socket.intValue();
+        if (in.size() == 1) {
+            ByteBuf buf = (ByteBuf) in.current();
+            if (buf.hasMemoryAddress()) {
+                writeBuffers.add(buf.retain());
+                IOUringSubmissionQueue submissionQueue = submissionQueue();
+                submissionQueue.addWrite(fd, buf.memoryAddress() + buf.readerIndex(), buf.readableBytes(),
+                        writeSubmitted(Native.IORING_OP_WRITE));
+                submitWrite(submissionQueue);
+                return;
+            }
+        }
+        IovArray iovArray = ioLoop().acquireIovArray();
+        writeIovArray = iovArray;
+        in.forEachFlushedMessage(iovProcessor);
+        IOUringSubmissionQueue submissionQueue = submissionQueue();
+        submissionQueue.addWritev(fd, iovArray.memoryAddress(0), iovArray.count(),
+                writeSubmitted(Native.IORING_OP_WRITEV));
+        submitWrite(submissionQueue);
+    }
+
+    private static void submitWrite(IOUringSubmissionQueue submissionQueue) {
+        // Hand the write to the kernel right away, like a flush does for the other transports. Otherwise the data
+        // would only be sent once the EventLoop returns to io_uring_enter, which never happens if a handler blocks it.
+        submissionQueue.submit();
+    }
+
+    private void releaseWriteResources() {
+        for (int i = 0; i < writeBuffers.size(); i++) {
+            writeBuffers.get(i).release();
+        }
+        writeBuffers.clear();
+        IovArray iovArray = writeIovArray;
+        if (iovArray != null) {
+            writeIovArray = null;
+            ioLoop().releaseIovArray(iovArray);
+        }
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) msg;
+            return UnixChannelUtil.isBufferCopyNeededForWrite(buf)? newDirectBuffer(buf): buf;
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
+    }
+
+    @Override
+    protected final void doShutdownOutput() throws Exception {
+        socket.shutdown(false, true);
+    }
+
+    private void shutdownInput0(final ChannelPromise promise) {
+        try {
+            socket.shutdown(true, false);
+            promise.setSuccess();
+        } catch (Throwable cause) {
+            promise.setFailure(cause);
+        }
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return socket.isOutputShutdown();
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return socket.isInputShutdown();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return socket.isShutdown();
+    }
+
+    @Override
+    public ChannelFuture shutdownOutput() {
+        return shutdownOutput(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdownOutput(final ChannelPromise promise) {
+        EventLoop loop = eventLoop();
+        if (loop.inEventLoop()) {
+            ((AbstractUnsafe) unsafe()).shutdownOutput(promise);
+        } else {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ((AbstractUnsafe) unsafe()).shutdownOutput(promise);
+                }
+            });
+        }
+
+        return promise;
+    }
+
+    @Override
+    public ChannelFuture shutdownInput() {
+        return shutdownInput(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdownInput(final ChannelPromise promise) {
+        EventLoop loop = eventLoop();
+        if (loop.inEventLoop()) {
+            shutdownInput0(promise);
+        } else {
+            loop.execute(new Runnable() {
+                @Override
+                public void run() {
+                    shutdownInput0(promise);
+                }
+            });
+        }
+        return promise;
+    }
+
+    @Override
+    public ChannelFuture shutdown() {
+        return shutdown(newPromise());
+    }
+
+    @Override
+    public ChannelFuture shutdown(final ChannelPromise promise) {
+        ChannelFuture shutdownOutputFuture = shutdownOutput();
+        if (shutdownOutputFuture.isDone()) {
+            shutdownOutputDone(shutdownOutputFuture, promise);
+        } else {
+            shutdownOutputFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(final ChannelFuture shutdownOutputFuture) throws Exception {
+                    shutdownOutputDone(shutdownOutputFuture, promise);
+                }
+            });
+        }
+        return promise;
+    }
+
+    private void shutdownOutputDone(final ChannelFuture shutdownOutputFuture, final ChannelPromise promise) {
+        ChannelFuture shutdownInputFuture = shutdownInput();
+        if (shutdownInputFuture.isDone()) {
+            shutdownDone(shutdownOutputFuture, shutdownInputFuture, promise);
+        } else {
+            shutdownInputFuture.addListener(new ChannelFutureListener() {
+                @Override
+                public void operationComplete(ChannelFuture shutdownInputFuture) throws Exception {
+                    shutdownDone(shutdownOutputFuture, shutdownInputFuture, promise);
+                }
+            });
+        }
+    }
+
+    private static void shutdownDone(ChannelFuture shutdownOutputFuture,
+                              ChannelFuture shutdownInputFuture,
+                              ChannelPromise promise) {
+        Throwable shutdownOutputCause = shutdownOutputFuture.cause();
+        Throwable shutdownInputCause = shutdownInputFuture.cause();
+        if (shutdownOutputCause != null) {
+            if (shutdownInputCause != null) {
+                logger.debug("Exception suppressed because a previous exception occurred.",
+                        shutdownInputCause);
+            }
+            promise.setFailure(shutdownOutputCause);
+        } else if (shutdownInputCause != null) {
+            promise.setFailure(shutdownInputCause);
+        } else {
+            promise.setSuccess();
+        }
+    }
+
+    class IOUringStreamUnsafe extends AbstractIOUringUnsafe {
+        // The buffer that is used by the IORING_OP_RECV in flight.
+        private ByteBuf readBuffer;
+        // true while a read loop is in progress, which is continued by the completion of each recv.
+        private boolean readInProgress;
+
+        private void handleReadException(ChannelPipeline pipeline, ByteBuf byteBuf, Throwable cause, boolean close,
+                RecvByteBufAllocator.Handle allocHandle) {
+            if (byteBuf != null) {
+                if (byteBuf.isReadable()) {
+                    readPending = false;
+                    pipeline.fireChannelRead(byteBuf);
+                } else {
+                    byteBuf.release();
+                }
+            }
+            allocHandle.readComplete();
+            pipeline.fireChannelReadComplete();
+            pipeline.fireExceptionCaught(cause);
+            if (close || cause instanceof IOException) {
+                shutdownInput(false);
+            }
+        }
+
+        @Override
+        void scheduleRead() {
+            // Only wait for the socket to become readable, so no buffer is held by idle connections.
+            if (!isIoRegistered() || readInProgress || isInFlight(POLL_IN | READ) ||
+                    shouldBreakReadReady(config())) {
+                return;
+            }
+            submitPoll(Native.POLLIN);
+        }
+
+        @Override
+        void pollInReady(int res) {
+            final ChannelConfig config = config();
+            if (!readPending || readInProgress || shouldBreakReadReady(config)) {
+                // Nothing requested a read, we will poll again once read() is called.
+                return;
+            }
+            recvBufAllocHandle().reset(config);
+            readInProgress = true;
+            recv();
+        }
+
+        private void recv() {
+            final ByteBufAllocator allocator = config().getAllocator();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            ByteBuf byteBuf = allocHandle.allocate(allocator);
+            if (!byteBuf.hasMemoryAddress()) {
+                // The kernel needs the address of the memory to read into.
+                ByteBuf directBuf = allocator.directBuffer(byteBuf.capacity());
+                byteBuf.release();
+                byteBuf = directBuf;
+            }
+            allocHandle.attemptedBytesRead(byteBuf.writableBytes());
+            readBuffer = byteBuf;
+            // Use MSG_DONTWAIT so the kernel does not wait for more data once the socket was drained.
+            submissionQueue().addRecv(socket.intValue(), byteBuf.memoryAddress() + byteBuf.writerIndex(),
+                    byteBuf.writableBytes(), Native.MSG_DONTWAIT, readSubmitted(Native.IORING_OP_RECV));
+        }
+
+        @Override
+        void readComplete(int res) {
+            ByteBuf byteBuf = readBuffer;
+            readBuffer = null;
+            if (!isIoRegistered()) {
+                readInProgress = false;
+                byteBuf.release();
+                return;
+            }
+            final ChannelConfig config = config();
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            if (res > 0) {
+                byteBuf.writerIndex(byteBuf.writerIndex() + res);
+                allocHandle.lastBytesRead(res);
+                allocHandle.incMessagesRead(1);
+                readPending = false;
+                pipeline.fireChannelRead(byteBuf);
+
+                if (isIoRegistered() && allocHandle.continueReading() && !shouldBreakReadReady(config)) {
+                    recv();
+                    return;
+                }
+                readDone(pipeline, allocHandle, false);
+            } else if (res == 0 || res == Errors.ERRNO_EAGAIN_NEGATIVE || res == Errors.ERRNO_EWOULDBLOCK_NEGATIVE) {
+                byteBuf.release();
+                // 0 means EOF, everything else that there is nothing left to read for now.
+                boolean close = res == 0;
+                allocHandle.lastBytesRead(close ? -1 : 0);
+                if (close) {
+                    // There is nothing left to read as we received an EOF.
+                    readPending = false;
+                }
+                readDone(pipeline, allocHandle, close);
+            } else {
+                readInProgress = false;
+                handleReadException(pipeline, byteBuf, Errors.newIOException("recv", res), false, allocHandle);
+            }
+        }
+
+        private void readDone(ChannelPipeline pipeline, RecvByteBufAllocator.Handle allocHandle, boolean close) {
+            readInProgress = false;
+            allocHandle.readComplete();
+            pipeline.fireChannelReadComplete();
+
+            if (close) {
+                shutdownInput(false);
+            } else if (readPending) {
+                // read() was called while the read loop was in progress.
+                scheduleRead();
+            }
+        }
+
+        @Override
+        void writeComplete(int res) {
+            releaseWriteResources();
+            ChannelOutboundBuffer in = outboundBuffer();
+            if (in == null) {
+                // The Channel was closed in the meantime.
+                return;
+            }
+            if (res >= 0) {
+                in.removeBytes(res);
+            } else if (res == Errors.ERRNO_EAGAIN_NEGATIVE || res == Errors.ERRNO_EWOULDBLOCK_NEGATIVE) {
+                if (isIoRegistered()) {
+                    submitPoll(Native.POLLOUT);
+                }
+                return;
+            } else if (res != Native.ERRNO_ECANCELED_NEGATIVE) {
+                writeError = Errors.newIOException("write", res);
+            }
+            if (isIoRegistered() && (!in.isEmpty() || writeError != null)) {
+                flush0();
+            }
+        }
+    }
+}
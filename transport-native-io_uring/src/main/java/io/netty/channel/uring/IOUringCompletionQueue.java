@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.util.internal.PlatformDependent;
+
+/**
+ * The completion queue of an io_uring instance. The kernel adds entries at the tail, and we consume them at the
+ * head.
+ */
+final class IOUringCompletionQueue {
+
+    // Offsets of the fields in a struct io_uring_cqe.
+    private static final int CQE_USER_DATA_FIELD = 0;
+    private static final int CQE_RES_FIELD = 8;
+    private static final int CQE_FLAGS_FIELD = 12;
+
+    private final long kHeadAddress;
+    private final long kTailAddress;
+    private final int ringMask;
+    private final int ringEntries;
+    private final long completionQueueArrayAddress;
+
+    // We are the only one that updates the head, so we can cache it locally.
+    private int head;
+
+    IOUringCompletionQueue(long kHeadAddress, long kTailAddress, int ringMask, int ringEntries,
+                           long completionQueueArrayAddress) {
+        this.kHeadAddress = kHeadAddress;
+        this.kTailAddress = kTailAddress;
+        this.ringMask = ringMask;
+        this.ringEntries = ringEntries;
+        this.completionQueueArrayAddress = completionQueueArrayAddress;
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+    }
+
+    /**
+     * Returns {@code true} if there are completions that were not processed yet.
+     */
+    boolean hasCompletions() {
+        return head != PlatformDependent.getIntVolatile(kTailAddress);
+    }
+
+    /**
+     * Process all completions that are currently in the queue and return the number of them.
+     */
+    int process(IOUringCompletionQueueCallback callback) {
+        int tail = PlatformDependent.getIntVolatile(kTailAddress);
+        int processed = 0;
+        while (head != tail) {
+            long cqeAddress = completionQueueArrayAddress + (long) (head & ringMask) * Native.SIZEOF_CQE;
+            long userData = PlatformDependent.getLong(cqeAddress + CQE_USER_DATA_FIELD);
+            int res = PlatformDependent.getInt(cqeAddress + CQE_RES_FIELD);
+            int flags = PlatformDependent.getInt(cqeAddress + CQE_FLAGS_FIELD);
+
+            // Release the entry before calling the callback, so the kernel can reuse it as soon as possible.
+            PlatformDependent.putIntOrdered(kHeadAddress, ++head);
+            processed++;
+
+            callback.handle(res, flags, userData);
+
+            if (head == tail) {
+                // Also pick up the completions that were added in the meantime.
+                tail = PlatformDependent.getIntVolatile(kTailAddress);
+            }
+        }
+        return processed;
+    }
+
+    int ringEntries() {
+        return ringEntries;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SingleThreadEventLoop;
+import io.netty.channel.unix.FileDescriptor;
+import io.netty.channel.unix.IovArray;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.RejectedExecutionHandler;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * {@link EventLoop} which uses io_uring under the covers. Only works on Linux!
+ * <p>
+ * All channels of the {@link EventLoop} share a single submission and completion queue. Operations are only added
+ * to the submission queue while the event loop processes completions and tasks, and are handed over to the kernel
+ * with a single {@code io_uring_enter(...)} call, which is also used to wait for the next completions.
+ */
+final class IOUringEventLoop extends SingleThreadEventLoop implements IOUringCompletionQueueCallback {
+    private static final InternalLogger logger = InternalLoggerFactory.getInstance(IOUringEventLoop.class);
+    private static final AtomicIntegerFieldUpdater<IOUringEventLoop> WAKEN_UP_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(IOUringEventLoop.class, "wakenUp");
+
+    static {
+        // Ensure JNI is initialized by the time this class is loaded by this time!
+        // We use unix-common methods in this class which are backed by JNI methods.
+        IOUring.ensureAvailability();
+    }
+
+    // The id that is used for the operations of the event loop itself, channels always use a positive id.
+    private static final int LOOP_ID = 0;
+    // The maximal number of IovArrays that are kept around for gathering writes.
+    private static final int MAX_CACHED_IOV_ARRAYS = 16;
+    // Size of a struct __kernel_timespec.
+    private static final int TIMESPEC_SIZE = 16;
+    private static final int EVENTFD_READ_SIZE = 8;
+
+    private final RingBuffer ringBuffer;
+    private final IOUringSubmissionQueue submissionQueue;
+    private final IOUringCompletionQueue completionQueue;
+    private final FileDescriptor eventFd;
+    // Holds the timespec of the timeout followed by the buffer for the eventfd reads.
+    private final long memoryAddress;
+    private final IntObjectMap<AbstractIOUringChannel> channels = new IntObjectHashMap<AbstractIOUringChannel>(4096);
+    private final Queue<IovArray> iovArrays = new ArrayDeque<IovArray>();
+    private int nextChannelId = LOOP_ID + 1;
+
+    // State of the IORING_OP_TIMEOUT that is used to wake up for the next scheduled task.
+    private boolean timeoutPending;
+    private long timeoutDeadlineNanos;
+    private int timeoutGeneration;
+
+    @SuppressWarnings("unused") // AtomicIntegerFieldUpdater
+    private volatile int wakenUp;
+    private volatile int ioRatio = 50;
+
+    IOUringEventLoop(EventLoopGroup parent, Executor executor, int ringSize,
+                     RejectedExecutionHandler rejectedExecutionHandler) {
+        super(parent, executor, false, DEFAULT_MAX_PENDING_TASKS, rejectedExecutionHandler);
+        ringBuffer = Native.createRingBuffer(ringSize == 0 ? Native.DEFAULT_RING_SIZE : ringSize);
+        boolean success = false;
+        try {
+            eventFd = Native.newEventFd();
+            success = true;
+        } finally {
+            if (!success) {
+                ringBuffer.close();
+            }
+        }
+        submissionQueue = ringBuffer.submissionQueue();
+        completionQueue = ringBuffer.completionQueue();
+        memoryAddress = PlatformDependent.allocateMemory(TIMESPEC_SIZE + EVENTFD_READ_SIZE);
+        addEventFdRead();
+    }
+
+    IOUringSubmissionQueue submissionQueue() {
+        return submissionQueue;
+    }
+
+    /**
+     * Return a cleared {@link IovArray} that can be used for a gathering write in this {@link EventLoop}. It must be
+     * given back via {@link #releaseIovArray(IovArray)} once the write completed.
+     */
+    IovArray acquireIovArray() {
+        IovArray iovArray = iovArrays.poll();
+        return iovArray == null ? new IovArray() : iovArray;
+    }
+
+    void releaseIovArray(IovArray iovArray) {
+        if (iovArrays.size() < MAX_CACHED_IOV_ARRAYS) {
+            iovArray.clear();
+            iovArrays.add(iovArray);
+        } else {
+            iovArray.release();
+        }
+    }
+
+    @Override
+    protected void wakeup(boolean inEventLoop) {
+        if (!inEventLoop && WAKEN_UP_UPDATER.compareAndSet(this, 0, 1)) {
+            // write to the eventfd which will then complete the pending read and so wake-up io_uring_enter(...)
+            Native.eventFdWrite(eventFd.intValue(), 1L);
+        }
+    }
+
+    /**
+     * Register the given channel with this {@link EventLoop} and return the id that must be used as part of the
+     * {@link UserData} of all its operations.
+     */
+    int add(AbstractIOUringChannel ch) {
+        assert inEventLoop();
+        for (;;) {
+            int id = nextChannelId;
+            nextChannelId = id == Integer.MAX_VALUE ? LOOP_ID + 1 : id + 1;
+            if (!channels.containsKey(id)) {
+                channels.put(id, ch);
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Deregister the given channel from this {@link EventLoop}. This must only be done once there are no more
+     * operations of the channel in flight.
+     */
+    void remove(AbstractIOUringChannel ch) {
+        assert inEventLoop();
+        channels.remove(ch.id);
+    }
+
+    @Override
+    protected Queue<Runnable> newTaskQueue(int maxPendingTasks) {
+        // This event loop never calls takeTask()
+        return maxPendingTasks == Integer.MAX_VALUE ? PlatformDependent.<Runnable>newMpscQueue()
+                                                    : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
+    }
+
+    @Override
+    public int registeredChannels() {
+        return channels.size();
+    }
+
+    /**
+     * Returns the percentage of the desired amount of time spent for I/O in the event loop.
+     */
+    public int getIoRatio() {
+        return ioRatio;
+    }
+
+    /**
+     * Sets the percentage of the desired amount of time spent for I/O in the event loop.  The default value is
+     * {@code 50}, which means the event loop will try to spend the same amount of time for I/O as for non-I/O tasks.
+     */
+    public void setIoRatio(int ioRatio) {
+        if (ioRatio <= 0 || ioRatio > 100) {
+            throw new IllegalArgumentException("ioRatio: " + ioRatio + " (expected: 0 < ioRatio <= 100)");
+        }
+        this.ioRatio = ioRatio;
+    }
+
+    private void addEventFdRead() {
+        submissionQueue.addRead(eventFd.intValue(), memoryAddress + TIMESPEC_SIZE, EVENTFD_READ_SIZE,
+                UserData.encode(LOOP_ID, Native.IORING_OP_READ, 0));
+    }
+
+    /**
+     * Make sure there is a pending timeout that wakes us up in time for the next scheduled task.
+     */
+    private void updateTimeout() {
+        boolean hasScheduledTask = nextScheduledTaskDeadlineNanos() != -1;
+        long deadlineNanos = deadlineNanos();
+        if (timeoutPending && (!hasScheduledTask || deadlineNanos >= timeoutDeadlineNanos)) {
+            // The pending timeout will wake us up early enough, at worst we wake up once without anything to do.
+            return;
+        }
+        if (timeoutPending) {
+            submissionQueue.addTimeoutRemove(UserData.encode(LOOP_ID, Native.IORING_OP_TIMEOUT, timeoutGeneration),
+                    UserData.encode(LOOP_ID, Native.IORING_OP_TIMEOUT_REMOVE, 0));
+        }
+        long delayNanos = Math.max(0, deadlineNanos - nanoTime());
+        PlatformDependent.putLong(memoryAddress, delayNanos / 1000000000L);
+        PlatformDependent.putLong(memoryAddress + 8, delayNanos % 1000000000L);
+        timeoutGeneration = (timeoutGeneration + 1) & 0xFFFF;
+        submissionQueue.addTimeout(memoryAddress,
+                UserData.encode(LOOP_ID, Native.IORING_OP_TIMEOUT, timeoutGeneration));
+        timeoutPending = true;
+        timeoutDeadlineNanos = deadlineNanos;
+    }
+
+    @Override
+    protected void run() {
+        for (;;) {
+            try {
+                if (!hasTasks() && !completionQueue.hasCompletions() && !isShuttingDown()) {
+                    // Reset the flag before checking the task queue again, so a task that is added concurrently
+                    // will either be seen or write to the eventfd.
+                    WAKEN_UP_UPDATER.set(this, 0);
+                    try {
+                        if (!hasTasks() && !hasScheduledTasks()) {
+                            updateTimeout();
+                            submissionQueue.submitAndWait();
+                        } else {
+                            submissionQueue.submit();
+                        }
+                    } finally {
+                        // We are awake again, so no one needs to write to the eventfd until we are about to block the
+                        // next time.
+                        WAKEN_UP_UPDATER.lazySet(this, 1);
+                    }
+                } else {
+                    submissionQueue.submit();
+                }
+
+                final int ioRatio = this.ioRatio;
+                if (ioRatio == 100) {
+                    try {
+                        completionQueue.process(this);
+                    } finally {
+                        // Ensure we always run tasks.
+                        runAllTasks();
+                    }
+                } else {
+                    final long ioStartTime = System.nanoTime();
+
+                    try {
+                        completionQueue.process(this);
+                    } finally {
+                        // Ensure we always run tasks.
+                        final long ioTime = System.nanoTime() - ioStartTime;
+                        recordIoTime(ioTime);
+                        runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
+                    }
+                }
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+            // Always handle shutdown even if the loop processing threw an exception.
+            try {
+                if (isShuttingDown()) {
+                    closeAll();
+                    if (confirmShutdown()) {
+                        break;
+                    }
+                }
+            } catch (Throwable t) {
+                handleLoopException(t);
+            }
+        }
+    }
+
+    @Override
+    public void handle(int res, int flags, long userData) {
+        int id = UserData.decodeId(userData);
+        int op = UserData.decodeOp(userData);
+        if (id == LOOP_ID) {
+            if (op == Native.IORING_OP_READ) {
+                // consume wakeup event, and wait for the next one.
+                addEventFdRead();
+            } else if (op == Native.IORING_OP_TIMEOUT) {
+                if (UserData.decodeData(userData) == timeoutGeneration) {
+                    timeoutPending = false;
+                }
+            }
+            // There is nothing to do for the completions of IORING_OP_TIMEOUT_REMOVE.
+            return;
+        }
+        if (op == Native.IORING_OP_ASYNC_CANCEL) {
+            // The cancelled operation itself will complete as well, which is all we care about.
+            return;
+        }
+        AbstractIOUringChannel ch = channels.get(id);
+        if (ch != null) {
+            ch.completed(op, res, UserData.decodeData(userData));
+        }
+    }
+
+    /**
+     * Visible only for testing!
+     */
+    void handleLoopException(Throwable t) {
+        logger.warn("Unexpected exception in the io_uring event loop.", t);
+
+        // Prevent possible consecutive immediate failures that lead to
+        // excessive CPU consumption.
+        try {
+            Thread.sleep(1000);
+        } catch (InterruptedException e) {
+            // Ignore.
+        }
+    }
+
+    private void closeAll() {
+        // Using the intermediate collection to prevent ConcurrentModificationException.
+        // In the `close()` method, the channel is deleted from `channels` map.
+        AbstractIOUringChannel[] localChannels = channels.values().toArray(new AbstractIOUringChannel[0]);
+
+        for (AbstractIOUringChannel ch : localChannels) {
+            ch.unsafe().close(ch.unsafe().voidPromise());
+        }
+    }
+
+    @Override
+    protected void cleanup() {
+        try {
+            // Give the cancelled operations of the closed channels a chance to complete, so their buffers are
+            // released.
+            submissionQueue.submit();
+            completionQueue.process(this);
+        } catch (Throwable t) {
+            logger.warn("Failed to process the completions during shutdown.", t);
+        }
+        try {
+            try {
+                ringBuffer.close();
+            } catch (Throwable t) {
+                logger.warn("Failed to close the io_uring instance.", t);
+            }
+            try {
+                eventFd.close();
+            } catch (IOException e) {
+                logger.warn("Failed to close the event fd.", e);
+            }
+        } finally {
+            // release native memory, the kernel does not use it anymore as the ring was closed.
+            PlatformDependent.freeMemory(memoryAddress);
+            for (;;) {
+                IovArray iovArray = iovArrays.poll();
+                if (iovArray == null) {
+                    break;
+                }
+                iovArray.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.unix.Errors;
+import io.netty.channel.unix.Socket;
+import io.netty.util.UncheckedBooleanSupplier;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+
+import static io.netty.channel.unix.Socket.newSocketStream;
+
+/**
+ * {@link ServerSocketChannel} implementation that uses io_uring to accept new connections.
+ */
+public final class IOUringServerSocketChannel extends AbstractIOUringChannel implements ServerSocketChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false, 16);
+
+    private final IOUringServerSocketChannelConfig config;
+    // Memory for the sockaddr_storage followed by the socklen_t that are filled by IORING_OP_ACCEPT. It is allocated
+    // lazily and only freed once no accept is in flight anymore.
+    private long acceptedAddressMemory;
+
+    public IOUringServerSocketChannel() {
+        super(null, newSocketStream(), false);
+        config = new IOUringServerSocketChannelConfig(this);
+    }
+
+    public IOUringServerSocketChannel(int fd) {
+        // Must call this constructor to ensure this object's local address is configured correctly.
+        // The local address can only be obtained from a Socket object.
+        this(new Socket(fd));
+    }
+
+    private IOUringServerSocketChannel(Socket fd) {
+        super(null, fd, isSoErrorZero(fd));
+        config = new IOUringServerSocketChannelConfig(this);
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        super.doBind(localAddress);
+        socket.listen(config.getBacklog());
+        active = true;
+    }
+
+    @Override
+    public InetSocketAddress remoteAddress() {
+        return (InetSocketAddress) super.remoteAddress();
+    }
+
+    @Override
+    public InetSocketAddress localAddress() {
+        return (InetSocketAddress) super.localAddress();
+    }
+
+    @Override
+    public IOUringServerSocketChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    protected InetSocketAddress remoteAddress0() {
+        return null;
+    }
+
+    @Override
+    protected AbstractIOUringUnsafe newUnsafe() {
+        return new IOUringServerSocketUnsafe();
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected boolean doConnect(SocketAddress remoteAddress, SocketAddress localAddress) throws Exception {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    void ioDrained() {
+        if (acceptedAddressMemory != 0) {
+            PlatformDependent.freeMemory(acceptedAddressMemory);
+            acceptedAddressMemory = 0;
+        }
+    }
+
+    /**
+     * Decode the {@code sockaddr_in} or {@code sockaddr_in6} that was filled by {@code IORING_OP_ACCEPT}.
+     */
+    private static InetSocketAddress acceptedAddress(long memoryAddress) throws UnknownHostException {
+        int family = PlatformDependent.getShort(memoryAddress) & 0xFFFF;
+        // The port is stored in network byte order.
+        int port = (PlatformDependent.getByte(memoryAddress + 2) & 0xFF) << 8 |
+                PlatformDependent.getByte(memoryAddress + 3) & 0xFF;
+        final byte[] bytes;
+        final int scopeId;
+        if (family == Native.AF_INET6) {
+            bytes = new byte[16];
+            PlatformDependent.copyMemory(memoryAddress + 8, bytes, 0, bytes.length);
+            scopeId = PlatformDependent.getInt(memoryAddress + 24);
+        } else {
+            bytes = new byte[4];
+            PlatformDependent.copyMemory(memoryAddress + 4, bytes, 0, bytes.length);
+            scopeId = 0;
+        }
+        // Only use Inet6Address.getByAddress(...) if a scope id is set, as otherwise IPv4-mapped addresses should be
+        // returned as Inet4Address.
+        InetAddress address = scopeId == 0 ? InetAddress.getByAddress(bytes) :
+                Inet6Address.getByAddress(null, bytes, scopeId);
+        return new InetSocketAddress(address, port);
+    }
+
+    final class IOUringServerSocketUnsafe extends AbstractIOUringUnsafe {
+        // true while an accept loop is in progress, which is continued by the completion of each accept.
+        private boolean acceptInProgress;
+
+        @Override
+        public void connect(SocketAddress socketAddress, SocketAddress socketAddress2, ChannelPromise channelPromise) {
+            // Connect not supported by ServerChannel implementations
+            channelPromise.setFailure(new UnsupportedOperationException());
+        }
+
+        @Override
+        void scheduleRead() {
+            if (!isIoRegistered() || acceptInProgress || isInFlight(POLL_IN | READ)) {
+                return;
+            }
+            submitPoll(Native.POLLIN);
+        }
+
+        @Override
+        void pollInReady(int res) {
+            if (!readPending || acceptInProgress) {
+                // Nothing requested a read, we will poll again once read() is called.
+                return;
+            }
+            final RecvByteBufAllocator.Handle allocHandle = recvBufAllocHandle();
+            allocHandle.reset(config());
+            allocHandle.attemptedBytesRead(1);
+            acceptInProgress = true;
+            accept();
+        }
+
+        private void accept() {
+            final int addressSize = Native.SIZEOF_SOCKADDR_STORAGE;
+            if (acceptedAddressMemory == 0) {
+                acceptedAddressMemory = PlatformDependent.allocateMemory(addressSize + 4);
+            }
+            PlatformDependent.putInt(acceptedAddressMemory + addressSize, addressSize);
+            submissionQueue().addAccept(socket.intValue(), acceptedAddressMemory, acceptedAddressMemory + addressSize,
+                    Native.SOCK_NONBLOCK | Native.SOCK_CLOEXEC, readSubmitted(Native.IORING_OP_ACCEPT));
+        }
+
+        @Override
+        void readComplete(int res) {
+            if (!isIoRegistered()) {
+                acceptInProgress = false;
+                if (res >= 0) {
+                    // Nobody will handle the accepted connection anymore.
+                    closeAccepted(res);
+                }
+                return;
+            }
+            final ChannelPipeline pipeline = pipeline();
+            final RecvByteBufAllocator.ExtendedHandle allocHandle =
+                    (RecvByteBufAllocator.ExtendedHandle) recvBufAllocHandle();
+            if (res >= 0) {
+                // lastBytesRead represents the fd. We use lastBytesRead because it must be set so that the
+                // RecvByteBufAllocator.Handle knows if it should try to accept again or not when autoRead is enabled.
+                allocHandle.lastBytesRead(res);
+                allocHandle.incMessagesRead(1);
+                readPending = false;
+
+                Channel child;
+                try {
+                    child = new IOUringSocketChannel(IOUringServerSocketChannel.this, new Socket(res),
+                            acceptedAddress(acceptedAddressMemory));
+                } catch (Throwable cause) {
+                    closeAccepted(res);
+                    acceptDone(pipeline, allocHandle, cause);
+                    return;
+                }
+                pipeline.fireChannelRead(child);
+
+                // There is no way to know if there are more connections to accept, so just try until EAGAIN.
+                if (isIoRegistered() && allocHandle.continueReading(UncheckedBooleanSupplier.TRUE_SUPPLIER)) {
+                    accept();
+                    return;
+                }
+                acceptDone(pipeline, allocHandle, null);
+            } else if (res == Errors.ERRNO_EAGAIN_NEGATIVE || res == Errors.ERRNO_EWOULDBLOCK_NEGATIVE) {
+                // this means everything was handled for now
+                acceptDone(pipeline, allocHandle, null);
+            } else {
+                acceptDone(pipeline, allocHandle, Errors.newIOException("accept", res));
+            }
+        }
+
+        private void acceptDone(ChannelPipeline pipeline, RecvByteBufAllocator.Handle allocHandle,
+                                Throwable exception) {
+            acceptInProgress = false;
+            allocHandle.readComplete();
+            pipeline.fireChannelReadComplete();
+
+            if (exception != null) {
+                pipeline.fireExceptionCaught(exception);
+            }
+            if (readPending) {
+                // read() was called while the accept loop was in progress.
+                scheduleRead();
+            }
+        }
+
+        private void closeAccepted(int fd) {
+            try {
+                new Socket(fd).close();
+            } catch (IOException ignore) {
+                // Nothing we can do about it.
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+import io.netty.channel.ChannelException;
+import io.netty.util.internal.PlatformDependent;
+
+import static io.netty.channel.unix.Errors.ERRNO_EAGAIN_NEGATIVE;
+import static io.netty.channel.unix.Errors.newIOException;
+
+/**
+ * The submission queue of an io_uring instance. Entries are added to the queue by the {@code add*(...)} methods, and
+ * are only handed over to the kernel once {@link #submit()} or {@link #submitAndWait()} is called, which allows to
+ * submit many operations with a single syscall.
+ */
+final class IOUringSubmissionQueue {
+
+    // Offsets of the fields in a struct io_uring_sqe.
+    private static final int SQE_OP_CODE_FIELD = 0;
+    private static final int SQE_FLAGS_FIELD = 1;
+    private static final int SQE_IOPRIO_FIELD = 2;
+    private static final int SQE_FD_FIELD = 4;
+    private static final int SQE_OFFSET_FIELD = 8;
+    private static final int SQE_ADDRESS_FIELD = 16;
+    private static final int SQE_LEN_FIELD = 24;
+    private static final int SQE_RW_FLAGS_FIELD = 28;
+    private static final int SQE_USER_DATA_FIELD = 32;
+    private static final int SQE_PAD_FIELD = 40;
+    private static final int SQE_PAD_LENGTH = 24;
+
+    // See the -EBUSY section of http://man7.org/linux/man-pages/man2/io_uring_enter.2.html
+    private static final int ERRNO_EBUSY_NEGATIVE = -16;
+
+    private final long kHeadAddress;
+    private final long kTailAddress;
+    private final int ringMask;
+    private final int ringEntries;
+    private final long submissionQueueArrayAddress;
+    private final int ringFd;
+
+    // We are the only one that updates the tail, so we can cache it locally. The head is updated by the kernel and
+    // only refreshed after each submission.
+    private int head;
+    private int tail;
+    private int submittedTail;
+
+    IOUringSubmissionQueue(long kHeadAddress, long kTailAddress, int ringMask, int ringEntries,
+                           long kArrayAddress, long submissionQueueArrayAddress, int ringFd) {
+        this.kHeadAddress = kHeadAddress;
+        this.kTailAddress = kTailAddress;
+        this.ringMask = ringMask;
+        this.ringEntries = ringEntries;
+        this.submissionQueueArrayAddress = submissionQueueArrayAddress;
+        this.ringFd = ringFd;
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+        tail = submittedTail = PlatformDependent.getIntVolatile(kTailAddress);
+
+        // We always use the entry with the same index as the slot in the ring, so the indirection array can be
+        // filled once.
+        for (int i = 0; i < ringEntries; i++) {
+            PlatformDependent.putInt(kArrayAddress + i * 4L, i);
+        }
+    }
+
+    private void enqueue(int op, int rwFlags, int fd, long address, int length, long offset, long userData) {
+        if (tail - head == ringEntries) {
+            // The queue is full, hand everything over to the kernel to make room.
+            submit();
+            if (tail - head == ringEntries) {
+                throw new IllegalStateException("submission queue is full");
+            }
+        }
+        long sqe = submissionQueueArrayAddress + (long) (tail++ & ringMask) * Native.SIZEOF_SQE;
+        PlatformDependent.putByte(sqe + SQE_OP_CODE_FIELD, (byte) op);
+        PlatformDependent.putByte(sqe + SQE_FLAGS_FIELD, (byte) 0);
+        PlatformDependent.putShort(sqe + SQE_IOPRIO_FIELD, (short) 0);
+        PlatformDependent.putInt(sqe + SQE_FD_FIELD, fd);
+        PlatformDependent.putLong(sqe + SQE_OFFSET_FIELD, offset);
+        PlatformDependent.putLong(sqe + SQE_ADDRESS_FIELD, address);
+        PlatformDependent.putInt(sqe + SQE_LEN_FIELD, length);
+        PlatformDependent.putInt(sqe + SQE_RW_FLAGS_FIELD, rwFlags);
+        PlatformDependent.putLong(sqe + SQE_USER_DATA_FIELD, userData);
+        PlatformDependent.setMemory(sqe + SQE_PAD_FIELD, SQE_PAD_LENGTH, (byte) 0);
+    }
+
+    void addPoll(int fd, int pollMask, long userData) {
+        enqueue(Native.IORING_OP_POLL_ADD, pollMask, fd, 0, 0, 0, userData);
+    }
+
+    void addRead(int fd, long bufferAddress, int length, long userData) {
+        enqueue(Native.IORING_OP_READ, 0, fd, bufferAddress, length, 0, userData);
+    }
+
+    void addRecv(int fd, long bufferAddress, int length, int msgFlags, long userData) {
+        enqueue(Native.IORING_OP_RECV, msgFlags, fd, bufferAddress, length, 0, userData);
+    }
+
+    void addWrite(int fd, long bufferAddress, int length, long userData) {
+        enqueue(Native.IORING_OP_WRITE, 0, fd, bufferAddress, length, 0, userData);
+    }
+
+    void addWritev(int fd, long iovecArrayAddress, int length, long userData) {
+        enqueue(Native.IORING_OP_WRITEV, 0, fd, iovecArrayAddress, length, 0, userData);
+    }
+
+    void addAccept(int fd, long addressAddress, long addressLengthAddress, int flags, long userData) {
+        enqueue(Native.IORING_OP_ACCEPT, flags, fd, addressAddress, 0, addressLengthAddress, userData);
+    }
+
+    void addTimeout(long timespecAddress, long userData) {
+        enqueue(Native.IORING_OP_TIMEOUT, 0, -1, timespecAddress, 1, 0, userData);
+    }
+
+    void addTimeoutRemove(long timeoutUserData, long userData) {
+        enqueue(Native.IORING_OP_TIMEOUT_REMOVE, 0, -1, timeoutUserData, 0, 0, userData);
+    }
+
+    void addCancel(long targetUserData, long userData) {
+        enqueue(Native.IORING_OP_ASYNC_CANCEL, 0, -1, targetUserData, 0, 0, userData);
+    }
+
+    /**
+     * Returns {@code true} if there are entries that were not submitted yet.
+     */
+    boolean hasPending() {
+        return tail != submittedTail;
+    }
+
+    /**
+     * Submit all pending entries without waiting for any completion.
+     */
+    int submit() {
+        return submit(0, 0);
+    }
+
+    /**
+     * Submit all pending entries and wait until there is at least one completion.
+     */
+    int submitAndWait() {
+        return submit(1, Native.IORING_ENTER_GETEVENTS);
+    }
+
+    private int submit(int minComplete, int flags) {
+        int toSubmit = tail - submittedTail;
+        if (toSubmit == 0 && minComplete == 0) {
+            return 0;
+        }
+        PlatformDependent.putIntOrdered(kTailAddress, tail);
+        int ret = Native.ioUringEnter(ringFd, toSubmit, minComplete, flags);
+        head = PlatformDependent.getIntVolatile(kHeadAddress);
+        if (ret < 0) {
+            if (ret == ERRNO_EBUSY_NEGATIVE || ret == ERRNO_EAGAIN_NEGATIVE) {
+                // The kernel can not accept more entries until we processed the completion queue, the entries will
+                // be submitted by the next call.
+                submittedTail = head;
+                return 0;
+            }
+            throw new ChannelException(newIOException("io_uring_enter", ret));
+        }
+        submittedTail = head;
+        return ret;
+    }
+
+    int ringEntries() {
+        return ringEntries;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+/**
+ * An io_uring instance, which consists of a {@link IOUringSubmissionQueue} and a {@link IOUringCompletionQueue} that
+ * are shared with the kernel.
+ */
+final class RingBuffer {
+    private final int ringFd;
+    private final long sqRingAddress;
+    private final long sqRingSize;
+    private final long sqesAddress;
+    private final long sqesSize;
+    private final long cqRingAddress;
+    private final long cqRingSize;
+    private final IOUringSubmissionQueue submissionQueue;
+    private final IOUringCompletionQueue completionQueue;
+
+    RingBuffer(int ringFd, long sqRingAddress, long sqRingSize, long sqesAddress, long sqesSize,
+               long cqRingAddress, long cqRingSize,
+               IOUringSubmissionQueue submissionQueue, IOUringCompletionQueue completionQueue) {
+        this.ringFd = ringFd;
+        this.sqRingAddress = sqRingAddress;
+        this.sqRingSize = sqRingSize;
+        this.sqesAddress = sqesAddress;
+        this.sqesSize = sqesSize;
+        this.cqRingAddress = cqRingAddress;
+        this.cqRingSize = cqRingSize;
+        this.submissionQueue = submissionQueue;
+        this.completionQueue = completionQueue;
+    }
+
+    int fd() {
+        return ringFd;
+    }
+
+    IOUringSubmissionQueue submissionQueue() {
+        return submissionQueue;
+    }
+
+    IOUringCompletionQueue completionQueue() {
+        return completionQueue;
+    }
+
+    /**
+     * Unmap the rings and close the io_uring file descriptor. All operations that are still in flight are cancelled
+     * by the kernel.
+     */
+    void close() {
+        Native.ioUringExit(ringFd, sqRingAddress, sqRingSize, sqesAddress, sqesSize, cqRingAddress, cqRingSize);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.uring;
+
+/**
+ * Encodes the {@code user_data} of a submission, which is returned as part of the completion. The lower 32 bits
+ * are the id of the channel within its {@link IOUringEventLoop}, followed by 8 bits for the opcode and 16 bits of
+ * extra data.
+ */
+final class UserData {
+
+    static long encode(int id, int op, int data) {
+        return (id & 0xFFFFFFFFL) | (long) (op & 0xFF) << 32 | (long) (data & 0xFFFF) << 40;
+    }
+
+    static int decodeId(long userData) {
+        return (int) userData;
+    }
+
+    static int decodeOp(long userData) {
+        return (int) (userData >>> 32) & 0xFF;
+    }
+
+    static int decodeData(long userData) {
+        return (int) (userData >>> 40) & 0xFFFF;
+    }
+
+    private UserData() { }
+}
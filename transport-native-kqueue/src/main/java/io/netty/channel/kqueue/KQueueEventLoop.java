@@ -67,6 +67,7 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
     };
     private final IntObjectMap<AbstractKQueueChannel> channels = new IntObjectHashMap<AbstractKQueueChannel>(4096);
 
+    // 1 if the EventLoop is awake or a wakeup is pending already, so no one needs to trigger the user event.
     private volatile int wakenUp;
     private volatile int ioRatio = 50;
 
@@ -125,18 +126,23 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
         // So it is not very practical to assert the return value is always >= 0.
     }
 
-    private int kqueueWait(boolean oldWakeup) throws IOException {
-        // If a task was submitted when wakenUp value was 1, the task didn't get a chance to produce wakeup event.
-        // So we need to check task queue again before calling kqueueWait. If we don't, the task might be pended
-        // until kqueueWait was timed out. It might be pended until idle timeout if IdleStateHandler existed
-        // in pipeline.
-        if (oldWakeup && hasTasks()) {
-            return kqueueWaitNow();
-        }
+    private int kqueueWait() throws IOException {
+        // Reset the flag before checking the task queue again, so a task that is added concurrently will either be
+        // seen here or trigger the wakeup event.
+        WAKEN_UP_UPDATER.set(this, 0);
+        try {
+            if (hasTasks() || isShuttingDown()) {
+                return kqueueWaitNow();
+            }
 
-        long totalDelay = delayNanos(System.nanoTime());
-        int delaySeconds = (int) min(totalDelay / 1000000000L, Integer.MAX_VALUE);
-        return kqueueWait(delaySeconds, (int) min(totalDelay - delaySeconds * 1000000000L, Integer.MAX_VALUE));
+            long totalDelay = delayNanos(System.nanoTime());
+            int delaySeconds = (int) min(totalDelay / 1000000000L, Integer.MAX_VALUE);
+            return kqueueWait(delaySeconds, (int) min(totalDelay - delaySeconds * 1000000000L, Integer.MAX_VALUE));
+        } finally {
+            // We are awake again, so there is no need for anyone to trigger the wakeup event until we are about to
+            // block the next time. This coalesces the wakeups of all threads that submit tasks in the meantime.
+            WAKEN_UP_UPDATER.lazySet(this, 1);
+        }
     }
 
     private int kqueueWaitNow() throws IOException {
@@ -205,39 +211,7 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                         // fall-through to SELECT since the busy-wait is not supported with kqueue
 
                     case SelectStrategy.SELECT:
-                        strategy = kqueueWait(WAKEN_UP_UPDATER.getAndSet(this, 0) == 1);
-
-                        // 'wakenUp.compareAndSet(false, true)' is always evaluated
-                        // before calling 'selector.wakeup()' to reduce the wake-up
-                        // overhead. (Selector.wakeup() is an expensive operation.)
-                        //
-                        // However, there is a race condition in this approach.
-                        // The race condition is triggered when 'wakenUp' is set to
-                        // true too early.
-                        //
-                        // 'wakenUp' is set to true too early if:
-                        // 1) Selector is waken up between 'wakenUp.set(false)' and
-                        //    'selector.select(...)'. (BAD)
-                        // 2) Selector is waken up between 'selector.select(...)' and
-                        //    'if (wakenUp.get()) { ... }'. (OK)
-                        //
-                        // In the first case, 'wakenUp' is set to true and the
-                        // following 'selector.select(...)' will wake up immediately.
-                        // Until 'wakenUp' is set to false again in the next round,
-                        // 'wakenUp.compareAndSet(false, true)' will fail, and therefore
-                        // any attempt to wake up the Selector will fail, too, causing
-                        // the following 'selector.select(...)' call to block
-                        // unnecessarily.
-                        //
-                        // To fix this problem, we wake up the selector again if wakenUp
-                        // is true immediately after selector.select(...).
-                        // It is inefficient in that it wakes up the selector for both
-                        // the first case (BAD - wake-up required) and the second case
-                        // (OK - no wake-up required).
-
-                        if (wakenUp == 1) {
-                            wakeup();
-                        }
+                        strategy = kqueueWait();
                         // fallthrough
                     default:
                 }
@@ -260,6 +234,7 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                         }
                     } finally {
                         final long ioTime = System.nanoTime() - ioStartTime;
+                        recordIoTime(ioTime);
                         runAllTasks(ioTime * (100 - ioRatio) / ioRatio);
                     }
                 }
@@ -291,6 +266,11 @@ final class KQueueEventLoop extends SingleThreadEventLoop {
                                                     : PlatformDependent.<Runnable>newMpscQueue(maxPendingTasks);
     }
 
+    @Override
+    public int registeredChannels() {
+        return channels.size();
+    }
+
     /**
      * Returns the percentage of the desired amount of time spent for I/O in the event loop.
      */
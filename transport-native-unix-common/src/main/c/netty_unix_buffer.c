@@ -13,10 +13,20 @@
  * License for the specific language governing permissions and limitations
  * under the License.
  */
+#include <errno.h>
+#include <string.h>
+#include <unistd.h>
+#include <sys/mman.h>
+
+#include "netty_unix_errors.h"
 #include "netty_unix_jni.h"
 #include "netty_unix_util.h"
 #include "netty_unix_buffer.h"
 
+#if !defined(MAP_ANONYMOUS) && defined(MAP_ANON)
+#define MAP_ANONYMOUS MAP_ANON
+#endif
+
 // JNI Registered Methods Begin
 static jlong netty_unix_buffer_memoryAddress0(JNIEnv* env, jclass clazz, jobject buffer) {
     return (jlong) (*env)->GetDirectBufferAddress(env, buffer);
@@ -26,12 +36,82 @@ static jint netty_unix_buffer_addressSize0(JNIEnv* env, jclass clazz) {
    return (jint) sizeof(int*);
 }
 
+static void netty_unix_buffer_preFault(void* addr, size_t length) {
+#ifdef MADV_POPULATE_WRITE
+    if (madvise(addr, length, MADV_POPULATE_WRITE) == 0) {
+        return;
+    }
+    // Not supported by the kernel (before 5.14), fall back to touching the pages.
+#endif
+    // Touch every page so it is backed by physical memory before it is used the first time.
+    size_t pageSize = (size_t) sysconf(_SC_PAGESIZE);
+    char* p = (char*) addr;
+    size_t i;
+    for (i = 0; i < length; i += pageSize) {
+        p[i] = 0;
+    }
+}
+
+static jobject netty_unix_buffer_mmap0(JNIEnv* env, jclass clazz, jint length, jboolean hugeTlb,
+                                       jboolean transparentHugePages, jboolean preFault) {
+    int flags = MAP_PRIVATE | MAP_ANONYMOUS;
+    void* addr = MAP_FAILED;
+#ifdef MAP_HUGETLB
+    if (hugeTlb == JNI_TRUE) {
+        int hugeTlbFlags = flags | MAP_HUGETLB;
+#ifdef MAP_POPULATE
+        // The mapping uses huge pages no matter when it is faulted in, so it is safe to let mmap() do it.
+        if (preFault == JNI_TRUE) {
+            hugeTlbFlags |= MAP_POPULATE;
+        }
+#endif
+        addr = mmap(NULL, (size_t) length, PROT_READ | PROT_WRITE, hugeTlbFlags, -1, 0);
+        // If no huge pages are reserved we fall back to normal pages (and so transparent huge pages if enabled).
+    }
+#endif
+    if (addr == MAP_FAILED) {
+        // Never use MAP_POPULATE here, as the pages would be faulted in before madvise(MADV_HUGEPAGE) is called and
+        // so would not be backed by transparent huge pages unless these are enabled for all mappings.
+        addr = mmap(NULL, (size_t) length, PROT_READ | PROT_WRITE, flags, -1, 0);
+        if (addr == MAP_FAILED) {
+            netty_unix_errors_throwIOExceptionErrorNo(env, "mmap() failed: ", errno);
+            return NULL;
+        }
+#ifdef MADV_HUGEPAGE
+        if (transparentHugePages == JNI_TRUE) {
+            // This is only a hint, so just ignore if it fails (for example because transparent huge pages are
+            // disabled).
+            madvise(addr, (size_t) length, MADV_HUGEPAGE);
+        }
+#endif
+        if (preFault == JNI_TRUE) {
+            netty_unix_buffer_preFault(addr, (size_t) length);
+        }
+    }
+
+    jobject buffer = (*env)->NewDirectByteBuffer(env, addr, (jlong) length);
+    if (buffer == NULL) {
+        munmap(addr, (size_t) length);
+        // pending exception...
+    }
+    return buffer;
+}
+
+static jint netty_unix_buffer_munmap0(JNIEnv* env, jclass clazz, jlong address, jint length) {
+    if (munmap((void*) (intptr_t) address, (size_t) length) == -1) {
+        return -errno;
+    }
+    return 0;
+}
+
 // JNI Registered Methods End
 
 // JNI Method Registration Table Begin
 static const JNINativeMethod statically_referenced_fixed_method_table[] = {
   { "memoryAddress0", "(Ljava/nio/ByteBuffer;)J", (void *) netty_unix_buffer_memoryAddress0 },
-  { "addressSize0", "()I", (void *) netty_unix_buffer_addressSize0 }
+  { "addressSize0", "()I", (void *) netty_unix_buffer_addressSize0 },
+  { "mmap0", "(IZZZ)Ljava/nio/ByteBuffer;", (void *) netty_unix_buffer_mmap0 },
+  { "munmap0", "(JI)I", (void *) netty_unix_buffer_munmap0 }
 };
 static const jint statically_referenced_fixed_method_table_size = sizeof(statically_referenced_fixed_method_table) / sizeof(statically_referenced_fixed_method_table[0]);
 // JNI Method Registration Table End
@@ -18,9 +18,12 @@ package io.netty.channel.unix;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.UnstableApi;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import static io.netty.channel.unix.Errors.newIOException;
+
 @UnstableApi
 public final class Buffer {
 
@@ -62,7 +65,37 @@ public final class Buffer {
         return addressSize0();
     }
 
+    /**
+     * Returns a new direct {@link ByteBuffer} which is backed by an anonymous memory mapping of {@code length}
+     * bytes. The returned {@link ByteBuffer} must be released via {@link #munmap(ByteBuffer)}.
+     *
+     * @param hugeTlb {@code true} if the mapping should be backed by explicit huge pages ({@code MAP_HUGETLB}) if
+     *                possible. {@code length} must be a multiple of the huge page size in this case.
+     * @param transparentHugePages {@code true} if transparent huge pages should be used when the mapping is not
+     *                             backed by explicit huge pages ({@code madvise(MADV_HUGEPAGE)}).
+     * @param preFault {@code true} if all pages should be faulted in before this method returns.
+     */
+    public static ByteBuffer mmap(int length, boolean hugeTlb, boolean transparentHugePages, boolean preFault)
+            throws IOException {
+        return mmap0(length, hugeTlb, transparentHugePages, preFault);
+    }
+
+    /**
+     * Releases the memory of a {@link ByteBuffer} that was returned by
+     * {@link #mmap(int, boolean, boolean, boolean)}.
+     */
+    public static void munmap(ByteBuffer buffer) throws IOException {
+        int res = munmap0(memoryAddress(buffer), buffer.capacity());
+        if (res < 0) {
+            throw newIOException("munmap", res);
+        }
+    }
+
     // If Unsafe can not be used we will need to do JNI calls.
     private static native int addressSize0();
     private static native long memoryAddress0(ByteBuffer buffer);
+
+    private static native ByteBuffer mmap0(int length, boolean hugeTlb, boolean transparentHugePages,
+                                           boolean preFault) throws IOException;
+    private static native int munmap0(long address, int length);
 }
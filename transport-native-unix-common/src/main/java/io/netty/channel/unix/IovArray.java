@@ -112,6 +112,32 @@ public final class IovArray implements MessageProcessor {
         }
     }
 
+    /**
+     * Add the given region of a {@link ByteBuf} to this {@link IovArray}. In contrast to {@link #add(ByteBuf)} the
+     * region does not need to be readable, which allows to use it as target for {@code recvmmsg(...)}.
+     * @param buf The {@link ByteBuf} to add.
+     * @param index The index at which the region starts.
+     * @param len The length of the region.
+     * @return {@code true} if the region has been added to this {@link IovArray}.
+     */
+    public boolean add(ByteBuf buf, int index, int len) {
+        if (count == IOV_MAX) {
+            // No more room!
+            return false;
+        }
+        if (len == 0) {
+            return true;
+        }
+        if (buf.hasMemoryAddress()) {
+            return add(buf.memoryAddress(), index, len);
+        }
+        if (buf.nioBufferCount() != 1) {
+            return false;
+        }
+        ByteBuffer nioBuffer = buf.internalNioBuffer(index, len);
+        return add(Buffer.memoryAddress(nioBuffer), nioBuffer.position(), len);
+    }
+
     private boolean add(long addr, int offset, int len) {
         assert addr != 0;
 
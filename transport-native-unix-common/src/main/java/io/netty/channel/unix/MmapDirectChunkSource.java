@@ -0,0 +1,87 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.unix;
+
+import io.netty.buffer.DirectChunkSource;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.internal.UnstableApi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link DirectChunkSource} which backs the chunks of a {@link PooledByteBufAllocator} by anonymous {@code mmap}
+ * regions. The memory of a chunk is returned to the operating system via {@code munmap} as soon as the chunk is
+ * released by the allocator, without depending on the garbage collector.
+ *
+ * The native library of the transport (for example {@code Epoll.ensureAvailability()}) must be loaded before this
+ * class is used. Memory which is allocated by this {@link DirectChunkSource} is not accounted against
+ * {@code -XX:MaxDirectMemorySize} / {@code -Dio.netty.maxDirectMemory}.
+ */
+@UnstableApi
+public final class MmapDirectChunkSource implements DirectChunkSource {
+
+    // 2 MiB is the default huge page size on x86_64 and aarch64.
+    private static final int HUGE_PAGE_SIZE = 2 * 1024 * 1024;
+
+    private final boolean hugePages;
+    private final boolean preFault;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param hugePages {@code true} if chunks should be backed by huge pages. Explicit huge pages
+     *                  ({@code MAP_HUGETLB}) are used for chunks which are a multiple of the huge page size, if the
+     *                  system has huge pages reserved. Otherwise transparent huge pages are requested via
+     *                  {@code madvise(MADV_HUGEPAGE)}. If the {@link PooledByteBufAllocator} uses a
+     *                  {@code directMemoryCacheAlignment} the arena requests {@code chunkSize + alignment} bytes,
+     *                  which is never a multiple of the huge page size, so only transparent huge pages can be used.
+     *                  The memory of a chunk is always aligned to the page size, so there is no need to use a cache
+     *                  alignment with this {@link DirectChunkSource}.
+     * @param preFault {@code true} if the memory of a chunk should be faulted in when the chunk is allocated, so
+     *                 the first use of the chunk does not cause page faults.
+     */
+    public MmapDirectChunkSource(boolean hugePages, boolean preFault) {
+        this.hugePages = hugePages;
+        this.preFault = preFault;
+    }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        boolean hugeTlb = hugePages && (capacity & HUGE_PAGE_SIZE - 1) == 0;
+        try {
+            return Buffer.mmap(capacity, hugeTlb, hugePages, preFault);
+        } catch (IOException e) {
+            OutOfMemoryError error = new OutOfMemoryError("failed to allocate chunk of " + capacity + " byte(s)");
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    @Override
+    public void free(ByteBuffer chunk) {
+        try {
+            Buffer.munmap(chunk);
+        } catch (IOException e) {
+            throw new IllegalStateException("failed to free chunk of " + chunk.capacity() + " byte(s)", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MmapDirectChunkSource(hugePages: " + hugePages + ", preFault: " + preFault + ')';
+    }
+}
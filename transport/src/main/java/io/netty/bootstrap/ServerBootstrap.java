@@ -25,13 +25,20 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.ServerChannel;
 import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.TimeUnit;
@@ -156,6 +163,100 @@ public class ServerBootstrap extends AbstractBootstrap<ServerBootstrap, ServerCh
         return this;
     }
 
+    /**
+     * Create one {@link ServerChannel} per {@link EventLoop} of the child {@link EventLoopGroup} and bind all of them
+     * to the given {@link SocketAddress}. Each {@link ServerChannel} is registered to its own {@link EventLoop} and
+     * the {@link Channel}s it accepts are served by that same {@link EventLoop}, so no hand-off between threads is
+     * needed and accepting connections scales with the number of {@link EventLoop}s.
+     * <p>
+     * The {@link ServerChannel} must support binding multiple sockets to the same address, which usually means
+     * {@code SO_REUSEPORT} needs to be set via {@link #option(ChannelOption, Object)} (for example
+     * {@code EpollChannelOption.SO_REUSEPORT}). The groups must be set via {@link #group(EventLoopGroup)} or
+     * {@link #group(EventLoopGroup, EventLoopGroup)} as for {@link #bind()}, but only the {@link EventLoop}s of the
+     * child group are used. The {@link #handler(ChannelHandler)}, if any, is added to every {@link ServerChannel} and
+     * so must be {@link ChannelHandler.Sharable}. Pinning the {@link EventLoop}s to CPUs can be done by using a
+     * {@link java.util.concurrent.ThreadFactory} which sets the affinity of the threads it creates.
+     * <p>
+     * If the port of the given address is {@code 0}, the first {@link ServerChannel} is bound to it and all others
+     * are bound to the address that was picked for the first one, so they all share the same port.
+     * <p>
+     * If some of the binds fail, the {@link ServerChannel}s that were bound successfully are not closed automatically.
+     *
+     * @return the {@link ChannelFuture}s of the binds, one for each {@link EventLoop} of the child group.
+     */
+    public List<ChannelFuture> bindPerEventLoop(SocketAddress localAddress) {
+        validate();
+        if (localAddress == null) {
+            throw new NullPointerException("localAddress");
+        }
+        List<EventLoop> eventLoops = new ArrayList<EventLoop>();
+        for (EventExecutor executor: childGroup) {
+            if (!(executor instanceof EventLoop)) {
+                throw new IllegalStateException("childGroup contains a non EventLoop: " + executor);
+            }
+            eventLoops.add((EventLoop) executor);
+        }
+
+        List<ChannelFuture> futures = new ArrayList<ChannelFuture>(eventLoops.size());
+        final ChannelFuture firstFuture = forEventLoop(eventLoops.get(0)).bind(localAddress);
+        futures.add(firstFuture);
+        boolean ephemeralPort = localAddress instanceof InetSocketAddress &&
+                ((InetSocketAddress) localAddress).getPort() == 0;
+        for (int i = 1; i < eventLoops.size(); i++) {
+            ServerBootstrap bootstrap = forEventLoop(eventLoops.get(i));
+            if (ephemeralPort) {
+                // Every bind would pick its own port, so bind to the address of the first ServerChannel instead.
+                futures.add(bindToAddressOf(bootstrap.register(), firstFuture));
+            } else {
+                futures.add(bootstrap.bind(localAddress));
+            }
+        }
+        return Collections.unmodifiableList(futures);
+    }
+
+    private ServerBootstrap forEventLoop(EventLoop eventLoop) {
+        ServerBootstrap bootstrap = new ServerBootstrap(this);
+        bootstrap.group = eventLoop;
+        bootstrap.childGroup = eventLoop;
+        return bootstrap;
+    }
+
+    /**
+     * Bind the {@link Channel} of the given registration to the local address of the {@link Channel} of
+     * {@code addressFuture} once both are complete.
+     */
+    private static ChannelFuture bindToAddressOf(final ChannelFuture regFuture, final ChannelFuture addressFuture) {
+        final Channel channel = regFuture.channel();
+        if (regFuture.cause() != null) {
+            return regFuture;
+        }
+        final PendingRegistrationPromise promise = new PendingRegistrationPromise(channel);
+        regFuture.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                Throwable cause = future.cause();
+                if (cause != null) {
+                    promise.setFailure(cause);
+                    return;
+                }
+                promise.registered();
+                addressFuture.addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            channel.bind(future.channel().localAddress(), promise)
+                                    .addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+                        } else {
+                            channel.close();
+                            promise.setFailure(future.cause());
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
     @Override
     void init(Channel channel) throws Exception {
         //设置可选项信息
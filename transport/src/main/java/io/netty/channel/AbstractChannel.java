@@ -432,6 +432,9 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         private volatile ChannelOutboundBuffer outboundBuffer = new ChannelOutboundBuffer(AbstractChannel.this);
         private RecvByteBufAllocator.Handle recvHandle;
         private boolean inFlush0;
+        private boolean flushDeferred;
+        private long flushDeferredNanos;
+        private Runnable deferredFlushTask;
         /** true if the channel has never been registered, false otherwise */
         private boolean neverRegistered = true;
 
@@ -637,6 +640,7 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         @Override
         public final void close(final ChannelPromise promise) {
             assertEventLoop();
+            flushDeferredNow();
 
             close(promise, CLOSE_CLOSED_CHANNEL_EXCEPTION, CLOSE_CLOSED_CHANNEL_EXCEPTION, false);
         }
@@ -648,6 +652,7 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
         @UnstableApi
         public final void shutdownOutput(final ChannelPromise promise) {
             assertEventLoop();
+            flushDeferredNow();
             shutdownOutput(promise, null);
         }
 
@@ -931,9 +936,63 @@ public abstract class AbstractChannel extends DefaultAttributeMap implements Cha
             }
 
             outboundBuffer.addFlush();
+            if (deferFlush(outboundBuffer)) {
+                return;
+            }
             flush0();
         }
 
+        /**
+         * Returns {@code true} if the write to the transport should be deferred because of the
+         * {@link FlushConsolidation} of the channel.
+         */
+        private boolean deferFlush(ChannelOutboundBuffer outboundBuffer) {
+            ChannelConfig config = config();
+            FlushConsolidation consolidation = config instanceof DefaultChannelConfig ?
+                    ((DefaultChannelConfig) config).getFlushConsolidation() :
+                    config.getOption(ChannelOption.FLUSH_CONSOLIDATION);
+            if (consolidation == null || !consolidation.isEnabled() ||
+                    outboundBuffer.totalPendingWriteBytes() >= consolidation.maxPendingBytes()) {
+                return false;
+            }
+            long maxDelayNanos = consolidation.maxDelayNanos();
+            if (flushDeferred) {
+                if (maxDelayNanos > 0 && System.nanoTime() - flushDeferredNanos >= maxDelayNanos) {
+                    return false;
+                }
+                outboundBuffer.incrementConsolidatedFlushes();
+                return true;
+            }
+            if (deferredFlushTask == null) {
+                deferredFlushTask = new Runnable() {
+                    @Override
+                    public void run() {
+                        flushDeferred = false;
+                        flush0();
+                    }
+                };
+            }
+            // The EventLoop runs its tasks once all the I/O events of the current iteration were processed, so this
+            // picks up all the flushes of the current batch. Not using executeAfterEventLoopIteration(...) as not all
+            // EventLoop implementations run tail tasks.
+            eventLoop().execute(deferredFlushTask);
+            flushDeferred = true;
+            if (maxDelayNanos > 0) {
+                flushDeferredNanos = System.nanoTime();
+            }
+            return true;
+        }
+
+        /**
+         * Writes the data of a deferred flush right away, for example before the channel is closed.
+         */
+        private void flushDeferredNow() {
+            if (flushDeferred) {
+                // The deferred task will find nothing to write.
+                flush0();
+            }
+        }
+
         @SuppressWarnings("deprecation")
         protected void flush0() {
             if (inFlush0) {
@@ -18,6 +18,7 @@ package io.netty.channel;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.util.AbstractConstant;
 import io.netty.util.ConstantPool;
+import io.netty.util.internal.UnstableApi;
 
 import java.net.InetAddress;
 import java.net.NetworkInterface;
@@ -105,6 +106,13 @@ public class ChannelOption<T> extends AbstractConstant<ChannelOption<T>> {
      */
     public static final ChannelOption<Boolean> AUTO_CLOSE = valueOf("AUTO_CLOSE");
 
+    /**
+     * Defers the writes triggered by {@link Channel#flush()} until the end of the current {@link EventLoop}
+     * iteration, see {@link FlushConsolidation}. The default value is {@link FlushConsolidation#DISABLED}.
+     */
+    @UnstableApi
+    public static final ChannelOption<FlushConsolidation> FLUSH_CONSOLIDATION = valueOf("FLUSH_CONSOLIDATION");
+
     public static final ChannelOption<Boolean> SO_BROADCAST = valueOf("SO_BROADCAST");
     public static final ChannelOption<Boolean> SO_KEEPALIVE = valueOf("SO_KEEPALIVE");
     public static final ChannelOption<Integer> SO_SNDBUF = valueOf("SO_SNDBUF");
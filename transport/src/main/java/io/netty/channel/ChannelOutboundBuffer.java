@@ -26,6 +26,7 @@ import io.netty.util.concurrent.FastThreadLocal;
 import io.netty.util.internal.InternalThreadLocalMap;
 import io.netty.util.internal.PromiseNotificationUtil;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.UnstableApi;
 import io.netty.util.internal.logging.InternalLogger;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 
@@ -101,6 +102,9 @@ public final class ChannelOutboundBuffer {
 
     private volatile Runnable fireChannelWritabilityChangedTask;
 
+    // Only modified from the EventLoop.
+    private volatile long consolidatedFlushes;
+
     ChannelOutboundBuffer(AbstractChannel channel) {
         this.channel = channel;
     }
@@ -265,6 +269,36 @@ public final class ChannelOutboundBuffer {
         return true;
     }
 
+    /**
+     * Will remove the current message without releasing it or notifying its {@link ChannelPromise} and return the
+     * {@link ChannelPromise}. The caller takes over the ownership of the message and is responsible to release it
+     * and notify the returned {@link ChannelPromise}. This is useful for transports that only know later if the
+     * written data is not used anymore, like when zero-copy writes are used.
+     *
+     * Returns {@code null} if no flushed message exists or if the message was cancelled before.
+     */
+    public ChannelPromise removeDeferred() {
+        Entry e = flushedEntry;
+        if (e == null) {
+            clearNioBuffers();
+            return null;
+        }
+        ChannelPromise promise = e.promise;
+        int size = e.pendingSize;
+        boolean cancelled = e.cancelled;
+
+        removeEntry(e);
+
+        if (!cancelled) {
+            decrementPendingOutboundBytes(size, false, true);
+        }
+
+        // recycle the entry
+        e.recycle();
+
+        return cancelled ? null : promise;
+    }
+
     /**
      * Will remove the current message, mark its {@link ChannelPromise} as failure using the given {@link Throwable}
      * and return {@code true}. If no   flushed message exists at the time this method is called it will return
@@ -718,6 +752,19 @@ public final class ChannelOutboundBuffer {
         return totalPendingSize;
     }
 
+    /**
+     * Returns the number of flushes that did not result in a write to the transport on their own because they were
+     * merged with another flush, see {@link ChannelOption#FLUSH_CONSOLIDATION}.
+     */
+    @UnstableApi
+    public long consolidatedFlushes() {
+        return consolidatedFlushes;
+    }
+
+    void incrementConsolidatedFlushes() {
+        consolidatedFlushes++;
+    }
+
     /**
      * Get how many bytes can be written until {@link #isWritable()} returns {@code false}.
      * This quantity will always be non-negative. If {@link #isWritable()} is {@code false} then 0.
@@ -16,6 +16,7 @@
 package io.netty.channel;
 
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.internal.UnstableApi;
 
 import java.util.IdentityHashMap;
 import java.util.Map;
@@ -27,6 +28,7 @@ import static io.netty.channel.ChannelOption.ALLOCATOR;
 import static io.netty.channel.ChannelOption.AUTO_CLOSE;
 import static io.netty.channel.ChannelOption.AUTO_READ;
 import static io.netty.channel.ChannelOption.CONNECT_TIMEOUT_MILLIS;
+import static io.netty.channel.ChannelOption.FLUSH_CONSOLIDATION;
 import static io.netty.channel.ChannelOption.MAX_MESSAGES_PER_READ;
 import static io.netty.channel.ChannelOption.MESSAGE_SIZE_ESTIMATOR;
 import static io.netty.channel.ChannelOption.RCVBUF_ALLOCATOR;
@@ -64,6 +66,7 @@ public class DefaultChannelConfig implements ChannelConfig {
     private volatile boolean autoClose = true;
     private volatile WriteBufferWaterMark writeBufferWaterMark = WriteBufferWaterMark.DEFAULT;
     private volatile boolean pinEventExecutor = true;
+    private volatile FlushConsolidation flushConsolidation = FlushConsolidation.DISABLED;
 
     public DefaultChannelConfig(Channel channel) {
         this(channel, new AdaptiveRecvByteBufAllocator());
@@ -82,7 +85,7 @@ public class DefaultChannelConfig implements ChannelConfig {
                 CONNECT_TIMEOUT_MILLIS, MAX_MESSAGES_PER_READ, WRITE_SPIN_COUNT,
                 ALLOCATOR, AUTO_READ, AUTO_CLOSE, RCVBUF_ALLOCATOR, WRITE_BUFFER_HIGH_WATER_MARK,
                 WRITE_BUFFER_LOW_WATER_MARK, WRITE_BUFFER_WATER_MARK, MESSAGE_SIZE_ESTIMATOR,
-                SINGLE_EVENTEXECUTOR_PER_GROUP);
+                SINGLE_EVENTEXECUTOR_PER_GROUP, FLUSH_CONSOLIDATION);
     }
 
     protected Map<ChannelOption<?>, Object> getOptions(
@@ -156,6 +159,9 @@ public class DefaultChannelConfig implements ChannelConfig {
         if (option == SINGLE_EVENTEXECUTOR_PER_GROUP) {
             return (T) Boolean.valueOf(getPinEventExecutorPerGroup());
         }
+        if (option == FLUSH_CONSOLIDATION) {
+            return (T) getFlushConsolidation();
+        }
         return null;
     }
 
@@ -188,6 +194,8 @@ public class DefaultChannelConfig implements ChannelConfig {
             setMessageSizeEstimator((MessageSizeEstimator) value);
         } else if (option == SINGLE_EVENTEXECUTOR_PER_GROUP) {
             setPinEventExecutorPerGroup((Boolean) value);
+        } else if (option == FLUSH_CONSOLIDATION) {
+            setFlushConsolidation((FlushConsolidation) value);
         } else {
             return false;
         }
@@ -413,6 +421,23 @@ public class DefaultChannelConfig implements ChannelConfig {
         return writeBufferWaterMark;
     }
 
+    /**
+     * Set the {@link FlushConsolidation} used by the {@link Channel}.
+     */
+    @UnstableApi
+    public ChannelConfig setFlushConsolidation(FlushConsolidation flushConsolidation) {
+        this.flushConsolidation = checkNotNull(flushConsolidation, "flushConsolidation");
+        return this;
+    }
+
+    /**
+     * Returns the {@link FlushConsolidation} used by the {@link Channel}.
+     */
+    @UnstableApi
+    public FlushConsolidation getFlushConsolidation() {
+        return flushConsolidation;
+    }
+
     @Override
     public MessageSizeEstimator getMessageSizeEstimator() {
         return msgSizeEstimator;
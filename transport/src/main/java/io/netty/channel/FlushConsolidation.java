@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.netty.util.internal.ObjectUtil.checkNotNull;
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static io.netty.util.internal.ObjectUtil.checkPositiveOrZero;
+
+/**
+ * Configures the automatic flush consolidation of a {@link Channel} via {@link ChannelOption#FLUSH_CONSOLIDATION}.
+ * <p>
+ * When enabled, {@link Channel#flush()} only marks the pending messages as flushed and the actual write to the
+ * transport is deferred until the end of the current {@link EventLoop} iteration, so all the flushes issued while
+ * processing a batch of I/O events (for example pipelined requests) result in a single (gathering) write. The write
+ * happens earlier if {@link ChannelOutboundBuffer#totalPendingWriteBytes()} reaches {@link #maxPendingBytes()} or if
+ * the first deferred flush is older than {@link #maxDelayNanos()}. Pending data is always written before the
+ * {@link Channel} is closed or its output is shutdown.
+ * <p>
+ * This is the transport level counterpart of {@code FlushConsolidationHandler} and does not need any handler in the
+ * {@link ChannelPipeline}.
+ */
+@UnstableApi
+public final class FlushConsolidation {
+
+    private static final int DEFAULT_MAX_PENDING_BYTES = 64 * 1024;
+
+    /**
+     * Flushes are never deferred. This is the default.
+     */
+    public static final FlushConsolidation DISABLED = new FlushConsolidation();
+
+    /**
+     * Flushes are deferred until the end of the current {@link EventLoop} iteration or until 64KB are pending.
+     */
+    public static final FlushConsolidation DEFAULT = new FlushConsolidation(DEFAULT_MAX_PENDING_BYTES);
+
+    private final boolean enabled;
+    private final int maxPendingBytes;
+    private final long maxDelayNanos;
+
+    private FlushConsolidation() {
+        enabled = false;
+        maxPendingBytes = 0;
+        maxDelayNanos = 0;
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxPendingBytes the number of pending bytes at which a flush is not deferred anymore.
+     */
+    public FlushConsolidation(int maxPendingBytes) {
+        this(maxPendingBytes, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param maxPendingBytes the number of pending bytes at which a flush is not deferred anymore.
+     * @param maxDelay the maximum time a flush may be deferred, {@code 0} means until the end of the current
+     *                 {@link EventLoop} iteration.
+     * @param unit the {@link TimeUnit} of {@code maxDelay}.
+     */
+    public FlushConsolidation(int maxPendingBytes, long maxDelay, TimeUnit unit) {
+        this.maxPendingBytes = checkPositive(maxPendingBytes, "maxPendingBytes");
+        maxDelayNanos = checkNotNull(unit, "unit").toNanos(checkPositiveOrZero(maxDelay, "maxDelay"));
+        enabled = true;
+    }
+
+    /**
+     * Returns {@code true} if flushes may be deferred.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the number of pending bytes at which a flush is not deferred anymore.
+     */
+    public int maxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    /**
+     * Returns the maximum time in nanoseconds a flush may be deferred, {@code 0} means until the end of the current
+     * {@link EventLoop} iteration.
+     */
+    public long maxDelayNanos() {
+        return maxDelayNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (!enabled) {
+            return "FlushConsolidation(disabled)";
+        }
+        return "FlushConsolidation(maxPendingBytes: " + maxPendingBytes + ", maxDelayNanos: " + maxDelayNanos + ')';
+    }
+}
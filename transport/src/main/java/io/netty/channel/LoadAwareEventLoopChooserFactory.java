@@ -0,0 +1,143 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.util.concurrent.DefaultEventExecutorChooserFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorChooserFactory;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.Random;
+
+/**
+ * {@link EventExecutorChooserFactory} which takes the load of the {@link SingleThreadEventLoop}s into account when
+ * choosing the next {@link EventLoop}. This is done by picking two {@link EventLoop}s randomly and using the one
+ * with the lower load, which is estimated by the number of {@link SingleThreadEventLoop#registeredChannels()},
+ * {@link SingleThreadEventLoop#pendingTasks()} and {@link SingleThreadEventLoop#ioTimeNanos()}.
+ * <p>
+ * This helps in situations where the {@link Channel}s are not equally busy, as plain round-robin would assign the
+ * same amount of {@link Channel}s to each {@link EventLoop} no matter how much work these produce. If the executors
+ * are not {@link SingleThreadEventLoop}s this factory falls back to {@link DefaultEventExecutorChooserFactory}.
+ */
+@UnstableApi
+public final class LoadAwareEventLoopChooserFactory implements EventExecutorChooserFactory {
+
+    public static final LoadAwareEventLoopChooserFactory INSTANCE = new LoadAwareEventLoopChooserFactory();
+
+    // Every 10 microseconds of average I/O time per event loop iteration weight as much as one registered Channel.
+    private static final long IO_TIME_PER_LOAD_UNIT_NANOS = 10000;
+
+    private LoadAwareEventLoopChooserFactory() { }
+
+    @Override
+    public EventExecutorChooser newChooser(EventExecutor[] executors) {
+        if (executors.length < 2) {
+            return DefaultEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+        }
+        SingleThreadEventLoop[] eventLoops = new SingleThreadEventLoop[executors.length];
+        for (int i = 0; i < executors.length; i++) {
+            if (!(executors[i] instanceof SingleThreadEventLoop)) {
+                return DefaultEventExecutorChooserFactory.INSTANCE.newChooser(executors);
+            }
+            eventLoops[i] = (SingleThreadEventLoop) executors[i];
+        }
+        return new PowerOfTwoChoicesEventLoopChooser(eventLoops);
+    }
+
+    /**
+     * Returns the estimated load of the given {@link SingleThreadEventLoop}.
+     */
+    static long load(SingleThreadEventLoop eventLoop) {
+        long load = eventLoop.pendingTasks();
+        int registeredChannels = eventLoop.registeredChannels();
+        if (registeredChannels > 0) {
+            load += registeredChannels;
+        }
+        return load + eventLoop.ioTimeNanos() / IO_TIME_PER_LOAD_UNIT_NANOS;
+    }
+
+    /**
+     * Moves the given {@link Channel} to another {@link EventLoop}. The {@link Channel} is deregistered from its
+     * current {@link EventLoop} from within a task, which ensures no I/O operation of the {@link Channel} is in
+     * progress, and registered to the given {@link EventLoop} once the deregistration completed.
+     * <p>
+     * Be aware that the {@link ChannelHandler}s in the {@link ChannelPipeline} will see a
+     * {@link ChannelInboundHandler#channelUnregistered(ChannelHandlerContext)} and
+     * {@link ChannelInboundHandler#channelRegistered(ChannelHandlerContext)} event and that tasks they scheduled
+     * before will still be executed by the old {@link EventLoop}. Only migrate {@link Channel}s whose handlers are
+     * fine with this. If the migration fails the {@link Channel} may be left unregistered and should be closed.
+     *
+     * @param channel the {@link Channel} to migrate.
+     * @param eventLoop the {@link EventLoop} to which the {@link Channel} should be moved.
+     * @return the {@link ChannelFuture} which is notified once the {@link Channel} was registered to the new
+     *         {@link EventLoop}.
+     */
+    public static ChannelFuture migrate(final Channel channel, final EventLoop eventLoop) {
+        ObjectUtil.checkNotNull(channel, "channel");
+        ObjectUtil.checkNotNull(eventLoop, "eventLoop");
+        final ChannelPromise promise = new DefaultChannelPromise(channel, eventLoop);
+        if (!channel.isRegistered()) {
+            return promise.setFailure(new IllegalStateException("channel not registered to an event loop"));
+        }
+        if (channel.eventLoop() == eventLoop) {
+            return promise.setSuccess();
+        }
+        channel.eventLoop().execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!channel.isRegistered()) {
+                    promise.setFailure(new IllegalStateException("channel not registered to an event loop"));
+                    return;
+                }
+                channel.deregister().addListener(new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) {
+                        if (future.isSuccess()) {
+                            eventLoop.register(promise);
+                        } else {
+                            promise.setFailure(future.cause());
+                        }
+                    }
+                });
+            }
+        });
+        return promise;
+    }
+
+    private static final class PowerOfTwoChoicesEventLoopChooser implements EventExecutorChooser {
+        private final SingleThreadEventLoop[] eventLoops;
+
+        PowerOfTwoChoicesEventLoopChooser(SingleThreadEventLoop[] eventLoops) {
+            this.eventLoops = eventLoops;
+        }
+
+        @Override
+        public EventExecutor next() {
+            Random random = PlatformDependent.threadLocalRandom();
+            int first = random.nextInt(eventLoops.length);
+            // Pick a second distinct EventLoop by skipping over the first one.
+            int second = random.nextInt(eventLoops.length - 1);
+            if (second >= first) {
+                second++;
+            }
+            SingleThreadEventLoop a = eventLoops[first];
+            SingleThreadEventLoop b = eventLoops[second];
+            return load(a) <= load(b) ? a : b;
+        }
+    }
+}
@@ -36,6 +36,9 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
             SystemPropertyUtil.getInt("io.netty.eventLoop.maxPendingTasks", Integer.MAX_VALUE));
 
     private final Queue<Runnable> tailTasks;
+    // Exponentially weighted moving average of the time spent processing I/O per event loop iteration. Only
+    // written by the event loop itself but read by other threads, for example by a load-aware chooser.
+    private volatile long ioTimeNanos;
 
     protected SingleThreadEventLoop(EventLoopGroup parent, ThreadFactory threadFactory, boolean addTaskWakesUp) {
         this(parent, threadFactory, addTaskWakesUp, DEFAULT_MAX_PENDING_TASKS, RejectedExecutionHandlers.reject());
@@ -148,6 +151,38 @@ public abstract class SingleThreadEventLoop extends SingleThreadEventExecutor im
         return super.pendingTasks() + tailTasks.size();
     }
 
+    /**
+     * Returns the number of {@link Channel}s registered with this {@link EventLoop} or {@code -1}
+     * if operation is not supported. The returned value is not guaranteed to be exact accurate and
+     * should be viewed as a best effort.
+     */
+    @UnstableApi
+    public int registeredChannels() {
+        return -1;
+    }
+
+    /**
+     * Returns the recent average time in nanoseconds this {@link EventLoop} spent processing I/O per iteration or
+     * {@code 0} if the implementation does not track it. Like {@link #registeredChannels()} this is a best effort
+     * value that is meant to be used as load indicator only. Event loops that use an {@code ioRatio} of {@code 100}
+     * don't measure the time spent processing I/O and so will not update it.
+     */
+    @UnstableApi
+    public long ioTimeNanos() {
+        return ioTimeNanos;
+    }
+
+    /**
+     * Records the time in nanoseconds spent processing I/O during the last iteration of the event loop. This must
+     * only be called from within the {@link EventLoop}.
+     */
+    protected final void recordIoTime(long ioTimeNanos) {
+        assert inEventLoop();
+        long average = this.ioTimeNanos;
+        // Use a weight of 1/8 for the new sample so single outliers don't have much impact.
+        this.ioTimeNanos = average + ((ioTimeNanos - average) >> 3);
+    }
+
     /**
      * Marker interface for {@link Runnable} that will not trigger an {@link #wakeup(boolean)} in all cases.
      */
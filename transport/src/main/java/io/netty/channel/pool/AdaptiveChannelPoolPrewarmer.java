@@ -0,0 +1,169 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.ObjectUtil;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Opens {@link Channel}s of a {@link SimpleChannelPool} ahead of demand, so that acquire operations
+ * do not need to wait for a connect during ramp-ups.
+ * <p>
+ * Once per interval the rate of acquire operations is sampled from the {@link ChannelPoolMetric} of the pool. The
+ * number of idle {@link Channel}s is kept at the number of acquire operations that are expected to
+ * happen while a single connect is in progress, which is the acquire rate multiplied by the average connect latency
+ * of the pool. This number is bounded by {@code maxIdleChannels}.
+ * <p>
+ * The {@link Channel}s are opened via {@link SimpleChannelPool#connectChannel}, which is called
+ * from the given {@link EventExecutor}. The prewarmer should be {@linkplain #close() closed} before the pool is.
+ */
+@UnstableApi
+public final class AdaptiveChannelPoolPrewarmer {
+
+    private final SimpleChannelPool pool;
+    private final EventExecutor executor;
+    private final long intervalNanos;
+    private final int maxIdleChannels;
+    private final AtomicInteger pendingConnects = new AtomicInteger();
+    private final ChannelFutureListener connectListener = new ChannelFutureListener() {
+        @Override
+        public void operationComplete(ChannelFuture future) {
+            if (future.isSuccess()) {
+                offerIdleChannel(future.channel());
+            }
+            pendingConnects.decrementAndGet();
+        }
+    };
+    private final Runnable prewarmTask = new Runnable() {
+        @Override
+        public void run() {
+            prewarm();
+        }
+    };
+
+    // Guarded by this, so no Channel is offered to the pool once close() returned.
+    private boolean closed;
+
+    // Only accessed by the executor.
+    private long lastAcquires;
+    private double acquiresPerNano;
+    private ScheduledFuture<?> future;
+
+    /**
+     * Creates a new instance.
+     *
+     * @param pool              the {@link SimpleChannelPool} to open {@link Channel}s for
+     * @param executor          the {@link EventExecutor} which samples the metrics and opens the
+     *                          {@link Channel}s
+     * @param interval          the interval at which the acquire rate is sampled
+     * @param unit              the {@link TimeUnit} of {@code interval}
+     * @param maxIdleChannels   the maximum number of idle {@link Channel}s to keep open in advance
+     */
+    public AdaptiveChannelPoolPrewarmer(SimpleChannelPool pool, EventExecutor executor,
+                                        long interval, TimeUnit unit, int maxIdleChannels) {
+        this.pool = ObjectUtil.checkNotNull(pool, "pool");
+        this.executor = ObjectUtil.checkNotNull(executor, "executor");
+        intervalNanos = ObjectUtil.checkNotNull(unit, "unit").toNanos(ObjectUtil.checkPositive(interval, "interval"));
+        this.maxIdleChannels = ObjectUtil.checkPositive(maxIdleChannels, "maxIdleChannels");
+    }
+
+    /**
+     * Starts sampling the acquire rate and opening {@link Channel}s.
+     */
+    public void start() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future == null) {
+                    lastAcquires = pool.metric().acquires();
+                    future = executor.scheduleAtFixedRate(
+                            prewarmTask, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops opening {@link Channel}s. {@link Channel}s that were opened already
+     * stay in the pool, {@link Channel}s that are still connecting are closed once connected.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (future != null) {
+                    future.cancel(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Samples the acquire rate and opens the missing {@link Channel}s.
+     *
+     * @return the number of {@link Channel}s that are opened
+     */
+    int prewarm() {
+        synchronized (this) {
+            if (closed) {
+                return 0;
+            }
+        }
+        ChannelPoolMetric metric = pool.metric();
+        long acquires = metric.acquires();
+        double rate = (acquires - lastAcquires) / (double) intervalNanos;
+        lastAcquires = acquires;
+        // Give the latest sample a high weight so ramp-ups are detected quickly.
+        acquiresPerNano = (acquiresPerNano + rate) / 2;
+
+        long connects = metric.connects();
+        if (connects == 0) {
+            // Nothing known about the connect latency yet.
+            return 0;
+        }
+        double connectNanos = metric.connectTimeNanos() / (double) connects;
+        long target = (long) Math.min(maxIdleChannels, Math.ceil(acquiresPerNano * connectNanos));
+        // Idle channels that were closed by the remote peer can not serve an acquire, so do not count them.
+        long idleChannels = metric.idleChannels() - pool.inactiveIdleChannels();
+        long missing = target - idleChannels - pendingConnects.get();
+        int opened = 0;
+        for (; opened < missing; opened ++) {
+            pendingConnects.incrementAndGet();
+            pool.connectIdleChannel().addListener(connectListener);
+        }
+        return opened;
+    }
+
+    private synchronized void offerIdleChannel(Channel channel) {
+        if (closed) {
+            // The pool may be closed already.
+            channel.close();
+        } else {
+            pool.offerIdleChannel(channel);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.util.internal.UnstableApi;
+
+/**
+ * Statistics of a {@link ChannelPool}.
+ * <p>
+ * Latency histograms are returned as an array in which the element at index {@code 0} counts latencies below one
+ * microsecond and the element at index {@code i > 0} counts latencies of at least {@code 2^(i - 1)} and less than
+ * {@code 2^i} microseconds. The last element also counts all latencies that are even higher.
+ */
+@UnstableApi
+public interface ChannelPoolMetric {
+
+    /**
+     * Returns the number of {@link io.netty.channel.Channel}s that are currently acquired from the
+     * {@link ChannelPool}.
+     */
+    long acquiredChannels();
+
+    /**
+     * Returns the number of idle {@link io.netty.channel.Channel}s that are currently stored in the
+     * {@link ChannelPool}.
+     */
+    long idleChannels();
+
+    /**
+     * Returns the number of acquire operations that are currently waiting for a
+     * {@link io.netty.channel.Channel} to become available.
+     */
+    long pendingAcquires();
+
+    /**
+     * Returns the number of successful acquire operations.
+     */
+    long acquires();
+
+    /**
+     * Returns the accumulated time in nanoseconds of all successful acquire operations, including the time spent
+     * waiting for a {@link io.netty.channel.Channel}, connecting and health checking.
+     */
+    long acquireTimeNanos();
+
+    /**
+     * Returns the latency histogram of the successful acquire operations.
+     */
+    long[] acquireLatencyHistogram();
+
+    /**
+     * Returns the number of successfully connected {@link io.netty.channel.Channel}s.
+     */
+    long connects();
+
+    /**
+     * Returns the accumulated time in nanoseconds it took to connect the {@link io.netty.channel.Channel}s.
+     */
+    long connectTimeNanos();
+
+    /**
+     * Returns the latency histogram of the successful connects.
+     */
+    long[] connectLatencyHistogram();
+
+    /**
+     * Returns the number of {@link io.netty.channel.Channel}s that were found to be unhealthy by the
+     * {@link ChannelHealthChecker} or for which the health check failed.
+     */
+    long healthCheckFailures();
+}
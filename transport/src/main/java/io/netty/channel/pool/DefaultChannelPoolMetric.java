@@ -0,0 +1,99 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.StringUtil;
+
+/**
+ * {@link ChannelPoolMetric} of a {@link SimpleChannelPool}.
+ */
+final class DefaultChannelPoolMetric implements ChannelPoolMetric {
+
+    private final SimpleChannelPool pool;
+    final LongCounter acquiredChannels = PlatformDependent.newLongCounter();
+    final LongCounter idleChannels = PlatformDependent.newLongCounter();
+    final LongCounter healthCheckFailures = PlatformDependent.newLongCounter();
+    final LatencyHistogram acquireLatency = new LatencyHistogram();
+    final LatencyHistogram connectLatency = new LatencyHistogram();
+
+    DefaultChannelPoolMetric(SimpleChannelPool pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public long acquiredChannels() {
+        return acquiredChannels.value();
+    }
+
+    @Override
+    public long idleChannels() {
+        return idleChannels.value();
+    }
+
+    @Override
+    public long pendingAcquires() {
+        return pool.pendingAcquires();
+    }
+
+    @Override
+    public long acquires() {
+        return acquireLatency.count();
+    }
+
+    @Override
+    public long acquireTimeNanos() {
+        return acquireLatency.totalNanos();
+    }
+
+    @Override
+    public long[] acquireLatencyHistogram() {
+        return acquireLatency.snapshot();
+    }
+
+    @Override
+    public long connects() {
+        return connectLatency.count();
+    }
+
+    @Override
+    public long connectTimeNanos() {
+        return connectLatency.totalNanos();
+    }
+
+    @Override
+    public long[] connectLatencyHistogram() {
+        return connectLatency.snapshot();
+    }
+
+    @Override
+    public long healthCheckFailures() {
+        return healthCheckFailures.value();
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) +
+                "(acquiredChannels: " + acquiredChannels() +
+                "; idleChannels: " + idleChannels() +
+                "; pendingAcquires: " + pendingAcquires() +
+                "; acquires: " + acquires() +
+                "; connects: " + connects() +
+                "; healthCheckFailures: " + healthCheckFailures() +
+                ')';
+    }
+}
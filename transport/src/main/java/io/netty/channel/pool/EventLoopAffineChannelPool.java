@@ -0,0 +1,188 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.UnstableApi;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link SimpleChannelPool} which keeps a separate partition of idle {@link Channel}s for each {@link EventLoop} of
+ * the {@link EventLoopGroup} that is used by the {@link Bootstrap}.
+ * <p>
+ * If {@link #acquire()} is called from one of these {@link EventLoop}s the pool will prefer a {@link Channel} that is
+ * registered to the same {@link EventLoop}, register new {@link Channel}s to it and notify the returned
+ * {@link Future} on it. This way no thread hops are needed when the caller writes to the acquired {@link Channel}.
+ * Only if the partition of the calling {@link EventLoop} is empty {@link Channel}s of other partitions are used.
+ * If the pool is used from a thread that is not part of the {@link EventLoopGroup}, idle {@link Channel}s are taken
+ * from any partition.
+ * <p>
+ * Released {@link Channel}s are always returned to the partition of the {@link EventLoop} they are registered to.
+ */
+@UnstableApi
+public class EventLoopAffineChannelPool extends SimpleChannelPool {
+
+    private final EventLoop[] eventLoops;
+    private final Deque<Channel>[] partitions;
+    private final Map<EventExecutor, Deque<Channel>> partitionsByEventLoop;
+    private final boolean lastRecentUsed;
+
+    /**
+     * Creates a new instance using the {@link ChannelHealthChecker#ACTIVE}.
+     *
+     * @param bootstrap         the {@link Bootstrap} that is used for connections
+     * @param handler           the {@link ChannelPoolHandler} that will be notified for the different pool actions
+     */
+    public EventLoopAffineChannelPool(Bootstrap bootstrap, ChannelPoolHandler handler) {
+        this(bootstrap, handler, ChannelHealthChecker.ACTIVE);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bootstrap         the {@link Bootstrap} that is used for connections
+     * @param handler           the {@link ChannelPoolHandler} that will be notified for the different pool actions
+     * @param healthCheck       the {@link ChannelHealthChecker} that will be used to check if a {@link Channel} is
+     *                          still healthy when obtain from the {@link ChannelPool}
+     */
+    public EventLoopAffineChannelPool(Bootstrap bootstrap, ChannelPoolHandler handler,
+                                      ChannelHealthChecker healthCheck) {
+        this(bootstrap, handler, healthCheck, true, true);
+    }
+
+    /**
+     * Creates a new instance.
+     *
+     * @param bootstrap          the {@link Bootstrap} that is used for connections
+     * @param handler            the {@link ChannelPoolHandler} that will be notified for the different pool actions
+     * @param healthCheck        the {@link ChannelHealthChecker} that will be used to check if a {@link Channel} is
+     *                           still healthy when obtain from the {@link ChannelPool}
+     * @param releaseHealthCheck will check channel health before offering back if this parameter set to {@code true};
+     *                           otherwise, channel health is only checked at acquisition time
+     * @param lastRecentUsed    {@code true} {@link Channel} selection will be LIFO, if {@code false} FIFO.
+     */
+    @SuppressWarnings("unchecked")
+    public EventLoopAffineChannelPool(Bootstrap bootstrap, ChannelPoolHandler handler,
+                                      ChannelHealthChecker healthCheck, boolean releaseHealthCheck,
+                                      boolean lastRecentUsed) {
+        super(bootstrap, handler, healthCheck, releaseHealthCheck, lastRecentUsed);
+        this.lastRecentUsed = lastRecentUsed;
+
+        List<EventLoop> eventLoops = new ArrayList<EventLoop>();
+        for (EventExecutor executor: bootstrap().config().group()) {
+            if (!(executor instanceof EventLoop)) {
+                throw new IllegalArgumentException("bootstrap group must only contain EventLoops: " + executor);
+            }
+            eventLoops.add((EventLoop) executor);
+        }
+        this.eventLoops = eventLoops.toArray(new EventLoop[0]);
+        partitions = new Deque[this.eventLoops.length];
+        partitionsByEventLoop = new IdentityHashMap<EventExecutor, Deque<Channel>>(this.eventLoops.length);
+        for (int i = 0; i < partitions.length; i ++) {
+            partitions[i] = PlatformDependent.newConcurrentDeque();
+            partitionsByEventLoop.put(this.eventLoops[i], partitions[i]);
+        }
+    }
+
+    /**
+     * Returns the index of the {@link EventLoop} the calling thread belongs to or {@code -1} if it does not belong
+     * to any of them.
+     */
+    private int currentIndex() {
+        for (int i = 0; i < eventLoops.length; i ++) {
+            if (eventLoops[i].inEventLoop()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        int idx = currentIndex();
+        EventLoop loop = idx == -1 ? bootstrap().config().group().next() : eventLoops[idx];
+        return acquire(loop.<Channel>newPromise());
+    }
+
+    @Override
+    protected ChannelFuture connectChannel(Bootstrap bs) {
+        int idx = currentIndex();
+        // Register the new Channel to the EventLoop of the caller so it will be offered to its partition on release.
+        return super.connectChannel(idx == -1 ? bs : bs.clone(eventLoops[idx]));
+    }
+
+    @Override
+    protected Channel pollChannel() {
+        int idx = currentIndex();
+        int start;
+        if (idx == -1) {
+            start = PlatformDependent.threadLocalRandom().nextInt(partitions.length);
+        } else {
+            Channel ch = poll(partitions[idx]);
+            if (ch != null) {
+                return ch;
+            }
+            start = idx + 1;
+        }
+        // Steal from the other partitions.
+        for (int i = 0; i < partitions.length; i ++) {
+            int partition = (start + i) % partitions.length;
+            if (partition == idx) {
+                continue;
+            }
+            Channel ch = poll(partitions[partition]);
+            if (ch != null) {
+                return ch;
+            }
+        }
+        return null;
+    }
+
+    private Channel poll(Deque<Channel> partition) {
+        return lastRecentUsed ? partition.pollLast() : partition.pollFirst();
+    }
+
+    @Override
+    protected boolean offerChannel(Channel channel) {
+        Deque<Channel> partition = partitionsByEventLoop.get(channel.eventLoop());
+        return partition != null && partition.offer(channel);
+    }
+
+    @Override
+    protected int inactiveIdleChannels() {
+        int inactive = 0;
+        for (Deque<Channel> partition: partitions) {
+            for (Channel channel: partition) {
+                if (!channel.isActive()) {
+                    inactive++;
+                }
+            }
+        }
+        return inactive;
+    }
+}
@@ -72,7 +72,8 @@ public class FixedChannelPool extends SimpleChannelPool {
     private final int maxConnections;
     private final int maxPendingAcquires;
     private final AtomicInteger acquiredChannelCount = new AtomicInteger();
-    private int pendingAcquireCount;
+    // Only modified by the above EventExecutor, volatile so it can be read by the ChannelPoolMetric from any thread.
+    private volatile int pendingAcquireCount;
     private boolean closed;
 
     /**
@@ -217,7 +218,7 @@ public class FixedChannelPool extends SimpleChannelPool {
                         // create a new connection.
                         task.acquired();
 
-                        FixedChannelPool.super.acquire(task.promise);
+                        acquireHealthyFromPoolOrNew(task.promise);
                     }
                 };
                 break;
@@ -235,8 +236,15 @@ public class FixedChannelPool extends SimpleChannelPool {
         return acquiredChannelCount.get();
     }
 
+    @Override
+    int pendingAcquires() {
+        return pendingAcquireCount;
+    }
+
     @Override
     public Future<Channel> acquire(final Promise<Channel> promise) {
+        // Track the original promise so the recorded latency includes the time spent in the pendingAcquireQueue.
+        trackAcquire(ObjectUtil.checkNotNull(promise, "promise"));
         try {
             if (executor.inEventLoop()) {
                 acquire0(promise);
@@ -270,7 +278,7 @@ public class FixedChannelPool extends SimpleChannelPool {
             AcquireListener l = new AcquireListener(promise);
             l.acquired();
             p.addListener(l);
-            super.acquire(p);
+            acquireHealthyFromPoolOrNew(p);
         } else {
             if (pendingAcquireCount >= maxPendingAcquires) {
                 promise.setFailure(FULL_EXCEPTION);
@@ -352,7 +360,7 @@ public class FixedChannelPool extends SimpleChannelPool {
             --pendingAcquireCount;
             task.acquired();
 
-            super.acquire(task.promise);
+            acquireHealthyFromPoolOrNew(task.promise);
         }
 
         // We should never have a negative value.
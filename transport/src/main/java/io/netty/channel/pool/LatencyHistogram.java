@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.util.internal.LongCounter;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Histogram with power of two microsecond buckets, as described in {@link ChannelPoolMetric}.
+ */
+final class LatencyHistogram {
+    private static final int BUCKETS = 32;
+
+    private final LongCounter[] buckets = new LongCounter[BUCKETS];
+    private final LongCounter count = PlatformDependent.newLongCounter();
+    private final LongCounter totalNanos = PlatformDependent.newLongCounter();
+
+    LatencyHistogram() {
+        for (int i = 0; i < buckets.length; i ++) {
+            buckets[i] = PlatformDependent.newLongCounter();
+        }
+    }
+
+    void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        buckets[micros <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros))].increment();
+        count.increment();
+        totalNanos.add(nanos);
+    }
+
+    long count() {
+        return count.value();
+    }
+
+    long totalNanos() {
+        return totalNanos.value();
+    }
+
+    long[] snapshot() {
+        long[] snapshot = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i ++) {
+            snapshot[i] = buckets[i].value();
+        }
+        return snapshot;
+    }
+}
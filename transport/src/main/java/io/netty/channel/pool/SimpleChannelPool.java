@@ -39,7 +39,7 @@ import static io.netty.util.internal.ObjectUtil.*;
  * This implementation uses LIFO order for {@link Channel}s in the {@link ChannelPool}.
  *
  */
-public class SimpleChannelPool implements ChannelPool {
+public class SimpleChannelPool implements ChannelPool, ChannelPoolMetricProvider {
     private static final AttributeKey<SimpleChannelPool> POOL_KEY = AttributeKey.newInstance("channelPool");
     private static final IllegalStateException FULL_EXCEPTION = ThrowableUtil.unknownStackTrace(
             new IllegalStateException("ChannelPool full"), SimpleChannelPool.class, "releaseAndOffer(...)");
@@ -50,6 +50,7 @@ public class SimpleChannelPool implements ChannelPool {
     private final Bootstrap bootstrap;
     private final boolean releaseHealthCheck;
     private final boolean lastRecentUsed;
+    private final DefaultChannelPoolMetric metric = new DefaultChannelPoolMetric(this);
 
     /**
      * Creates a new instance using the {@link ChannelHealthChecker#ACTIVE}.
@@ -154,14 +155,41 @@ public class SimpleChannelPool implements ChannelPool {
     }
 
     @Override
-    public final Future<Channel> acquire() {
+    public Future<Channel> acquire() {
         return acquire(bootstrap.config().group().next().<Channel>newPromise());
     }
 
     @Override
     public Future<Channel> acquire(final Promise<Channel> promise) {
         checkNotNull(promise, "promise");
-        return acquireHealthyFromPoolOrNew(promise);
+        return acquireHealthyFromPoolOrNew(trackAcquire(promise));
+    }
+
+    @Override
+    public ChannelPoolMetric metric() {
+        return metric;
+    }
+
+    /**
+     * Returns the number of acquire operations that wait for a {@link Channel} to become available.
+     */
+    int pendingAcquires() {
+        return 0;
+    }
+
+    /**
+     * Records the latency of the acquire operation that will be completed through the given {@link Promise}.
+     */
+    final Promise<Channel> trackAcquire(Promise<Channel> promise) {
+        final long startTime = System.nanoTime();
+        return promise.addListener(new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) {
+                if (future.isSuccess()) {
+                    metric.acquireLatency.record(System.nanoTime() - startTime);
+                }
+            }
+        });
     }
 
     /**
@@ -169,26 +197,28 @@ public class SimpleChannelPool implements ChannelPool {
      * @param promise the promise to provide acquire result.
      * @return future for acquiring a channel.
      */
-    private Future<Channel> acquireHealthyFromPoolOrNew(final Promise<Channel> promise) {
+    final Future<Channel> acquireHealthyFromPoolOrNew(final Promise<Channel> promise) {
         try {
             final Channel ch = pollChannel();
             if (ch == null) {
                 // No Channel left in the pool bootstrap a new Channel
                 Bootstrap bs = bootstrap.clone();
                 bs.attr(POOL_KEY, this);
+                final long connectStartTime = System.nanoTime();
                 ChannelFuture f = connectChannel(bs);
                 if (f.isDone()) {
-                    notifyConnect(f, promise);
+                    notifyConnect(f, promise, connectStartTime);
                 } else {
                     f.addListener(new ChannelFutureListener() {
                         @Override
                         public void operationComplete(ChannelFuture future) throws Exception {
-                            notifyConnect(future, promise);
+                            notifyConnect(future, promise, connectStartTime);
                         }
                     });
                 }
                 return promise;
             }
+            metric.idleChannels.decrement();
             EventLoop loop = ch.eventLoop();
             if (loop.inEventLoop()) {
                 doHealthCheck(ch, promise);
@@ -206,9 +236,11 @@ public class SimpleChannelPool implements ChannelPool {
         return promise;
     }
 
-    private void notifyConnect(ChannelFuture future, Promise<Channel> promise) {
+    private void notifyConnect(ChannelFuture future, Promise<Channel> promise, long connectStartTime) {
         if (future.isSuccess()) {
+            metric.connectLatency.record(System.nanoTime() - connectStartTime);
             Channel channel = future.channel();
+            metric.acquiredChannels.increment();
             if (!promise.trySuccess(channel)) {
                 // Promise was completed in the meantime (like cancelled), just release the channel again
                 release(channel);
@@ -242,15 +274,22 @@ public class SimpleChannelPool implements ChannelPool {
                 try {
                     ch.attr(POOL_KEY).set(this);
                     handler.channelAcquired(ch);
-                    promise.setSuccess(ch);
+                    // Count the channel before the promise is notified, as a listener may release it directly.
+                    metric.acquiredChannels.increment();
+                    if (!promise.trySuccess(ch)) {
+                        // Promise was completed in the meantime (like cancelled), just release the channel again
+                        release(ch);
+                    }
                 } catch (Throwable cause) {
                     closeAndFail(ch, cause, promise);
                 }
             } else {
+                metric.healthCheckFailures.increment();
                 closeChannel(ch);
                 acquireHealthyFromPoolOrNew(promise);
             }
         } else {
+            metric.healthCheckFailures.increment();
             closeChannel(ch);
             acquireHealthyFromPoolOrNew(promise);
         }
@@ -266,6 +305,55 @@ public class SimpleChannelPool implements ChannelPool {
         return bs.connect();
     }
 
+    /**
+     * Connects a new {@link Channel} via {@link #connectChannel(Bootstrap)} that can be offered to the pool via
+     * {@link #offerIdleChannel(Channel)} once connected, so it can be acquired later without waiting for the connect.
+     *
+     * @return the {@link ChannelFuture} of the connect operation
+     */
+    final ChannelFuture connectIdleChannel() {
+        final long connectStartTime = System.nanoTime();
+        ChannelFuture f = connectChannel(bootstrap.clone());
+        f.addListener(new ChannelFutureListener() {
+            @Override
+            public void operationComplete(ChannelFuture future) {
+                if (future.isSuccess()) {
+                    metric.connectLatency.record(System.nanoTime() - connectStartTime);
+                }
+            }
+        });
+        return f;
+    }
+
+    /**
+     * Offers a {@link Channel} that was connected via {@link #connectIdleChannel()} to the pool as idle
+     * {@link Channel}, or closes it if it could not be added.
+     */
+    final void offerIdleChannel(Channel channel) {
+        if (offerChannel(channel)) {
+            metric.idleChannels.increment();
+        } else {
+            channel.close();
+        }
+    }
+
+    /**
+     * Returns the number of idle {@link Channel}s in the internal storage that are not active anymore, for example
+     * because the remote peer closed them. These are only removed once they are acquired.
+     *
+     * Sub-classes that override {@link #pollChannel()} and {@link #offerChannel(Channel)} should override this method
+     * as well, as the default implementation only knows about the internal storage of this class.
+     */
+    protected int inactiveIdleChannels() {
+        int inactive = 0;
+        for (Channel channel: deque) {
+            if (!channel.isActive()) {
+                inactive++;
+            }
+        }
+        return inactive;
+    }
+
     @Override
     public final Future<Void> release(Channel channel) {
         return release(channel, channel.eventLoop().<Void>newPromise());
@@ -303,6 +391,7 @@ public class SimpleChannelPool implements ChannelPool {
                                  "Channel " + channel + " was not acquired from this ChannelPool"),
                          promise);
         } else {
+            metric.acquiredChannels.decrement();
             try {
                 if (releaseHealthCheck) {
                     doHealthCheckOnRelease(channel, promise);
@@ -341,6 +430,7 @@ public class SimpleChannelPool implements ChannelPool {
         if (future.getNow()) { //channel turns out to be healthy, offering and releasing it.
             releaseAndOffer(channel, promise);
         } else { //channel not healthy, just releasing it.
+            metric.healthCheckFailures.increment();
             handler.channelReleased(channel);
             promise.setSuccess(null);
         }
@@ -348,6 +438,7 @@ public class SimpleChannelPool implements ChannelPool {
 
     private void releaseAndOffer(Channel channel, Promise<Void> promise) throws Exception {
         if (offerChannel(channel)) {
+            metric.idleChannels.increment();
             handler.channelReleased(channel);
             promise.setSuccess(null);
         } else {
@@ -394,6 +485,7 @@ public class SimpleChannelPool implements ChannelPool {
             if (channel == null) {
                 break;
             }
+            metric.idleChannels.decrement();
             // Just ignore any errors that are reported back from close().
             channel.close().awaitUninterruptibly();
         }
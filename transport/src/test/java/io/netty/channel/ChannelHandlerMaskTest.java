@@ -0,0 +1,101 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.netty.channel.ChannelHandlerMask.*;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChannelHandlerMaskTest {
+
+    @Test
+    public void testAdaptersAreSkipped() {
+        assertEquals(0, mask(ChannelHandlerAdapter.class));
+        assertEquals(0, mask(ChannelInboundHandlerAdapter.class));
+        assertEquals(0, mask(ChannelOutboundHandlerAdapter.class));
+        assertEquals(0, mask(ChannelDuplexHandler.class));
+    }
+
+    @Test
+    public void testOverriddenMethodsAreNotSkipped() {
+        assertEquals(MASK_CHANNEL_READ, mask(ReadHandler.class));
+        assertEquals(MASK_WRITE | MASK_EXCEPTION_CAUGHT, mask(WriteHandler.class));
+        // A sub-class of a handler that overrides a method must not skip it either.
+        assertEquals(MASK_CHANNEL_READ, mask(ReadHandlerSubclass.class));
+    }
+
+    @Test
+    public void testHandlersNotImplementingAdapterAreNeverSkipped() {
+        int mask = mask(DefaultChannelPipeline.TailContext.class);
+        assertEquals(MASK_ONLY_INBOUND | MASK_EXCEPTION_CAUGHT, mask);
+        mask = mask(DefaultChannelPipeline.HeadContext.class);
+        assertEquals(MASK_ONLY_INBOUND | MASK_ONLY_OUTBOUND | MASK_EXCEPTION_CAUGHT, mask);
+    }
+
+    @Test
+    public void testSkippedHandlersAreNotInvoked() {
+        final List<String> events = new ArrayList<String>();
+        EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelActive(ChannelHandlerContext ctx) throws Exception {
+                events.add("active");
+                super.channelActive(ctx);
+            }
+        }, new WriteHandler(), new ReadHandler() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                events.add("read " + msg);
+                ctx.fireChannelRead(msg);
+            }
+        });
+        assertTrue(channel.writeInbound("msg"));
+        assertTrue(channel.writeOutbound("msg"));
+        assertEquals("msg", channel.readInbound());
+        assertEquals("msg", channel.readOutbound());
+        assertFalse(channel.finish());
+        assertEquals(2, events.size());
+        assertEquals("active", events.get(0));
+        assertEquals("read msg", events.get(1));
+    }
+
+    private static class ReadHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private static final class ReadHandlerSubclass extends ReadHandler { }
+
+    private static final class WriteHandler extends ChannelDuplexHandler {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ctx.write(msg, promise);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            ctx.fireExceptionCaught(cause);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FlushConsolidationTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress(FlushConsolidationTest.class.getSimpleName());
+
+    private static EventLoopGroup group;
+    private static Channel serverChannel;
+    private static final BlockingQueue<Object> received = new LinkedBlockingQueue<Object>();
+
+    @BeforeClass
+    public static void setUp() {
+        group = new DefaultEventLoopGroup(2);
+        serverChannel = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                received.add(msg);
+                            }
+                        });
+                    }
+                })
+                .bind(ADDRESS).syncUninterruptibly().channel();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        serverChannel.close().syncUninterruptibly();
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        assertSame(FlushConsolidation.DISABLED, channel.config().getOption(ChannelOption.FLUSH_CONSOLIDATION));
+        assertFalse(channel.finish());
+    }
+
+    @Test(timeout = 5000)
+    public void testFlushDeferredUntilTasksRun() throws Exception {
+        final Channel channel = connect(FlushConsolidation.DEFAULT);
+        try {
+            int pending = channel.eventLoop().submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    channel.writeAndFlush("a");
+                    channel.writeAndFlush("b");
+                    channel.writeAndFlush("c");
+                    return channel.unsafe().outboundBuffer().size();
+                }
+            }).sync().getNow();
+            assertEquals(3, pending);
+            assertEquals("a", received.take());
+            assertEquals("b", received.take());
+            assertEquals("c", received.take());
+            assertEquals(2, channel.unsafe().outboundBuffer().consolidatedFlushes());
+        } finally {
+            channel.close().syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testFlushWhenMaxPendingBytesReached() throws Exception {
+        final Channel channel = connect(new FlushConsolidation(256));
+        try {
+            // Every message is accounted with its size plus the overhead of the ChannelOutboundBuffer entry.
+            boolean written = channel.eventLoop().submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+                    channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+                    ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+                    if (buffer.size() != 2) {
+                        return false;
+                    }
+                    channel.writeAndFlush(Unpooled.wrappedBuffer(new byte[10]));
+                    return buffer.isEmpty();
+                }
+            }).sync().getNow();
+            assertTrue(written);
+            for (int i = 0; i < 3; i++) {
+                ByteBuf buf = (ByteBuf) received.take();
+                assertEquals(10, buf.readableBytes());
+                buf.release();
+            }
+        } finally {
+            channel.close().syncUninterruptibly();
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testDeferredFlushWrittenOnClose() throws Exception {
+        final Channel channel = connect(FlushConsolidation.DEFAULT);
+        ChannelFuture future = channel.eventLoop().submit(new Callable<ChannelFuture>() {
+            @Override
+            public ChannelFuture call() {
+                ChannelFuture future = channel.writeAndFlush("a");
+                channel.close();
+                return future;
+            }
+        }).sync().getNow();
+        assertTrue(future.isSuccess());
+        assertEquals("a", received.take());
+    }
+
+    private static Channel connect(FlushConsolidation consolidation) {
+        return new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .option(ChannelOption.FLUSH_CONSOLIDATION, consolidation)
+                .handler(new ChannelInboundHandlerAdapter())
+                .connect(ADDRESS).syncUninterruptibly().channel();
+    }
+}
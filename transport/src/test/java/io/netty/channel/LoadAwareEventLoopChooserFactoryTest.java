@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.Test;
+
+import java.nio.channels.spi.SelectorProvider;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoadAwareEventLoopChooserFactoryTest {
+
+    @Test
+    public void testChoosesLessLoadedEventLoop() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(2, (Executor) null, LoadAwareEventLoopChooserFactory.INSTANCE,
+                SelectorProvider.provider(), DefaultSelectStrategyFactory.INSTANCE);
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            EventExecutor busy = group.next();
+            busy.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            for (int i = 0; i < 16; i++) {
+                busy.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        // NOOP
+                    }
+                });
+            }
+            // With only two EventLoops both are always compared, so the busy one must never be chosen.
+            for (int i = 0; i < 100; i++) {
+                assertNotSame(busy, group.next());
+            }
+        } finally {
+            latch.countDown();
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void testFallbackForSingleEventLoop() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(1, (Executor) null, LoadAwareEventLoopChooserFactory.INSTANCE,
+                SelectorProvider.provider(), DefaultSelectStrategyFactory.INSTANCE);
+        try {
+            assertSame(group.next(), group.next());
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void testRegisteredChannels() throws Exception {
+        NioEventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            SingleThreadEventLoop loop = (SingleThreadEventLoop) group.next();
+            assertEquals(0, loop.registeredChannels());
+            Channel ch = new ServerBootstrap().group(group).channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter()).bind(0).sync().channel();
+            assertEquals(1, loop.registeredChannels());
+            assertTrue(LoadAwareEventLoopChooserFactory.load(loop) >= 1);
+            ch.close().sync();
+        } finally {
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    @Test
+    public void testMigrate() throws Exception {
+        DefaultEventLoopGroup group = new DefaultEventLoopGroup(2, new DefaultThreadFactory("migrate"));
+        LocalAddress address = new LocalAddress(getClass().getName());
+        final CountDownLatch received = new CountDownLatch(1);
+        Channel server = null;
+        Channel client = null;
+        try {
+            server = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            ctx.writeAndFlush(msg);
+                        }
+                    }).bind(address).sync().channel();
+            client = new Bootstrap().group(group).channel(LocalChannel.class)
+                    .handler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                            received.countDown();
+                        }
+                    }).connect(address).sync().channel();
+
+            EventLoop old = client.eventLoop();
+            EventLoop target = group.next();
+            while (target == old) {
+                target = group.next();
+            }
+            LoadAwareEventLoopChooserFactory.migrate(client, target).sync();
+            assertSame(target, client.eventLoop());
+            assertTrue(client.isRegistered());
+            assertTrue(client.isActive());
+
+            client.writeAndFlush(new Object()).sync();
+            assertTrue(received.await(10, TimeUnit.SECONDS));
+
+            // Migrating to the current EventLoop is a no-op.
+            assertTrue(LoadAwareEventLoopChooserFactory.migrate(client, target).isSuccess());
+        } finally {
+            if (client != null) {
+                client.close().sync();
+            }
+            if (server != null) {
+                server.close().sync();
+            }
+            group.shutdownGracefully(0, 0, TimeUnit.SECONDS).sync();
+        }
+    }
+}
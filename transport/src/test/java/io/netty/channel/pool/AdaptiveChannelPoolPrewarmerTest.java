@@ -0,0 +1,178 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class AdaptiveChannelPoolPrewarmerTest {
+    private static final String LOCAL_ADDR_ID = "test.id";
+
+    private EventLoopGroup group;
+    private Bootstrap cb;
+    private Channel sc;
+
+    @Before
+    public void setUp() throws Exception {
+        group = new LocalEventLoopGroup(1);
+        LocalAddress addr = new LocalAddress(LOCAL_ADDR_ID);
+        cb = new Bootstrap();
+        cb.remoteAddress(addr);
+        cb.group(group)
+          .channel(LocalChannel.class);
+
+        ServerBootstrap sb = new ServerBootstrap();
+        sb.group(group)
+          .channel(LocalServerChannel.class)
+          .childHandler(new ChannelInitializer<LocalChannel>() {
+              @Override
+              public void initChannel(LocalChannel ch) throws Exception {
+                  ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+              }
+          });
+
+        // Start server
+        sc = sb.bind(addr).sync().channel();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sc.close().sync();
+        group.shutdownGracefully();
+    }
+
+    @Test(timeout = 5000)
+    public void testPrewarm() throws Exception {
+        SimpleChannelPool pool = new SimpleChannelPool(cb, new CountingChannelPoolHandler());
+        AdaptiveChannelPoolPrewarmer prewarmer = new AdaptiveChannelPoolPrewarmer(
+                pool, ImmediateEventExecutor.INSTANCE, 1, TimeUnit.NANOSECONDS, 4);
+
+        // Without any acquire nothing should be opened.
+        assertEquals(0, prewarmer.prewarm());
+
+        acquireAndRelease(pool);
+        assertEquals(1, pool.metric().idleChannels());
+
+        // The acquire rate is very high compared to the interval so the limit of idle channels should be reached.
+        assertEquals(3, prewarmer.prewarm());
+        while (pool.metric().idleChannels() != 4) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, pool.metric().connects());
+
+        // No acquires in the last interval, so the rate decreases but the pool is warm already.
+        assertEquals(0, prewarmer.prewarm());
+
+        prewarmer.close();
+        pool.close();
+    }
+
+    @Test(timeout = 5000)
+    public void testPrewarmIgnoresInactiveIdleChannels() throws Exception {
+        testPrewarmIgnoresInactiveIdleChannels(new SimpleChannelPool(cb, new CountingChannelPoolHandler()));
+    }
+
+    @Test(timeout = 5000)
+    public void testPrewarmIgnoresInactiveIdleChannelsOfEventLoopAffinePool() throws Exception {
+        // The channels are kept in the partitions and not in the storage of SimpleChannelPool.
+        testPrewarmIgnoresInactiveIdleChannels(new EventLoopAffineChannelPool(cb, new CountingChannelPoolHandler()));
+    }
+
+    private static void testPrewarmIgnoresInactiveIdleChannels(SimpleChannelPool pool) throws Exception {
+        AdaptiveChannelPoolPrewarmer prewarmer = new AdaptiveChannelPoolPrewarmer(
+                pool, ImmediateEventExecutor.INSTANCE, 1, TimeUnit.NANOSECONDS, 4);
+
+        Channel channel = acquireAndRelease(pool);
+        // The idle channel is still in the pool but can not be used anymore.
+        channel.close().sync();
+        assertEquals(1, pool.metric().idleChannels());
+
+        assertEquals(4, prewarmer.prewarm());
+
+        prewarmer.close();
+        pool.close();
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseClosesPendingConnects() throws Exception {
+        final List<ChannelPromise> pendingConnects = new ArrayList<ChannelPromise>();
+        final boolean[] delayConnects = new boolean[1];
+        SimpleChannelPool pool = new SimpleChannelPool(cb, new CountingChannelPoolHandler()) {
+            @Override
+            protected ChannelFuture connectChannel(Bootstrap bs) {
+                ChannelFuture future = super.connectChannel(bs);
+                if (!delayConnects[0]) {
+                    return future;
+                }
+                // Only report the connect as done once the test completes the promise.
+                ChannelPromise promise = future.syncUninterruptibly().channel().newPromise();
+                pendingConnects.add(promise);
+                return promise;
+            }
+        };
+        AdaptiveChannelPoolPrewarmer prewarmer = new AdaptiveChannelPoolPrewarmer(
+                pool, ImmediateEventExecutor.INSTANCE, 1, TimeUnit.NANOSECONDS, 4);
+
+        acquireAndRelease(pool);
+        delayConnects[0] = true;
+        assertEquals(3, prewarmer.prewarm());
+        assertEquals(3, pendingConnects.size());
+
+        prewarmer.close();
+        // Nothing is opened anymore once closed.
+        assertEquals(0, prewarmer.prewarm());
+
+        // Channels that finish connecting after the close must not end up in the pool.
+        for (ChannelPromise promise : pendingConnects) {
+            promise.setSuccess();
+            promise.channel().closeFuture().sync();
+            assertFalse(promise.channel().isOpen());
+        }
+        assertEquals(1, pool.metric().idleChannels());
+
+        pool.close();
+    }
+
+    private static Channel acquireAndRelease(SimpleChannelPool pool) throws Exception {
+        Channel channel = null;
+        for (int i = 0; i < 10; i++) {
+            channel = pool.acquire().sync().getNow();
+            pool.release(channel).syncUninterruptibly();
+        }
+        return channel;
+    }
+}
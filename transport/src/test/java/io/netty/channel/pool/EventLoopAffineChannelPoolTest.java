@@ -0,0 +1,140 @@
+/*
+ * Copyright 2019 The Netty Project
+ *
+ * The Netty Project licenses this file to you under the Apache License,
+ * version 2.0 (the "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at:
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package io.netty.channel.pool;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalEventLoopGroup;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class EventLoopAffineChannelPoolTest {
+    private static final String LOCAL_ADDR_ID = "test.id";
+
+    private EventLoopGroup group;
+    private Channel sc;
+    private Bootstrap cb;
+
+    @Before
+    public void setUp() throws Exception {
+        group = new LocalEventLoopGroup(2);
+        LocalAddress addr = new LocalAddress(LOCAL_ADDR_ID);
+        cb = new Bootstrap();
+        cb.remoteAddress(addr);
+        cb.group(group)
+          .channel(LocalChannel.class);
+
+        ServerBootstrap sb = new ServerBootstrap();
+        sb.group(group)
+          .channel(LocalServerChannel.class)
+          .childHandler(new ChannelInitializer<LocalChannel>() {
+              @Override
+              public void initChannel(LocalChannel ch) throws Exception {
+                  ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+              }
+          });
+
+        // Start server
+        sc = sb.bind(addr).sync().channel();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        sc.close().sync();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    public void testAcquirePrefersCallerEventLoop() throws Exception {
+        EventLoop loopA = group.next();
+        EventLoop loopB = group.next();
+        assertNotSame(loopA, loopB);
+
+        CountingChannelPoolHandler handler = new CountingChannelPoolHandler();
+        ChannelPool pool = new EventLoopAffineChannelPool(cb, handler);
+
+        Channel channelA = acquire(pool, loopA);
+        Channel channelB = acquire(pool, loopB);
+        assertSame(loopA, channelA.eventLoop());
+        assertSame(loopB, channelB.eventLoop());
+        pool.release(channelA).syncUninterruptibly();
+        pool.release(channelB).syncUninterruptibly();
+
+        // Each EventLoop should get the Channel of its own partition back.
+        Channel channel = acquire(pool, loopB);
+        assertSame(channelB, channel);
+        pool.release(channel).syncUninterruptibly();
+        channel = acquire(pool, loopA);
+        assertSame(channelA, channel);
+        pool.release(channel).syncUninterruptibly();
+
+        pool.close();
+    }
+
+    @Test
+    public void testStealFromOtherPartition() throws Exception {
+        EventLoop loopA = group.next();
+        EventLoop loopB = group.next();
+
+        CountingChannelPoolHandler handler = new CountingChannelPoolHandler();
+        ChannelPool pool = new EventLoopAffineChannelPool(cb, handler);
+
+        Channel channel = acquire(pool, loopA);
+        pool.release(channel).syncUninterruptibly();
+
+        // The partition of loopB is empty, so the idle Channel of loopA should be used.
+        Channel stolen = acquire(pool, loopB);
+        assertSame(channel, stolen);
+        pool.release(stolen).syncUninterruptibly();
+
+        // The Channel is returned to the partition of its own EventLoop.
+        assertSame(channel, acquire(pool, loopA));
+        assertEquals(1, handler.channelCount());
+        pool.release(channel).syncUninterruptibly();
+
+        // Acquire from a thread outside of the EventLoopGroup.
+        assertSame(channel, pool.acquire().sync().getNow());
+        pool.release(channel).syncUninterruptibly();
+
+        pool.close();
+    }
+
+    private static Channel acquire(final ChannelPool pool, EventLoop loop) throws Exception {
+        Future<Channel> future = loop.submit(new Callable<Future<Channel>>() {
+            @Override
+            public Future<Channel> call() {
+                return pool.acquire();
+            }
+        }).sync().getNow();
+        return future.sync().getNow();
+    }
+}
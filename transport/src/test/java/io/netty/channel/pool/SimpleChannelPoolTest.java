@@ -26,6 +26,8 @@ import io.netty.channel.local.LocalChannel;
 import io.netty.channel.local.LocalEventLoopGroup;
 import io.netty.channel.local.LocalServerChannel;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 import org.hamcrest.CoreMatchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -89,6 +91,116 @@ public class SimpleChannelPoolTest {
         group.shutdownGracefully();
     }
 
+    @Test
+    public void testMetric() throws Exception {
+        // Use a single EventLoop so the metrics are updated once release(...) is complete.
+        EventLoopGroup group = new LocalEventLoopGroup(1);
+        LocalAddress addr = new LocalAddress(LOCAL_ADDR_ID);
+        Bootstrap cb = new Bootstrap();
+        cb.remoteAddress(addr);
+        cb.group(group)
+          .channel(LocalChannel.class);
+
+        ServerBootstrap sb = new ServerBootstrap();
+        sb.group(group)
+          .channel(LocalServerChannel.class)
+          .childHandler(new ChannelInitializer<LocalChannel>() {
+              @Override
+              public void initChannel(LocalChannel ch) throws Exception {
+                  ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+              }
+          });
+
+        // Start server
+        Channel sc = sb.bind(addr).sync().channel();
+        SimpleChannelPool pool = new SimpleChannelPool(cb, new CountingChannelPoolHandler());
+        ChannelPoolMetric metric = pool.metric();
+
+        Channel channel = pool.acquire().sync().getNow();
+        assertEquals(1, metric.acquiredChannels());
+        pool.release(channel).syncUninterruptibly();
+        assertEquals(0, metric.acquiredChannels());
+        assertEquals(1, metric.idleChannels());
+        assertEquals(1, metric.acquires());
+        assertEquals(1, metric.connects());
+
+        Channel channel2 = pool.acquire().sync().getNow();
+        assertSame(channel, channel2);
+        assertEquals(1, metric.acquiredChannels());
+        assertEquals(0, metric.idleChannels());
+        channel2.close().syncUninterruptibly();
+        pool.release(channel2).syncUninterruptibly();
+
+        assertEquals(0, metric.acquiredChannels());
+        assertEquals(0, metric.idleChannels());
+        assertEquals(0, metric.pendingAcquires());
+        assertEquals(2, metric.acquires());
+        assertEquals(1, metric.connects());
+        assertEquals(1, metric.healthCheckFailures());
+        assertEquals(2, sum(metric.acquireLatencyHistogram()));
+        assertEquals(1, sum(metric.connectLatencyHistogram()));
+        assertTrue(metric.acquireTimeNanos() >= metric.connectTimeNanos());
+
+        pool.close();
+        sc.close().sync();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    public void testMetricReleaseInAcquireListener() throws Exception {
+        EventLoopGroup group = new LocalEventLoopGroup(1);
+        LocalAddress addr = new LocalAddress(LOCAL_ADDR_ID);
+        Bootstrap cb = new Bootstrap();
+        cb.remoteAddress(addr);
+        cb.group(group)
+          .channel(LocalChannel.class);
+
+        ServerBootstrap sb = new ServerBootstrap();
+        sb.group(group)
+          .channel(LocalServerChannel.class)
+          .childHandler(new ChannelInitializer<LocalChannel>() {
+              @Override
+              public void initChannel(LocalChannel ch) throws Exception {
+                  ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+              }
+          });
+
+        // Start server
+        Channel sc = sb.bind(addr).sync().channel();
+        final SimpleChannelPool pool = new SimpleChannelPool(cb, new CountingChannelPoolHandler());
+        final ChannelPoolMetric metric = pool.metric();
+
+        pool.release(pool.acquire().sync().getNow()).syncUninterruptibly();
+        assertEquals(1, metric.idleChannels());
+
+        // The idle channel is health checked and the listener releases it before acquire(...) returns.
+        final Promise<Long> acquiredInListener = group.next().newPromise();
+        Promise<Channel> promise = group.next().newPromise();
+        promise.addListener(new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) {
+                pool.release(future.getNow());
+                acquiredInListener.setSuccess(metric.acquiredChannels());
+            }
+        });
+        pool.acquire(promise).sync();
+
+        assertEquals(0, (long) acquiredInListener.sync().getNow());
+        assertEquals(0, metric.acquiredChannels());
+
+        pool.close();
+        sc.close().sync();
+        group.shutdownGracefully();
+    }
+
+    private static long sum(long[] histogram) {
+        long sum = 0;
+        for (long count: histogram) {
+            sum += count;
+        }
+        return sum;
+    }
+
     @Test
     public void testBoundedChannelPoolSegment() throws Exception {
         EventLoopGroup group = new LocalEventLoopGroup();